@@ -44,10 +44,15 @@ public abstract class AbstractElement
         implements NodeEventTarget, CSSNavigableNode, SVGConstants {
 
     /**
-     * The live attribute values.
+     * The initial capacity of the live attribute value tables, enough
+     * for the attributes of most elements.
      */
-    protected transient DoublyIndexedTable liveAttributeValues =
-        new DoublyIndexedTable();
+    protected static final int LIVE_ATTRIBUTE_VALUES_CAPACITY = 8;
+
+    /**
+     * The live attribute values, or null if this element has none.
+     */
+    protected transient DoublyIndexedTable liveAttributeValues;
 
     /**
      * Creates a new Element object.
@@ -148,9 +153,9 @@ public abstract class AbstractElement
      * @param ln The attribute's local name.
      */
     public LiveAttributeValue getLiveAttributeValue(String ns, String ln) {
-//         if (liveAttributeValues == null) {
-//             return null;
-//         }
+        if (liveAttributeValues == null) {
+            return null;
+        }
         return (LiveAttributeValue)liveAttributeValues.get(ns, ln);
     }
 
@@ -162,9 +167,10 @@ public abstract class AbstractElement
      */
     public void putLiveAttributeValue(String ns, String ln,
                                       LiveAttributeValue val) {
-//         if (liveAttributeValues == null) {
-//             liveAttributeValues = new SoftDoublyIndexedTable();
-//         }
+        if (liveAttributeValues == null) {
+            liveAttributeValues =
+                new DoublyIndexedTable(LIVE_ATTRIBUTE_VALUES_CAPACITY);
+        }
         liveAttributeValues.put(ns, ln, val);
     }
 
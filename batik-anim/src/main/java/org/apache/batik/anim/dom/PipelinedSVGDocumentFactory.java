@@ -0,0 +1,645 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.anim.dom;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.batik.dom.AbstractDocument;
+import org.apache.batik.dom.util.SAXIOException;
+import org.apache.batik.util.ParsedURL;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXNotRecognizedException;
+import org.xml.sax.SAXNotSupportedException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xml.sax.helpers.LocatorImpl;
+
+/**
+ * This class creates SVGDocument instances while the input is parsed in
+ * another thread, so that reading and parsing the input overlaps with
+ * the construction of the DOM tree, and with any processing done by a
+ * {@link BuildHandler} as the elements are built.
+ *
+ * <p>The parser thread records the SAX events in batches, which are
+ * replayed by the calling thread on this factory. The resulting document
+ * is the same as the one created by {@link SAXSVGDocumentFactory}, and so
+ * are the reported errors. The DOM tree is only accessed by the calling
+ * thread. Validating factories parse in the calling thread.</p>
+ *
+ * @version $Id$
+ */
+public class PipelinedSVGDocumentFactory extends SAXSVGDocumentFactory {
+
+    /**
+     * The number of events sent at once to the calling thread.
+     */
+    public static final int BATCH_SIZE = 256;
+
+    /**
+     * The maximum number of batches waiting to be replayed.
+     */
+    public static final int QUEUE_SIZE = 64;
+
+    /**
+     * Notified, in the calling thread, as the document is built.
+     */
+    public interface BuildHandler {
+
+        /**
+         * Called when the document element has been created, with its
+         * attributes, but before its children.
+         */
+        void documentElementStarted(Element e);
+
+        /**
+         * Called when an element child of the document element, and
+         * all its descendants, have been built.
+         */
+        void documentElementChildBuilt(Element e);
+    }
+
+    /**
+     * The threads parsing the documents.
+     */
+    protected static ExecutorService parserThreads =
+        Executors.newCachedThreadPool(new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread
+                        (r, "Batik XML parser " + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
+    /**
+     * The handler notified as the document is built.
+     */
+    protected BuildHandler buildHandler;
+
+    /**
+     * The depth of the current node.
+     */
+    protected int depth;
+
+    /**
+     * The URI of the document being built.
+     */
+    protected String documentURI;
+
+    /**
+     * The location of the event being replayed.
+     */
+    protected LocatorImpl eventLocator = new LocatorImpl();
+
+    /**
+     * Whether the parser thread has reached the end of the document.
+     */
+    protected boolean parsed;
+
+    /**
+     * Creates a new PipelinedSVGDocumentFactory object.
+     * @param parser The SAX2 parser classname.
+     * @param h The handler notified as the documents are built, or null.
+     */
+    public PipelinedSVGDocumentFactory(String parser, BuildHandler h) {
+        super(parser);
+        buildHandler = h;
+    }
+
+    /**
+     * Creates a new PipelinedSVGDocumentFactory object.
+     * @param parser The SAX2 parser classname.
+     * @param dd Whether a document descriptor must be generated.
+     * @param h The handler notified as the documents are built, or null.
+     */
+    public PipelinedSVGDocumentFactory(String parser, boolean dd,
+                                       BuildHandler h) {
+        super(parser, dd);
+        buildHandler = h;
+    }
+
+    /**
+     * Creates a Document, parsing the input in a parser thread.
+     * @param is  The document input source.
+     * @exception IOException if an error occured while reading the document.
+     */
+    protected Document createDocument(InputSource is)
+        throws IOException {
+        if (isValidating) {
+            return super.createDocument(is);
+        }
+        EventRecorder rec;
+        try {
+            rec = new EventRecorder(createXMLReader(), is);
+        } catch (SAXException e) {
+            throw new SAXIOException(e);
+        }
+        parserThreads.execute(rec);
+
+        documentURI = is.getSystemId();
+        depth = 0;
+        parsed = false;
+        locator = eventLocator;
+        try {
+            while (!parsed) {
+                Event[] batch = rec.take();
+                for (int i = 0; i < batch.length && batch[i] != null; i++) {
+                    batch[i].replay(this);
+                }
+            }
+        } catch (SAXException e) {
+            Exception ex = e.getException();
+            if (ex != null && ex instanceof InterruptedIOException) {
+                throw (InterruptedIOException)ex;
+            }
+            throw new SAXIOException(e);
+        } finally {
+            rec.cancel();
+        }
+
+        currentNode  = null;
+        Document ret = document;
+        document     = null;
+        doctype      = null;
+        locator      = null;
+        documentURI  = null;
+        return ret;
+    }
+
+    /**
+     * Called when the document element has been created.
+     */
+    protected void documentElementStarted(Element e) {
+        if (documentURI != null && document instanceof SVGOMDocument) {
+            // The URI is needed to resolve the references while the
+            // document is built.
+            SVGOMDocument doc = (SVGOMDocument)document;
+            doc.setParsedURL(new ParsedURL(documentURI));
+            ((AbstractDocument)doc).setDocumentURI(documentURI);
+        }
+        if (buildHandler != null) {
+            buildHandler.documentElementStarted(e);
+        }
+    }
+
+    /**
+     * Called when a child of the document element has been built.
+     */
+    protected void documentElementChildBuilt(Element e) {
+        if (buildHandler != null) {
+            buildHandler.documentElementChildBuilt(e);
+        }
+    }
+
+    /**
+     * A SAX event recorded by the parser thread.
+     */
+    protected abstract static class Event {
+
+        /**
+         * Replays this event on the given factory.
+         */
+        public abstract void replay(PipelinedSVGDocumentFactory f)
+            throws SAXException, IOException;
+    }
+
+    /**
+     * The start of the document.
+     */
+    protected static class StartDocument extends Event {
+        public void replay(PipelinedSVGDocumentFactory f)
+            throws SAXException {
+            f.startDocument();
+        }
+    }
+
+    /**
+     * The XML declaration, as reported by the parser at the first
+     * start tag.
+     */
+    protected static class XMLDecl extends Event {
+        protected boolean standalone;
+        protected String version;
+        public XMLDecl(boolean standalone, String version) {
+            this.standalone = standalone;
+            this.version = version;
+        }
+        public void replay(PipelinedSVGDocumentFactory f) {
+            f.isStandalone = standalone;
+            if (version != null) {
+                f.xmlVersion = version;
+            }
+        }
+    }
+
+    /**
+     * A start tag.
+     */
+    protected static class StartElement extends Event {
+        protected String uri, localName, rawName;
+        protected Attributes attributes;
+        protected int line, column;
+        public StartElement(String uri, String localName, String rawName,
+                            Attributes attributes, int line, int column) {
+            this.uri = uri;
+            this.localName = localName;
+            this.rawName = rawName;
+            this.attributes = attributes;
+            this.line = line;
+            this.column = column;
+        }
+        public void replay(PipelinedSVGDocumentFactory f)
+            throws SAXException {
+            f.eventLocator.setLineNumber(line);
+            f.eventLocator.setColumnNumber(column);
+            f.startElement(uri, localName, rawName, attributes);
+            if (++f.depth == 1) {
+                f.documentElementStarted((Element)f.currentNode);
+            }
+        }
+    }
+
+    /**
+     * An end tag.
+     */
+    protected static class EndElement extends Event {
+        protected String uri, localName, rawName;
+        public EndElement(String uri, String localName, String rawName) {
+            this.uri = uri;
+            this.localName = localName;
+            this.rawName = rawName;
+        }
+        public void replay(PipelinedSVGDocumentFactory f)
+            throws SAXException {
+            Node n = f.currentNode;
+            f.endElement(uri, localName, rawName);
+            if (--f.depth == 1) {
+                f.documentElementChildBuilt((Element)n);
+            }
+        }
+    }
+
+    /**
+     * Character data.
+     */
+    protected static class Characters extends Event {
+        protected char[] data;
+        public Characters(char[] ch, int start, int length) {
+            data = new char[length];
+            System.arraycopy(ch, start, data, 0, length);
+        }
+        public void replay(PipelinedSVGDocumentFactory f)
+            throws SAXException {
+            f.characters(data, 0, data.length);
+        }
+    }
+
+    /**
+     * A processing instruction.
+     */
+    protected static class PI extends Event {
+        protected String target, data;
+        public PI(String target, String data) {
+            this.target = target;
+            this.data = data;
+        }
+        public void replay(PipelinedSVGDocumentFactory f)
+            throws SAXException {
+            f.processingInstruction(target, data);
+        }
+    }
+
+    /**
+     * A comment.
+     */
+    protected static class Comment extends Event {
+        protected char[] data;
+        public Comment(char[] ch, int start, int length) {
+            data = new char[length];
+            System.arraycopy(ch, start, data, 0, length);
+        }
+        public void replay(PipelinedSVGDocumentFactory f)
+            throws SAXException {
+            f.comment(data, 0, data.length);
+        }
+    }
+
+    /**
+     * The start of a DOCTYPE.
+     */
+    protected static class StartDTD extends Event {
+        protected String name, publicId, systemId;
+        public StartDTD(String name, String publicId, String systemId) {
+            this.name = name;
+            this.publicId = publicId;
+            this.systemId = systemId;
+        }
+        public void replay(PipelinedSVGDocumentFactory f)
+            throws SAXException {
+            f.startDTD(name, publicId, systemId);
+        }
+    }
+
+    /**
+     * The events without parameters.
+     */
+    protected static class Marker extends Event {
+        public static final int END_DTD     = 0;
+        public static final int START_CDATA = 1;
+        public static final int END_CDATA   = 2;
+        protected int type;
+        public Marker(int type) {
+            this.type = type;
+        }
+        public void replay(PipelinedSVGDocumentFactory f)
+            throws SAXException {
+            switch (type) {
+            case END_DTD:
+                f.endDTD();
+                break;
+            case START_CDATA:
+                f.startCDATA();
+                break;
+            default:
+                f.endCDATA();
+            }
+        }
+    }
+
+    /**
+     * The end of the parsing, successful or not.
+     */
+    protected static class End extends Event {
+        protected Throwable error;
+        public End(Throwable error) {
+            this.error = error;
+        }
+        public void replay(PipelinedSVGDocumentFactory f)
+            throws SAXException, IOException {
+            f.parsed = true;
+            if (error instanceof SAXException) {
+                throw (SAXException)error;
+            }
+            if (error instanceof IOException) {
+                throw (IOException)error;
+            }
+            if (error instanceof RuntimeException) {
+                throw (RuntimeException)error;
+            }
+            if (error instanceof Error) {
+                throw (Error)error;
+            }
+        }
+    }
+
+    /**
+     * Parses a document in the parser thread and records its events.
+     */
+    protected class EventRecorder extends DefaultHandler
+        implements LexicalHandler, Runnable {
+
+        /**
+         * The parser.
+         */
+        protected XMLReader reader;
+
+        /**
+         * The input to parse.
+         */
+        protected InputSource input;
+
+        /**
+         * The batches of events ready to be replayed.
+         */
+        protected BlockingQueue<Event[]> queue =
+            new ArrayBlockingQueue<Event[]>(QUEUE_SIZE);
+
+        /**
+         * The batch being filled.
+         */
+        protected Event[] batch = new Event[BATCH_SIZE];
+
+        /**
+         * The number of events in the current batch.
+         */
+        protected int count;
+
+        /**
+         * The locator given by the parser.
+         */
+        protected Locator parserLocator;
+
+        /**
+         * Whether the first start tag was seen.
+         */
+        protected boolean inProlog = true;
+
+        /**
+         * Whether the consumer gave up the document.
+         */
+        protected volatile boolean cancelled;
+
+        public EventRecorder(XMLReader r, InputSource is) {
+            reader = r;
+            input = is;
+        }
+
+        /**
+         * Parses the input.
+         */
+        public void run() {
+            Throwable error = null;
+            try {
+                reader.setContentHandler(this);
+                reader.setDTDHandler(this);
+                reader.setEntityResolver(PipelinedSVGDocumentFactory.this);
+                reader.setErrorHandler((errorHandler == null)
+                                       ? PipelinedSVGDocumentFactory.this
+                                       : errorHandler);
+                reader.setProperty
+                    ("http://xml.org/sax/properties/lexical-handler", this);
+                reader.parse(input);
+            } catch (Throwable t) {
+                error = t;
+            }
+            if (!cancelled) {
+                try {
+                    add(new End(error));
+                    flush();
+                } catch (SAXException e) {
+                    // Cancelled: nobody is waiting for the events.
+                }
+            }
+        }
+
+        /**
+         * Returns the next batch of events, waiting for it if needed.
+         */
+        public Event[] take() throws SAXException {
+            try {
+                return queue.take();
+            } catch (InterruptedException e) {
+                throw new SAXException(new InterruptedIOException());
+            }
+        }
+
+        /**
+         * Makes the parser thread stop.
+         */
+        public void cancel() {
+            cancelled = true;
+            queue.clear();
+        }
+
+        /**
+         * Adds an event to the current batch.
+         */
+        protected void add(Event e) throws SAXException {
+            batch[count++] = e;
+            if (count == BATCH_SIZE) {
+                flush();
+            }
+        }
+
+        /**
+         * Sends the current batch to the calling thread.
+         */
+        protected void flush() throws SAXException {
+            try {
+                while (!queue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+                    if (cancelled) {
+                        throw new SAXException(new InterruptedIOException());
+                    }
+                }
+            } catch (InterruptedException e) {
+                throw new SAXException(new InterruptedIOException());
+            }
+            batch = new Event[BATCH_SIZE];
+            count = 0;
+        }
+
+        public void setDocumentLocator(Locator l) {
+            parserLocator = l;
+        }
+
+        public void startDocument() throws SAXException {
+            add(new StartDocument());
+        }
+
+        public void startElement(String uri, String localName,
+                                 String rawName, Attributes attributes)
+            throws SAXException {
+            if (cancelled) {
+                throw new SAXException(new InterruptedIOException());
+            }
+            if (inProlog) {
+                inProlog = false;
+                boolean standalone = false;
+                String version = null;
+                try {
+                    standalone = reader.getFeature
+                        ("http://xml.org/sax/features/is-standalone");
+                } catch (SAXNotRecognizedException ex) {
+                } catch (SAXNotSupportedException ex) {
+                }
+                try {
+                    version = (String)reader.getProperty
+                        ("http://xml.org/sax/properties/document-xml-version");
+                } catch (SAXNotRecognizedException ex) {
+                } catch (SAXNotSupportedException ex) {
+                }
+                add(new XMLDecl(standalone, version));
+            }
+            int line = 0, column = 0;
+            if (parserLocator != null) {
+                line = parserLocator.getLineNumber();
+                column = parserLocator.getColumnNumber();
+            }
+            add(new StartElement(uri, localName, rawName,
+                                 new AttributesImpl(attributes),
+                                 line, column));
+        }
+
+        public void endElement(String uri, String localName, String rawName)
+            throws SAXException {
+            add(new EndElement(uri, localName, rawName));
+        }
+
+        public void characters(char[] ch, int start, int length)
+            throws SAXException {
+            add(new Characters(ch, start, length));
+        }
+
+        public void ignorableWhitespace(char[] ch, int start, int length)
+            throws SAXException {
+            add(new Characters(ch, start, length));
+        }
+
+        public void processingInstruction(String target, String data)
+            throws SAXException {
+            add(new PI(target, data));
+        }
+
+        public void startDTD(String name, String publicId, String systemId)
+            throws SAXException {
+            add(new StartDTD(name, publicId, systemId));
+        }
+
+        public void endDTD() throws SAXException {
+            add(new Marker(Marker.END_DTD));
+        }
+
+        public void startEntity(String name) {
+        }
+
+        public void endEntity(String name) {
+        }
+
+        public void startCDATA() throws SAXException {
+            add(new Marker(Marker.START_CDATA));
+        }
+
+        public void endCDATA() throws SAXException {
+            add(new Marker(Marker.END_CDATA));
+        }
+
+        public void comment(char[] ch, int start, int length)
+            throws SAXException {
+            add(new Comment(ch, start, length));
+        }
+    }
+}
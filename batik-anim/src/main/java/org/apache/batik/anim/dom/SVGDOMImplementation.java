@@ -79,6 +79,13 @@ public class SVGDOMImplementation
 
     protected HashMap<String, ElementFactory> factories;
 
+    /**
+     * The parsed user-agent stylesheet, shared by all the CSS engines
+     * created by this implementation.
+     */
+    protected volatile org.apache.batik.css.engine.StyleSheet
+        userAgentStyleSheet;
+
     /**
      * Returns the default instance of this class.
      */
@@ -110,16 +117,34 @@ public class SVGDOMImplementation
 
         ParsedURL durl = ((SVGOMDocument)doc).getParsedURL();
         CSSEngine result = new SVGCSSEngine(doc, durl, ep, vms, sms, ctx);
+        result.setUserAgentStyleSheet(getUserAgentStyleSheet(result));
+        return result;
+    }
 
-        URL url = getClass().getResource("resources/UserAgentStyleSheet.css");
-        if (url != null) {
-            ParsedURL purl = new ParsedURL(url);
-            InputSource is = new InputSource(purl.toString());
-            result.setUserAgentStyleSheet
-                (result.parseStyleSheet(is, purl, "all"));
+    /**
+     * Returns the user-agent stylesheet to use with the given engine.
+     * The stylesheet is parsed by the first engine which needs it and
+     * then shared by all the engines created by this implementation,
+     * since a parsed stylesheet is never modified by the cascade.
+     */
+    protected org.apache.batik.css.engine.StyleSheet
+        getUserAgentStyleSheet(CSSEngine eng) {
+        org.apache.batik.css.engine.StyleSheet ss = userAgentStyleSheet;
+        if (ss != null) {
+            return ss;
+        }
+        synchronized (this) {
+            if (userAgentStyleSheet == null) {
+                URL url = getClass().getResource
+                    ("resources/UserAgentStyleSheet.css");
+                if (url != null) {
+                    ParsedURL purl = new ParsedURL(url);
+                    InputSource is = new InputSource(purl.toString());
+                    userAgentStyleSheet = eng.parseStyleSheet(is, purl, "all");
+                }
+            }
+            return userAgentStyleSheet;
         }
-
-        return result;
     }
 
     /**
@@ -359,7 +359,7 @@ public abstract class SVGOMElement
             (String ns, String ln, String def) {
         SVGOMAnimatedTransformList v =
             new SVGOMAnimatedTransformList(this, ns, ln, def);
-        liveAttributeValues.put(ns, ln, v);
+        putLiveAttributeValue(ns, ln, v);
         v.addAnimatedAttributeListener
             (((SVGOMDocument) ownerDocument).getAnimatedAttributeListener());
         return v;
@@ -373,7 +373,7 @@ public abstract class SVGOMElement
             (String ns, String ln, boolean def) {
         SVGOMAnimatedBoolean v =
             new SVGOMAnimatedBoolean(this, ns, ln, def);
-        liveAttributeValues.put(ns, ln, v);
+        putLiveAttributeValue(ns, ln, v);
         v.addAnimatedAttributeListener
             (((SVGOMDocument) ownerDocument).getAnimatedAttributeListener());
         return v;
@@ -387,7 +387,7 @@ public abstract class SVGOMElement
             (String ns, String ln) {
         SVGOMAnimatedString v =
             new SVGOMAnimatedString(this, ns, ln);
-        liveAttributeValues.put(ns, ln, v);
+        putLiveAttributeValue(ns, ln, v);
         v.addAnimatedAttributeListener
             (((SVGOMDocument) ownerDocument).getAnimatedAttributeListener());
         return v;
@@ -401,7 +401,7 @@ public abstract class SVGOMElement
             createLiveAnimatedPreserveAspectRatio() {
         SVGOMAnimatedPreserveAspectRatio v =
             new SVGOMAnimatedPreserveAspectRatio(this);
-        liveAttributeValues.put(null, SVG_PRESERVE_ASPECT_RATIO_ATTRIBUTE, v);
+        putLiveAttributeValue(null, SVG_PRESERVE_ASPECT_RATIO_ATTRIBUTE, v);
         v.addAnimatedAttributeListener
             (((SVGOMDocument) ownerDocument).getAnimatedAttributeListener());
         return v;
@@ -415,7 +415,7 @@ public abstract class SVGOMElement
             createLiveAnimatedMarkerOrientValue(String ns, String ln) {
         SVGOMAnimatedMarkerOrientValue v =
             new SVGOMAnimatedMarkerOrientValue(this, ns, ln);
-        liveAttributeValues.put(ns, ln, v);
+        putLiveAttributeValue(ns, ln, v);
         v.addAnimatedAttributeListener
             (((SVGOMDocument) ownerDocument).getAnimatedAttributeListener());
         return v;
@@ -429,7 +429,7 @@ public abstract class SVGOMElement
             createLiveAnimatedPathData(String ns, String ln, String def) {
         SVGOMAnimatedPathData v =
             new SVGOMAnimatedPathData(this, ns, ln, def);
-        liveAttributeValues.put(ns, ln, v);
+        putLiveAttributeValue(ns, ln, v);
         v.addAnimatedAttributeListener
             (((SVGOMDocument) ownerDocument).getAnimatedAttributeListener());
         return v;
@@ -452,7 +452,7 @@ public abstract class SVGOMElement
             (String ns, String ln, float def, boolean allowPercentage) {
         SVGOMAnimatedNumber v =
             new SVGOMAnimatedNumber(this, ns, ln, def, allowPercentage);
-        liveAttributeValues.put(ns, ln, v);
+        putLiveAttributeValue(ns, ln, v);
         v.addAnimatedAttributeListener
             (((SVGOMDocument) ownerDocument).getAnimatedAttributeListener());
         return v;
@@ -466,7 +466,7 @@ public abstract class SVGOMElement
             (String ns, String ln, String def, boolean canEmpty) {
         SVGOMAnimatedNumberList v =
             new SVGOMAnimatedNumberList(this, ns, ln, def, canEmpty);
-        liveAttributeValues.put(ns, ln, v);
+        putLiveAttributeValue(ns, ln, v);
         v.addAnimatedAttributeListener
             (((SVGOMDocument) ownerDocument).getAnimatedAttributeListener());
         return v;
@@ -480,7 +480,7 @@ public abstract class SVGOMElement
             (String ns, String ln, String def) {
         SVGOMAnimatedPoints v =
             new SVGOMAnimatedPoints(this, ns, ln, def);
-        liveAttributeValues.put(ns, ln, v);
+        putLiveAttributeValue(ns, ln, v);
         v.addAnimatedAttributeListener
             (((SVGOMDocument) ownerDocument).getAnimatedAttributeListener());
         return v;
@@ -495,7 +495,7 @@ public abstract class SVGOMElement
              short dir) {
         SVGOMAnimatedLengthList v =
             new SVGOMAnimatedLengthList(this, ns, ln, def, emptyAllowed, dir);
-        liveAttributeValues.put(ns, ln, v);
+        putLiveAttributeValue(ns, ln, v);
         v.addAnimatedAttributeListener
             (((SVGOMDocument) ownerDocument).getAnimatedAttributeListener());
         return v;
@@ -509,7 +509,7 @@ public abstract class SVGOMElement
             (String ns, String ln, int def) {
         SVGOMAnimatedInteger v =
             new SVGOMAnimatedInteger(this, ns, ln, def);
-        liveAttributeValues.put(ns, ln, v);
+        putLiveAttributeValue(ns, ln, v);
         v.addAnimatedAttributeListener
             (((SVGOMDocument) ownerDocument).getAnimatedAttributeListener());
         return v;
@@ -523,7 +523,7 @@ public abstract class SVGOMElement
             (String ns, String ln, String[] val, short def) {
         SVGOMAnimatedEnumeration v =
             new SVGOMAnimatedEnumeration(this, ns, ln, val, def);
-        liveAttributeValues.put(ns, ln, v);
+        putLiveAttributeValue(ns, ln, v);
         v.addAnimatedAttributeListener
             (((SVGOMDocument) ownerDocument).getAnimatedAttributeListener());
         return v;
@@ -537,7 +537,7 @@ public abstract class SVGOMElement
             (String ns, String ln, String val, short dir, boolean nonneg) {
         SVGOMAnimatedLength v =
             new SVGOMAnimatedLength(this, ns, ln, val, dir, nonneg);
-        liveAttributeValues.put(ns, ln, v);
+        putLiveAttributeValue(ns, ln, v);
         v.addAnimatedAttributeListener
             (((SVGOMDocument) ownerDocument).getAnimatedAttributeListener());
         return v;
@@ -550,7 +550,7 @@ public abstract class SVGOMElement
     protected SVGOMAnimatedRect createLiveAnimatedRect
             (String ns, String ln, String value) {
         SVGOMAnimatedRect v = new SVGOMAnimatedRect(this, ns, ln, value);
-        liveAttributeValues.put(ns, ln, v);
+        putLiveAttributeValue(ns, ln, v);
         v.addAnimatedAttributeListener
             (((SVGOMDocument) ownerDocument).getAnimatedAttributeListener());
         return v;
@@ -171,8 +171,8 @@ public class SVGOMRectElement
                 }
             };
 
-        liveAttributeValues.put(null, SVG_RX_ATTRIBUTE, rx);
-        liveAttributeValues.put(null, SVG_RY_ATTRIBUTE, ry);
+        putLiveAttributeValue(null, SVG_RX_ATTRIBUTE, rx);
+        putLiveAttributeValue(null, SVG_RY_ATTRIBUTE, ry);
         AnimatedAttributeListener l =
             ((SVGOMDocument) ownerDocument).getAnimatedAttributeListener();
         rx.addAnimatedAttributeListener(l);
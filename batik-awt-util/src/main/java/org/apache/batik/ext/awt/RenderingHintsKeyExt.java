@@ -77,9 +77,25 @@ public final class RenderingHintsKeyExt {
     public static final Object VALUE_AVOID_TILE_PAINTING_OFF = new Object();
     public static final Object VALUE_AVOID_TILE_PAINTING_DEFAULT = new Object();
 
+    /**
+     * Hint giving, as a positive <code>Long</code>, the number of bytes
+     * of tile data a renderer may keep in its own tile cache. When it is
+     * not set the process-wide tile cache is used.
+     */
+    public static final RenderingHints.Key KEY_TILE_CACHE_SIZE;
+
+    /**
+     * Hint giving, as an <code>Integer</code>, the number of threads a
+     * rendering may use. Renderers and filters which support it split
+     * their work between the threads of a shared pool. When it is not
+     * set, or set to 1, rendering is done on the calling thread.
+     */
+    public static final RenderingHints.Key KEY_RENDERING_THREADS;
+
     static {
         int base = 10100;
-        RenderingHints.Key trans=null, aoi=null, bi=null, cs=null, atp=null;
+        RenderingHints.Key trans=null, aoi=null, bi=null, cs=null, atp=null,
+            tcs=null, rt=null;
         while (true) {
             int val = base;
 
@@ -89,6 +105,8 @@ public final class RenderingHintsKeyExt {
                 bi    = new BufferedImageHintKey (val++);
                 cs    = new ColorSpaceHintKey    (val++);
                 atp   = new AvoidTilingHintKey   (val++);
+                tcs   = new TileCacheSizeHintKey (val++);
+                rt    = new RenderingThreadsHintKey(val++);
             } catch (Exception e) {
                 System.err.println
                     ("You have loaded the Batik jar files more than once\n" +
@@ -106,6 +124,8 @@ public final class RenderingHintsKeyExt {
         KEY_BUFFERED_IMAGE      = bi;
         KEY_COLORSPACE          = cs;
         KEY_AVOID_TILE_PAINTING = atp;
+        KEY_TILE_CACHE_SIZE     = tcs;
+        KEY_RENDERING_THREADS   = rt;
     }
 
     /**
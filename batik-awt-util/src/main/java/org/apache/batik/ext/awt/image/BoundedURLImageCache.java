@@ -0,0 +1,449 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.batik.ext.awt.image.renderable.DeferRable;
+import org.apache.batik.ext.awt.image.renderable.Filter;
+import org.apache.batik.util.ParsedURL;
+
+/**
+ * An image cache which keeps strong references to the images, up to a
+ * given number of bytes, and evicts the least recently used images
+ * when this budget is exceeded.
+ *
+ * <p>Unlike {@link URLImageCache}, whose images may be dropped by the
+ * garbage collector at any time, the images of this cache stay in
+ * memory until they are evicted, which makes it suitable for servers
+ * that render the same images over and over.  Cached images are
+ * returned without taking a global lock: a hit only stamps the image,
+ * and the image is moved to the most recently used end of the
+ * eviction order when the eviction reaches it.  The size of an image is
+ * estimated from its bounds, at four bytes per pixel; images whose
+ * size is not known yet, because they are still being decoded, are
+ * counted once their bounds are available.</p>
+ *
+ * <p>The cache can be given to an {@link
+ * org.apache.batik.ext.awt.image.spi.ImageTagRegistry} in place of
+ * the default caches.</p>
+ *
+ * @version $Id$
+ */
+public class BoundedURLImageCache extends URLImageCache {
+
+    /**
+     * The default byte budget of a cache: 64MB.
+     */
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    /**
+     * An entry of the cache.  An entry whose filter is null is pending:
+     * a thread is 'on the hook' for it.
+     */
+    protected static class Entry {
+
+        /**
+         * The cached image.
+         */
+        protected final Filter filter;
+
+        /**
+         * The estimated size of the image in bytes, or -1 if not known
+         * yet.  Guarded by the cache.
+         */
+        protected long bytes = -1;
+
+        /**
+         * The value of the access clock when the image was last used.
+         */
+        protected volatile long stamp;
+
+        /**
+         * The value of <code>stamp</code> when the entry was moved to
+         * the most recently used end of the eviction order.  Guarded by
+         * the cache.
+         */
+        protected long queued;
+
+        /**
+         * Whether this pending entry was put or cleared.
+         */
+        protected boolean done;
+
+        protected Entry(Filter filter, long stamp) {
+            this.filter = filter;
+            this.stamp = stamp;
+        }
+    }
+
+    /**
+     * Orders the entries from the least to the most recently used.
+     */
+    protected static final Comparator<Map.Entry<ParsedURL, Entry>> LRU_ORDER =
+        new Comparator<Map.Entry<ParsedURL, Entry>>() {
+            public int compare(Map.Entry<ParsedURL, Entry> e1,
+                               Map.Entry<ParsedURL, Entry> e2) {
+                long s1 = e1.getValue().stamp;
+                long s2 = e2.getValue().stamp;
+                return (s1 < s2) ? -1 : ((s1 == s2) ? 0 : 1);
+            }
+        };
+
+    /**
+     * The entries of the cache.
+     */
+    protected final ConcurrentHashMap<ParsedURL, Entry> entries =
+        new ConcurrentHashMap<ParsedURL, Entry>();
+
+    /**
+     * The images of the cache, from the least to the most recently
+     * moved to the end of the eviction order.  Guarded by this cache.
+     */
+    protected final LinkedHashMap<ParsedURL, Entry> lru =
+        new LinkedHashMap<ParsedURL, Entry>(16, 0.75f, true);
+
+    /**
+     * The images of the cache whose size is not known yet.  Guarded by
+     * this cache.
+     */
+    protected final Map<ParsedURL, Entry> unsized =
+        new HashMap<ParsedURL, Entry>();
+
+    /**
+     * The access clock.
+     */
+    protected final AtomicLong clock = new AtomicLong();
+
+    /**
+     * The maximum number of bytes of the cached images.
+     */
+    protected volatile long maxBytes;
+
+    /**
+     * The estimated number of bytes of the cached images whose size is
+     * known.  Written while holding this cache.
+     */
+    protected volatile long byteCount;
+
+    protected final AtomicLong hitCount      = new AtomicLong();
+    protected final AtomicLong missCount     = new AtomicLong();
+    protected final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * Creates a cache with the default byte budget.
+     */
+    public BoundedURLImageCache() {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * Creates a cache.
+     * @param maxBytes the maximum number of bytes of the cached images
+     */
+    public BoundedURLImageCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the maximum number of bytes of the cached images.
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Sets the maximum number of bytes of the cached images, evicting
+     * images if needed.
+     */
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        evict(null);
+    }
+
+    /**
+     * Check if <code>request(url)</code> will return with a Filter
+     * (not putting you on the hook for it).  Note that the image may
+     * be evicted between this call and the call to request.
+     */
+    public boolean isPresent(ParsedURL purl) {
+        return entries.containsKey(purl);
+    }
+
+    /**
+     * Check if <code>request(url)</code> will return immediately with the
+     * Filter.
+     */
+    public boolean isDone(ParsedURL purl) {
+        Entry e = entries.get(purl);
+        return (e != null) && (e.filter != null);
+    }
+
+    /**
+     * If this returns null then you are now 'on the hook'.
+     * to put the Filter associated with ParsedURL into the
+     * cache.  If another thread is on the hook for the same URL,
+     * this waits until it puts or clears the entry.
+     */
+    public Filter request(ParsedURL purl) {
+        for (;;) {
+            Entry e = entries.get(purl);
+            if (e == null) {
+                Entry pending = new Entry(null, clock.incrementAndGet());
+                if (entries.putIfAbsent(purl, pending) == null) {
+                    missCount.incrementAndGet();
+                    return null;
+                }
+                continue;
+            }
+            if (e.filter != null) {
+                e.stamp = clock.incrementAndGet();
+                hitCount.incrementAndGet();
+                return e.filter;
+            }
+            synchronized (e) {
+                while (!e.done) {
+                    try {
+                        // When the entry is cleared or put we will be
+                        // notified.
+                        e.wait();
+                    } catch (InterruptedException ie) {
+                        // Loop around again see if the entry is done.
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Clear the entry for ParsedURL.
+     * This is the easiest way to 'get off the hook'.
+     * if you didn't indend to get on it.
+     */
+    public void clear(ParsedURL purl) {
+        Entry e = entries.remove(purl);
+        if (e != null) {
+            release(e);
+            if (e.filter != null) {
+                remove(purl, e);
+            }
+        }
+    }
+
+    /**
+     * Associate filt with purl.  If the map no longer contains our
+     * purl it was probably cleared or flushed since we were put on
+     * the hook for it, so in that case we will do nothing.
+     */
+    public void put(ParsedURL purl, Filter filt) {
+        Entry e = entries.get(purl);
+        if ((e == null) || (e.filter != null)) {
+            return;
+        }
+        if (filt == null) {
+            clear(purl);
+            return;
+        }
+        Entry ne = new Entry(filt, clock.incrementAndGet());
+        if (entries.replace(purl, e, ne)) {
+            release(e);
+            add(purl, ne);
+        }
+    }
+
+    /**
+     * Removes all the images from this cache.  Pending requests will
+     * be treated as though clear() was called on their URL.
+     */
+    public void flush() {
+        for (ParsedURL purl : entries.keySet()) {
+            clear(purl);
+        }
+    }
+
+    /**
+     * Returns the number of requests which returned a cached image.
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * Returns the number of requests which put the caller on the hook.
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Returns the number of images evicted to stay within the byte
+     * budget.
+     */
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * Returns the estimated number of bytes of the cached images.
+     */
+    public long getByteCount() {
+        return byteCount;
+    }
+
+    /**
+     * Returns the number of images in this cache, including the
+     * pending ones.
+     */
+    public int getSize() {
+        return entries.size();
+    }
+
+    /**
+     * Resets the hit, miss and eviction counts.
+     */
+    public void resetStatistics() {
+        hitCount.set(0);
+        missCount.set(0);
+        evictionCount.set(0);
+    }
+
+    /**
+     * Wakes up the threads waiting for a pending entry.
+     */
+    protected void release(Entry e) {
+        if (e.filter == null) {
+            synchronized (e) {
+                e.done = true;
+                e.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Adds an image to the eviction order, and evicts images if needed.
+     * Does nothing if the image was cleared since it was put.
+     */
+    protected synchronized void add(ParsedURL purl, Entry e) {
+        if (entries.get(purl) != e) {
+            return;
+        }
+        e.queued = e.stamp;
+        lru.put(purl, e);
+        if (!updateBytes(e)) {
+            unsized.put(purl, e);
+        }
+        evict(e);
+    }
+
+    /**
+     * Removes an image from the eviction order.
+     */
+    protected synchronized void remove(ParsedURL purl, Entry e) {
+        if (lru.remove(purl, e)) {
+            unsized.remove(purl);
+            if (e.bytes != -1) {
+                byteCount -= e.bytes;
+            }
+        }
+    }
+
+    /**
+     * Evicts the least recently used images until the cached images
+     * fit in the byte budget.  The images used since they were last
+     * moved in the eviction order are moved to its end instead of
+     * being evicted.  The images still decoding are not counted in the
+     * byte count, so they are left in place until their size is known.
+     * @param keep an entry which must not be evicted, or null
+     */
+    protected synchronized void evict(Entry keep) {
+        if (!unsized.isEmpty()) {
+            Iterator<Entry> it = unsized.values().iterator();
+            while (it.hasNext()) {
+                if (updateBytes(it.next())) {
+                    it.remove();
+                }
+            }
+        }
+        // Two passes, so that the images moved by the first pass can
+        // be evicted by the second one.
+        for (int pass = 0; (pass < 2) && (byteCount > maxBytes); pass++) {
+            List<Map.Entry<ParsedURL, Entry>> used = null;
+            Iterator<Map.Entry<ParsedURL, Entry>> it =
+                lru.entrySet().iterator();
+            while ((byteCount > maxBytes) && it.hasNext()) {
+                Map.Entry<ParsedURL, Entry> me = it.next();
+                Entry e = me.getValue();
+                if ((e == keep) || (e.bytes == -1)) {
+                    continue;
+                }
+                if (e.stamp != e.queued) {
+                    if (used == null) {
+                        used = new ArrayList<Map.Entry<ParsedURL, Entry>>();
+                    }
+                    used.add(me);
+                    continue;
+                }
+                it.remove();
+                entries.remove(me.getKey(), e);
+                byteCount -= e.bytes;
+                evictionCount.incrementAndGet();
+            }
+            if (used == null) {
+                break;
+            }
+            Collections.sort(used, LRU_ORDER);
+            for (Map.Entry<ParsedURL, Entry> me : used) {
+                Entry e = me.getValue();
+                e.queued = e.stamp;
+                lru.get(me.getKey());
+            }
+        }
+    }
+
+    /**
+     * Computes the estimated size of the image of the given entry and
+     * adds it to the byte count, if it is known.
+     * @return whether the size of the image is known
+     */
+    protected boolean updateBytes(Entry e) {
+        if (e.bytes != -1) {
+            return true;
+        }
+        Filter f = e.filter;
+        if ((f instanceof DeferRable) && !((DeferRable)f).hasBounds()) {
+            // Still decoding, do not wait for it.
+            return false;
+        }
+        Rectangle2D r = f.getBounds2D();
+        e.bytes = 4L * (long)Math.ceil(r.getWidth())
+                     * (long)Math.ceil(r.getHeight());
+        byteCount += e.bytes;
+        return true;
+    }
+}
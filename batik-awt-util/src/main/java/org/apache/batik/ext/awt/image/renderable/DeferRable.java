@@ -91,6 +91,14 @@ public class DeferRable implements Filter {
         notifyAll();
     }
 
+    /**
+     * Returns true if the bounds are known, so that getBounds2D
+     * will not block.
+     */
+    public synchronized boolean hasBounds() {
+        return (src != null) || (bounds != null);
+    }
+
     public long getTimeStamp() {
         return getSource().getTimeStamp();
     }
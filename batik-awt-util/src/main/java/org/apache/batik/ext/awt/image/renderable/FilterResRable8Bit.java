@@ -282,7 +282,11 @@ public class FilterResRable8Bit extends AbstractRable
         return resScale;
     }
 
-    private RenderedImage getResRed(RenderingHints hints) {
+    /**
+     * Returns the rendering at filterRes. It is synchronized since the
+     * bands of an image may be rendered concurrently.
+     */
+    private synchronized RenderedImage getResRed(RenderingHints hints) {
         Rectangle2D imageRect = getBounds2D();
         double resScaleX = getFilterResolutionX()/imageRect.getWidth();
         double resScaleY = getFilterResolutionY()/imageRect.getHeight();
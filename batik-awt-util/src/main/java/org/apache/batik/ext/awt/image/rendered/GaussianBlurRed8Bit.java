@@ -255,15 +255,10 @@ public class GaussianBlurRed8Bit extends AbstractRed {
             tmpR1 = tmpR2;
             tmpR2 = tmp;
         } else {
+            tmpR1 = boxFilterH(tmpR1);
             if ((dX&0x01) == 0){
-                tmpR1 = boxFilterH(tmpR1, tmpR1, 0,    0,   dX,   dX/2);
-                tmpR1 = boxFilterH(tmpR1, tmpR1, dX/2, 0,   dX,   dX/2-1);
-                tmpR1 = boxFilterH(tmpR1, tmpR1, dX-1, 0,   dX+1, dX/2);
                 skipX = dX-1 + dX/2;
             } else {
-                tmpR1 = boxFilterH(tmpR1, tmpR1, 0,    0,   dX, dX/2);
-                tmpR1 = boxFilterH(tmpR1, tmpR1, dX/2, 0,   dX, dX/2);
-                tmpR1 = boxFilterH(tmpR1, tmpR1, dX-2, 0,   dX, dX/2);
                 skipX = dX-2 + dX/2;
             }
         }
@@ -277,16 +272,7 @@ public class GaussianBlurRed8Bit extends AbstractRed {
             }
             tmpR2 = convOp[1].filter(tmpR1, tmpR2);
         } else {
-            if ((dY&0x01) == 0){
-                tmpR1 = boxFilterV(tmpR1, tmpR1, skipX, 0,    dY,   dY/2);
-                tmpR1 = boxFilterV(tmpR1, tmpR1, skipX, dY/2, dY,   dY/2-1);
-                tmpR1 = boxFilterV(tmpR1, tmpR1, skipX, dY-1, dY+1, dY/2);
-            }
-            else {
-                tmpR1 = boxFilterV(tmpR1, tmpR1, skipX, 0,    dY, dY/2);
-                tmpR1 = boxFilterV(tmpR1, tmpR1, skipX, dY/2, dY, dY/2);
-                tmpR1 = boxFilterV(tmpR1, tmpR1, skipX, dY-2, dY, dY/2);
-            }
+            tmpR1 = boxFilterV(tmpR1, skipX);
             tmpR2 = tmpR1;
         }
         // long t2 = System.currentTimeMillis();
@@ -304,9 +290,105 @@ public class GaussianBlurRed8Bit extends AbstractRed {
         return wr;
     }
 
+    /**
+     * The minimum number of rows or columns given to a thread by the
+     * box filters.
+     */
+    static final int MIN_LINES_PER_PART = 32;
+
+    /**
+     * Returns the number of parts in which the given number of rows or
+     * columns should be split, according to the KEY_RENDERING_THREADS
+     * hint.
+     */
+    private int getPartCount(int threads, int lines) {
+        if (threads <= 1) return 1;
+        return Math.min(threads * 4, lines / MIN_LINES_PER_PART);
+    }
+
+    /**
+     * Applies the three horizontal box filter passes to <code>ras</code>.
+     * The rows are independent, so when the KEY_RENDERING_THREADS hint
+     * allows it they are split between the threads of the
+     * {@link RenderingPool}, without changing the result.
+     */
+    private WritableRaster boxFilterH(final WritableRaster ras) {
+        final int h = ras.getHeight();
+        int threads = RenderingPool.getThreadCount(hints);
+        final int parts = getPartCount(threads, h);
+        if (parts <= 1) {
+            boxFilterH(ras, 0, h);
+        } else {
+            RenderingPool.invoke(threads, parts, new RenderingPool.Task() {
+                    public void run(int i) {
+                        boxFilterH(ras, (int)((long)h*i/parts),
+                                   (int)((long)h*(i+1)/parts));
+                    }
+                });
+        }
+        return ras;
+    }
+
+    /**
+     * Applies the three horizontal box filter passes to the rows
+     * <code>y0</code> to <code>y1</code> (excluded) of <code>ras</code>.
+     */
+    private void boxFilterH(WritableRaster ras, int y0, int y1) {
+        if ((dX&0x01) == 0){
+            boxFilterH(ras, ras, 0,    0,   dX,   dX/2,   y0, y1);
+            boxFilterH(ras, ras, dX/2, 0,   dX,   dX/2-1, y0, y1);
+            boxFilterH(ras, ras, dX-1, 0,   dX+1, dX/2,   y0, y1);
+        } else {
+            boxFilterH(ras, ras, 0,    0,   dX, dX/2, y0, y1);
+            boxFilterH(ras, ras, dX/2, 0,   dX, dX/2, y0, y1);
+            boxFilterH(ras, ras, dX-2, 0,   dX, dX/2, y0, y1);
+        }
+    }
+
+    /**
+     * Applies the three vertical box filter passes to <code>ras</code>,
+     * skipping <code>skipX</code> columns on each side. The columns are
+     * split between threads like the rows in {@link
+     * #boxFilterH(WritableRaster)}.
+     */
+    private WritableRaster boxFilterV(final WritableRaster ras,
+                                      final int skipX) {
+        final int w = ras.getWidth();
+        int threads = RenderingPool.getThreadCount(hints);
+        final int parts = getPartCount(threads, w);
+        if (parts <= 1) {
+            boxFilterV(ras, skipX, 0, w);
+        } else {
+            RenderingPool.invoke(threads, parts, new RenderingPool.Task() {
+                    public void run(int i) {
+                        boxFilterV(ras, skipX, (int)((long)w*i/parts),
+                                   (int)((long)w*(i+1)/parts));
+                    }
+                });
+        }
+        return ras;
+    }
+
+    /**
+     * Applies the three vertical box filter passes to the columns
+     * <code>x0</code> to <code>x1</code> (excluded) of <code>ras</code>.
+     */
+    private void boxFilterV(WritableRaster ras, int skipX, int x0, int x1) {
+        if ((dY&0x01) == 0){
+            boxFilterV(ras, ras, skipX, 0,    dY,   dY/2,   x0, x1);
+            boxFilterV(ras, ras, skipX, dY/2, dY,   dY/2-1, x0, x1);
+            boxFilterV(ras, ras, skipX, dY-1, dY+1, dY/2,   x0, x1);
+        } else {
+            boxFilterV(ras, ras, skipX, 0,    dY, dY/2, x0, x1);
+            boxFilterV(ras, ras, skipX, dY/2, dY, dY/2, x0, x1);
+            boxFilterV(ras, ras, skipX, dY-2, dY, dY/2, x0, x1);
+        }
+    }
+
     private WritableRaster boxFilterH(Raster src, WritableRaster dest,
                                       int skipX, int skipY,
-                                      int boxSz, int loc) {
+                                      int boxSz, int loc,
+                                      int y0, int y1) {
 
         final int w = src.getWidth();
         final int h = src.getHeight();
@@ -362,7 +444,7 @@ public class GaussianBlurRed8Bit extends AbstractRed {
          *                    " srcStride: " + srcScanStride);
          */
 
-        for (int y=skipY; y<(h-skipY); y++) {
+        for (int y=Math.max(skipY, y0); y<Math.min(h-skipY, y1); y++) {
             int sp     = srcOff + y*srcScanStride;
             int dp     = dstOff + y*dstScanStride;
             int rowEnd = sp + (w-skipX);
@@ -424,7 +506,8 @@ public class GaussianBlurRed8Bit extends AbstractRed {
 
     private WritableRaster boxFilterV(Raster src, WritableRaster dest,
                                       int skipX, int skipY,
-                                      int boxSz, int loc) {
+                                      int boxSz, int loc,
+                                      int x0, int x1) {
 
         final int w = src.getWidth();
         final int h = src.getHeight();
@@ -481,7 +564,7 @@ public class GaussianBlurRed8Bit extends AbstractRed {
          *                    " srcStride: " + srcScanStride);
          */
 
-        for (int x=skipX; x<(w-skipX); x++) {
+        for (int x=Math.max(skipX, x0); x<Math.min(w-skipX, x1); x++) {
             int sp = srcOff + x;
             int dp = dstOff + x;
             int colEnd = sp + (h-skipY)*srcScanStride;
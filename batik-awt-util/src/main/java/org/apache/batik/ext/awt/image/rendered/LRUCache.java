@@ -18,6 +18,8 @@
  */
 package org.apache.batik.ext.awt.image.rendered;
 
+import java.util.concurrent.atomic.LongAdder;
+
 import org.apache.batik.util.DoublyLinkedList;
 
 /**
@@ -50,12 +52,24 @@ public class LRUCache {
         void    lruRemove();
         }
 
+    /**
+     * Interface for objects which know how much memory they hold while
+     * they are in the cache. Other objects weigh one byte.
+     */
+        public interface LRUWeightedObj extends LRUObj {
+        /**
+         * Returns the number of bytes held by this object.
+         */
+        long    lruWeight();
+        }
+
     /**
      * Interface for nodes in the LRU cache, basicly nodes in a doubly
      * linked list.
      */
         public static class LRUNode extends DoublyLinkedList.Node {
                 private   LRUObj  obj  = null;
+                private   long    weight = 0;
                 public    LRUObj  getObj ()               { return obj; }
                 protected void    setObj (LRUObj  newObj) {
                         if (obj != null) obj.lruRemove();
@@ -65,97 +79,345 @@ public class LRUCache {
                 }
         }
 
-        private DoublyLinkedList free    = null;
-        private DoublyLinkedList used    = null;
+        /**
+         * One independent LRU list. Each cached object always maps to
+         * the same segment, so that operations on objects of different
+         * segments do not contend on the same lock.
+         */
+        private static class Segment {
+                DoublyLinkedList free = new DoublyLinkedList();
+                DoublyLinkedList used = new DoublyLinkedList();
+                int maxSize = 0;
+                long maxBytes = 0;
+                long usedBytes = 0;
+        }
+
+        private Segment [] segments;
         private int     maxSize = 0;
+        private long    maxBytes = 0;
+
+        private final LongAdder hits      = new LongAdder();
+        private final LongAdder misses    = new LongAdder();
+        private final LongAdder evictions = new LongAdder();
 
         public LRUCache(int size) {
+                this(size, 1);
+        }
+
+        /**
+         * Creates a cache split into <code>stripes</code> independently
+         * locked segments. The objects are spread over the segments by
+         * identity, each segment holding its share of <code>size</code>.
+         * Using more than one stripe reduces contention when several
+         * threads use the cache at once, at the expense of a less exact
+         * LRU order.
+         */
+        public LRUCache(int size, int stripes) {
                 if (size <= 0) size=1;
-                maxSize = size;
+                if (stripes <= 0) stripes=1;
+                if (stripes > size) stripes=size;
 
-                free = new DoublyLinkedList();
-                used = new DoublyLinkedList();
+                segments = new Segment[stripes];
+                for (int i=0; i<stripes; i++)
+                        segments[i] = new Segment();
+                setSize(size);
+        }
 
-                while (size > 0) {
-                        free.add(new LRUNode());
-                        size--;
-                }
+        /**
+         * Returns a reasonable number of stripes for a cache of the
+         * given size used by all the threads of this VM.
+         */
+        public static int getDefaultStripes(int size) {
+                int n = Math.min(Runtime.getRuntime().availableProcessors(),
+                                 size / 8);
+                int stripes = 1;
+                while (stripes * 2 <= n)
+                        stripes *= 2;
+                return stripes;
+        }
+
+        private Segment getSegment(LRUObj obj) {
+                if (segments.length == 1) return segments[0];
+                int h = System.identityHashCode(obj);
+                h ^= (h >>> 16);
+                return segments[(h & 0x7fffffff) % segments.length];
         }
 
         public int getUsed() {
-                return used.getSize();
+                int n = 0;
+                for (Segment seg : segments) {
+                        synchronized (seg) {
+                                n += seg.used.getSize();
+                        }
+                }
+                return n;
+        }
+
+        /**
+         * Returns the number of objects the cache can hold. Every
+         * segment holds at least one object, so this can be larger than
+         * the size given to {@link #setSize} when the cache has more
+         * stripes than that. When the cache is bounded by bytes, this
+         * is the bound used again once the byte budget is removed.
+         */
+        public int getSize() {
+                return maxSize;
+        }
+
+        public int getStripes() {
+                return segments.length;
+        }
+
+        /**
+         * Returns the number of bytes held by the objects in the cache.
+         */
+        public long getUsedBytes() {
+                long n = 0;
+                for (Segment seg : segments) {
+                        synchronized (seg) {
+                                n += seg.usedBytes;
+                        }
+                }
+                return n;
+        }
+
+        /**
+         * Returns the byte budget of the cache, zero if the cache is
+         * bounded by its number of objects.
+         */
+        public long getByteSize() {
+                return maxBytes;
+        }
+
+        /**
+         * Bounds the cache by the number of bytes held by its objects
+         * (see {@link LRUWeightedObj}) rather than by their number.
+         * The least recently used objects are dropped until the cache
+         * fits in the budget, but an object is always kept in a segment
+         * even if it is larger than the segment's share of the budget.
+         * @param newBytes the byte budget, or zero (or less) to bound
+         *        the cache by the size given to {@link #setSize} again.
+         */
+        public synchronized void setByteSize(long newBytes) {
+                if (newBytes < 0) newBytes = 0;
+                int n = segments.length;
+                for (int s=0; s<n; s++) {
+                        Segment seg = segments[s];
+                        synchronized (seg) {
+                                seg.maxBytes = (newBytes == 0) ? 0
+                                    : Math.max(1, newBytes / n);
+                                if (seg.maxBytes == 0) {
+                                        int sz = seg.maxSize;
+                                        seg.maxSize = seg.used.getSize() +
+                                                      seg.free.getSize();
+                                        setSize(seg, sz);
+                                } else {
+                                        trim(seg);
+                                }
+                        }
+                }
+                maxBytes = newBytes;
         }
 
         public synchronized void setSize(int newSz) {
+                int n = segments.length;
+                int total = 0;
+                for (int s=0; s<n; s++) {
+                        // Spread the remainder over the first segments.
+                        int segSz = newSz / n + ((s < newSz % n) ? 1 : 0);
+                        if (segSz <= 0) segSz = 1;
+                        Segment seg = segments[s];
+                        synchronized (seg) {
+                                setSize(seg, segSz);
+                        }
+                        total += segSz;
+                }
+                maxSize = total;
+        }
+
+        private void setSize(Segment seg, int newSz) {
+                if (seg.maxBytes > 0) {
+                        // Bounded by bytes, nodes are created on demand.
+                        seg.maxSize = newSz;
+                        return;
+                }
 
-                if (maxSize < newSz) {  // list grew...
+                if (seg.maxSize < newSz) {  // list grew...
 
-                        for (int i=maxSize; i<newSz; i++)
-                                free.add(new LRUNode());
+                        for (int i=seg.maxSize; i<newSz; i++)
+                                seg.free.add(new LRUNode());
 
-                } else if (maxSize > newSz) {
+                } else if (seg.maxSize > newSz) {
 
-                        for (int i=used.getSize(); i>newSz; i--) {
-                                LRUNode nde = (LRUNode)used.getTail();
-                                used.remove(nde);
+                        for (int i=seg.used.getSize(); i>newSz; i--) {
+                                LRUNode nde = (LRUNode)seg.used.getTail();
+                                seg.used.remove(nde);
+                                seg.usedBytes -= nde.weight;
                                 nde.setObj(null);
+                                evictions.increment();
                         }
+                        while ((seg.free.getSize() > 0) &&
+                               (seg.used.getSize() + seg.free.getSize() > newSz))
+                                seg.free.pop();
                 }
 
-                maxSize = newSz;
+                seg.maxSize = newSz;
         }
 
-        public synchronized void flush() {
-                while (used.getSize() > 0) {
-                        LRUNode nde = (LRUNode)used.pop();
-                        nde.setObj(null);
-                        free.add(nde);
+        public void flush() {
+                for (Segment seg : segments) {
+                        synchronized (seg) {
+                                while (seg.used.getSize() > 0) {
+                                        LRUNode nde = (LRUNode)seg.used.pop();
+                                        nde.setObj(null);
+                                        seg.free.add(nde);
+                                }
+                                seg.usedBytes = 0;
+                        }
                 }
         }
 
-        public synchronized void remove(LRUObj obj) {
-                LRUNode nde = obj.lruGet();
-                if (nde == null) return;
-                used.remove(nde);
-                nde.setObj(null);
-                free.add(nde);
+        public void remove(LRUObj obj) {
+                Segment seg = getSegment(obj);
+                synchronized (seg) {
+                        LRUNode nde = obj.lruGet();
+                        if (nde == null) return;
+                        seg.used.remove(nde);
+                        seg.usedBytes -= nde.weight;
+                        nde.setObj(null);
+                        seg.free.add(nde);
+                }
         }
 
-        public synchronized void touch(LRUObj obj) {
-                LRUNode nde = obj.lruGet();
-                if (nde == null) return;
-                used.touch(nde);
+        public void touch(LRUObj obj) {
+                Segment seg = getSegment(obj);
+                synchronized (seg) {
+                        LRUNode nde = obj.lruGet();
+                        if (nde == null) return;
+                        seg.used.touch(nde);
+                }
         }
 
-        public synchronized void add(LRUObj obj) {
-                LRUNode nde = obj.lruGet();
+        public void add(LRUObj obj) {
+                long weight = getWeight(obj);
+                Segment seg = getSegment(obj);
+                synchronized (seg) {
+                        LRUNode nde = obj.lruGet();
 
-                // already linked in...
-                if (nde != null) {
-                        used.touch(nde);
-                        return;
+                        // already linked in...
+                        if (nde != null) {
+                                seg.used.touch(nde);
+                                // The object's content may have changed.
+                                seg.usedBytes += weight - nde.weight;
+                                nde.weight = weight;
+                                if (seg.maxBytes > 0) trim(seg);
+                                return;
+                        }
+
+                        if (seg.free.getSize() > 0) {
+                                nde = (LRUNode)seg.free.pop();
+                                nde.setObj(obj);
+                                seg.used.add(nde);
+                        } else if (seg.maxBytes > 0) {
+                                nde = new LRUNode();
+                                nde.setObj(obj);
+                                seg.used.add(nde);
+                        } else {
+                                nde = (LRUNode)seg.used.getTail();
+                                seg.usedBytes -= nde.weight;
+                                nde.setObj(obj);
+                                seg.used.touch(nde);
+                                evictions.increment();
+                        }
+                        nde.weight = weight;
+                        seg.usedBytes += weight;
+                        if (seg.maxBytes > 0) trim(seg);
                 }
+        }
 
-                if (free.getSize() > 0) {
-                        nde = (LRUNode)free.pop();
-                        nde.setObj(obj);
-                        used.add(nde);
-                } else {
-                        nde = (LRUNode)used.getTail();
-                        nde.setObj(obj);
-                        used.touch(nde);
+        /**
+         * Drops the least recently used objects of a byte bounded
+         * segment until it fits in its budget.
+         */
+        private void trim(Segment seg) {
+                while ((seg.usedBytes > seg.maxBytes) &&
+                       (seg.used.getSize() > 1)) {
+                        LRUNode nde = (LRUNode)seg.used.getTail();
+                        seg.used.remove(nde);
+                        seg.usedBytes -= nde.weight;
+                        nde.setObj(null);
+                        seg.free.add(nde);
+                        evictions.increment();
                 }
         }
 
-        protected synchronized void print() {
-                System.out.println("In Use: " + used.getSize() +
-                                                   " Free: " + free.getSize());
-                LRUNode nde = (LRUNode)used.getHead();
-                if (nde == null) return;
-                do {
-                        System.out.println(nde.getObj());
-                        nde = (LRUNode)nde.getNext();
-                } while (nde != used.getHead());
+        /**
+         * Returns the number of bytes held by the given object.
+         */
+        protected long getWeight(LRUObj obj) {
+                if (obj instanceof LRUWeightedObj)
+                        return ((LRUWeightedObj)obj).lruWeight();
+                return 1;
+        }
+
+        /**
+         * Records that a requested object was found in the cache.
+         */
+        public void recordHit() {
+                hits.increment();
+        }
+
+        /**
+         * Records that a requested object had to be recomputed.
+         */
+        public void recordMiss() {
+                misses.increment();
+        }
+
+        /**
+         * Returns the number of requests served from the cache.
+         */
+        public long getHitCount() {
+                return hits.sum();
+        }
+
+        /**
+         * Returns the number of requests which had to be recomputed.
+         */
+        public long getMissCount() {
+                return misses.sum();
+        }
+
+        /**
+         * Returns the number of objects dropped from the cache to make
+         * room for others.
+         */
+        public long getEvictionCount() {
+                return evictions.sum();
+        }
+
+        /**
+         * Resets the hit, miss and eviction counters.
+         */
+        public void resetStatistics() {
+                hits.reset();
+                misses.reset();
+                evictions.reset();
+        }
+
+        protected void print() {
+                for (Segment seg : segments) {
+                        synchronized (seg) {
+                                System.out.println("In Use: " + seg.used.getSize() +
+                                                   " Free: " + seg.free.getSize());
+                                LRUNode nde = (LRUNode)seg.used.getHead();
+                                if (nde == null) continue;
+                                do {
+                                        System.out.println(nde.getObj());
+                                        nde = (LRUNode)nde.getNext();
+                                } while (nde != seg.used.getHead());
+                        }
+                }
         }
 
 }
@@ -0,0 +1,193 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image.rendered;
+
+import java.awt.RenderingHints;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.batik.ext.awt.RenderingHintsKeyExt;
+import org.apache.batik.util.HaltingThread;
+
+/**
+ * The pool of threads shared by the renderers and filters which split
+ * their work according to the
+ * {@link RenderingHintsKeyExt#KEY_RENDERING_THREADS} hint.
+ *
+ * <p>Work is described as a number of independent parts which are
+ * processed by the calling thread and by up to <code>threads - 1</code>
+ * threads of the pool. The pool threads use the tile cache of the
+ * calling thread, and stop taking new parts when the calling thread is
+ * halted.</p>
+ *
+ * @version $Id$
+ */
+public final class RenderingPool {
+
+    /**
+     * A piece of work made of independent parts.
+     */
+    public interface Task {
+
+        /**
+         * Processes the part <code>i</code> of the work.
+         */
+        void run(int i);
+    }
+
+    /**
+     * The shared pool, created on demand.
+     */
+    private static volatile ForkJoinPool pool;
+
+    /**
+     * Do not authorize creation of instances of that class.
+     */
+    private RenderingPool() {
+    }
+
+    /**
+     * Returns the shared pool. It has one thread per available processor.
+     */
+    public static ForkJoinPool getPool() {
+        ForkJoinPool p = pool;
+        if (p != null) {
+            return p;
+        }
+        synchronized (RenderingPool.class) {
+            if (pool == null) {
+                pool = new ForkJoinPool
+                    (Runtime.getRuntime().availableProcessors(),
+                     new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+                         public ForkJoinWorkerThread newThread
+                             (ForkJoinPool fjp) {
+                             ForkJoinWorkerThread t = new WorkerThread(fjp);
+                             t.setName("Batik rendering " + t.getName());
+                             t.setDaemon(true);
+                             return t;
+                         }
+                     }, null, false);
+            }
+            return pool;
+        }
+    }
+
+    /**
+     * Returns the number of threads allowed by the given hints.
+     */
+    public static int getThreadCount(RenderingHints hints) {
+        if (hints == null) {
+            return 1;
+        }
+        Object v = hints.get(RenderingHintsKeyExt.KEY_RENDERING_THREADS);
+        return (v instanceof Integer) ? Math.max(1, (Integer)v) : 1;
+    }
+
+    /**
+     * Runs the <code>count</code> parts of a task on at most
+     * <code>threads</code> threads, including the calling one, and
+     * returns when all of them are done. A runtime exception or error
+     * thrown by a part is rethrown by this method once the other threads
+     * are done.
+     */
+    public static void invoke(int threads, final int count, final Task task) {
+        if (threads > count) {
+            threads = count;
+        }
+        if (threads <= 1) {
+            for (int i = 0; i < count; i++) {
+                task.run(i);
+            }
+            return;
+        }
+
+        final Thread caller = Thread.currentThread();
+        final LRUCache cache = TileCache.getThreadCache();
+        final AtomicInteger next = new AtomicInteger();
+        Runnable worker = new Runnable() {
+            public void run() {
+                LRUCache prev = TileCache.getThreadCache();
+                TileCache.setThreadCache(cache);
+                try {
+                    int i;
+                    while ((i = next.getAndIncrement()) < count) {
+                        if (HaltingThread.hasBeenHalted(caller)) {
+                            break;
+                        }
+                        task.run(i);
+                    }
+                } catch (RuntimeException e) {
+                    next.set(count);
+                    throw e;
+                } catch (Error e) {
+                    next.set(count);
+                    throw e;
+                } finally {
+                    TileCache.setThreadCache(prev);
+                }
+            }
+        };
+
+        ForkJoinPool p = getPool();
+        ForkJoinTask[] tasks = new ForkJoinTask[threads - 1];
+        for (int i = 0; i < tasks.length; i++) {
+            tasks[i] = p.submit(worker);
+        }
+        Throwable err = null;
+        try {
+            worker.run();
+        } catch (Throwable t) {
+            err = t;
+        }
+        for (ForkJoinTask t : tasks) {
+            try {
+                t.join();
+            } catch (Throwable th) {
+                if (err == null) {
+                    err = th;
+                }
+            }
+        }
+        if (err instanceof RuntimeException) {
+            throw (RuntimeException)err;
+        }
+        if (err instanceof Error) {
+            throw (Error)err;
+        }
+    }
+
+    /**
+     * The threads of the shared pool.
+     */
+    static class WorkerThread extends ForkJoinWorkerThread {
+
+        WorkerThread(ForkJoinPool p) {
+            super(p);
+        }
+
+        protected void onStart() {
+            super.onStart();
+            // Do not keep the tile cache inherited from the thread which
+            // happened to start this one.
+            TileCache.setThreadCache(null);
+        }
+    }
+}
@@ -21,26 +21,99 @@ package org.apache.batik.ext.awt.image.rendered;
 import java.awt.image.RenderedImage;
 
 /**
+ * Creates the tile stores of tiled images. The tiles of all the stores
+ * share one LRU cache: a process-wide cache by default, which can be
+ * replaced for a thread (and the threads it starts) with
+ * {@link #setThreadCache}, for example to give a renderer or a group of
+ * worker threads its own cache and statistics.
+ *
+ * <p>The process-wide cache holds 50 tiles by default, whatever their
+ * size. It can instead be given a budget in bytes with
+ * {@link #setByteSize} or with the
+ * <code>org.apache.batik.tileCache.bytes</code> system property.</p>
  *
  * @version $Id$
  */
 public class TileCache {
-        private static LRUCache cache = new LRUCache(50);
+        /**
+         * The system property giving the byte budget of the process-wide
+         * cache.
+         */
+        public static final String BYTE_SIZE_PROPERTY =
+            "org.apache.batik.tileCache.bytes";
+
+        private static LRUCache cache =
+            new LRUCache(50, LRUCache.getDefaultStripes(50));
+
+        static {
+                try {
+                        String s = System.getProperty(BYTE_SIZE_PROPERTY);
+                        if (s != null)
+                                cache.setByteSize(Long.parseLong(s.trim()));
+                } catch (SecurityException se) {
+                } catch (NumberFormatException nfe) {
+                }
+        }
+
+        private static final InheritableThreadLocal threadCache =
+            new InheritableThreadLocal();
 
         public static void setSize(int sz) { cache.setSize(sz); }
 
+        /**
+         * Bounds the process-wide cache by the number of bytes held by
+         * its tiles rather than by their number.
+         * @param bytes the budget, zero to go back to a tile count.
+         */
+        public static void setByteSize(long bytes) { cache.setByteSize(bytes); }
+
+        /**
+         * Returns the cache used for the tile stores created by the
+         * calling thread.
+         */
+        public static LRUCache getCache() {
+                LRUCache c = (LRUCache)threadCache.get();
+                return (c != null) ? c : cache;
+        }
+
+        /**
+         * Returns the process-wide cache.
+         */
+        public static LRUCache getGlobalCache() {
+                return cache;
+        }
+
+        /**
+         * Returns the cache set for the calling thread with
+         * {@link #setThreadCache}, or null.
+         */
+        public static LRUCache getThreadCache() {
+                return (LRUCache)threadCache.get();
+        }
+
+        /**
+         * Sets the cache used for the tile stores created by the calling
+         * thread and the threads it creates afterwards.
+         * @param c the cache to use, or null to use the process-wide one.
+         */
+        public static void setThreadCache(LRUCache c) {
+                if (c == null) threadCache.remove();
+                else           threadCache.set(c);
+        }
+
         public static TileStore getTileGrid(int minTileX, int minTileY,
                                        int xSz, int ySz, TileGenerator src) {
-                return new TileGrid(minTileX, minTileY, xSz, ySz, src, cache);
+                return new TileGrid(minTileX, minTileY, xSz, ySz, src,
+                                    getCache());
         }
 
         public static TileStore getTileGrid(RenderedImage img,
                                             TileGenerator src) {
                 return new TileGrid(img.getMinTileX(),  img.getMinTileY(),
                             img.getNumXTiles(), img.getNumYTiles(),
-                            src, cache);
+                            src, getCache());
         }
         public static TileStore getTileMap(TileGenerator src) {
-                return new TileMap(src, cache);
+                return new TileMap(src, getCache());
         }
 }
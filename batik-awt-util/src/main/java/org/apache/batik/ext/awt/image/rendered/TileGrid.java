@@ -72,18 +72,9 @@ public class TileGrid implements TileStore {
             return;
         }
 
-        if (row != null) {
-            item = row[x];
-            if (item == null) {
-                item = new TileLRUMember();
-                row[x] = item;
-            }
-        } else {
-            row = new TileLRUMember[xSz];
-            item = new TileLRUMember();
-            row[x] = item;
-            rasters[y] = row;
-        }
+        item = (row != null) ? row[x] : null;
+        if (item == null)
+            item = getItem(x, y);
         item.setRaster(ras);
 
         cache.add(item);
@@ -125,22 +116,15 @@ public class TileGrid implements TileStore {
         Raster       ras  = null;
         TileLRUMember [] row  = rasters[y];
         TileLRUMember    item = null;
-        if (row != null) {
+        if (row != null)
             item = row[x];
-            if (item != null)
-                ras = item.retrieveRaster();
-            else {
-                item = new TileLRUMember();
-                row[x] = item;
-            }
-        } else {
-            row = new TileLRUMember[xSz];
-            rasters[y] = row;
-            item = new TileLRUMember();
-            row[x] = item;
-        }
+        if (item != null)
+            ras = item.retrieveRaster();
+        else
+            item = getItem(x, y);
 
         if (ras == null) {
+            cache.recordMiss();
             if (DEBUG) System.out.println("Generating: ("+(x+minTileX)+", "+
                                           (y+minTileY) + ")");
             if (COUNT) synchronized (TileGrid.class) { misses++; }
@@ -153,6 +137,8 @@ public class TileGrid implements TileStore {
                 return ras;
 
             item.setRaster(ras);
+        } else {
+            cache.recordHit();
         }
 
         // Update the item's position in the cache..
@@ -161,6 +147,25 @@ public class TileGrid implements TileStore {
         return ras;
     }
 
+    /**
+     * Returns the item of the given tile, creating it if needed. Tiles
+     * may be requested by several threads when an image is rendered in
+     * parallel, so creations are serialized to avoid losing items.
+     */
+    private synchronized TileLRUMember getItem(int x, int y) {
+        TileLRUMember [] row = rasters[y];
+        if (row == null) {
+            row = new TileLRUMember[xSz];
+            rasters[y] = row;
+        }
+        TileLRUMember item = row[x];
+        if (item == null) {
+            item = new TileLRUMember();
+            row[x] = item;
+        }
+        return item;
+    }
+
     static int requests;
     static int misses;
 }
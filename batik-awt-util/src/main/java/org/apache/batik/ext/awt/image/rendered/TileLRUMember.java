@@ -18,6 +18,7 @@
  */
 package org.apache.batik.ext.awt.image.rendered;
 
+import  java.awt.image.DataBuffer;
 import  java.awt.image.Raster;
 import  java.lang.ref.Reference;
 import  java.lang.ref.SoftReference;
@@ -31,7 +32,7 @@ import  java.lang.ref.SoftReference;
  *
  * @version $Id$
  */
-public class TileLRUMember implements LRUCache.LRUObj {
+public class TileLRUMember implements LRUCache.LRUWeightedObj {
     private static final boolean DEBUG = false;
 
         protected LRUCache.LRUNode myNode  = null;
@@ -70,6 +71,18 @@ public class TileLRUMember implements LRUCache.LRUObj {
             return hRaster;
         }
 
+        /**
+         * Returns the size in bytes of the data buffer of the tile.
+         */
+        public long lruWeight() {
+            Raster ras = hRaster;
+            if (ras == null) return 0;
+            DataBuffer db = ras.getDataBuffer();
+            long bits = (long)db.getSize() * db.getNumBanks() *
+                DataBuffer.getDataTypeSize(db.getDataType());
+            return bits / 8;
+        }
+
         public LRUCache.LRUNode lruGet()         { return myNode; }
         public void lruSet(LRUCache.LRUNode nde) { myNode = nde; }
         public void lruRemove()                  {
@@ -21,7 +21,8 @@ package org.apache.batik.ext.awt.image.rendered;
 import java.awt.Point;
 import java.awt.image.Raster;
 import java.lang.ref.SoftReference;
-import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.batik.util.CleanerThread;
 import org.apache.batik.util.HaltingThread;
@@ -34,7 +35,7 @@ public class TileMap implements TileStore {
     private static final boolean DEBUG = false;
     private static final boolean COUNT = false;
 
-    private HashMap rasters=new HashMap();
+    private Map rasters=new ConcurrentHashMap();
 
     static class TileMapLRUMember extends TileLRUMember {
         public Point   pt;
@@ -126,6 +127,7 @@ public class TileMap implements TileStore {
         }
 
         if (ras == null) {
+            cache.recordMiss();
             if (DEBUG) System.out.println("Generating: ("+(x)+", "+
                                           (y) + ")");
             if (COUNT) synchronized (TileMap.class) { misses++; }
@@ -143,6 +145,8 @@ public class TileMap implements TileStore {
                 item = new TileMapLRUMember(this, pt, ras);
                 rasters.put(pt, item);
             }
+        } else {
+            cache.recordHit();
         }
 
         // Update the item's position in the cache..
@@ -0,0 +1,258 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image.spi;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The executor which decodes the images loaded by the registry entries
+ * in the background, to fill the <code>DeferRable</code> they return.
+ *
+ * <p>By default the images are decoded by a bounded pool of daemon
+ * threads, one per available processor, so that a document referencing
+ * thousands of images, or many documents loaded at once, do not start
+ * one thread per image.  The number of threads can be changed with
+ * {@link #setThreadCount}, and any other executor, for example one
+ * using virtual threads, can be installed with {@link #setExecutor}.</p>
+ *
+ * <p>The number of pending decodings, the number of completed ones and
+ * the time spent decoding are recorded, to help tune the executor.</p>
+ *
+ * @version $Id$
+ */
+public final class DecoderExecutor {
+
+    /**
+     * The number of seconds an idle thread of the default pool waits
+     * for a new image before terminating.
+     */
+    public static final int KEEP_ALIVE = 30;
+
+    /**
+     * The number of threads of the default pool.
+     */
+    private static int threadCount =
+        Runtime.getRuntime().availableProcessors();
+
+    /**
+     * The default pool, created on demand.
+     */
+    private static ThreadPoolExecutor pool;
+
+    /**
+     * The executor in use, or null to use the default pool.
+     */
+    private static Executor executor;
+
+    /**
+     * The number of images waiting for a thread.
+     */
+    private static final AtomicInteger queued = new AtomicInteger();
+
+    /**
+     * The largest number of images which have been waiting at once.
+     */
+    private static final AtomicInteger maxQueued = new AtomicInteger();
+
+    /**
+     * The number of images being decoded.
+     */
+    private static final AtomicInteger running = new AtomicInteger();
+
+    /**
+     * The number of decoded images.
+     */
+    private static final AtomicLong completed = new AtomicLong();
+
+    /**
+     * The total time spent decoding images, in nanoseconds.
+     */
+    private static final AtomicLong decodeTime = new AtomicLong();
+
+    private DecoderExecutor() {
+    }
+
+    /**
+     * Returns the executor used to decode images.
+     */
+    public static synchronized Executor getExecutor() {
+        if (executor != null) {
+            return executor;
+        }
+        if (pool == null) {
+            ThreadFactory tf = new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread
+                            (r, "Batik image decoder " +
+                             count.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                };
+            pool = new ThreadPoolExecutor
+                (threadCount, threadCount, KEEP_ALIVE, TimeUnit.SECONDS,
+                 new LinkedBlockingQueue<Runnable>(), tf);
+            pool.allowCoreThreadTimeOut(true);
+        }
+        return pool;
+    }
+
+    /**
+     * Sets the executor used to decode images.  The executor is not
+     * shut down when it is replaced.
+     * @param e the executor, or null to use the default pool
+     */
+    public static synchronized void setExecutor(Executor e) {
+        executor = e;
+    }
+
+    /**
+     * Returns the number of threads of the default pool.
+     */
+    public static synchronized int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Sets the number of threads of the default pool.
+     */
+    public static synchronized void setThreadCount(int n) {
+        if (n < 1) {
+            throw new IllegalArgumentException("Invalid thread count: " + n);
+        }
+        threadCount = n;
+        if (pool != null) {
+            if (n > pool.getMaximumPoolSize()) {
+                pool.setMaximumPoolSize(n);
+                pool.setCorePoolSize(n);
+            } else {
+                pool.setCorePoolSize(n);
+                pool.setMaximumPoolSize(n);
+            }
+        }
+    }
+
+    /**
+     * Makes images be decoded by virtual threads, one per image, if the
+     * Java runtime supports them.  The number of images decoded at once
+     * is then not bounded.
+     * @return false if virtual threads are not available
+     */
+    public static boolean useVirtualThreads() {
+        try {
+            Method m = Executors.class.getMethod
+                ("newVirtualThreadPerTaskExecutor");
+            setExecutor((Executor)m.invoke(null));
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Decodes an image with the current executor.  If the executor
+     * rejects the task, it is run by a new thread.
+     * @param r the task which decodes the image
+     */
+    public static void execute(final Runnable r) {
+        int n = queued.incrementAndGet();
+        int max;
+        while (n > (max = maxQueued.get())) {
+            if (maxQueued.compareAndSet(max, n)) {
+                break;
+            }
+        }
+
+        Runnable task = new Runnable() {
+                public void run() {
+                    queued.decrementAndGet();
+                    running.incrementAndGet();
+                    long t0 = System.nanoTime();
+                    try {
+                        r.run();
+                    } finally {
+                        decodeTime.addAndGet(System.nanoTime() - t0);
+                        running.decrementAndGet();
+                        completed.incrementAndGet();
+                    }
+                }
+            };
+        try {
+            getExecutor().execute(task);
+        } catch (RejectedExecutionException ree) {
+            new Thread(task).start();
+        }
+    }
+
+    /**
+     * Returns the number of images waiting for a thread.
+     */
+    public static int getQueueDepth() {
+        return queued.get();
+    }
+
+    /**
+     * Returns the largest number of images which have been waiting for
+     * a thread at once.
+     */
+    public static int getMaxQueueDepth() {
+        return maxQueued.get();
+    }
+
+    /**
+     * Returns the number of images being decoded.
+     */
+    public static int getActiveCount() {
+        return running.get();
+    }
+
+    /**
+     * Returns the number of images decoded so far.
+     */
+    public static long getCompletedCount() {
+        return completed.get();
+    }
+
+    /**
+     * Returns the total time spent decoding images, in milliseconds.
+     */
+    public static long getDecodeTime() {
+        return decodeTime.get() / 1000000;
+    }
+
+    /**
+     * Resets the maximum queue depth, the number of decoded images and
+     * the decoding time.
+     */
+    public static void resetStatistics() {
+        maxQueued.set(queued.get());
+        completed.set(0);
+        decodeTime.set(0);
+    }
+}
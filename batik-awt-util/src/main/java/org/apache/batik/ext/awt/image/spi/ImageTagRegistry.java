@@ -22,11 +22,11 @@ import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.ListIterator;
 
 import org.apache.batik.ext.awt.image.URLImageCache;
 import org.apache.batik.ext.awt.image.renderable.Filter;
@@ -40,17 +40,146 @@ import org.apache.xmlgraphics.java2d.color.ICCColorSpaceWithIntent;
  * This class handles the registered Image tag handlers.  These are
  * instances of RegistryEntry in this package.
  *
+ * <p>The registered entries are kept in an immutable snapshot which is
+ * replaced as a whole when an entry is registered, so that reading
+ * images does not take any lock.  The snapshot also indexes the magic
+ * number entries by the first byte they expect: the first bytes of a
+ * stream are read once, and only the entries which may recognize them
+ * are tried.</p>
+ *
  * @author <a href="mailto:Thomas.DeWeeese@Kodak.com">Thomas DeWeese</a>
  * @version $Id$
  */
 public class ImageTagRegistry implements ErrorConstants {
 
-    List entries    = new LinkedList();
-    List extensions = null;
-    List mimeTypes  = null;
+    /**
+     * An immutable view of the registered entries.
+     */
+    static class Snapshot {
+
+        /**
+         * The entries, by increasing priority value.
+         */
+        final RegistryEntry[] entries;
+
+        /**
+         * Whether the compatibility of each entry can be checked on
+         * the header of the stream.
+         */
+        final boolean[] useHeader;
+
+        /**
+         * The indexes of all the entries.
+         */
+        final int[] all;
+
+        /**
+         * The indexes of the entries which may be compatible with a
+         * stream, by first byte of the stream.
+         */
+        final int[][] candidates = new int[256][];
+
+        /**
+         * The number of bytes to read to check all the magic numbers.
+         */
+        final int readLimit;
+
+        final List extensions;
+        final List mimeTypes;
+
+        Snapshot(List l) {
+            int n = l.size();
+            entries = (RegistryEntry[])l.toArray(new RegistryEntry[n]);
+            useHeader = new boolean[n];
+            all = new int[n];
+
+            List ext = new ArrayList();
+            List mt  = new ArrayList();
+            int limit = 0;
+            for (int i = 0; i < n; i++) {
+                RegistryEntry re = entries[i];
+                all[i] = i;
+                ext.addAll(re.getStandardExtensions());
+                mt.addAll(re.getMimeTypes());
+                if (usesMagicNumbers(re)) {
+                    useHeader[i] = true;
+                    limit = Math.max
+                        (limit, ((MagicNumberRegistryEntry)re).getReadlimit());
+                }
+            }
+            extensions = Collections.unmodifiableList(ext);
+            mimeTypes  = Collections.unmodifiableList(mt);
+            readLimit  = limit;
+
+            int[] t = new int[n];
+            for (int b = 0; b < 256; b++) {
+                int len = 0;
+                for (int i = 0; i < n; i++) {
+                    if (!useHeader[i] || startsWith(entries[i], (byte)b)) {
+                        t[len++] = i;
+                    }
+                }
+                if (len == n) {
+                    candidates[b] = all;
+                } else {
+                    candidates[b] = new int[len];
+                    System.arraycopy(t, 0, candidates[b], 0, len);
+                }
+            }
+        }
+
+        /**
+         * Returns the indexes of the entries which may be compatible
+         * with a stream starting with the given header.
+         */
+        int[] getCandidates(byte[] header, int length) {
+            if (length == 0) {
+                return all;
+            }
+            return candidates[header[0] & 0xff];
+        }
+
+        /**
+         * Whether the given entry only checks the magic numbers it
+         * was built with.
+         */
+        static boolean usesMagicNumbers(RegistryEntry re) {
+            if (!(re instanceof MagicNumberRegistryEntry)) {
+                return false;
+            }
+            try {
+                return re.getClass().getMethod
+                    ("isCompatibleStream", new Class[] { InputStream.class })
+                    .getDeclaringClass() == MagicNumberRegistryEntry.class;
+            } catch (Exception e) {
+                return false;
+            }
+        }
+
+        /**
+         * Whether one of the magic numbers of the given entry may
+         * match a stream starting with the given byte.
+         */
+        static boolean startsWith(RegistryEntry re, byte b) {
+            MagicNumberRegistryEntry.MagicNumber[] mns =
+                ((MagicNumberRegistryEntry)re).magicNumbers;
+            for (MagicNumberRegistryEntry.MagicNumber mn : mns) {
+                if ((mn.offset != 0) || (mn.magicNumber.length == 0) ||
+                    (mn.magicNumber[0] == b)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
 
-    URLImageCache rawCache;
-    URLImageCache imgCache;
+    /**
+     * The current snapshot of the registered entries.
+     */
+    volatile Snapshot snapshot = new Snapshot(Collections.EMPTY_LIST);
+
+    volatile URLImageCache rawCache;
+    volatile URLImageCache imgCache;
 
     public ImageTagRegistry() {
         this(null, null);
@@ -66,6 +195,42 @@ public class ImageTagRegistry implements ErrorConstants {
         this.imgCache= imgCache;
     }
 
+    /**
+     * Returns the cache of the images decoded with the color correction
+     * they specify.
+     */
+    public URLImageCache getImageCache() {
+        return imgCache;
+    }
+
+    /**
+     * Returns the cache of the images decoded without color correction,
+     * for use with an ICC profile.
+     */
+    public URLImageCache getRawImageCache() {
+        return rawCache;
+    }
+
+    /**
+     * Replaces the caches of decoded images, for instance with
+     * {@link org.apache.batik.ext.awt.image.BoundedURLImageCache}s.
+     * The images of the previous caches are not carried over.
+     * @param rawCache the cache of images decoded without color
+     *        correction, null for a new default cache
+     * @param imgCache the cache of images decoded with color
+     *        correction, null for a new default cache
+     */
+    public void setImageCaches(URLImageCache rawCache,
+                               URLImageCache imgCache) {
+        if (rawCache == null)
+            rawCache = new URLImageCache();
+        if (imgCache == null)
+            imgCache = new URLImageCache();
+
+        this.rawCache= rawCache;
+        this.imgCache= imgCache;
+    }
+
     /** Removes all decoded raster images from the cache.
      *  All Images will be reloaded from the original source
      *  if decoded again.
@@ -142,12 +307,14 @@ public class ImageTagRegistry implements ErrorConstants {
         // System.out.println("Image didn't come from cache: " + purl);
 
         boolean     openFailed = false;
-        List mimeTypes = getRegisteredMimeTypes();
-
-        Iterator i;
-        i = entries.iterator();
-        while (i.hasNext()) {
-            RegistryEntry re = (RegistryEntry)i.next();
+        Snapshot    s          = snapshot;
+        int []      order      = s.all;
+        byte []     header     = null;
+        int         headerLen  = 0;
+
+        for (int k = 0; k < order.length; k++) {
+            int idx = order[k];
+            RegistryEntry re = s.entries[idx];
             if (re instanceof URLRegistryEntry) {
                 if ((purl == null) || !allowOpenStream) continue;
 
@@ -173,7 +340,7 @@ public class ImageTagRegistry implements ErrorConstants {
                         if ((purl == null) || !allowOpenStream)
                             break;  // No purl nothing we can do...
                         try {
-                            is = purl.openStream(mimeTypes.iterator());
+                            is = purl.openStream(s.mimeTypes.iterator());
                         } catch(IOException ioe) {
                             // Couldn't open the stream, go to next entry.
                             openFailed = true;
@@ -186,13 +353,36 @@ public class ImageTagRegistry implements ErrorConstants {
                             is = new BufferedInputStream(is);
                     }
 
-                    if (sre.isCompatibleStream(is)) {
+                    if (header == null) {
+                        // Read the header once and only try the
+                        // entries which may be compatible with it.
+                        header = new byte[s.readLimit];
+                        headerLen = readHeader(is, header);
+                        int [] c = s.getCandidates(header, headerLen);
+                        if (c != order) {
+                            int pos = Arrays.binarySearch(c, idx);
+                            order = c;
+                            if (pos < 0) {
+                                k = -pos - 2;
+                                continue;
+                            }
+                            k = pos;
+                        }
+                    }
+
+                    if (isCompatible(s, idx, is, header, headerLen)) {
                         ret = sre.handleStream(is, purl, needRawData);
                         if (ret != null) break;
                     }
                 } catch (StreamCorruptedException sce) {
                     // Stream is messed up so setup to reopen it..
+                    // The candidates of the new stream are not known
+                    // yet, so go on with all the entries following
+                    // this one (all[idx] == idx).
                     is = null;
+                    header = null;
+                    order = s.all;
+                    k = idx;
                 }
                 continue;
             }
@@ -239,22 +429,25 @@ public class ImageTagRegistry implements ErrorConstants {
 
         Filter ret = null;
 
-        for (Object entry : entries) {
-            RegistryEntry re = (RegistryEntry) entry;
+        Snapshot s = snapshot;
+        try {
+            byte [] header = new byte[s.readLimit];
+            int headerLen = readHeader(is, header);
+            for (int idx : s.getCandidates(header, headerLen)) {
+                RegistryEntry re = s.entries[idx];
 
-            if (!(re instanceof StreamRegistryEntry))
-                continue;
-            StreamRegistryEntry sre = (StreamRegistryEntry) re;
+                if (!(re instanceof StreamRegistryEntry))
+                    continue;
+                StreamRegistryEntry sre = (StreamRegistryEntry) re;
 
-            try {
-                if (sre.isCompatibleStream(is)) {
+                if (isCompatible(s, idx, is, header, headerLen)) {
                     ret = sre.handleStream(is, null, needRawData);
 
                     if (ret != null) break;
                 }
-            } catch (StreamCorruptedException sce) {
-                break;
             }
+        } catch (StreamCorruptedException sce) {
+            // Give up, as with the other errors.
         }
 
         if (ret == null)
@@ -267,21 +460,64 @@ public class ImageTagRegistry implements ErrorConstants {
         return ret;
     }
 
+    /**
+     * Reads the first bytes of a stream, without consuming them.
+     * @return the number of bytes read, less than the header length
+     *         only if the stream is shorter.
+     */
+    static int readHeader(InputStream is, byte[] header)
+        throws StreamCorruptedException {
+        int len = 0;
+        is.mark(header.length);
+        try {
+            while (len < header.length) {
+                int rn = is.read(header, len, header.length - len);
+                if (rn == -1) {
+                    break;
+                }
+                len += rn;
+            }
+        } catch (IOException ioe) {
+            // Same as the end of the stream, the entries will not match.
+        } finally {
+            try {
+                is.reset();
+            } catch (IOException ioe) {
+                throw new StreamCorruptedException(ioe.getMessage());
+            }
+        }
+        return len;
+    }
+
+    /**
+     * Checks whether the stream is compatible with the given entry,
+     * using the header already read when possible.
+     */
+    static boolean isCompatible(Snapshot s, int idx, InputStream is,
+                                byte[] header, int headerLen)
+        throws StreamCorruptedException {
+        if (s.useHeader[idx]) {
+            MagicNumberRegistryEntry mre =
+                (MagicNumberRegistryEntry)s.entries[idx];
+            return mre.isCompatibleHeader(header, headerLen);
+        }
+        return ((StreamRegistryEntry)s.entries[idx]).isCompatibleStream(is);
+    }
+
     public synchronized void register(RegistryEntry newRE) {
         float priority = newRE.getPriority();
 
-        ListIterator li;
-        li = entries.listIterator();
-        while (li.hasNext()) {
-            RegistryEntry re = (RegistryEntry)li.next();
+        List l = new ArrayList(Arrays.asList(snapshot.entries));
+        int i = 0;
+        while (i < l.size()) {
+            RegistryEntry re = (RegistryEntry)l.get(i);
             if (re.getPriority() > priority) {
-                li.previous();
                 break; // Insertion point found.
             }
+            i++;
         }
-        li.add(newRE);
-        extensions = null;
-        mimeTypes = null;
+        l.add(i, newRE);
+        snapshot = new Snapshot(l);
     }
 
     /**
@@ -289,17 +525,8 @@ public class ImageTagRegistry implements ErrorConstants {
      * can be handleded by the various registered image format
      * handlers.
      */
-    public synchronized List getRegisteredExtensions() {
-        if (extensions != null)
-            return extensions;
-
-        extensions = new LinkedList();
-        for (Object entry : entries) {
-            RegistryEntry re = (RegistryEntry) entry;
-            extensions.addAll(re.getStandardExtensions());
-        }
-        extensions = Collections.unmodifiableList(extensions);
-        return extensions;
+    public List getRegisteredExtensions() {
+        return snapshot.extensions;
     }
 
     /**
@@ -307,52 +534,52 @@ public class ImageTagRegistry implements ErrorConstants {
      * can be handleded by the various registered image format
      * handlers.
      */
-    public synchronized List getRegisteredMimeTypes() {
-        if (mimeTypes != null)
-            return mimeTypes;
-
-        mimeTypes = new LinkedList();
-        for (Object entry : entries) {
-            RegistryEntry re = (RegistryEntry) entry;
-            mimeTypes.addAll(re.getMimeTypes());
-        }
-        mimeTypes = Collections.unmodifiableList(mimeTypes);
-        return mimeTypes;
+    public List getRegisteredMimeTypes() {
+        return snapshot.mimeTypes;
     }
 
-    static ImageTagRegistry registry = null;
+    static volatile ImageTagRegistry registry = null;
 
-    public static synchronized ImageTagRegistry getRegistry() {
-        if (registry != null)
-            return registry;
+    public static ImageTagRegistry getRegistry() {
+        ImageTagRegistry r = registry;
+        if (r != null)
+            return r;
 
-        registry = new ImageTagRegistry();
+        synchronized (ImageTagRegistry.class) {
+            if (registry != null)
+                return registry;
 
-        //registry.register(new PNGRegistryEntry());
-        //registry.register(new TIFFRegistryEntry());
-        //registry.register(new JPEGRegistryEntry());
-        registry.register(new JDKRegistryEntry());
+            r = new ImageTagRegistry();
 
-        Iterator iter = Service.providers(RegistryEntry.class);
-        while (iter.hasNext()) {
-            RegistryEntry re = (RegistryEntry)iter.next();
-            // System.out.println("RE: " + re);
-            registry.register(re);
-        }
+            //r.register(new PNGRegistryEntry());
+            //r.register(new TIFFRegistryEntry());
+            //r.register(new JPEGRegistryEntry());
+            r.register(new JDKRegistryEntry());
+
+            Iterator iter = Service.providers(RegistryEntry.class);
+            while (iter.hasNext()) {
+                RegistryEntry re = (RegistryEntry)iter.next();
+                // System.out.println("RE: " + re);
+                r.register(re);
+            }
 
-        return registry;
+            // Only publish the registry once it is complete.
+            registry = r;
+            return r;
+        }
     }
 
-    static BrokenLinkProvider defaultProvider
+    static final BrokenLinkProvider defaultProvider
         = new DefaultBrokenLinkProvider();
 
-    static BrokenLinkProvider brokenLinkProvider = null;
+    static volatile BrokenLinkProvider brokenLinkProvider = null;
 
-    public static synchronized Filter
+    public static Filter
         getBrokenLinkImage(Object base, String code, Object [] params) {
         Filter ret = null;
-        if (brokenLinkProvider != null)
-            ret = brokenLinkProvider.getBrokenLinkImage(base, code, params);
+        BrokenLinkProvider provider = brokenLinkProvider;
+        if (provider != null)
+            ret = provider.getBrokenLinkImage(base, code, params);
 
         if (ret == null)
             ret = defaultProvider.getBrokenLinkImage(base, code, params);
@@ -361,7 +588,7 @@ public class ImageTagRegistry implements ErrorConstants {
     }
 
 
-    public static synchronized void
+    public static void
         setBrokenLinkProvider(BrokenLinkProvider provider) {
         brokenLinkProvider = provider;
     }
@@ -107,7 +107,7 @@ public class JDKRegistryEntry extends AbstractRegistryEntry
             errParam = new Object[] {"JDK"};
         }
 
-        Thread t = new Thread() {
+        DecoderExecutor.execute(new Runnable() {
                 public void run() {
                     Filter filt = null;
                     try {
@@ -132,8 +132,7 @@ public class JDKRegistryEntry extends AbstractRegistryEntry
 
                     dr.setSource(filt);
                 }
-            };
-        t.start();
+            });
         return dr;
     }
 
@@ -47,7 +47,6 @@ public abstract class MagicNumberRegistryEntry
     public static class MagicNumber {
         int offset;
         byte [] magicNumber;
-        byte [] buffer;
 
         /**
          *  Constructor.
@@ -57,7 +56,6 @@ public abstract class MagicNumberRegistryEntry
         public MagicNumber(int offset, byte[]magicNumber) {
             this.offset = offset;
             this.magicNumber = magicNumber.clone();
-            buffer = new byte[magicNumber.length];
         }
 
         /**
@@ -74,6 +72,9 @@ public abstract class MagicNumberRegistryEntry
         boolean isMatch(InputStream is)
             throws StreamCorruptedException {
             int idx = 0;
+            // The buffer is local so that several threads can check
+            // their streams at the same time.
+            byte [] buffer = new byte[magicNumber.length];
             is.mark(getReadlimit());
             try {
                 // Skip to the offset location.
@@ -113,6 +114,22 @@ public abstract class MagicNumberRegistryEntry
             }
             return true;
         }
+
+        /**
+         * Performs the check on the first <code>length</code> bytes
+         * of a stream, already read in <code>header</code>.
+         */
+        boolean isMatch(byte[] header, int length) {
+            if (offset + magicNumber.length > length) {
+                return false;
+            }
+            for (int i=0; i<magicNumber.length; i++) {
+                if (magicNumber[i] != header[offset + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
     }
 
     /** The list of magic numbers associated with this entry */
@@ -301,4 +318,20 @@ public abstract class MagicNumberRegistryEntry
 
         return false;
     }
+
+    /**
+     * Check if a stream whose first <code>length</code> bytes are in
+     * <code>header</code> contains an image that can be handled by this
+     * format handler.  The header must be at least {@link
+     * #getReadlimit()} bytes long, unless the stream is shorter.
+     */
+    public boolean isCompatibleHeader(byte[] header, int length) {
+        for (MagicNumber magicNumber : magicNumbers) {
+            if (magicNumber.isMatch(header, length)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
 }
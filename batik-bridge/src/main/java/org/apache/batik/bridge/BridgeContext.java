@@ -387,7 +387,7 @@ public class BridgeContext implements ErrorConstants, CSSContext {
                 try {
                     ParsedURL url = new ParsedURL(uri);
                     eng.setUserAgentStyleSheet
-                        (eng.parseStyleSheet(url, "all"));
+                        (eng.parseSharedStyleSheet(url, "all"));
                 } catch (Exception e) {
                     userAgent.displayError(e);
                 }
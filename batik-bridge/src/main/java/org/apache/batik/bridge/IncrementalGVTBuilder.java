@@ -0,0 +1,388 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.bridge;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.batik.css.engine.CSSEngine;
+import org.apache.batik.css.engine.CSSStyleSheetNode;
+import org.apache.batik.dom.AbstractStylableDocument;
+import org.apache.batik.gvt.CompositeGraphicsNode;
+import org.apache.batik.gvt.GraphicsNode;
+import org.apache.batik.gvt.RootGraphicsNode;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * A GVT builder which builds the tree of a static document while the
+ * document is parsed. The children of the document element are given
+ * to {@link #add} in document order, once they are complete, and are
+ * built as soon as possible; {@link #finish} builds the remaining ones
+ * and returns the GVT tree, which is the same as the one returned by
+ * {@link GVTBuilder#build(BridgeContext,Document)}.
+ *
+ * <ul>
+ * <li>The build starts with the first child which may produce a
+ * graphics node, so that the style sheets declared before it are
+ * known.</li>
+ * <li>A child which references an element not parsed yet is kept, with
+ * all the following children, until the element is parsed or the
+ * document is complete.</li>
+ * <li>A child which contains text, or references an element which does,
+ * is kept with all the following children until the document is
+ * complete: the fonts of a document are looked up once, and may be
+ * declared after the text.</li>
+ * <li>A style sheet found once the build has started, or an error raised
+ * by a bridge, make the incremental build invalid: the document must
+ * then be built again with {@link #dispose} and a new context once it is
+ * complete.</li>
+ * </ul>
+ *
+ * @version $Id$
+ */
+public class IncrementalGVTBuilder extends GVTBuilder {
+
+    /**
+     * The bridge context.
+     */
+    protected BridgeContext ctx;
+
+    /**
+     * The document being built.
+     */
+    protected Document document;
+
+    /**
+     * The root of the GVT tree, once the build has started.
+     */
+    protected RootGraphicsNode rootNode;
+
+    /**
+     * The bridge of the document element.
+     */
+    protected GraphicsNodeBridge rootBridge;
+
+    /**
+     * The graphics node of the document element.
+     */
+    protected CompositeGraphicsNode topNode;
+
+    /**
+     * The children of the document element not built yet.
+     */
+    protected LinkedList<Element> pending = new LinkedList<Element>();
+
+    /**
+     * The references of the first pending child not found in the
+     * document yet, or null if not computed.
+     */
+    protected List<String> missingReferences;
+
+    /**
+     * Whether the first pending child uses the fonts of the document, so
+     * that the remaining children are built by {@link #finish}.
+     */
+    protected boolean usesFonts;
+
+    /**
+     * Whether the incremental build cannot be used.
+     */
+    protected boolean invalid;
+
+    /**
+     * Creates a new builder for the given document, whose document
+     * element must have been created with its attributes.  The context
+     * must be static.
+     */
+    public IncrementalGVTBuilder(BridgeContext ctx, Document document) {
+        if (ctx.isDynamic()) {
+            throw new IllegalArgumentException("Dynamic context");
+        }
+        this.ctx = ctx;
+        this.document = document;
+        ctx.setDocument(document);
+        ctx.initializeDocument(document);
+        ctx.setGVTBuilder(this);
+    }
+
+    /**
+     * Returns the bridge context.
+     */
+    public BridgeContext getBridgeContext() {
+        return ctx;
+    }
+
+    /**
+     * Returns the document being built.
+     */
+    public Document getDocument() {
+        return document;
+    }
+
+    /**
+     * Whether the GVT tree built by this builder can be used.
+     */
+    public boolean isValid() {
+        return !invalid;
+    }
+
+    /**
+     * Adds a complete child of the document element, and builds the
+     * children which can be.
+     */
+    public void add(Element e) {
+        if (invalid) {
+            return;
+        }
+        if (rootNode != null && hasStyleSheet(e)) {
+            // The elements already built would need a new cascade.
+            invalid = true;
+            return;
+        }
+        pending.add(e);
+        if (usesFonts) {
+            return;
+        }
+        try {
+            while (!pending.isEmpty()) {
+                Element elt = pending.getFirst();
+                if (rootNode == null) {
+                    if (!(ctx.getBridge(elt) instanceof GraphicsNodeBridge)) {
+                        // Let the following style sheets be parsed.
+                        break;
+                    }
+                }
+                if (missingReferences == null) {
+                    missingReferences = new ArrayList<String>();
+                    addReferences(elt, missingReferences);
+                }
+                for (int i = missingReferences.size() - 1; i >= 0; i--) {
+                    if (document.getElementById
+                        (missingReferences.get(i)) != null) {
+                        missingReferences.remove(i);
+                    }
+                }
+                if (!missingReferences.isEmpty()) {
+                    break;
+                }
+                missingReferences = null;
+                if (usesFonts(elt, new HashSet<Element>())) {
+                    usesFonts = true;
+                    break;
+                }
+                if (rootNode == null) {
+                    start();
+                }
+                pending.removeFirst();
+                buildGraphicsNode(ctx, elt, topNode);
+            }
+        } catch (BridgeException ex) {
+            // The error is reported by the regular build.
+            invalid = true;
+        }
+    }
+
+    /**
+     * Builds the remaining children and returns the GVT tree.
+     * @exception BridgeException if an error occured while building
+     */
+    public GraphicsNode finish() {
+        if (invalid) {
+            throw new IllegalStateException("Invalid incremental build");
+        }
+        Element svgElement = document.getDocumentElement();
+        try {
+            if (rootNode == null) {
+                if (!start()) {
+                    return null;
+                }
+            }
+            while (!pending.isEmpty()) {
+                buildGraphicsNode(ctx, pending.removeFirst(), topNode);
+            }
+            rootBridge.buildGraphicsNode(ctx, svgElement, topNode);
+            ctx.getDocumentBridge().buildGraphicsNode(ctx, document,
+                                                      rootNode);
+        } catch (BridgeException ex) {
+            ex.setGraphicsNode(rootNode);
+            throw ex;
+        }
+        return rootNode;
+    }
+
+    /**
+     * Releases the resources used by the incremental build, so that the
+     * document can be built again with a new context.
+     */
+    public void dispose() {
+        ctx.dispose();
+        if (document instanceof AbstractStylableDocument) {
+            AbstractStylableDocument doc = (AbstractStylableDocument)document;
+            CSSEngine eng = doc.getCSSEngine();
+            if (eng != null) {
+                eng.dispose();
+                doc.setCSSEngine(null);
+            }
+        }
+        pending.clear();
+        invalid = true;
+    }
+
+    /**
+     * Creates the graphics nodes of the document and of the document
+     * element, as done by {@link GVTBuilder#build(BridgeContext,Document)}.
+     * @return false if the document element has no graphics node.
+     */
+    protected boolean start() {
+        DocumentBridge dBridge = ctx.getDocumentBridge();
+        rootNode = dBridge.createGraphicsNode(ctx, document);
+        Element svgElement = document.getDocumentElement();
+        Bridge bridge = ctx.getBridge(svgElement);
+        if (bridge == null || !(bridge instanceof GraphicsNodeBridge)) {
+            invalid = true;
+            return false;
+        }
+        rootBridge = (GraphicsNodeBridge)bridge;
+        topNode = (CompositeGraphicsNode)
+            rootBridge.createGraphicsNode(ctx, svgElement);
+        if (topNode == null) {
+            invalid = true;
+            return false;
+        }
+        rootNode.getChildren().add(topNode);
+        return true;
+    }
+
+    /**
+     * Adds to the given list the fragments of the 'url(#...)' values
+     * found in the given string.
+     */
+    protected static void addURLReferences(String v, List<String> refs) {
+        int idx = 0;
+        while ((idx = v.indexOf("url(", idx)) != -1) {
+            int end = v.indexOf(')', idx);
+            if (end == -1) {
+                break;
+            }
+            String url = v.substring(idx + 4, end).trim();
+            if (url.length() > 1 &&
+                (url.charAt(0) == '"' || url.charAt(0) == '\'')) {
+                url = url.substring(1, url.length() - 1).trim();
+            }
+            if (url.startsWith("#")) {
+                refs.add(url.substring(1));
+            }
+            idx = end;
+        }
+    }
+
+    /**
+     * Whether the given element contains a 'text' element, or references
+     * an element which does.
+     * @param visited the elements already checked
+     */
+    protected boolean usesFonts(Element e, Set<Element> visited) {
+        if (!visited.add(e)) {
+            return false;
+        }
+        if (hasText(e)) {
+            return true;
+        }
+        List<String> refs = new ArrayList<String>();
+        addReferences(e, refs);
+        for (String ref : refs) {
+            Element r = document.getElementById(ref);
+            if (r != null && usesFonts(r, visited)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether the given element is or contains a 'text' element.
+     */
+    protected static boolean hasText(Element e) {
+        if (SVG_NAMESPACE_URI.equals(e.getNamespaceURI()) &&
+            SVG_TEXT_TAG.equals(e.getLocalName())) {
+            return true;
+        }
+        for (Node c = e.getFirstChild(); c != null; c = c.getNextSibling()) {
+            if (c.getNodeType() == Node.ELEMENT_NODE &&
+                hasText((Element)c)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether the given node is or contains a style sheet.
+     */
+    protected static boolean hasStyleSheet(Node n) {
+        if (n instanceof CSSStyleSheetNode) {
+            return true;
+        }
+        for (Node c = n.getFirstChild(); c != null; c = c.getNextSibling()) {
+            if (hasStyleSheet(c)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds to the given list the local references found in the attributes
+     * of the given element and of its descendants: the fragment of the
+     * 'href' attributes and of the 'url(#...)' values.
+     */
+    protected static void addReferences(Element e, List<String> refs) {
+        NamedNodeMap attrs = e.getAttributes();
+        int len = attrs.getLength();
+        for (int i = 0; i < len; i++) {
+            Attr a = (Attr)attrs.item(i);
+            String v = a.getValue();
+            if (v.indexOf('#') == -1) {
+                continue;
+            }
+            String name = a.getLocalName();
+            if (name == null) {
+                name = a.getNodeName();
+            }
+            if (name.equals(XLINK_HREF_ATTRIBUTE) &&
+                v.startsWith("#")) {
+                refs.add(v.substring(1));
+            }
+            addURLReferences(v, refs);
+        }
+        for (Node c = e.getFirstChild(); c != null; c = c.getNextSibling()) {
+            if (c.getNodeType() == Node.ELEMENT_NODE) {
+                addReferences((Element)c, refs);
+            }
+        }
+    }
+}
@@ -0,0 +1,451 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.bridge;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The executor which performs the network requests of the scripts, made
+ * through <code>getURL</code> and <code>postURL</code>.
+ *
+ * <p>The requests of all the documents are performed by a small pool of
+ * daemon threads, with a bounded queue, so that documents which poll a
+ * server do not start one thread per request. A request which cannot be
+ * queued fails immediately, and a request which is not finished after
+ * the configured timeout is aborted and fails.  The scripts are notified
+ * of the failures as before, through the update queue of their
+ * document.</p>
+ *
+ * <p>The number of pending, active, completed, failed, rejected and timed
+ * out requests are recorded, to help tune the executor.</p>
+ *
+ * @version $Id$
+ */
+public final class ScriptIOExecutor {
+
+    /**
+     * The number of seconds an idle thread waits for a new request
+     * before terminating.
+     */
+    public static final int KEEP_ALIVE = 30;
+
+    /**
+     * The default number of requests performed at once.
+     */
+    public static final int DEFAULT_THREAD_COUNT = 4;
+
+    /**
+     * The default number of requests which can wait for a thread.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 256;
+
+    /**
+     * The default timeout of a request, in milliseconds.
+     */
+    public static final int DEFAULT_TIMEOUT = 60000;
+
+    /**
+     * The number of threads of the pool.
+     */
+    private static int threadCount = DEFAULT_THREAD_COUNT;
+
+    /**
+     * The capacity of the queue of the pool.
+     */
+    private static int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+
+    /**
+     * The timeout of the requests, in milliseconds, or 0 for none.
+     */
+    private static volatile int timeout = DEFAULT_TIMEOUT;
+
+    /**
+     * The pool, created on demand.
+     */
+    private static ThreadPoolExecutor pool;
+
+    /**
+     * The executor which aborts the requests which time out.
+     */
+    private static ScheduledThreadPoolExecutor timer;
+
+    private static final AtomicInteger queued = new AtomicInteger();
+    private static final AtomicInteger running = new AtomicInteger();
+    private static final AtomicLong completed = new AtomicLong();
+    private static final AtomicLong failed = new AtomicLong();
+    private static final AtomicLong rejected = new AtomicLong();
+    private static final AtomicLong timedOut = new AtomicLong();
+
+    /**
+     * A request performed by the executor.  A request finishes exactly
+     * once: either {@link #perform} completes and the request is
+     * finished by its implementation, or {@link #failed} is called.
+     */
+    public abstract static class Request {
+
+        /**
+         * Whether the request is finished.
+         */
+        private final AtomicBoolean finished = new AtomicBoolean();
+
+        /**
+         * The stream or connection to close to abort the request.
+         */
+        private volatile Closeable resource;
+
+        /**
+         * The timeout task of the request.
+         */
+        private volatile ScheduledFuture<?> timeoutTask;
+
+        /**
+         * The task which performs the request, while it is queued.
+         */
+        private volatile Runnable task;
+
+        /**
+         * Performs the request, in a thread of the executor.  The
+         * result must only be used if {@link #finish} returns true.
+         */
+        protected abstract void perform() throws Exception;
+
+        /**
+         * Called when the request fails, is rejected or times out.
+         * This method may be called from any thread.
+         */
+        protected abstract void failed(Exception e);
+
+        /**
+         * Sets the stream or connection which is closed if the request
+         * is aborted while it is performed.
+         */
+        protected void setResource(Closeable c) {
+            resource = c;
+            if (finished.get()) {
+                close(c);
+            }
+        }
+
+        /**
+         * Marks this request as finished.
+         * @return false if the request was already finished, for example
+         *         because it timed out or was aborted.
+         */
+        protected boolean finish() {
+            if (!finished.compareAndSet(false, true)) {
+                return false;
+            }
+            ScheduledFuture<?> f = timeoutTask;
+            if (f != null) {
+                f.cancel(false);
+            }
+            return true;
+        }
+
+        /**
+         * Whether this request is finished.
+         */
+        public boolean isFinished() {
+            return finished.get();
+        }
+
+        /**
+         * Aborts this request if it is not finished.
+         * @param e the reason given to {@link #failed}, or null not to
+         *          notify the failure.
+         * @return false if the request was already finished.
+         */
+        public boolean abort(Exception e) {
+            return abort(e, null);
+        }
+
+        /**
+         * Aborts this request if it is not finished, and increments the
+         * given count before the failure is notified.
+         */
+        boolean abort(Exception e, AtomicLong count) {
+            if (!finish()) {
+                return false;
+            }
+            Runnable t = task;
+            if (t != null) {
+                ThreadPoolExecutor p = getCurrentPool();
+                if (p != null && p.remove(t)) {
+                    // Frees the place of the request in the queue.
+                    queued.decrementAndGet();
+                }
+            }
+            close(resource);
+            if (count != null) {
+                count.incrementAndGet();
+            }
+            if (e != null) {
+                failed(e);
+            }
+            return true;
+        }
+
+        private static void close(Closeable c) {
+            if (c != null) {
+                try {
+                    c.close();
+                } catch (IOException ioe) {
+                    // Nothing to do, the request is dropped.
+                }
+            }
+        }
+    }
+
+    private ScriptIOExecutor() {
+    }
+
+    /**
+     * Returns the pool performing the requests.
+     */
+    private static synchronized ThreadPoolExecutor getPool() {
+        if (pool == null) {
+            ThreadFactory tf = new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread
+                            (r, "Batik script I/O " +
+                             count.incrementAndGet());
+                        t.setDaemon(true);
+                        t.setPriority(Thread.MIN_PRIORITY);
+                        return t;
+                    }
+                };
+            pool = new ThreadPoolExecutor
+                (threadCount, threadCount, KEEP_ALIVE, TimeUnit.SECONDS,
+                 new ArrayBlockingQueue<Runnable>(queueCapacity), tf);
+            pool.allowCoreThreadTimeOut(true);
+        }
+        return pool;
+    }
+
+    /**
+     * Returns the pool performing the requests, if it was created.
+     */
+    private static synchronized ThreadPoolExecutor getCurrentPool() {
+        return pool;
+    }
+
+    /**
+     * Returns the executor aborting the requests which time out.
+     */
+    private static synchronized ScheduledThreadPoolExecutor getTimer() {
+        if (timer == null) {
+            timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "Batik script I/O timer");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+            timer.setKeepAliveTime(KEEP_ALIVE, TimeUnit.SECONDS);
+            timer.allowCoreThreadTimeOut(true);
+            timer.setRemoveOnCancelPolicy(true);
+        }
+        return timer;
+    }
+
+    /**
+     * Returns the number of requests performed at once.
+     */
+    public static synchronized int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Sets the number of requests performed at once.
+     */
+    public static synchronized void setThreadCount(int n) {
+        if (n < 1) {
+            throw new IllegalArgumentException("Invalid thread count: " + n);
+        }
+        threadCount = n;
+        if (pool != null) {
+            if (n > pool.getMaximumPoolSize()) {
+                pool.setMaximumPoolSize(n);
+                pool.setCorePoolSize(n);
+            } else {
+                pool.setCorePoolSize(n);
+                pool.setMaximumPoolSize(n);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of requests which can wait for a thread.
+     */
+    public static synchronized int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Sets the number of requests which can wait for a thread.  The
+     * requests already queued are still performed.
+     */
+    public static synchronized void setQueueCapacity(int n) {
+        if (n < 1) {
+            throw new IllegalArgumentException("Invalid capacity: " + n);
+        }
+        queueCapacity = n;
+        if (pool != null) {
+            // The capacity of a queue is fixed: the next request creates
+            // a new pool, while this one finishes its work.
+            pool.shutdown();
+            pool = null;
+        }
+    }
+
+    /**
+     * Returns the timeout of the requests, in milliseconds.
+     */
+    public static int getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Sets the timeout of the requests, in milliseconds.  The timeout
+     * includes the time spent waiting for a thread.
+     * @param ms the timeout, or 0 for no timeout.
+     */
+    public static void setTimeout(int ms) {
+        if (ms < 0) {
+            throw new IllegalArgumentException("Invalid timeout: " + ms);
+        }
+        timeout = ms;
+    }
+
+    /**
+     * Performs the given request in the background.
+     */
+    public static void execute(final Request r) {
+        Runnable task = new Runnable() {
+                public void run() {
+                    queued.decrementAndGet();
+                    r.task = null;
+                    if (r.isFinished()) {
+                        return;
+                    }
+                    running.incrementAndGet();
+                    try {
+                        r.perform();
+                        completed.incrementAndGet();
+                    } catch (Exception e) {
+                        // A request aborted while performed is counted
+                        // as rejected or timed out, not failed.
+                        if (r.finish()) {
+                            failed.incrementAndGet();
+                            r.failed(e);
+                        }
+                    } finally {
+                        running.decrementAndGet();
+                    }
+                }
+            };
+
+        int ms = timeout;
+        if (ms > 0) {
+            r.timeoutTask = getTimer().schedule(new Runnable() {
+                    public void run() {
+                        r.abort(new InterruptedIOException
+                                ("Request timed out"), timedOut);
+                    }
+                }, ms, TimeUnit.MILLISECONDS);
+        }
+
+        r.task = task;
+        queued.incrementAndGet();
+        try {
+            getPool().execute(task);
+        } catch (RejectedExecutionException ree) {
+            queued.decrementAndGet();
+            rejected.incrementAndGet();
+            r.task = null;
+            r.abort(new IOException("Too many pending requests"));
+        }
+    }
+
+    /**
+     * Returns the number of requests waiting for a thread.
+     */
+    public static int getQueueDepth() {
+        return queued.get();
+    }
+
+    /**
+     * Returns the number of requests being performed.
+     */
+    public static int getActiveCount() {
+        return running.get();
+    }
+
+    /**
+     * Returns the number of requests performed successfully.
+     */
+    public static long getCompletedCount() {
+        return completed.get();
+    }
+
+    /**
+     * Returns the number of requests which failed while performed.
+     */
+    public static long getFailedCount() {
+        return failed.get();
+    }
+
+    /**
+     * Returns the number of requests which could not be queued.
+     */
+    public static long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * Returns the number of requests which timed out.
+     */
+    public static long getTimedOutCount() {
+        return timedOut.get();
+    }
+
+    /**
+     * Resets the counts of completed, failed, rejected and timed out
+     * requests.
+     */
+    public static void resetStatistics() {
+        completed.set(0);
+        failed.set(0);
+        rejected.set(0);
+        timedOut.set(0);
+    }
+}
@@ -32,8 +32,10 @@ import java.io.Writer;
 import java.net.URL;
 import java.net.URLConnection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.Map;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.zip.DeflaterOutputStream;
@@ -133,6 +135,12 @@ public class ScriptingEnvironment extends BaseScriptingEnvironment {
      */
     protected Timer timer = new Timer(true);
 
+    /**
+     * The network requests of the scripts which are not finished.
+     */
+    protected Set<ScriptIOExecutor.Request> requests =
+        new HashSet<ScriptIOExecutor.Request>();
+
     /**
      * The update manager.
      */
@@ -416,6 +424,16 @@ public class ScriptingEnvironment extends BaseScriptingEnvironment {
      */
     public void interrupt() {
         timer.cancel();
+        // Abort the pending requests, nobody will handle their results.
+        ScriptIOExecutor.Request[] reqs;
+        synchronized (requests) {
+            reqs = requests.toArray
+                (new ScriptIOExecutor.Request[requests.size()]);
+            requests.clear();
+        }
+        for (ScriptIOExecutor.Request req : reqs) {
+            req.abort(null);
+        }
         // Remove the scripting listeners.
         removeScriptingListeners(document.getDocumentElement());
 
@@ -1071,74 +1089,35 @@ public class ScriptingEnvironment extends BaseScriptingEnvironment {
         public void getURL(final String uri,
                            final org.apache.batik.bridge.Window.URLResponseHandler h,
                            final String enc) {
-            Thread t = new Thread() {
-                    public void run() {
-                        try {
-                            ParsedURL burl;
-                            burl = ((SVGOMDocument)document).getParsedURL();
-                            final ParsedURL purl = new ParsedURL(burl, uri);
-                            String e = null;
-                            if (enc != null) {
-                                e = EncodingUtilities.javaEncoding(enc);
-                                e = ((e == null) ? enc : e);
-                            }
+            execute(new URLRequest(h) {
+                    protected void perform() throws Exception {
+                        ParsedURL burl;
+                        burl = ((SVGOMDocument)document).getParsedURL();
+                        ParsedURL purl = new ParsedURL(burl, uri);
+                        String e = null;
+                        if (enc != null) {
+                            e = EncodingUtilities.javaEncoding(enc);
+                            e = ((e == null) ? enc : e);
+                        }
 
-                            InputStream is = purl.openStream();
-                            Reader r;
-                            if (e == null) {
-                                // Not really a char encoding.
+                        purl.setTimeout(ScriptIOExecutor.getTimeout());
+                        InputStream is = purl.openStream();
+                        setResource(is);
+                        Reader r;
+                        if (e == null) {
+                            // Not really a char encoding.
+                            r = new InputStreamReader(is);
+                        } else {
+                            try {
+                                r = new InputStreamReader(is, e);
+                            } catch (UnsupportedEncodingException uee) {
+                                // Try with no encoding.
                                 r = new InputStreamReader(is);
-                            } else {
-                                try {
-                                    r = new InputStreamReader(is, e);
-                                } catch (UnsupportedEncodingException uee) {
-                                    // Try with no encoding.
-                                    r = new InputStreamReader(is);
-                                }
-                            }
-                            r = new BufferedReader(r);
-                            final StringBuffer sb = new StringBuffer();
-                            int read;
-                            char[] buf = new char[4096];
-                            while ((read = r.read(buf, 0, buf.length)) != -1) {
-                                sb.append(buf, 0, read);
-                            }
-                            r.close();
-
-                            updateRunnableQueue.invokeLater(new Runnable() {
-                                    public void run() {
-                                        try {
-                                            h.getURLDone(true,
-                                                         purl.getContentType(),
-                                                         sb.toString());
-                                        } catch (Exception e){
-                                            if (userAgent != null) {
-                                                userAgent.displayError(e);
-                                            }
-                                        }
-                                    }
-                                });
-                        } catch (Exception e) {
-                            if (e instanceof SecurityException) {
-                                userAgent.displayError(e);
                             }
-                            updateRunnableQueue.invokeLater(new Runnable() {
-                                    public void run() {
-                                        try {
-                                            h.getURLDone(false, null, null);
-                                        } catch (Exception e){
-                                            if (userAgent != null) {
-                                                userAgent.displayError(e);
-                                            }
-                                        }
-                                    }
-                                });
                         }
+                        done(purl.getContentType(), read(r));
                     }
-
-                };
-            t.setPriority(Thread.MIN_PRIORITY);
-            t.start();
+                });
         }
 
 
@@ -1158,114 +1137,162 @@ public class ScriptingEnvironment extends BaseScriptingEnvironment {
                             final org.apache.batik.bridge.Window.URLResponseHandler h,
                             final String mimeType,
                             final String fEnc) {
-            Thread t = new Thread() {
-                    public void run() {
-                        try {
-                            String base =
-                                document.getDocumentURI();
-                            URL url;
-                            if (base == null) {
-                                url = new URL(uri);
-                            } else {
-                                url = new URL(new URL(base), uri);
-                            }
-                            // TODO: Change this to use ParsedURL for the POST?
-                            final URLConnection conn = url.openConnection();
-                            conn.setDoOutput(true);
-                            conn.setDoInput(true);
-                            conn.setUseCaches(false);
-                            conn.setRequestProperty("Content-Type", mimeType);
-
-                            OutputStream os = conn.getOutputStream();
-                            String e=null, enc = fEnc;
-                            if (enc != null) {
-                                if (enc.startsWith(DEFLATE)) {
-                                    os = new DeflaterOutputStream(os);
-
-                                    if (enc.length() > DEFLATE.length())
-                                        enc = enc.substring(DEFLATE.length()+1);
-                                    else
-                                        enc = "";
-                                    conn.setRequestProperty("Content-Encoding",
-                                                            DEFLATE);
-                                }
-                                if (enc.startsWith(GZIP)) {
-                                    os = new GZIPOutputStream(os);
-                                    if (enc.length() > GZIP.length())
-                                        enc = enc.substring(GZIP.length()+1);
-                                    else
-                                        enc ="";
-                                    conn.setRequestProperty("Content-Encoding",
-                                                            DEFLATE);
-                                }
-                                if (enc.length() != 0) {
-                                    e = EncodingUtilities.javaEncoding(enc);
-                                    if (e == null) e = UTF_8;
-                                } else {
-                                    e = UTF_8;
-                                }
+            execute(new URLRequest(h) {
+                    protected void perform() throws Exception {
+                        String base =
+                            document.getDocumentURI();
+                        URL url;
+                        if (base == null) {
+                            url = new URL(uri);
+                        } else {
+                            url = new URL(new URL(base), uri);
+                        }
+                        // TODO: Change this to use ParsedURL for the POST?
+                        URLConnection conn = url.openConnection();
+                        int timeout = ScriptIOExecutor.getTimeout();
+                        conn.setConnectTimeout(timeout);
+                        conn.setReadTimeout(timeout);
+                        conn.setDoOutput(true);
+                        conn.setDoInput(true);
+                        conn.setUseCaches(false);
+                        conn.setRequestProperty("Content-Type", mimeType);
+
+                        OutputStream os = conn.getOutputStream();
+                        setResource(os);
+                        String e=null, enc = fEnc;
+                        if (enc != null) {
+                            if (enc.startsWith(DEFLATE)) {
+                                os = new DeflaterOutputStream(os);
+
+                                if (enc.length() > DEFLATE.length())
+                                    enc = enc.substring(DEFLATE.length()+1);
+                                else
+                                    enc = "";
+                                conn.setRequestProperty("Content-Encoding",
+                                                        DEFLATE);
                             }
-                            Writer w;
-                            if (e == null)
-                                w = new OutputStreamWriter(os);
-                            else
-                                w = new OutputStreamWriter(os, e);
-                            w.write(content);
-                            w.flush();
-                            w.close();
-                            os.close();
-
-                            InputStream is = conn.getInputStream();
-                            Reader r;
-                            e = UTF_8;
-                            if (e == null)
-                                r = new InputStreamReader(is);
-                            else
-                                r = new InputStreamReader(is, e);
-                            r = new BufferedReader(r);
-
-                            final StringBuffer sb = new StringBuffer();
-                            int read;
-                            char[] buf = new char[4096];
-                            while ((read = r.read(buf, 0, buf.length)) != -1) {
-                                sb.append(buf, 0, read);
+                            if (enc.startsWith(GZIP)) {
+                                os = new GZIPOutputStream(os);
+                                if (enc.length() > GZIP.length())
+                                    enc = enc.substring(GZIP.length()+1);
+                                else
+                                    enc ="";
+                                conn.setRequestProperty("Content-Encoding",
+                                                        DEFLATE);
                             }
-                            r.close();
-
-                            updateRunnableQueue.invokeLater(new Runnable() {
-                                    public void run() {
-                                        try {
-                                            h.getURLDone(true,
-                                                         conn.getContentType(),
-                                                         sb.toString());
-                                        } catch (Exception e){
-                                            if (userAgent != null) {
-                                                userAgent.displayError(e);
-                                            }
-                                        }
-                                    }
-                                });
-                        } catch (Exception e) {
-                            if (e instanceof SecurityException) {
-                                userAgent.displayError(e);
+                            if (enc.length() != 0) {
+                                e = EncodingUtilities.javaEncoding(enc);
+                                if (e == null) e = UTF_8;
+                            } else {
+                                e = UTF_8;
                             }
-                            updateRunnableQueue.invokeLater(new Runnable() {
-                                    public void run() {
-                                        try {
-                                            h.getURLDone(false, null, null);
-                                        } catch (Exception e){
-                                            if (userAgent != null) {
-                                                userAgent.displayError(e);
-                                            }
-                                        }
-                                    }
-                                });
                         }
+                        Writer w;
+                        if (e == null)
+                            w = new OutputStreamWriter(os);
+                        else
+                            w = new OutputStreamWriter(os, e);
+                        w.write(content);
+                        w.flush();
+                        w.close();
+                        os.close();
+
+                        InputStream is = conn.getInputStream();
+                        setResource(is);
+                        done(conn.getContentType(),
+                             read(new InputStreamReader(is, UTF_8)));
                     }
+                });
+        }
 
-                };
-            t.setPriority(Thread.MIN_PRIORITY);
-            t.start();
+        /**
+         * Performs the given request with the shared script I/O executor,
+         * and keeps track of it so that it can be aborted when this
+         * environment is interrupted.
+         */
+        protected void execute(URLRequest req) {
+            synchronized (requests) {
+                requests.add(req);
+            }
+            ScriptIOExecutor.execute(req);
+        }
+
+        /**
+         * Reads the given reader up to its end, then closes it.
+         */
+        protected String read(Reader r) throws IOException {
+            r = new BufferedReader(r);
+            try {
+                StringBuilder sb = new StringBuilder();
+                int read;
+                char[] buf = new char[4096];
+                while ((read = r.read(buf, 0, buf.length)) != -1) {
+                    sb.append(buf, 0, read);
+                }
+                return sb.toString();
+            } finally {
+                r.close();
+            }
+        }
+
+        /**
+         * A request made by a script.  The response handler is always
+         * called in the update thread.
+         */
+        protected abstract class URLRequest extends ScriptIOExecutor.Request {
+
+            /**
+             * The handler notified of the response.
+             */
+            protected org.apache.batik.bridge.Window.URLResponseHandler handler;
+
+            protected URLRequest
+                (org.apache.batik.bridge.Window.URLResponseHandler h) {
+                handler = h;
+            }
+
+            /**
+             * Gives the response to the handler.
+             */
+            protected void done(String contentType, String content) {
+                if (finish()) {
+                    deliver(true, contentType, content);
+                }
+            }
+
+            protected void failed(Exception e) {
+                if (e instanceof SecurityException) {
+                    userAgent.displayError(e);
+                }
+                deliver(false, null, null);
+            }
+
+            /**
+             * Calls the handler in the update thread.
+             */
+            protected void deliver(final boolean success,
+                                  final String contentType,
+                                  final String content) {
+                synchronized (requests) {
+                    requests.remove(this);
+                }
+                try {
+                    updateRunnableQueue.invokeLater(new Runnable() {
+                            public void run() {
+                                try {
+                                    handler.getURLDone(success, contentType,
+                                                       content);
+                                } catch (Exception e){
+                                    if (userAgent != null) {
+                                        userAgent.displayError(e);
+                                    }
+                                }
+                            }
+                        });
+                } catch (IllegalStateException ise) {
+                    // The update queue was stopped: nobody is waiting.
+                }
+            }
         }
 
         /**
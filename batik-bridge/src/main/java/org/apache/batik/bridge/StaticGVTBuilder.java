@@ -0,0 +1,280 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.bridge;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.batik.anim.dom.SVGOMDocument;
+import org.apache.batik.css.engine.CSSStylableElement;
+import org.apache.batik.css.engine.CSSStyleSheetNode;
+import org.apache.batik.gvt.CompositeGraphicsNode;
+import org.apache.batik.gvt.GraphicsNode;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * A GVT builder for static documents which are not used once their GVT
+ * tree is built, as when transcoding. The DOM subtree of each element,
+ * and the computed styles it holds, are released as soon as the graphics
+ * node of the element is built, so that the whole DOM tree and the whole
+ * GVT tree are never in memory at the same time.
+ *
+ * <p>The elements referenced from the document, through an 'href'
+ * attribute or a 'url(#...)' value, are kept with their descendants and
+ * ancestors, so that the gradients, patterns, filters, markers, clip
+ * paths, masks and the elements used by 'use' elements can still be
+ * built. The fonts, views, color profiles and style sheets are kept too,
+ * since they may be used after the elements referencing them are
+ * built.</p>
+ *
+ * <p>When the document has no style sheet other than the user agent one,
+ * the released elements are removed from the document. Otherwise only
+ * their descendants are, so that the sibling selectors still match the
+ * following elements. Nothing is released from the dynamic, interactive
+ * and SVG 1.2 documents, nor from the documents using external style
+ * sheets, whose references cannot be checked.</p>
+ *
+ * @version $Id$
+ */
+public class StaticGVTBuilder extends GVTBuilder {
+
+    /**
+     * The names of the SVG elements which are always kept.
+     */
+    protected static final Set<String> KEPT_ELEMENTS = new HashSet<String>();
+    static {
+        KEPT_ELEMENTS.add(SVG_ALT_GLYPH_DEF_TAG);
+        KEPT_ELEMENTS.add(SVG_COLOR_PROFILE_TAG);
+        KEPT_ELEMENTS.add(SVG_FONT_TAG);
+        KEPT_ELEMENTS.add(SVG_FONT_FACE_TAG);
+        KEPT_ELEMENTS.add(SVG_STYLE_TAG);
+        KEPT_ELEMENTS.add(SVG_VIEW_TAG);
+    }
+
+    /**
+     * The elements kept with their descendants.
+     */
+    protected Set<Element> kept = new HashSet<Element>();
+
+    /**
+     * The ancestors of the kept elements.
+     */
+    protected Set<Element> ancestors = new HashSet<Element>();
+
+    /**
+     * Whether the elements are released.
+     */
+    protected boolean releasing;
+
+    /**
+     * Whether the document contains a style sheet.
+     */
+    protected boolean hasStyleSheet;
+
+    /**
+     * Whether the released elements are removed from their parent, or
+     * only their children.
+     */
+    protected boolean removeElements;
+
+    /**
+     * The depth of the nested calls to {@link #build(BridgeContext,Element)},
+     * made by the bridges for the content they reference.
+     */
+    protected int nested;
+
+    /**
+     * Builds the GVT tree of the given document, releasing its elements
+     * as they are built.
+     */
+    public GraphicsNode build(BridgeContext ctx, Document document) {
+        releasing = !ctx.isInteractive() &&
+            !((SVGOMDocument)document).isSVG12() &&
+            ctx.getUserAgent().getUserStyleSheetURI() == null;
+        if (releasing) {
+            hasStyleSheet = false;
+            releasing = findKeptElements(document);
+            removeElements = !hasStyleSheet;
+        }
+        try {
+            return super.build(ctx, document);
+        } finally {
+            releasing = false;
+            kept.clear();
+            ancestors.clear();
+        }
+    }
+
+    /**
+     * Builds the GVT tree of the given element, without releasing it.
+     */
+    public GraphicsNode build(BridgeContext ctx, Element e) {
+        nested++;
+        try {
+            return super.build(ctx, e);
+        } finally {
+            nested--;
+        }
+    }
+
+    /**
+     * Builds the children of the given element, and releases them once
+     * built.
+     */
+    protected void buildComposite(BridgeContext ctx,
+                                  Element e,
+                                  CompositeGraphicsNode parentNode) {
+        if (!releasing || nested > 0) {
+            super.buildComposite(ctx, e, parentNode);
+            return;
+        }
+        Node n = e.getFirstChild();
+        while (n != null) {
+            // The element may be removed once built.
+            Node next = n.getNextSibling();
+            if (n.getNodeType() == Node.ELEMENT_NODE) {
+                buildGraphicsNode(ctx, (Element)n, parentNode);
+                release((Element)n);
+            }
+            n = next;
+        }
+    }
+
+    /**
+     * Releases the given element, which is built, or the parts of it
+     * which are not kept.
+     */
+    protected void release(Element e) {
+        if (kept.contains(e)) {
+            return;
+        }
+        if (ancestors.contains(e)) {
+            Node n = e.getFirstChild();
+            while (n != null) {
+                Node next = n.getNextSibling();
+                if (n.getNodeType() == Node.ELEMENT_NODE) {
+                    release((Element)n);
+                }
+                n = next;
+            }
+            return;
+        }
+        disposeStyleMaps(e);
+        if (removeElements) {
+            e.getParentNode().removeChild(e);
+        } else {
+            Node n;
+            while ((n = e.getFirstChild()) != null) {
+                e.removeChild(n);
+            }
+        }
+    }
+
+    /**
+     * Removes the computed styles of the given element and of its
+     * descendants.
+     */
+    protected static void disposeStyleMaps(Node n) {
+        if (n instanceof CSSStylableElement) {
+            ((CSSStylableElement)n).setComputedStyleMap(null, null);
+        }
+        for (Node c = n.getFirstChild(); c != null; c = c.getNextSibling()) {
+            if (c.getNodeType() == Node.ELEMENT_NODE) {
+                disposeStyleMaps(c);
+            }
+        }
+    }
+
+    /**
+     * Finds the elements of the given document which must be kept.
+     * @return false if the document references style sheets which
+     *         cannot be checked, in which case nothing is released.
+     */
+    protected boolean findKeptElements(Document document) {
+        for (Node n = document.getFirstChild();
+             n != null;
+             n = n.getNextSibling()) {
+            if (n instanceof CSSStyleSheetNode) {
+                // An external style sheet.
+                return false;
+            }
+        }
+        Element root = document.getDocumentElement();
+        List<String> refs = new ArrayList<String>();
+        IncrementalGVTBuilder.addReferences(root, refs);
+        if (!findKeptElements(root, refs)) {
+            return false;
+        }
+        for (String id : refs) {
+            Element e = document.getElementById(id);
+            if (e != null) {
+                keep(e);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds the elements of the given subtree which are always kept, and
+     * adds the references made by the style sheets to the given list.
+     * @return false if a style sheet imports another one.
+     */
+    protected boolean findKeptElements(Element e, List<String> refs) {
+        if (SVG_NAMESPACE_URI.equals(e.getNamespaceURI()) &&
+            KEPT_ELEMENTS.contains(e.getLocalName())) {
+            keep(e);
+            if (e instanceof CSSStyleSheetNode) {
+                hasStyleSheet = true;
+                String css = e.getTextContent();
+                if (css.indexOf("@import") != -1) {
+                    return false;
+                }
+                IncrementalGVTBuilder.addURLReferences(css, refs);
+            }
+            return true;
+        }
+        for (Node n = e.getFirstChild(); n != null; n = n.getNextSibling()) {
+            if (n.getNodeType() == Node.ELEMENT_NODE) {
+                if (!findKeptElements((Element)n, refs)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Keeps the given element, its descendants and its ancestors.
+     */
+    protected void keep(Element e) {
+        kept.add(e);
+        for (Node n = e.getParentNode();
+             n != null && n.getNodeType() == Node.ELEMENT_NODE;
+             n = n.getParentNode()) {
+            if (!ancestors.add((Element)n)) {
+                break;
+            }
+        }
+    }
+}
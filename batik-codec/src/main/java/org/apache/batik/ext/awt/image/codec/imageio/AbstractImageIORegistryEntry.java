@@ -37,6 +37,7 @@ import org.apache.batik.ext.awt.image.renderable.RedRable;
 import org.apache.batik.ext.awt.image.rendered.Any2sRGBRed;
 import org.apache.batik.ext.awt.image.rendered.CachableRed;
 import org.apache.batik.ext.awt.image.rendered.FormatRed;
+import org.apache.batik.ext.awt.image.spi.DecoderExecutor;
 import org.apache.batik.ext.awt.image.spi.ImageTagRegistry;
 import org.apache.batik.ext.awt.image.spi.MagicNumberRegistryEntry;
 import org.apache.batik.util.ParsedURL;
@@ -104,7 +105,7 @@ public abstract class AbstractImageIORegistryEntry
             errParam = new Object[] {getFormatName()};
         }
 
-        Thread t = new Thread() {
+        DecoderExecutor.execute(new Runnable() {
                 @Override
                 public void run() {
                     Filter filt;
@@ -158,8 +159,7 @@ public abstract class AbstractImageIORegistryEntry
 
                     dr.setSource(filt);
                 }
-            };
-        t.start();
+            });
         return dr;
     }
 
@@ -28,7 +28,9 @@ import java.io.IOException;
 import java.io.OutputStream;
 
 import org.apache.batik.ext.awt.image.GraphicsUtil;
+import org.apache.batik.ext.awt.image.rendered.CachableRed;
 import org.apache.batik.ext.awt.image.rendered.FormatRed;
+import org.apache.batik.ext.awt.image.rendered.TileCacheRed;
 import org.apache.batik.ext.awt.image.spi.ImageWriter;
 import org.apache.batik.ext.awt.image.spi.ImageWriterParams;
 import org.apache.batik.ext.awt.image.spi.ImageWriterRegistry;
@@ -44,7 +46,7 @@ import org.apache.batik.transcoder.image.TIFFTranscoder;
  * @version $Id$
  */
 public class TIFFTranscoderImageIOWriteAdapter 
-    implements TIFFTranscoder.WriteAdapter {
+    implements TIFFTranscoder.StreamingWriteAdapter {
 
     /**
      * @throws TranscoderException 
@@ -53,6 +55,29 @@ public class TIFFTranscoderImageIOWriteAdapter
      */
     public void writeImage(TIFFTranscoder transcoder, BufferedImage img,
             TranscoderOutput output) throws TranscoderException {
+        write(transcoder, GraphicsUtil.wrap(img), img.getHeight(), output);
+    }
+
+    /**
+     * @throws TranscoderException 
+     * @see org.apache.batik.transcoder.image.TIFFTranscoder.StreamingWriteAdapter#writeStreamedImage(TIFFTranscoder,
+     * java.awt.image.RenderedImage, org.apache.batik.transcoder.TranscoderOutput)
+     */
+    public void writeStreamedImage(TIFFTranscoder transcoder, RenderedImage img,
+            TranscoderOutput output) throws TranscoderException {
+        // The writer reads a few rows at a time, so keep the bands it
+        // reads from in the tile cache.
+        CachableRed cr = new TileCacheRed(GraphicsUtil.wrap(img));
+        write(transcoder, cr, cr.getTileHeight(), output);
+    }
+
+    /**
+     * Writes the given image.
+     * @param rows the number of rows of the tiles of the image given to
+     *        the writer
+     */
+    protected void write(TIFFTranscoder transcoder, CachableRed img, int rows,
+            TranscoderOutput output) throws TranscoderException {
 
         TranscodingHints hints = transcoder.getTranscodingHints();
 
@@ -83,7 +108,6 @@ public class TIFFTranscoderImageIOWriteAdapter
         try {
             OutputStream ostream = output.getOutputStream();
             int w = img.getWidth();
-            int h = img.getHeight();
             SinglePixelPackedSampleModel sppsm;
             sppsm = (SinglePixelPackedSampleModel)img.getSampleModel();
             int bands = sppsm.getNumBands();
@@ -91,9 +115,9 @@ public class TIFFTranscoderImageIOWriteAdapter
             for (int i = 0; i < bands; i++)
                 off[i] = i;
             SampleModel sm = new PixelInterleavedSampleModel
-                (DataBuffer.TYPE_BYTE, w, h, bands, w * bands, off);
+                (DataBuffer.TYPE_BYTE, w, rows, bands, w * bands, off);
             
-            RenderedImage rimg = new FormatRed(GraphicsUtil.wrap(img), sm);
+            RenderedImage rimg = new FormatRed(img, sm);
             writer.writeImage(rimg, ostream, params);
             ostream.flush();
         } catch (IOException ex) {
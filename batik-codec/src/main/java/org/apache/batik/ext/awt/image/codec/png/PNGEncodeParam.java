@@ -67,6 +67,12 @@ public abstract class PNGEncodeParam implements ImageEncodeParam {
     /** Constant for use in filtering. */
     public static final int PNG_FILTER_PAETH = 4;
 
+    /**
+     * Constant for use with <code>setFilterStrategy</code>: the filter
+     * of each row is chosen by a trial encoding with all the filters.
+     */
+    public static final int PNG_FILTER_ADAPTIVE = -1;
+
 
     /**
      * Returns an instance of <code>PNGEncodeParam.Palette</code>,
@@ -587,6 +593,83 @@ public abstract class PNGEncodeParam implements ImageEncodeParam {
         return useInterlacing;
     }
 
+    private int compressionLevel = 9;
+
+    /**
+     * Sets the compression level of the image data, from 0 (no
+     * compression) to 9 (best compression).  The default is 9.
+     *
+     * @throws IllegalArgumentException if the level is not between
+     * 0 and 9.
+     */
+    public void setCompressionLevel(int compressionLevel) {
+        if (compressionLevel < 0 || compressionLevel > 9) {
+            throw new IllegalArgumentException(PropertyUtil.getString("PNGEncodeParam25"));
+        }
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * Returns the compression level of the image data.
+     */
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    private int filterStrategy = PNG_FILTER_ADAPTIVE;
+
+    /**
+     * Sets the filter used by the default implementation of
+     * <code>filterRow</code>.  <code>PNG_FILTER_ADAPTIVE</code>, the
+     * default, chooses the best filter for each row; any other value
+     * applies the same filter to all the rows, which is faster.
+     *
+     * @throws IllegalArgumentException if the strategy is not
+     * <code>PNG_FILTER_ADAPTIVE</code> or one of the
+     * <code>PNG_FILTER_*</code> filter types.
+     */
+    public void setFilterStrategy(int filterStrategy) {
+        if (filterStrategy < PNG_FILTER_ADAPTIVE ||
+            filterStrategy > PNG_FILTER_PAETH) {
+            throw new IllegalArgumentException(PropertyUtil.getString("PNGEncodeParam26"));
+        }
+        this.filterStrategy = filterStrategy;
+    }
+
+    /**
+     * Returns the filter used by the default implementation of
+     * <code>filterRow</code>.
+     */
+    public int getFilterStrategy() {
+        return filterStrategy;
+    }
+
+    private int encodingThreads = 1;
+
+    /**
+     * Sets the number of threads which may be used to filter and
+     * compress the image data.  When it is greater than 1, the rows
+     * of a non-interlaced image are cut into stripes compressed
+     * concurrently, so <code>filterRow</code> must be thread-safe.
+     * The default is 1.
+     *
+     * @throws IllegalArgumentException if the number is less than 1.
+     */
+    public void setEncodingThreads(int encodingThreads) {
+        if (encodingThreads < 1) {
+            throw new IllegalArgumentException(PropertyUtil.getString("PNGEncodeParam27"));
+        }
+        this.encodingThreads = encodingThreads;
+    }
+
+    /**
+     * Returns the number of threads which may be used to filter and
+     * compress the image data.
+     */
+    public int getEncodingThreads() {
+        return encodingThreads;
+    }
+
     // bKGD chunk - delegate to subclasses
 
     // In JAI 1.0, 'backgroundSet' was private.  The JDK 1.2 compiler
@@ -1336,7 +1419,9 @@ public abstract class PNGEncodeParam implements ImageEncodeParam {
      * encoding with each of the filter types, and computes the sum of
      * absolute values of the differences between the raw bytes of the
      * current row and the predicted values.  The index of the filter
-     * producing the smallest result is returned.
+     * producing the smallest result is returned.  If a filter strategy
+     * other than <code>PNG_FILTER_ADAPTIVE</code> has been set, only
+     * that filter is applied.
      *
      * <p> As an example, to perform only 'sub' filtering, this method
      * could be implemented (non-optimally) as follows:
@@ -1379,6 +1464,11 @@ public abstract class PNGEncodeParam implements ImageEncodeParam {
                          int bytesPerRow,
                          int bytesPerPixel) {
 
+        if (filterStrategy != PNG_FILTER_ADAPTIVE) {
+            return filterRow(filterStrategy, currRow, prevRow, scratchRows,
+                             bytesPerRow, bytesPerPixel);
+        }
+
         int [] badness = {0, 0, 0, 0, 0};
         int curr, left, up, upleft, diff;
         int pa, pb, pc;
@@ -1502,4 +1592,50 @@ public abstract class PNGEncodeParam implements ImageEncodeParam {
 
         return filterType;
     }
+
+    /**
+     * Applies the given filter to a row of an image.  The parameters
+     * and the result are those of {@link #filterRow(byte[],byte[],byte[][],int,int)}.
+     */
+    protected int filterRow(int filterType,
+                            byte[] currRow,
+                            byte[] prevRow,
+                            byte[][] scratchRows,
+                            int bytesPerRow,
+                            int bytesPerPixel) {
+        byte[] out = scratchRows[filterType];
+        int end = bytesPerRow + bytesPerPixel;
+        switch (filterType) {
+        case PNG_FILTER_NONE:
+            System.arraycopy(currRow, bytesPerPixel,
+                             out, bytesPerPixel, bytesPerRow);
+            break;
+        case PNG_FILTER_SUB:
+            for (int i = bytesPerPixel; i < end; i++) {
+                out[i] = (byte)(currRow[i] - currRow[i - bytesPerPixel]);
+            }
+            break;
+        case PNG_FILTER_UP:
+            for (int i = bytesPerPixel; i < end; i++) {
+                out[i] = (byte)(currRow[i] - prevRow[i]);
+            }
+            break;
+        case PNG_FILTER_AVERAGE:
+            for (int i = bytesPerPixel; i < end; i++) {
+                int left = currRow[i - bytesPerPixel] & 0xff;
+                int up   = prevRow[i] & 0xff;
+                out[i] = (byte)(currRow[i] - ((left + up) >> 1));
+            }
+            break;
+        case PNG_FILTER_PAETH:
+            for (int i = bytesPerPixel; i < end; i++) {
+                int left   = currRow[i - bytesPerPixel] & 0xff;
+                int up     = prevRow[i] & 0xff;
+                int upleft = prevRow[i - bytesPerPixel] & 0xff;
+                out[i] = (byte)(currRow[i] - paethPredictor(left, up, upleft));
+            }
+            break;
+        }
+        return filterType;
+    }
 }
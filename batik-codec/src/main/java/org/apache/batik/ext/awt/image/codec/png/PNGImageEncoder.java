@@ -19,6 +19,7 @@
 package org.apache.batik.ext.awt.image.codec.png;
 
 import org.apache.batik.ext.awt.image.codec.util.ImageEncoderImpl;
+import org.apache.batik.ext.awt.image.rendered.RenderingPool;
 
 import java.awt.Rectangle;
 import java.awt.image.ColorModel;
@@ -31,11 +32,13 @@ import java.io.DataOutput;
 import java.io.DataOutputStream;
 import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.TimeZone;
+import java.util.zip.Adler32;
 import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
 
@@ -337,11 +340,101 @@ public class PNGImageEncoder extends ImageEncoderImpl {
         return (val > maxValue) ? maxValue : val;
     }
 
+    /**
+     * Returns the number of bytes of a row of an interlacing pass, or
+     * of the image.  <code>xOffset</code> and <code>xSkip</code> are
+     * given in samples.
+     */
+    private int getBytesPerRow(int width, int xOffset, int xSkip) {
+        int numSamples = width*numBands;
+        int pixels = (numSamples - xOffset + xSkip - 1)/xSkip;
+        int bytesPerRow = pixels*numBands;
+        if (bitDepth < 8) {
+            int samplesPerByte = 8/bitDepth;
+            bytesPerRow = (bytesPerRow + samplesPerByte - 1)/samplesPerByte;
+        } else if (bitDepth == 16) {
+            bytesPerRow *= 2;
+        }
+        return bytesPerRow;
+    }
+
+    /**
+     * Packs a row of the raster in <code>currRow</code>, starting at
+     * index <code>bpp</code>.  <code>xOffset</code> and
+     * <code>xSkip</code> are given in samples.  This method only
+     * reads the configuration of the encoder, so it may be called
+     * concurrently.
+     */
+    private void packRow(Raster ras, int row, int xOffset, int xSkip,
+                         int[] samples, byte[] currRow) {
+        int minX   = ras.getMinX();
+        int width  = ras.getWidth();
+
+        int samplesPerByte = 8/bitDepth;
+        int numSamples = width*numBands;
+        int maxValue = (1 << bitDepth) - 1;
+
+        ras.getPixels(minX, row, width, 1, samples);
+
+        if (compressGray) {
+            int shift = 8 - bitDepth;
+            for (int i = 0; i < width; i++) {
+                samples[i] >>= shift;
+            }
+        }
+
+        int count = bpp; // leave first 'bpp' bytes zero
+        int pos = 0;
+        int tmp = 0;
+
+        switch (bitDepth) {
+        case 1: case 2: case 4:
+            // Image can only have a single band
+
+            int mask = samplesPerByte - 1;
+            for (int s = xOffset; s < numSamples; s += xSkip) {
+                int val = clamp(samples[s] >> bitShift, maxValue);
+                tmp = (tmp << bitDepth) | val;
+
+                if (pos++  == mask) {
+                    currRow[count++] = (byte)tmp;
+                    tmp = 0;
+                    pos = 0;
+                }
+            }
+
+            // Left shift the last byte
+            if (pos != 0) {
+                tmp <<= (samplesPerByte - pos)*bitDepth;
+                currRow[count++] = (byte)tmp;
+            }
+            break;
+
+        case 8:
+            for (int s = xOffset; s < numSamples; s += xSkip) {
+                for (int b = 0; b < numBands; b++) {
+                    currRow[count++] =
+                        (byte)clamp(samples[s + b] >> bitShift, maxValue);
+                }
+            }
+            break;
+
+        case 16:
+            for (int s = xOffset; s < numSamples; s += xSkip) {
+                for (int b = 0; b < numBands; b++) {
+                    int val = clamp(samples[s + b] >> bitShift, maxValue);
+                    currRow[count++] = (byte)(val >> 8);
+                    currRow[count++] = (byte)(val & 0xff);
+                }
+            }
+            break;
+        }
+    }
+
     private void encodePass(OutputStream os, Raster ras,
                             int xOffset,     int yOffset,
                             int xSkip,       int ySkip)
         throws IOException {
-        int minX   = ras.getMinX();
         int minY   = ras.getMinY();
         int width  = ras.getWidth();
         int height = ras.getHeight();
@@ -349,19 +442,9 @@ public class PNGImageEncoder extends ImageEncoderImpl {
         xOffset *= numBands;
         xSkip   *= numBands;
 
-        int samplesPerByte = 8/bitDepth;
-
-        int numSamples = width*numBands;
-        int[] samples = new int[numSamples];
-
-        int pixels = (numSamples - xOffset + xSkip - 1)/xSkip;
-        int bytesPerRow = pixels*numBands;
-        if (bitDepth < 8) {
-            bytesPerRow = (bytesPerRow + samplesPerByte - 1)/samplesPerByte;
-        } else if (bitDepth == 16) {
-            bytesPerRow *= 2;
-        }
+        int[] samples = new int[width*numBands];
 
+        int bytesPerRow = getBytesPerRow(width, xOffset, xSkip);
         if (bytesPerRow == 0) {
             return;
         }
@@ -371,106 +454,267 @@ public class PNGImageEncoder extends ImageEncoderImpl {
 
         filteredRows = new byte[5][bytesPerRow + bpp];
 
-        int maxValue = (1 << bitDepth) - 1;
-
         for (int row = minY + yOffset; row < minY + height; row += ySkip) {
-            ras.getPixels(minX, row, width, 1, samples);
+            packRow(ras, row, xOffset, xSkip, samples, currRow);
+            writeRow(os, bytesPerRow);
+        }
+    }
 
-            if (compressGray) {
-                int shift = 8 - bitDepth;
-                for (int i = 0; i < width; i++) {
-                    samples[i] >>= shift;
-                }
-            }
+    /**
+     * Filters and writes the current row, which then becomes the
+     * previous row.
+     */
+    private void writeRow(OutputStream os, int bytesPerRow)
+        throws IOException {
+        // Perform filtering
+        int filterType = param.filterRow(currRow, prevRow,
+                                         filteredRows,
+                                         bytesPerRow, bpp);
+
+        os.write(filterType);
+        os.write(filteredRows[filterType], bpp, bytesPerRow);
+
+        // Swap current and previous rows
+        byte[] swap = currRow;
+        currRow = prevRow;
+        prevRow = swap;
+    }
+
+    /**
+     * Filters a row and stores it, preceded by its filter type, in
+     * <code>out</code> at <code>off</code>.
+     */
+    private void filterRow(byte[] curr, byte[] prev, byte[][] scratch,
+                           int bytesPerRow, byte[] out, int off) {
+        int filterType = param.filterRow(curr, prev, scratch,
+                                         bytesPerRow, bpp);
+        out[off] = (byte)filterType;
+        System.arraycopy(scratch[filterType], bpp, out, off + 1, bytesPerRow);
+    }
 
-            int count = bpp; // leave first 'bpp' bytes zero
-            int pos = 0;
-            int tmp = 0;
+    /**
+     * The approximate number of bytes of filtered data compressed by
+     * each thread of a parallel encoding.
+     */
+    private static final int STRIPE_SIZE = 256 * 1024;
 
-            switch (bitDepth) {
-            case 1: case 2: case 4:
-                // Image can only have a single band
+    /**
+     * The size of the deflate window, used as the preset dictionary of
+     * each stripe.
+     */
+    private static final int DICTIONARY_SIZE = 32 * 1024;
 
-                int mask = samplesPerByte - 1;
-                for (int s = xOffset; s < numSamples; s += xSkip) {
-                    int val = clamp(samples[s] >> bitShift, maxValue);
-                    tmp = (tmp << bitDepth) | val;
+    /**
+     * Encodes a non-interlaced image as a single zlib stream made of
+     * stripes of rows read, filtered and compressed concurrently.
+     *
+     * <p>Each stripe is compressed by its own raw deflater, primed with
+     * the last 32K of filtered data of the previous stripe as a preset
+     * dictionary, and ends with a sync flush so that the stripes can be
+     * concatenated.  The rows of the image are read only once: a stripe
+     * filters its rows but the first one, which is filtered once the
+     * last row of the previous stripe has been read.  The Adler-32
+     * checksums of the stripes are combined to build the checksum of
+     * the stream.</p>
+     *
+     * @return false if the image is too small to be cut in stripes.
+     */
+    private boolean encodeStripes(OutputStream os, int threads)
+        throws IOException {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final int bytesPerRow = getBytesPerRow(width, 0, numBands);
+        if (bytesPerRow == 0) {
+            return false;
+        }
 
-                    if (pos++  == mask) {
-                        currRow[count++] = (byte)tmp;
-                        tmp = 0;
-                        pos = 0;
+        final int rowSize = bytesPerRow + 1;
+        final int stripeRows = alignRows(Math.max(1, STRIPE_SIZE / rowSize));
+        final int stripes = (height + stripeRows - 1) / stripeRows;
+        if (stripes < 2) {
+            return false;
+        }
+        final int level = param.getCompressionLevel();
+
+        final byte[][] filtered = new byte[stripes][];
+        final byte[][] firstRows = new byte[stripes][];
+        final byte[][] lastRows = new byte[stripes][];
+        final byte[][] data = new byte[stripes][];
+        final long[] checksums = new long[stripes];
+
+        // Reads the rows of a stripe and filters all of them but the
+        // first one, unless the stripe is the first of the image.
+        final RenderingPool.Task filter = new RenderingPool.Task() {
+            public void run(int i) {
+                int y0 = i * stripeRows;
+                int y1 = Math.min(height, y0 + stripeRows);
+                byte[] out = new byte[(y1 - y0) * rowSize];
+                byte[] curr = new byte[bytesPerRow + bpp];
+                byte[] prev = new byte[bytesPerRow + bpp];
+                byte[][] scratch = new byte[5][bytesPerRow + bpp];
+                int[] samples = new int[width * numBands];
+                Raster ras = getRows(y0, y1 - y0);
+                int minY = ras.getMinY();
+                for (int y = 0; y < y1 - y0; y++) {
+                    packRow(ras, minY + y, 0, numBands, samples, curr);
+                    if ((y > 0) || (i == 0)) {
+                        filterRow(curr, prev, scratch, bytesPerRow,
+                                  out, y * rowSize);
+                    } else {
+                        firstRows[i] = curr.clone();
                     }
+                    byte[] swap = curr;
+                    curr = prev;
+                    prev = swap;
                 }
-
-                // Left shift the last byte
-                if (pos != 0) {
-                    tmp <<= (samplesPerByte - pos)*bitDepth;
-                    currRow[count++] = (byte)tmp;
+                lastRows[i] = prev;
+                filtered[i] = out;
+            }
+        };
+
+        // Compresses the filtered rows of a stripe.
+        final RenderingPool.Task compress = new RenderingPool.Task() {
+            public void run(int i) {
+                byte[] in = filtered[i];
+                Deflater deflater = new Deflater(level, true);
+                try {
+                    if (i > 0) {
+                        byte[] dict = filtered[i - 1];
+                        int dictLen = Math.min(dict.length, DICTIONARY_SIZE);
+                        deflater.setDictionary(dict, dict.length - dictLen,
+                                               dictLen);
+                    }
+                    deflater.setInput(in, 0, in.length);
+                    ByteArrayOutputStream out =
+                        new ByteArrayOutputStream(in.length / 2 + 64);
+                    byte[] buf = new byte[8192];
+                    if (i == stripes - 1) {
+                        deflater.finish();
+                        while (!deflater.finished()) {
+                            int n = deflater.deflate(buf);
+                            out.write(buf, 0, n);
+                        }
+                    } else {
+                        int n;
+                        do {
+                            n = deflater.deflate(buf, 0, buf.length,
+                                                 Deflater.SYNC_FLUSH);
+                            out.write(buf, 0, n);
+                        } while (n == buf.length);
+                    }
+                    data[i] = out.toByteArray();
+                } finally {
+                    deflater.end();
                 }
-                break;
 
-            case 8:
-                for (int s = xOffset; s < numSamples; s += xSkip) {
-                    for (int b = 0; b < numBands; b++) {
-                        currRow[count++] =
-                            (byte)clamp(samples[s + b] >> bitShift, maxValue);
+                Adler32 adler = new Adler32();
+                adler.update(in, 0, in.length);
+                checksums[i] = adler.getValue();
+            }
+        };
+
+        // zlib header, without preset dictionary.
+        int flevel = (level < 2) ? 0 : (level < 6) ? 1 : (level == 6) ? 2 : 3;
+        int cmf = 0x78;
+        int flg = flevel << 6;
+        flg += 31 - ((cmf << 8) + flg) % 31;
+        os.write(cmf);
+        os.write(flg);
+
+        // Process a few stripes per thread at a time, so that the
+        // data of the whole image is never held in memory.
+        long checksum = 1;
+        byte[][] scratch = new byte[5][bytesPerRow + bpp];
+        int batch = threads * 2;
+        for (int first = 0; first < stripes; first += batch) {
+            final int base = first;
+            int count = Math.min(batch, stripes - first);
+            RenderingPool.invoke(threads, count, new RenderingPool.Task() {
+                    public void run(int i) {
+                        filter.run(base + i);
                     }
+                });
+            for (int i = first; i < first + count; i++) {
+                if (filtered[i] == null) {
+                    throw new InterruptedIOException();
                 }
-                break;
+                if (i > 0) {
+                    filterRow(firstRows[i], lastRows[i - 1], scratch,
+                              bytesPerRow, filtered[i], 0);
+                    firstRows[i] = null;
+                    lastRows[i - 1] = null;
+                }
+            }
 
-            case 16:
-                for (int s = xOffset; s < numSamples; s += xSkip) {
-                    for (int b = 0; b < numBands; b++) {
-                        int val = clamp(samples[s + b] >> bitShift, maxValue);
-                        currRow[count++] = (byte)(val >> 8);
-                        currRow[count++] = (byte)(val & 0xff);
+            RenderingPool.invoke(threads, count, new RenderingPool.Task() {
+                    public void run(int i) {
+                        compress.run(base + i);
                     }
+                });
+            for (int i = first; i < first + count; i++) {
+                if (data[i] == null) {
+                    throw new InterruptedIOException();
                 }
-                break;
+                os.write(data[i]);
+                data[i] = null;
+                if (i > 0) {
+                    // Only the last stripe is needed by the next batch.
+                    filtered[i - 1] = null;
+                }
+                checksum = adler32Combine(checksum, checksums[i],
+                                          filtered[i].length);
             }
+        }
 
-            // Perform filtering
-            int filterType = param.filterRow(currRow, prevRow,
-                                             filteredRows,
-                                             bytesPerRow, bpp);
-
-            os.write(filterType);
-            os.write(filteredRows[filterType], bpp, bytesPerRow);
+        os.write((int)(checksum >>> 24) & 0xff);
+        os.write((int)(checksum >>> 16) & 0xff);
+        os.write((int)(checksum >>> 8) & 0xff);
+        os.write((int)checksum & 0xff);
+        return true;
+    }
 
-            // Swap current and previous rows
-            byte[] swap = currRow;
-            currRow = prevRow;
-            prevRow = swap;
-        }
+    /**
+     * Returns the Adler-32 checksum of the concatenation of two blocks
+     * of data, given the checksums of the blocks and the length of the
+     * second one.  This is the algorithm of zlib's
+     * <code>adler32_combine</code>.
+     */
+    static long adler32Combine(long adler1, long adler2, long len2) {
+        final int base = 65521;
+        long rem = len2 % base;
+        long sum1 = adler1 & 0xffff;
+        long sum2 = (rem * sum1) % base;
+        sum1 += (adler2 & 0xffff) + base - 1;
+        sum2 += ((adler1 >> 16) & 0xffff) + ((adler2 >> 16) & 0xffff)
+            + base - rem;
+        if (sum1 >= base) sum1 -= base;
+        if (sum1 >= base) sum1 -= base;
+        if (sum2 >= (base << 1)) sum2 -= (base << 1);
+        if (sum2 >= base) sum2 -= base;
+        return sum1 | (sum2 << 16);
     }
 
-    private void writeIDAT() throws IOException {
-        IDATOutputStream ios = new IDATOutputStream(dataOutput, 8192);
-        DeflaterOutputStream dos =
-            new DeflaterOutputStream(ios, new Deflater(9));
+    /**
+     * The approximate number of bytes of filtered data read from the
+     * image at once when it is not interlaced.
+     */
+    private static final int BAND_SIZE = 1024 * 1024;
 
-        // Future work - don't convert entire image to a Raster It
-        // might seem that you could just call image.getData() but
+    /**
+     * Returns <code>h</code> rows of the image starting at row
+     * <code>y</code>, without the alpha band if it is skipped.
+     */
+    private Raster getRows(int y, int h) {
+        // It might seem that you could just call image.getData() but
         // 'BufferedImage.subImage' doesn't appear to set the Width
         // and height properly of the Child Raster, so the Raster
         // you get back here appears larger than it should.
         // This solves that problem by bounding the raster to the
         // image's bounds...
         Raster ras = image.getData(new Rectangle(image.getMinX(),
-                                                 image.getMinY(),
+                                                 image.getMinY() + y,
                                                  image.getWidth(),
-                                                 image.getHeight()));
-        // System.out.println("Image: [" +
-        //                    image.getMinY()  + ", " +
-        //                    image.getMinX()  + ", " +
-        //                    image.getWidth()  + ", " +
-        //                    image.getHeight() + "]");
-        // System.out.println("Ras: [" +
-        //                    ras.getMinX()  + ", " +
-        //                    ras.getMinY()  + ", " +
-        //                    ras.getWidth()  + ", " +
-        //                    ras.getHeight() + "]");
+                                                 h));
 
         if (skipAlpha) {
             int numBands = ras.getNumBands() - 1;
@@ -478,13 +722,75 @@ public class PNGImageEncoder extends ImageEncoderImpl {
             for (int i = 0; i < numBands; i++) {
                 bandList[i] = i;
             }
-            ras = ras.createChild(0, 0,
+            ras = ras.createChild(ras.getMinX(), ras.getMinY(),
                                   ras.getWidth(), ras.getHeight(),
-                                  0, 0,
+                                  ras.getMinX(), ras.getMinY(),
                                   bandList);
         }
+        return ras;
+    }
+
+    /**
+     * Rounds a number of rows up to a multiple of the tile height of
+     * the image, so that the tiles of an image computed on demand are
+     * not computed twice.
+     */
+    private int alignRows(int rows) {
+        int th = image.getTileHeight();
+        if (th >= image.getHeight()) {
+            return rows;
+        }
+        return (rows + th - 1) / th * th;
+    }
+
+    /**
+     * Encodes the rows of a non-interlaced image, reading the image in
+     * bands so that it is never copied as a whole.
+     */
+    private void encodeRows(OutputStream os) throws IOException {
+        int width  = image.getWidth();
+        int height = image.getHeight();
+
+        int bytesPerRow = getBytesPerRow(width, 0, numBands);
+        if (bytesPerRow == 0) {
+            return;
+        }
+
+        currRow = new byte[bytesPerRow + bpp];
+        prevRow = new byte[bytesPerRow + bpp];
+
+        filteredRows = new byte[5][bytesPerRow + bpp];
+
+        int[] samples = new int[width*numBands];
+
+        int bandRows = alignRows(Math.max(1, BAND_SIZE / (bytesPerRow + 1)));
+        for (int y = 0; y < height; y += bandRows) {
+            Raster ras = getRows(y, Math.min(bandRows, height - y));
+            int minY = ras.getMinY();
+            for (int row = minY; row < minY + ras.getHeight(); row++) {
+                packRow(ras, row, 0, numBands, samples, currRow);
+                writeRow(os, bytesPerRow);
+            }
+        }
+    }
+
+    private void writeIDAT() throws IOException {
+        IDATOutputStream ios = new IDATOutputStream(dataOutput, 8192);
+
+        int threads = param.getEncodingThreads();
+        if (!interlace && threads > 1 && encodeStripes(ios, threads)) {
+            ios.flush();
+            ios.close();
+            return;
+        }
+
+        Deflater deflater = new Deflater(param.getCompressionLevel());
+        DeflaterOutputStream dos = new DeflaterOutputStream(ios, deflater);
 
         if (interlace) {
+            // The passes need the whole image.
+            Raster ras = getRows(0, image.getHeight());
+
             // Interlacing pass 1
             encodePass(dos, ras, 0, 0, 8, 8);
             // Interlacing pass 2
@@ -500,11 +806,12 @@ public class PNGImageEncoder extends ImageEncoderImpl {
             // Interlacing pass 7
             encodePass(dos, ras, 0, 1, 1, 2);
         } else {
-            encodePass(dos, ras, 0, 0, 1, 1);
+            encodeRows(dos);
         }
 
         dos.finish();
         dos.close();
+        deflater.end();
         ios.flush();
         ios.close();
     }
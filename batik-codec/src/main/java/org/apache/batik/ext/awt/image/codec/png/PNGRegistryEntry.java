@@ -19,9 +19,6 @@
 package org.apache.batik.ext.awt.image.codec.png;
 
 import java.awt.geom.Rectangle2D;
-import java.awt.image.BufferedImage;
-import java.awt.image.ColorModel;
-import java.awt.image.WritableRaster;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -32,6 +29,8 @@ import org.apache.batik.ext.awt.image.renderable.RedRable;
 import org.apache.batik.ext.awt.image.rendered.Any2sRGBRed;
 import org.apache.batik.ext.awt.image.rendered.CachableRed;
 import org.apache.batik.ext.awt.image.rendered.FormatRed;
+import org.apache.batik.ext.awt.image.rendered.TileCacheRed;
+import org.apache.batik.ext.awt.image.spi.DecoderExecutor;
 import org.apache.batik.ext.awt.image.spi.ImageTagRegistry;
 import org.apache.batik.ext.awt.image.spi.MagicNumberRegistryEntry;
 import org.apache.batik.util.ParsedURL;
@@ -46,6 +45,12 @@ public class PNGRegistryEntry
 
     static final byte [] signature = {(byte)0x89, 80, 78, 71, 13, 10, 26, 10};
 
+    /**
+     * The size of the tiles in which the decoded image is converted
+     * to sRGB.
+     */
+    static final int TILE_SIZE = 256;
+
     public PNGRegistryEntry() {
         super("PNG", "png", "image/png", 0, signature);
     }
@@ -76,7 +81,7 @@ public class PNGRegistryEntry
             errParam = new Object[] {"PNG"};
         }
 
-        Thread t = new Thread() {
+        DecoderExecutor.execute(new Runnable() {
                 public void run() {
                     Filter filt;
                     try {
@@ -89,18 +94,16 @@ public class PNGRegistryEntry
                             param.setPerformGammaCorrection(true);
                             param.setDisplayExponent(2.2f); // sRGB gamma
                         }
-                        CachableRed cr = new PNGRed(is, param);
+                        PNGRed png = new PNGRed(is, param);
                         dr.setBounds(new Rectangle2D.Double
-                                     (0, 0, cr.getWidth(), cr.getHeight()));
+                                     (0, 0, png.getWidth(), png.getHeight()));
 
-                        cr = new Any2sRGBRed(cr);
+                        // The decoded image is kept in its own, usually
+                        // more compact, format and the tiles are only
+                        // converted to sRGB when they are drawn.
+                        CachableRed cr = new Any2sRGBRed(png);
                         cr = new FormatRed(cr, GraphicsUtil.sRGB_Unpre);
-                        WritableRaster wr = (WritableRaster)cr.getData();
-                        ColorModel cm = cr.getColorModel();
-                        BufferedImage image;
-                        image = new BufferedImage
-                            (cm, wr, cm.isAlphaPremultiplied(), null);
-                        cr = GraphicsUtil.wrap(image);
+                        cr = new TileCacheRed(cr, TILE_SIZE, TILE_SIZE);
                         filt = new RedRable(cr);
                     } catch (IOException ioe) {
                         filt = ImageTagRegistry.getBrokenLinkImage
@@ -117,8 +120,7 @@ public class PNGRegistryEntry
 
                     dr.setSource(filt);
                 }
-            };
-        t.start();
+            });
         return dr;
     }
 }
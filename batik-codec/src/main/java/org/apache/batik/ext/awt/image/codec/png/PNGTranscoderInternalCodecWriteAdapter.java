@@ -19,6 +19,7 @@
 package org.apache.batik.ext.awt.image.codec.png;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.RenderedImage;
 import java.io.IOException;
 import java.io.OutputStream;
 
@@ -35,7 +36,7 @@ import org.apache.batik.transcoder.image.PNGTranscoder;
  * @version $Id$
  */
 public class PNGTranscoderInternalCodecWriteAdapter implements
-        PNGTranscoder.WriteAdapter {
+        PNGTranscoder.StreamingWriteAdapter {
 
     /**
      * @throws TranscoderException
@@ -55,6 +56,41 @@ public class PNGTranscoderInternalCodecWriteAdapter implements
                 img = IndexImage.getIndexedImage(img,1<<n);
         }
 
+        encode(transcoder, img, output);
+    }
+
+    /**
+     * @throws TranscoderException
+     * @see org.apache.batik.transcoder.image.PNGTranscoder.StreamingWriteAdapter#writeStreamedImage(
+     * org.apache.batik.transcoder.image.PNGTranscoder, java.awt.image.RenderedImage,
+     * org.apache.batik.transcoder.TranscoderOutput)
+     */
+    public void writeStreamedImage(PNGTranscoder transcoder, RenderedImage img,
+            TranscoderOutput output) throws TranscoderException {
+        TranscodingHints hints = transcoder.getTranscodingHints();
+
+        if (hints.containsKey(PNGTranscoder.KEY_INDEXED)) {
+            int n = (Integer) hints.get(PNGTranscoder.KEY_INDEXED);
+            if (n==1||n==2||n==4||n==8) {
+                // The palette is computed from the whole image.
+                BufferedImage bi = transcoder.createImage(img.getWidth(),
+                                                          img.getHeight());
+                img.copyData(bi.getRaster());
+                writeImage(transcoder, bi, output);
+                return;
+            }
+        }
+        encode(transcoder, img, output);
+    }
+
+    /**
+     * Encodes the given image with the parameters given by the hints
+     * of the transcoder.  The encoder reads the image in bands.
+     */
+    protected void encode(PNGTranscoder transcoder, RenderedImage img,
+            TranscoderOutput output) throws TranscoderException {
+        TranscodingHints hints = transcoder.getTranscodingHints();
+
         PNGEncodeParam params = PNGEncodeParam.getDefaultEncodeParam(img);
         if (params instanceof PNGEncodeParam.RGB) {
             ((PNGEncodeParam.RGB)params).setBackgroundRGB
@@ -78,6 +114,22 @@ public class PNGTranscoderInternalCodecWriteAdapter implements
         }
 
 
+        if (hints.containsKey(PNGTranscoder.KEY_COMPRESSION_LEVEL)) {
+            params.setCompressionLevel
+                ((Integer) hints.get(PNGTranscoder.KEY_COMPRESSION_LEVEL));
+        }
+        if (hints.containsKey(PNGTranscoder.KEY_FILTER_STRATEGY)) {
+            params.setFilterStrategy
+                ((Integer) hints.get(PNGTranscoder.KEY_FILTER_STRATEGY));
+        }
+        if (hints.containsKey(PNGTranscoder.KEY_ENCODING_THREADS)) {
+            params.setEncodingThreads
+                ((Integer) hints.get(PNGTranscoder.KEY_ENCODING_THREADS));
+        } else if (hints.containsKey(PNGTranscoder.KEY_RENDERING_THREADS)) {
+            params.setEncodingThreads(Math.max(1, (Integer) hints.get
+                                  (PNGTranscoder.KEY_RENDERING_THREADS)));
+        }
+
         float PixSzMM = transcoder.getUserAgent().getPixelUnitToMillimeter();
         // num Pixs in 1 Meter
         int numPix      = (int)((1000/PixSzMM)+0.5);
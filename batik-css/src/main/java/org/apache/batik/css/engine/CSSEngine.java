@@ -118,6 +118,12 @@ public abstract class CSSEngine {
         return null;
     }
 
+    /**
+     * The number of rules from which a style sheet is matched through
+     * its {@link RuleIndex} rather than by testing all its rules.
+     */
+    protected static final int RULE_INDEX_THRESHOLD = 16;
+
     /**
      * The user agent used for showing error messages.
      */
@@ -343,6 +349,17 @@ public abstract class CSSEngine {
      */
     protected CSSConditionFactory cssConditionFactory;
 
+    /**
+     * The configuration of this engine used to share style-sheets.
+     * @see #getStyleSheetConfiguration()
+     */
+    protected Object styleSheetConfiguration;
+
+    /**
+     * The number of style-sheets this engine failed to load.
+     */
+    protected int styleSheetLoadErrors;
+
     /**
      * Creates a new CSSEngine.
      * @param doc The associated document.
@@ -1117,6 +1134,159 @@ public abstract class CSSEngine {
         return ss;
     }
 
+    /**
+     * Returns a parsed style-sheet which may be shared with the other
+     * engines of the process. The style-sheet is taken from the
+     * {@link StyleSheetCache#getDefaultCache() default cache} when an
+     * engine with the same configuration already parsed it, and neither
+     * the resource nor the style-sheets it imports have been modified
+     * since. A style-sheet is not cached when one of its imports could
+     * not be loaded. It must not be modified by the caller.
+     * @param uri The style-sheet URI.
+     * @param media The target media of the style-sheet.
+     */
+    public StyleSheet parseSharedStyleSheet(ParsedURL uri, String media)
+        throws DOMException {
+        if (uri == null) {
+            return parseStyleSheet(uri, media);
+        }
+        long stamp = StyleSheetCache.getModificationStamp(uri);
+        if (stamp == -1) {
+            return parseStyleSheet(uri, media);
+        }
+
+        // Check that access to the uri is allowed
+        cssContext.checkLoadExternalResource(uri, documentURI);
+
+        StyleSheetCache cache = StyleSheetCache.getDefaultCache();
+        List key = new ArrayList(4);
+        key.add(getStyleSheetConfiguration());
+        key.add(uri.toString());
+        key.add(media);
+        key.add(stamp);
+        StyleSheetCache.Entry entry = cache.get(key);
+        if (entry != null) {
+            StyleSheet ss = entry.getStyleSheet();
+            if (entry.getDependencies().equals
+                (getImportDependencies(ss, uri))) {
+                checkImportedStyleSheets(ss);
+                return ss;
+            }
+            // An imported style-sheet was modified.
+            cache.remove(key);
+        }
+
+        StyleSheet ss = new StyleSheet();
+        int errors = styleSheetLoadErrors;
+        try {
+            ss.setMedia(parser.parseMedia(media));
+            parseStyleSheet(ss, new InputSource(uri.toString()), uri);
+        } catch (SecurityException e) {
+            throw e;
+        } catch (Exception e) {
+            String m = e.getMessage();
+            if (m == null) m = e.getClass().getName();
+            String s = Messages.formatMessage
+                ("syntax.error.at", new Object[] { uri.toString(), m });
+            DOMException de = new DOMException(DOMException.SYNTAX_ERR, s);
+            if (userAgent == null) throw de;
+            userAgent.displayError(de);
+            // Do not keep a style-sheet which may be incomplete.
+            return ss;
+        }
+        if (errors != styleSheetLoadErrors) {
+            // An imported style-sheet could not be loaded.
+            return ss;
+        }
+        List deps = getImportDependencies(ss, uri);
+        if (deps != null) {
+            cache.put(key, new StyleSheetCache.Entry(ss, deps));
+        }
+        return ss;
+    }
+
+    /**
+     * Returns the parent URI, resolved URI and modification stamp of
+     * every style-sheet imported, directly or not, by the given one, or
+     * null if the modifications of one of them cannot be detected.
+     * @param ss The style-sheet.
+     * @param uri The URI of the style-sheet.
+     */
+    protected List getImportDependencies(StyleSheet ss, ParsedURL uri) {
+        List result = new ArrayList();
+        return addImportDependencies(ss, uri, result) ? result : null;
+    }
+
+    /**
+     * Appends the import dependencies of the given style-sheet to a list.
+     * @return false if the modifications of an imported style-sheet
+     *         cannot be detected.
+     */
+    protected boolean addImportDependencies(StyleSheet ss, ParsedURL uri,
+                                            List deps) {
+        int len = ss.getSize();
+        for (int i = 0; i < len; i++) {
+            Rule r = ss.getRule(i);
+            if (r.getType() != ImportRule.TYPE) {
+                // @import rules must be the first rules.
+                break;
+            }
+            ImportRule ir = (ImportRule)r;
+            long stamp = StyleSheetCache.getModificationStamp(ir.getURI());
+            if (stamp == -1) {
+                return false;
+            }
+            deps.add(uri.toString());
+            deps.add(ir.getURI().toString());
+            deps.add(stamp);
+            if (!addImportDependencies(ir, ir.getURI(), deps)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks that this engine is allowed to load the style-sheets
+     * imported by the given shared style-sheet.
+     */
+    protected void checkImportedStyleSheets(StyleSheet ss) {
+        int len = ss.getSize();
+        for (int i = 0; i < len; i++) {
+            Rule r = ss.getRule(i);
+            if (r.getType() != ImportRule.TYPE) {
+                // @import rules must be the first rules.
+                break;
+            }
+            ImportRule ir = (ImportRule)r;
+            cssContext.checkLoadExternalResource(ir.getURI(), documentURI);
+            checkImportedStyleSheets(ir);
+        }
+    }
+
+    /**
+     * Returns an object which identifies the way this engine builds
+     * style-sheets: two engines with equal configurations produce the
+     * same style-sheet from a given resource.
+     */
+    protected Object getStyleSheetConfiguration() {
+        if (styleSheetConfiguration == null) {
+            List l = new ArrayList(valueManagers.length +
+                                   shorthandManagers.length + 3);
+            l.add(getClass().getName());
+            l.add(classNamespaceURI);
+            l.add(classLocalName);
+            for (ValueManager vm : valueManagers) {
+                l.add(vm.getClass().getName());
+            }
+            for (ShorthandManager sm : shorthandManagers) {
+                l.add(sm.getClass().getName());
+            }
+            styleSheetConfiguration = l;
+        }
+        return styleSheetConfiguration;
+    }
+
     /**
      * Parses and creates a new style-sheet.
      * @param is The input source used to read the document.
@@ -1152,6 +1322,7 @@ public abstract class CSSEngine {
     public void parseStyleSheet(StyleSheet ss, ParsedURL uri)
             throws DOMException {
         if (uri == null) {
+            styleSheetLoadErrors++;
             String s = Messages.formatMessage
                 ("syntax.error.at",
                  new Object[] { "Null Document reference", "" });
@@ -1168,6 +1339,7 @@ public abstract class CSSEngine {
         } catch (SecurityException e) {
             throw e;
         } catch (Exception e) {
+            styleSheetLoadErrors++;
             String m = e.getMessage();
             if (m == null) m = e.getClass().getName();
             String s = Messages.formatMessage
@@ -1306,6 +1478,10 @@ public abstract class CSSEngine {
                                     Element elt,
                                     String pseudo) {
         int len = ss.getSize();
+        if (len >= RULE_INDEX_THRESHOLD) {
+            addIndexedMatchingRules(rules, ss.getRuleIndex(), elt, pseudo);
+            return;
+        }
         for (int i = 0; i < len; i++) {
             Rule r = ss.getRule(i);
             switch (r.getType()) {
@@ -1332,6 +1508,36 @@ public abstract class CSSEngine {
         }
     }
 
+    /**
+     * Adds the rules matching the element/pseudo-element to the list,
+     * testing only the candidates returned by the given rule index.
+     * The rules are added in the same order, and as many times, as
+     * they would be by a sequential scan of the style sheet.
+     */
+    protected void addIndexedMatchingRules(List rules,
+                                           RuleIndex ri,
+                                           Element elt,
+                                           String pseudo) {
+        int[] candidates = ri.getCandidates(elt);
+        for (int c : candidates) {
+            Rule r = ri.getRule(c);
+            int j = ri.getSelectorIndex(c);
+            if (j >= 0) {
+                StyleRule style = (StyleRule)r;
+                ExtendedSelector s =
+                    (ExtendedSelector)style.getSelectorList().item(j);
+                if (s.match(elt, pseudo)) {
+                    rules.add(style);
+                }
+            } else {
+                MediaRule mr = (MediaRule)r;
+                if (mediaMatch(mr.getMediaList())) {
+                    addMatchingRules(rules, mr, elt, pseudo);
+                }
+            }
+        }
+    }
+
     /**
      * Adds the rules contained in the given list to a stylemap.
      */
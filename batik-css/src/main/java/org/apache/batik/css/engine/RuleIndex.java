@@ -0,0 +1,367 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.css.engine;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.batik.css.engine.sac.AbstractDescendantSelector;
+import org.apache.batik.css.engine.sac.AbstractSiblingSelector;
+import org.apache.batik.css.engine.sac.CSSAndCondition;
+import org.apache.batik.css.engine.sac.CSSClassCondition;
+import org.apache.batik.css.engine.sac.CSSConditionalSelector;
+import org.apache.batik.css.engine.sac.CSSElementSelector;
+import org.apache.batik.css.engine.sac.CSSIdCondition;
+import org.w3c.css.sac.Condition;
+import org.w3c.css.sac.Selector;
+import org.w3c.css.sac.SelectorList;
+import org.w3c.dom.Element;
+
+/**
+ * This class indexes the selectors of a style sheet by the id, class
+ * or element name they require on the element they match, so that
+ * only a few of them have to be tested for a given element.
+ *
+ * <p>Each entry of the index is either a selector of a style rule, or
+ * a nested media or import rule. The entries are numbered in the order
+ * they appear in the style sheet, and the candidates for an element
+ * are returned in that order. Nested rules are always candidates, since
+ * they must be matched against the current media.</p>
+ *
+ * <p>An index is immutable once built. It must be rebuilt when the
+ * style sheet is modified.</p>
+ *
+ * @version $Id$
+ */
+public class RuleIndex {
+
+    /**
+     * The empty entry list.
+     */
+    protected static final int[] EMPTY = new int[0];
+
+    /**
+     * The rule of each entry.
+     */
+    protected Rule[] rules;
+
+    /**
+     * The selector index of each entry in the selector list of its rule,
+     * or -1 for nested style sheets.
+     */
+    protected int[] selectors;
+
+    /**
+     * The entries whose rightmost selector requires an id.
+     */
+    protected Map<String, int[]> ids = new HashMap<String, int[]>();
+
+    /**
+     * The entries whose rightmost selector requires a class.
+     */
+    protected Map<String, int[]> classes = new HashMap<String, int[]>();
+
+    /**
+     * The entries whose rightmost selector requires an element name.
+     */
+    protected Map<String, int[]> names = new HashMap<String, int[]>();
+
+    /**
+     * The entries which must be tested for every element.
+     */
+    protected int[] universal = EMPTY;
+
+    /**
+     * Creates a new index of the rules currently in the given style sheet.
+     */
+    public RuleIndex(StyleSheet ss) {
+        int len = ss.getSize();
+        int count = 0;
+        for (int i = 0; i < len; i++) {
+            Rule r = ss.getRule(i);
+            if (r.getType() == StyleRule.TYPE) {
+                count += ((StyleRule)r).getSelectorList().getLength();
+            } else {
+                count++;
+            }
+        }
+        rules = new Rule[count];
+        selectors = new int[count];
+
+        int e = 0;
+        for (int i = 0; i < len; i++) {
+            Rule r = ss.getRule(i);
+            switch (r.getType()) {
+            case StyleRule.TYPE:
+                SelectorList sl = ((StyleRule)r).getSelectorList();
+                int slen = sl.getLength();
+                for (int j = 0; j < slen; j++) {
+                    rules[e] = r;
+                    selectors[e] = j;
+                    if (!addEntry(sl.item(j), e)) {
+                        universal = add(universal, e);
+                    }
+                    e++;
+                }
+                break;
+
+            case MediaRule.TYPE:
+            case ImportRule.TYPE:
+                rules[e] = r;
+                selectors[e] = -1;
+                universal = add(universal, e);
+                e++;
+                break;
+
+            default:
+                // Other rules are never matched.
+                rules[e] = r;
+                selectors[e] = -1;
+                e++;
+            }
+        }
+        universal = trim(universal);
+        trim(ids);
+        trim(classes);
+        trim(names);
+    }
+
+    /**
+     * Returns the rule of the given entry.
+     */
+    public Rule getRule(int entry) {
+        return rules[entry];
+    }
+
+    /**
+     * Returns the index, in the selector list of its rule, of the
+     * selector of the given entry, or -1 if the entry is a nested
+     * style sheet.
+     */
+    public int getSelectorIndex(int entry) {
+        return selectors[entry];
+    }
+
+    /**
+     * Returns, in ascending order, the entries which may match the
+     * given element. The returned array must not be modified.
+     */
+    public int[] getCandidates(Element elt) {
+        int[][] lists = new int[4][];
+        int n = 0;
+        int total = 0;
+
+        if (universal.length > 0) {
+            lists[n++] = universal;
+            total += universal.length;
+        }
+        if (!names.isEmpty()) {
+            String name = (elt.getPrefix() == null)
+                ? elt.getNodeName()
+                : elt.getLocalName();
+            int[] l = names.get(name);
+            if (l != null) {
+                lists[n++] = l;
+                total += l.length;
+            }
+        }
+        if (elt instanceof CSSStylableElement) {
+            CSSStylableElement se = (CSSStylableElement)elt;
+            if (!ids.isEmpty()) {
+                int[] l = ids.get(se.getXMLId());
+                if (l != null) {
+                    lists[n++] = l;
+                    total += l.length;
+                }
+            }
+            if (!classes.isEmpty()) {
+                String attr = se.getCSSClass();
+                int len = (attr == null) ? 0 : attr.length();
+                int start = -1;
+                for (int i = 0; i <= len; i++) {
+                    if (i == len || Character.isSpaceChar(attr.charAt(i))) {
+                        if (start != -1) {
+                            int[] l = classes.get(attr.substring(start, i));
+                            if (l != null) {
+                                if (n == lists.length) {
+                                    int[][] t = new int[n * 2][];
+                                    System.arraycopy(lists, 0, t, 0, n);
+                                    lists = t;
+                                }
+                                lists[n++] = l;
+                                total += l.length;
+                            }
+                            start = -1;
+                        }
+                    } else if (start == -1) {
+                        start = i;
+                    }
+                }
+            }
+        }
+
+        switch (n) {
+        case 0:
+            return EMPTY;
+        case 1:
+            return lists[0];
+        }
+
+        int[] result = new int[total];
+        int pos = 0;
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(lists[i], 0, result, pos, lists[i].length);
+            pos += lists[i].length;
+        }
+        Arrays.sort(result);
+
+        // The same class may be listed several times on an element.
+        int len = 1;
+        for (int i = 1; i < total; i++) {
+            if (result[i] != result[len - 1]) {
+                result[len++] = result[i];
+            }
+        }
+        if (len < total) {
+            int[] t = new int[len];
+            System.arraycopy(result, 0, t, 0, len);
+            result = t;
+        }
+        return result;
+    }
+
+    /**
+     * Adds the given entry to the table corresponding to the rightmost
+     * simple selector of <code>s</code>.
+     * @return false if the selector cannot be indexed.
+     */
+    protected boolean addEntry(Selector s, int entry) {
+        if (s instanceof AbstractDescendantSelector) {
+            AbstractDescendantSelector ds = (AbstractDescendantSelector)s;
+            return addEntry(ds.getSimpleSelector(), entry);
+        }
+        if (s instanceof AbstractSiblingSelector) {
+            AbstractSiblingSelector ss = (AbstractSiblingSelector)s;
+            return addEntry(ss.getSiblingSelector(), entry);
+        }
+        if (s instanceof CSSConditionalSelector) {
+            CSSConditionalSelector cs = (CSSConditionalSelector)s;
+            String id = getId(cs.getCondition());
+            if (id != null) {
+                put(ids, id, entry);
+                return true;
+            }
+            String cl = getClass(cs.getCondition());
+            if (cl != null) {
+                put(classes, cl, entry);
+                return true;
+            }
+            return addEntry(cs.getSimpleSelector(), entry);
+        }
+        if (s instanceof CSSElementSelector) {
+            String name = ((CSSElementSelector)s).getLocalName();
+            if (name != null) {
+                put(names, name, entry);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the id required by the given condition, if any.
+     */
+    protected static String getId(Condition c) {
+        if (c instanceof CSSIdCondition) {
+            return ((CSSIdCondition)c).getValue();
+        }
+        if (c instanceof CSSAndCondition) {
+            CSSAndCondition ac = (CSSAndCondition)c;
+            String id = getId(ac.getFirstCondition());
+            return (id != null) ? id : getId(ac.getSecondCondition());
+        }
+        return null;
+    }
+
+    /**
+     * Returns one of the classes required by the given condition, if any.
+     */
+    protected static String getClass(Condition c) {
+        if (c instanceof CSSClassCondition) {
+            return ((CSSClassCondition)c).getValue();
+        }
+        if (c instanceof CSSAndCondition) {
+            CSSAndCondition ac = (CSSAndCondition)c;
+            String cl = getClass(ac.getFirstCondition());
+            return (cl != null) ? cl : getClass(ac.getSecondCondition());
+        }
+        return null;
+    }
+
+    /**
+     * Appends an entry to the list associated with the given key.
+     */
+    protected static void put(Map<String, int[]> m, String key, int entry) {
+        int[] l = m.get(key);
+        int[] t = add((l == null) ? EMPTY : l, entry);
+        if (t != l) {
+            m.put(key, t);
+        }
+    }
+
+    /**
+     * Appends an entry to the given list. While the index is built, the
+     * first element of a list holds its size.
+     * @return the given list, or a larger copy of it.
+     */
+    protected static int[] add(int[] l, int entry) {
+        int size = (l.length == 0) ? 0 : l[0];
+        if (size + 1 >= l.length) {
+            int[] t = new int[Math.max(4, l.length * 2)];
+            System.arraycopy(l, 0, t, 0, l.length);
+            l = t;
+        }
+        l[++size] = entry;
+        l[0] = size;
+        return l;
+    }
+
+    /**
+     * Removes the size and the unused elements of a list built with
+     * {@link #add(int[],int)}.
+     */
+    protected static int[] trim(int[] l) {
+        if (l.length == 0) {
+            return l;
+        }
+        int[] t = new int[l[0]];
+        System.arraycopy(l, 1, t, 0, t.length);
+        return t;
+    }
+
+    /**
+     * Trims all the lists of the given table.
+     */
+    protected static void trim(Map<String, int[]> m) {
+        for (Map.Entry<String, int[]> e : m.entrySet()) {
+            e.setValue(trim(e.getValue()));
+        }
+    }
+}
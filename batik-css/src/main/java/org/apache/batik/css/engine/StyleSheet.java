@@ -58,6 +58,11 @@ public class StyleSheet {
      */
     protected String title;
 
+    /**
+     * The index of the rules, built on demand.
+     */
+    protected volatile RuleIndex ruleIndex;
+
     /**
      * Sets the media to use to compute the styles.
      */
@@ -134,6 +139,7 @@ public class StyleSheet {
     public void clear() {
         size = 0;
         rules = new Rule[10];
+        ruleIndex = null;
     }
 
     /**
@@ -146,6 +152,20 @@ public class StyleSheet {
             rules = t;
         }
         rules[size++] = r;
+        ruleIndex = null;
+    }
+
+    /**
+     * Returns the index of the rules of this style sheet. The index is
+     * built on the first call following a modification of the sheet.
+     */
+    public RuleIndex getRuleIndex() {
+        RuleIndex ri = ruleIndex;
+        if (ri == null) {
+            ri = new RuleIndex(this);
+            ruleIndex = ri;
+        }
+        return ri;
     }
 
     /**
@@ -0,0 +1,196 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.css.engine;
+
+import java.io.File;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.jar.JarEntry;
+
+import org.apache.batik.util.ParsedURL;
+
+/**
+ * A cache of parsed style-sheets, shared by the CSS engines of a process.
+ *
+ * <p>The cached style-sheets are never modified once parsed, so they are
+ * given as is to every engine which asks for them. The keys are built
+ * by {@link CSSEngine#parseSharedStyleSheet} from the configuration of
+ * the engine, the URI and media of the style-sheet and the modification
+ * stamp of the URI, so that a modified file is parsed again. Each entry
+ * also records the modification stamps of the imported style-sheets,
+ * which are checked again every time the entry is used.</p>
+ *
+ * @version $Id$
+ */
+public class StyleSheetCache {
+
+    /**
+     * The default number of style-sheets kept by a cache.
+     */
+    public static final int DEFAULT_SIZE = 32;
+
+    /**
+     * The default cache.
+     */
+    protected static StyleSheetCache defaultCache =
+        new StyleSheetCache(DEFAULT_SIZE);
+
+    /**
+     * Returns the cache shared by all the CSS engines.
+     */
+    public static StyleSheetCache getDefaultCache() {
+        return defaultCache;
+    }
+
+    /**
+     * The entries, in access order.
+     */
+    protected LinkedHashMap<Object, Entry> map;
+
+    /**
+     * The maximum number of style-sheets to keep.
+     */
+    protected int size;
+
+    /**
+     * Creates a new cache.
+     * @param size the maximum number of style-sheets to keep
+     */
+    public StyleSheetCache(int size) {
+        this.size = size;
+        map = new LinkedHashMap<Object, Entry>(16, 0.75f, true) {
+            protected boolean removeEldestEntry
+                (Map.Entry<Object, Entry> eldest) {
+                return size() > StyleSheetCache.this.size;
+            }
+        };
+    }
+
+    /**
+     * Returns the entry associated with the given key, or null.
+     */
+    public synchronized Entry get(Object key) {
+        return map.get(key);
+    }
+
+    /**
+     * Associates an entry with the given key.
+     */
+    public synchronized void put(Object key, Entry e) {
+        map.put(key, e);
+    }
+
+    /**
+     * Removes the entry associated with the given key.
+     */
+    public synchronized void remove(Object key) {
+        map.remove(key);
+    }
+
+    /**
+     * Removes all the style-sheets from this cache.
+     */
+    public synchronized void clear() {
+        map.clear();
+    }
+
+    /**
+     * Returns the number of style-sheets in this cache.
+     */
+    public synchronized int getCount() {
+        return map.size();
+    }
+
+    /**
+     * Returns the modification stamp of the resource designated by the
+     * given URI, or -1 if the resource cannot be cached because its
+     * modifications cannot be detected cheaply. Only local files, jar
+     * entries and data URIs can be cached.
+     */
+    public static long getModificationStamp(ParsedURL uri) {
+        String protocol = uri.getProtocol();
+        if ("data".equals(protocol)) {
+            return 0;
+        }
+        try {
+            if ("file".equals(protocol)) {
+                File f = new File(new URL(uri.toString()).toURI());
+                long t = f.lastModified();
+                return (t == 0) ? -1 : t;
+            }
+            if ("jar".equals(protocol)) {
+                URLConnection c = new URL(uri.toString()).openConnection();
+                JarEntry je = ((JarURLConnection)c).getJarEntry();
+                if (je != null) {
+                    long t = je.getTime();
+                    return (t == -1) ? 0 : t;
+                }
+            }
+        } catch (Exception e) {
+            // Fall through: the resource will not be cached.
+        }
+        return -1;
+    }
+
+    /**
+     * A cached style-sheet, with the state of the resources it was
+     * built from.
+     */
+    public static class Entry {
+
+        /**
+         * The parsed style-sheet.
+         */
+        protected StyleSheet styleSheet;
+
+        /**
+         * The state of the imported style-sheets when it was parsed.
+         */
+        protected Object dependencies;
+
+        /**
+         * Creates a new entry.
+         * @param ss the parsed style-sheet
+         * @param dependencies an object to compare with equals() to the
+         *        state of the imported style-sheets when the entry is used
+         */
+        public Entry(StyleSheet ss, Object dependencies) {
+            this.styleSheet = ss;
+            this.dependencies = dependencies;
+        }
+
+        /**
+         * Returns the parsed style-sheet.
+         */
+        public StyleSheet getStyleSheet() {
+            return styleSheet;
+        }
+
+        /**
+         * Returns the state of the imported style-sheets when the
+         * style-sheet was parsed.
+         */
+        public Object getDependencies() {
+            return dependencies;
+        }
+    }
+}
@@ -23,6 +23,7 @@ import org.w3c.dom.Attr;
 import org.w3c.dom.DOMException;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
 import org.w3c.dom.TypeInfo;
 import org.w3c.dom.events.MutationEvent;
 
@@ -59,6 +60,14 @@ public abstract class AbstractAttr extends AbstractParentNode implements Attr {
      */
     protected TypeInfo typeInfo;
 
+    /**
+     * The value of this attribute, when it is not stored in child
+     * nodes.  The text node holding the value is only created when
+     * the children of this attribute are accessed, so that the
+     * attributes of a large document only cost their value.
+     */
+    protected String value;
+
     /**
      * Creates a new Attr object.
      */
@@ -111,6 +120,9 @@ public abstract class AbstractAttr extends AbstractParentNode implements Attr {
      * @return The content of the attribute.
      */
     public String getNodeValue() throws DOMException {
+        if (childNodes == null) {
+            return (value == null) ? "" : value;
+        }
         Node first = getFirstChild();
         if (first == null) {
             return "";
@@ -139,6 +151,22 @@ public abstract class AbstractAttr extends AbstractParentNode implements Attr {
         }
 
         String s = getNodeValue();
+        String val = (nodeValue == null) ? "" : nodeValue;
+
+        if ((childNodes == null) && !getCurrentDocument().getEventsEnabled()) {
+            // No child node was created and no mutation event has to be
+            // dispatched for the text node: just keep the value.
+            value = val;
+            setSpecified(true);
+            if (ownerElement != null) {
+                ownerElement.fireDOMAttrModifiedEvent(nodeName,
+                                                      this,
+                                                      s,
+                                                      val,
+                                                      MutationEvent.MODIFICATION);
+            }
+            return;
+        }
 
         // Remove all the children
         Node n;
@@ -146,8 +174,6 @@ public abstract class AbstractAttr extends AbstractParentNode implements Attr {
             removeChild(n);
         }
 
-        String val = (nodeValue == null) ? "" : nodeValue;
-
         // Create and append a new child.
         n = getOwnerDocument().createTextNode(val);
         appendChild(n);
@@ -237,6 +263,93 @@ public abstract class AbstractAttr extends AbstractParentNode implements Attr {
         isIdAttr = isId;
     }
 
+    /**
+     * Creates the text node holding the value of this attribute, if it
+     * is only stored in {@link #value}.
+     */
+    protected void createValueNode() {
+        if (value == null) {
+            return;
+        }
+        String v = value;
+        value = null;
+        childNodes = new ChildNodes();
+        ExtendedNode n =
+            (ExtendedNode)getOwnerDocument().createTextNode(v);
+        childNodes.append(n);
+        n.setParentNode(this);
+    }
+
+    /**
+     * <b>DOM</b>: Implements {@link org.w3c.dom.Node#getChildNodes()}.
+     */
+    public NodeList getChildNodes() {
+        createValueNode();
+        return super.getChildNodes();
+    }
+
+    /**
+     * <b>DOM</b>: Implements {@link org.w3c.dom.Node#getFirstChild()}.
+     */
+    public Node getFirstChild() {
+        createValueNode();
+        return super.getFirstChild();
+    }
+
+    /**
+     * <b>DOM</b>: Implements {@link org.w3c.dom.Node#getLastChild()}.
+     */
+    public Node getLastChild() {
+        createValueNode();
+        return super.getLastChild();
+    }
+
+    /**
+     * <b>DOM</b>: Implements {@link org.w3c.dom.Node#hasChildNodes()}.
+     */
+    public boolean hasChildNodes() {
+        if (childNodes == null) {
+            return value != null;
+        }
+        return super.hasChildNodes();
+    }
+
+    /**
+     * <b>DOM</b>: Implements {@link
+     * org.w3c.dom.Node#insertBefore(Node, Node)}.
+     */
+    public Node insertBefore(Node newChild, Node refChild)
+        throws DOMException {
+        createValueNode();
+        return super.insertBefore(newChild, refChild);
+    }
+
+    /**
+     * <b>DOM</b>: Implements {@link
+     * org.w3c.dom.Node#replaceChild(Node, Node)}.
+     */
+    public Node replaceChild(Node newChild, Node oldChild)
+        throws DOMException {
+        createValueNode();
+        return super.replaceChild(newChild, oldChild);
+    }
+
+    /**
+     * <b>DOM</b>: Implements {@link org.w3c.dom.Node#removeChild(Node)}.
+     */
+    public Node removeChild(Node oldChild) throws DOMException {
+        createValueNode();
+        return super.removeChild(oldChild);
+    }
+
+    /**
+     * <b>DOM</b>: Implements {@link org.w3c.dom.Node#appendChild(Node)}.
+     */
+    public Node appendChild(Node newChild) throws DOMException {
+        createValueNode();
+        return super.appendChild(newChild);
+    }
+
     /**
      * Called when a child node has been added.
      */
@@ -267,8 +380,16 @@ public abstract class AbstractAttr extends AbstractParentNode implements Attr {
      * Deeply exports this node to the given document.
      */
     protected Node deepExport(Node n, AbstractDocument d) {
-        super.deepExport(n, d);
+        // The value is copied as is rather than through a text node.
+        String v = value;
+        value = null;
+        try {
+            super.deepExport(n, d);
+        } finally {
+            value = v;
+        }
         AbstractAttr aa = (AbstractAttr)n;
+        aa.value        = v;
         aa.nodeName     = nodeName;
         aa.unspecified  = false;
         aa.isIdAttr     = d.isId(aa);
@@ -293,8 +414,16 @@ public abstract class AbstractAttr extends AbstractParentNode implements Attr {
      * @param n a node of the type of this.
      */
     protected Node deepCopyInto(Node n) {
-        super.deepCopyInto(n);
+        // The value is copied as is rather than through a text node.
+        String v = value;
+        value = null;
+        try {
+            super.deepCopyInto(n);
+        } finally {
+            value = v;
+        }
         AbstractAttr aa = (AbstractAttr)n;
+        aa.value        = v;
         aa.nodeName     = nodeName;
         aa.unspecified  = unspecified;
         aa.isIdAttr     = isIdAttr;
@@ -420,18 +420,7 @@ public class SAXDocumentFactory
     protected Document createDocument(InputSource is)
         throws IOException {
         try {
-            if (parserClassName != null) {
-                parser = XMLReaderFactory.createXMLReader(parserClassName);
-            } else {
-                SAXParser saxParser;
-                try {
-                    saxParser = saxFactory.newSAXParser();
-                } catch (ParserConfigurationException pce) {
-                    throw new IOException("Could not create SAXParser: "
-                            + pce.getMessage());
-                }
-                parser = saxParser.getXMLReader();
-            }
+            parser = createXMLReader();
 
             parser.setContentHandler(this);
             parser.setDTDHandler(this);
@@ -439,15 +428,6 @@ public class SAXDocumentFactory
             parser.setErrorHandler((errorHandler == null) ?
                                    this : errorHandler);
 
-            parser.setFeature("http://xml.org/sax/features/namespaces",
-                              true);
-            parser.setFeature("http://xml.org/sax/features/namespace-prefixes",
-                              true);
-            parser.setFeature("http://xml.org/sax/features/validation",
-                              isValidating);
-            parser.setFeature("http://xml.org/sax/features/external-general-entities", false);
-            parser.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
-            parser.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
             parser.setProperty("http://xml.org/sax/properties/lexical-handler",
                                this);
             parser.parse(is);
@@ -468,6 +448,37 @@ public class SAXDocumentFactory
         return ret;
     }
 
+    /**
+     * Creates the XML reader used to parse a document, configured
+     * according to this factory. The handlers are not set.
+     */
+    protected XMLReader createXMLReader() throws SAXException, IOException {
+        XMLReader r;
+        if (parserClassName != null) {
+            r = XMLReaderFactory.createXMLReader(parserClassName);
+        } else {
+            SAXParser saxParser;
+            try {
+                saxParser = saxFactory.newSAXParser();
+            } catch (ParserConfigurationException pce) {
+                throw new IOException("Could not create SAXParser: "
+                        + pce.getMessage());
+            }
+            r = saxParser.getXMLReader();
+        }
+
+        r.setFeature("http://xml.org/sax/features/namespaces",
+                     true);
+        r.setFeature("http://xml.org/sax/features/namespace-prefixes",
+                     true);
+        r.setFeature("http://xml.org/sax/features/validation",
+                     isValidating);
+        r.setFeature("http://xml.org/sax/features/external-general-entities", false);
+        r.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+        r.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+        return r;
+    }
+
     /**
      * Returns the document descriptor associated with the latest created
      * document.
@@ -218,18 +218,12 @@ public class CompositeGraphicsNode extends AbstractGraphicsNode
             return null;
         }
 
-        primitiveBounds = bounds;
-
+        // The bounds are only published once complete, as the node may
+        // be painted by several threads at once.
         while (i < count) {
             Rectangle2D ctb = children[i++].getTransformedBounds(IDENTITY);
             if (ctb != null) {
-                if (primitiveBounds == null) {
-                    // another thread has set the primitive bounds to null,
-                    // need to recall this function
-                    return null;
-                } else {
-                    primitiveBounds.add(ctb);
-                }
+                bounds.add(ctb);
             }
 
             if (((i & 0x0F) == 0) && HaltingThread.hasBeenHalted( currentThread ))
@@ -241,8 +235,10 @@ public class CompositeGraphicsNode extends AbstractGraphicsNode
             // The Thread has been halted.
             // Invalidate any cached values and proceed.
             invalidateGeometryCache();
+            return null;
         }
-        return primitiveBounds;
+        primitiveBounds = bounds;
+        return bounds;
     }
 
     /**
@@ -318,29 +314,25 @@ public class CompositeGraphicsNode extends AbstractGraphicsNode
      * example.
      */
     public Rectangle2D getGeometryBounds() {
-        if (geometryBounds == null) {
+        Rectangle2D bounds = geometryBounds;
+        if (bounds == null) {
             // System.err.println("geometryBounds are null");
             int i=0;
-            while(geometryBounds == null && i < count){
-                geometryBounds =
+            while(bounds == null && i < count){
+                bounds =
                 children[i++].getTransformedGeometryBounds (IDENTITY);
             }
 
             while (i<count) {
                 Rectangle2D cgb = children[i++].getTransformedGeometryBounds(IDENTITY);
                 if (cgb != null) {
-                    if (geometryBounds == null) {
-                        // another thread has set the geometry bounds to null,
-                        // need to recall this function
-                        return getGeometryBounds();
-                    } else {
-                        geometryBounds.add(cgb);
-                    }
+                    bounds.add(cgb);
                 }
             }
+            geometryBounds = bounds;
         }
 
-        return geometryBounds;
+        return bounds;
     }
 
     /**
@@ -388,29 +380,26 @@ public class CompositeGraphicsNode extends AbstractGraphicsNode
      * of clipping, masking or filtering.
      */
     public Rectangle2D getSensitiveBounds() {
-        if (sensitiveBounds != null)
-            return sensitiveBounds;
+        Rectangle2D bounds = sensitiveBounds;
+        if (bounds != null)
+            return bounds;
 
         // System.out.println("sensitiveBoundsBounds are null");
         int i=0;
-        while(sensitiveBounds == null && i < count){
-            sensitiveBounds =
+        while(bounds == null && i < count){
+            bounds =
                 children[i++].getTransformedSensitiveBounds(IDENTITY);
         }
 
         while (i<count) {
             Rectangle2D cgb = children[i++].getTransformedSensitiveBounds(IDENTITY);
             if (cgb != null) {
-                if (sensitiveBounds == null)
-                    // another thread has set the geometry bounds to null,
-                    // need to recall this function
-                    return getSensitiveBounds();
-
-                sensitiveBounds.add(cgb);
+                bounds.add(cgb);
             }
         }
 
-        return sensitiveBounds;
+        sensitiveBounds = bounds;
+        return bounds;
     }
 
     /**
@@ -70,7 +70,12 @@ public class PatternPaint implements Paint {
      */
     private boolean overflow;
 
-    private PatternPaintContext lastContext;
+    /**
+     * The last context created. Its tiled pattern is shared by the
+     * contexts returned for the same transform, which may be used by
+     * different rendering threads.
+     */
+    private volatile PatternPaintContext lastContext;
 
     /**
      * Constructs a new <code>PatternPaint</code>.
@@ -162,33 +167,38 @@ public class PatternPaint implements Paint {
             xform.concatenate(patternTransform);
         }
 
-        if ((lastContext!= null) &&
-            lastContext.getColorModel().equals(cm)) {
+        PatternPaintContext ctx = lastContext;
+        if ((ctx != null) &&
+            ctx.getColorModel().equals(cm)) {
 
             double[] p = new double[6];
             double[] q = new double[6];
             xform.getMatrix(p);
-            lastContext.getUsr2Dev().getMatrix(q);
+            ctx.getUsr2Dev().getMatrix(q);
             if ((p[0] == q[0]) && (p[1] == q[1]) &&
                 (p[2] == q[2]) && (p[3] == q[3])) {
                 if ((p[4] == q[4]) && (p[5] == q[5]))
-                    return lastContext;
+                    return new PatternPaintContext(ctx);
                 else
+                    // Rounds negative shifts, which occur when the
+                    // image is not painted from top to bottom, as
+                    // positive ones.
                     return new PatternPaintContextWrapper
-                        (lastContext,
-                         (int)(q[4]-p[4]+0.5),
-                         (int)(q[5]-p[5]+0.5));
+                        (new PatternPaintContext(ctx),
+                         (int)Math.floor(q[4]-p[4]+0.5),
+                         (int)Math.floor(q[5]-p[5]+0.5));
             }
         }
         // System.out.println("CreateContext Called: " + this);
         // System.out.println("CM : " + cm);
         // System.out.println("xForm : " + xform);
 
-        lastContext = new PatternPaintContext(cm, xform,
-                                       hints, tile,
-                                       patternRegion,
-                                       overflow);
-        return lastContext;
+        ctx = new PatternPaintContext(cm, xform,
+                                      hints, tile,
+                                      patternRegion,
+                                      overflow);
+        lastContext = ctx;
+        return new PatternPaintContext(ctx);
     }
 
     /**
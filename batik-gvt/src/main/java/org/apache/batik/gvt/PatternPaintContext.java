@@ -143,6 +143,17 @@ public class PatternPaintContext implements PaintContext {
         }
     }
 
+    /**
+     * Creates a context which shares the tiled pattern of the given
+     * context, but has its own working raster, so that both contexts
+     * can be used at the same time by different threads.
+     */
+    PatternPaintContext(PatternPaintContext ppc) {
+        this.rasterCM = ppc.rasterCM;
+        this.tiled    = ppc.tiled;
+        this.usr2dev  = ppc.usr2dev;
+    }
+
     public void dispose(){
         raster = null;
     }
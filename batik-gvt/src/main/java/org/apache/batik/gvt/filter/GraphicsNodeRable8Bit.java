@@ -101,7 +101,7 @@ public class GraphicsNodeRable8Bit
     /**
      * Clear any cached Red.
      */
-    public void clearCache() {
+    public synchronized void clearCache() {
         cachedRed     = null;
         cachedUsr2dev = null;
         cachedGn2dev  = null;
@@ -240,7 +240,11 @@ public class GraphicsNodeRable8Bit
      * @param renderContext the RenderContext to use to produce the rendering.
      * @return a RenderedImage containing the rendered data.
      */
-    public RenderedImage createRendering(RenderContext renderContext){
+    public synchronized RenderedImage
+        createRendering(RenderContext renderContext){
+        // Synchronized since the bands of an image may be rendered
+        // concurrently, and the cached fields must be kept consistent.
+
         // Get user space to device space transform
         AffineTransform usr2dev = renderContext.getTransform();
 
@@ -20,6 +20,7 @@ package org.apache.batik.gvt.renderer;
 
 import java.awt.AlphaComposite;
 import java.awt.Graphics2D;
+import java.awt.Paint;
 import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.RenderingHints;
@@ -34,16 +35,38 @@ import java.awt.image.WritableRaster;
 import java.awt.image.renderable.RenderContext;
 import java.lang.ref.SoftReference;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
 
+import org.apache.batik.ext.awt.RenderingHintsKeyExt;
 import org.apache.batik.ext.awt.geom.RectListManager;
 import org.apache.batik.ext.awt.image.GraphicsUtil;
 import org.apache.batik.ext.awt.image.PadMode;
+import org.apache.batik.ext.awt.image.renderable.ClipRable;
 import org.apache.batik.ext.awt.image.renderable.Filter;
+import org.apache.batik.ext.awt.image.rendered.AbstractRed;
 import org.apache.batik.ext.awt.image.rendered.CachableRed;
+import org.apache.batik.ext.awt.image.rendered.LRUCache;
 import org.apache.batik.ext.awt.image.rendered.PadRed;
+import org.apache.batik.ext.awt.image.rendered.RenderingPool;
+import org.apache.batik.ext.awt.image.rendered.TileCache;
 import org.apache.batik.ext.awt.image.rendered.TileCacheRed;
 import org.apache.batik.ext.awt.image.rendered.TranslateRed;
+import org.apache.batik.gvt.CompositeGraphicsNode;
+import org.apache.batik.gvt.CompositeShapePainter;
+import org.apache.batik.gvt.FillShapePainter;
 import org.apache.batik.gvt.GraphicsNode;
+import org.apache.batik.gvt.Marker;
+import org.apache.batik.gvt.MarkerShapePainter;
+import org.apache.batik.gvt.PatternPaint;
+import org.apache.batik.gvt.ProxyGraphicsNode;
+import org.apache.batik.gvt.ShapeNode;
+import org.apache.batik.gvt.ShapePainter;
+import org.apache.batik.gvt.StrokeShapePainter;
+import org.apache.batik.gvt.filter.GraphicsNodeRable;
+import org.apache.batik.gvt.filter.Mask;
 import org.apache.batik.util.HaltingThread;
 
 /**
@@ -89,6 +112,12 @@ public class StaticRenderer implements ImageRenderer {
     protected RenderingHints renderingHints;
     protected AffineTransform usr2dev;
 
+    /**
+     * The tile cache of this renderer, or null to use the process-wide
+     * tile cache. See {@link RenderingHintsKeyExt#KEY_TILE_CACHE_SIZE}.
+     */
+    protected LRUCache tileCache;
+
     protected static RenderingHints defaultRenderingHints;
     static {
         defaultRenderingHints = new RenderingHints(null);
@@ -108,6 +137,7 @@ public class StaticRenderer implements ImageRenderer {
         renderingHints = new RenderingHints(null);
         renderingHints.add(rh);
         usr2dev = new AffineTransform(at);
+        updateTileCache();
     }
 
     /**
@@ -139,6 +169,11 @@ public class StaticRenderer implements ImageRenderer {
         renderingHints = null;
         lastCache = null;
         lastCR = null;
+
+        if (tileCache != null) {
+            tileCache.flush();
+            tileCache = null;
+        }
     }
 
     /**
@@ -173,6 +208,7 @@ public class StaticRenderer implements ImageRenderer {
     public void setRenderingHints(RenderingHints rh) {
         renderingHints = new RenderingHints(null);
         renderingHints.add(rh);
+        updateTileCache();
 
         rootFilter = null;
         rootCR     = null;
@@ -184,6 +220,34 @@ public class StaticRenderer implements ImageRenderer {
         currentRaster = null;
     }
 
+    /**
+     * Creates, resizes or drops the tile cache of this renderer according
+     * to the KEY_TILE_CACHE_SIZE rendering hint.
+     */
+    protected void updateTileCache() {
+        Object v = renderingHints.get(RenderingHintsKeyExt.KEY_TILE_CACHE_SIZE);
+        if (!(v instanceof Long)) {
+            if (tileCache != null) {
+                tileCache.flush();
+                tileCache = null;
+            }
+            return;
+        }
+        long bytes = (Long)v;
+        if (tileCache == null) {
+            tileCache = new LRUCache(1, LRUCache.getDefaultStripes(64));
+        }
+        tileCache.setByteSize(bytes);
+    }
+
+    /**
+     * Returns the tile cache used by this renderer, either its own or
+     * the process-wide one.
+     */
+    public LRUCache getTileCache() {
+        return (tileCache != null) ? tileCache : TileCache.getGlobalCache();
+    }
+
     /**
      * @return the RenderingHints which the Renderer is using for its
      *         rendering
@@ -361,51 +425,309 @@ public class StaticRenderer implements ImageRenderer {
         if (areas == null)
             return;
 
-        // System.out.println("Renderer Repainting");
+        // Tile stores created while rendering use this renderer's cache.
+        LRUCache prevCache = TileCache.getThreadCache();
+        if (tileCache != null)
+            TileCache.setThreadCache(tileCache);
+        try {
+            // System.out.println("Renderer Repainting");
+
+            // long t0 = System.currentTimeMillis();
+
+            CachableRed cr;
+            WritableRaster syncRaster;
+            WritableRaster copyRaster;
+
+            // While we are synchronized pull all the relavent info out
+            // of member variables into local variables.
+            updateWorkingBuffers();
+            if ((rootCR == null)           ||
+                (workingBaseRaster == null))
+                return;
+
+            cr = rootCR;
+            syncRaster = workingBaseRaster;
+            copyRaster = workingRaster;
+
+            Rectangle srcR = rootCR.getBounds();
+            Rectangle dstR = workingRaster.getBounds();
+            if ((dstR.x < srcR.x) ||
+                (dstR.y < srcR.y) ||
+                (dstR.x+dstR.width  > srcR.x+srcR.width) ||
+                (dstR.y+dstR.height > srcR.y+srcR.height))
+                cr = new PadRed(cr, dstR, PadMode.ZERO_PAD, null);
+
+            // Ensure only one thread works on baseRaster at a time...
+            synchronized (syncRaster) {
+                copyData(cr, copyRaster);
+            }
+
+            if (!HaltingThread.hasBeenHalted()) {
+                // Swap the buffers if the rendering completed cleanly.
+                BufferedImage tmpBI = workingOffScreen;
+
+                workingBaseRaster = currentBaseRaster;
+                workingRaster     = currentRaster;
+                workingOffScreen  = currentOffScreen;
+
+                currentRaster     = copyRaster;
+                currentBaseRaster = syncRaster;
+                currentOffScreen  = tmpBI;
+
+                // System.out.println("Current offscreen : " + currentOffScreen);
+            }
+        } finally {
+            if (tileCache != null)
+                TileCache.setThreadCache(prevCache);
+        }
+    }
 
-        // long t0 = System.currentTimeMillis();
+    /**
+     * Renders <code>cr</code> into <code>wr</code>. When the
+     * KEY_RENDERING_THREADS rendering hint allows it, the raster is
+     * rendered in bands by {@link #copyBands}, using the threads of the
+     * {@link RenderingPool}. The lazily computed state of the GVT tree is
+     * computed by {@link #prepareConcurrentRendering} before the bands
+     * are rendered, so that the tree is only read while it is painted.
+     */
+    protected void copyData(CachableRed cr, WritableRaster wr) {
+        int threads = RenderingPool.getThreadCount(renderingHints);
+        if (threads <= 1) {
+            cr.copyData(wr);
+            return;
+        }
 
-        CachableRed cr;
-        WritableRaster syncRaster;
-        WritableRaster copyRaster;
+        // The GVT tree computes some of its state lazily while it is
+        // painted: compute it before painting it from several threads.
+        prepareConcurrentRendering
+            (rootGN, Collections.newSetFromMap(new IdentityHashMap()));
 
-        // While we are synchronized pull all the relavent info out
-        // of member variables into local variables.
-        updateWorkingBuffers();
-        if ((rootCR == null)           ||
-            (workingBaseRaster == null))
+        copyBands(cr, wr, threads);
+    }
+
+    /**
+     * Renders <code>cr</code> into <code>wr</code> in bands, one per row
+     * of tiles of <code>cr</code>, using at most <code>threads</code>
+     * threads. The image painted in a band only depends on the band, not
+     * on the thread which painted it.
+     */
+    protected void copyBands(final CachableRed cr, final WritableRaster wr,
+                             int threads) {
+        final Rectangle r = wr.getBounds();
+        final int th = cr.getTileHeight();
+        final int y0 = r.y - Math.floorMod(r.y - cr.getTileGridYOffset(), th);
+        int rows = (r.y + r.height - y0 + th - 1) / th;
+        if (rows <= 1) {
+            cr.copyData(wr);
             return;
+        }
 
-        cr = rootCR;
-        syncRaster = workingBaseRaster;
-        copyRaster = workingRaster;
+        RenderingPool.invoke(threads, rows, new RenderingPool.Task() {
+                public void run(int i) {
+                    int y  = Math.max(r.y, y0 + i * th);
+                    int ye = Math.min(r.y + r.height, y0 + (i + 1) * th);
+                    WritableRaster band = wr.createWritableChild
+                        (r.x, y, r.width, ye - y, r.x, y, null);
+                    cr.copyData(band);
+                }
+            });
+    }
 
-        Rectangle srcR = rootCR.getBounds();
-        Rectangle dstR = workingRaster.getBounds();
-        if ((dstR.x < srcR.x) ||
-            (dstR.y < srcR.y) ||
-            (dstR.x+dstR.width  > srcR.x+srcR.width) ||
-            (dstR.y+dstR.height > srcR.y+srcR.height))
-            cr = new PadRed(cr, dstR, PadMode.ZERO_PAD, null);
+    /**
+     * Returns the rendering of the GVT tree, of the size given to
+     * <code>updateOffScreen</code>, as an image computed when its data
+     * is requested.  Unlike <code>repaint</code>, this does not allocate
+     * an offscreen buffer, so a large image can be rendered and consumed
+     * in parts, for example in bands.  The image uses the tile cache and
+     * the rendering threads of this renderer.  As its parts may be
+     * requested by several threads at once, the lazily computed state
+     * of the GVT tree is computed before it is returned.
+     *
+     * @return the rendering, or null if there is nothing to render.
+     */
+    public CachableRed getRendering() {
+        if (rootGN == null)
+            return null;
+        if (rootFilter == null)
+            rootFilter = rootGN.getGraphicsNodeRable(true);
 
-        // Ensure only one thread works on baseRaster at a time...
-        synchronized (syncRaster) {
-            cr.copyData(copyRaster);
+        CachableRed cr;
+        LRUCache prevCache = TileCache.getThreadCache();
+        if (tileCache != null)
+            TileCache.setThreadCache(tileCache);
+        try {
+            cr = renderGNR();
+        } finally {
+            if (tileCache != null)
+                TileCache.setThreadCache(prevCache);
         }
+        if (cr == null)
+            return null;
+
+        prepareConcurrentRendering
+            (rootGN, Collections.newSetFromMap(new IdentityHashMap()));
+
+        Rectangle r = new Rectangle(0, 0, offScreenWidth, offScreenHeight);
+        return new RenderingRed(new PadRed(cr, r, PadMode.ZERO_PAD, null));
+    }
+
+    /**
+     * The image returned by {@link #getRendering()}.
+     */
+    protected class RenderingRed extends AbstractRed {
+
+        public RenderingRed(CachableRed src) {
+            super(src, src.getBounds(), src.getColorModel(),
+                  src.getSampleModel(), src.getTileGridXOffset(),
+                  src.getTileGridYOffset(), null);
+        }
+
+        public WritableRaster copyData(WritableRaster wr) {
+            CachableRed src = (CachableRed)getSources().get(0);
+            LRUCache prevCache = TileCache.getThreadCache();
+            if (tileCache != null)
+                TileCache.setThreadCache(tileCache);
+            try {
+                // The GVT tree was prepared by getRendering.
+                int threads = RenderingPool.getThreadCount(renderingHints);
+                if (threads <= 1) {
+                    src.copyData(wr);
+                } else {
+                    copyBands(src, wr, threads);
+                }
+            } finally {
+                if (tileCache != null)
+                    TileCache.setThreadCache(prevCache);
+            }
+            return wr;
+        }
+    }
+
+    /**
+     * Computes the state that the given node and the nodes it depends on
+     * (children, markers, patterns, masks and filter sources) would
+     * otherwise compute lazily while they are painted: bounds, outlines,
+     * text layout, stroked shapes, marker groups and filter chains.
+     * @param gn the node to prepare, may be null
+     * @param done the nodes already prepared
+     */
+    protected void prepareConcurrentRendering(GraphicsNode gn, Set done) {
+        if ((gn == null) || !done.add(gn)) {
+            return;
+        }
+        gn.getBounds();
+        gn.getPrimitiveBounds();
+        gn.getGeometryBounds();
+        gn.getSensitiveBounds();
+        gn.getOutline();
+
+        if (gn instanceof CompositeGraphicsNode) {
+            CompositeGraphicsNode cgn = (CompositeGraphicsNode)gn;
+            if (cgn.getBackgroundEnable() != null) {
+                cgn.getEnableBackgroundGraphicsNodeRable(true);
+            }
+            for (Object child : cgn.getChildren()) {
+                prepareConcurrentRendering((GraphicsNode)child, done);
+            }
+        } else if (gn instanceof ShapeNode) {
+            prepareConcurrentRendering
+                (((ShapeNode)gn).getShapePainter(), done);
+        } else if (gn instanceof ProxyGraphicsNode) {
+            prepareConcurrentRendering
+                (((ProxyGraphicsNode)gn).getSource(), done);
+        }
+
+        Filter filter = gn.getFilter();
+        Mask mask = gn.getMask();
+        ClipRable clip = gn.getClip();
+        if ((filter != null) || (mask != null) || (clip != null)) {
+            // As done by AbstractGraphicsNode.paint.
+            Filter filtered = (filter == null)
+                ? gn.getGraphicsNodeRable(true) : filter;
+            if (mask != null) {
+                if (mask.getSource() != filtered) {
+                    mask.setSource(filtered);
+                }
+                filtered = mask;
+                prepareConcurrentRendering(mask.getMaskNode(), done);
+            }
+            if ((clip != null) && clip.getUseAntialiasedClip()) {
+                if (clip.getSource() != filtered) {
+                    clip.setSource(filtered);
+                }
+            }
+            prepareConcurrentRendering(filter, done);
+        }
+    }
 
-        if (!HaltingThread.hasBeenHalted()) {
-            // Swap the buffers if the rendering completed cleanly.
-            BufferedImage tmpBI = workingOffScreen;
+    /**
+     * Prepares the nodes painted by a shape painter.
+     */
+    protected void prepareConcurrentRendering(ShapePainter sp, Set done) {
+        if (sp == null) {
+            return;
+        }
+        sp.getPaintedArea();
+        sp.getPaintedBounds2D();
+        sp.getSensitiveArea();
+        sp.getSensitiveBounds2D();
+        if (sp instanceof CompositeShapePainter) {
+            CompositeShapePainter csp = (CompositeShapePainter)sp;
+            for (int i = 0; i < csp.getShapePainterCount(); i++) {
+                prepareConcurrentRendering(csp.getShapePainter(i), done);
+            }
+        } else if (sp instanceof FillShapePainter) {
+            prepareConcurrentRendering
+                (((FillShapePainter)sp).getPaint(), done);
+        } else if (sp instanceof StrokeShapePainter) {
+            prepareConcurrentRendering
+                (((StrokeShapePainter)sp).getPaint(), done);
+        } else if (sp instanceof MarkerShapePainter) {
+            MarkerShapePainter msp = (MarkerShapePainter)sp;
+            prepareConcurrentRendering(msp.getStartMarker(), done);
+            prepareConcurrentRendering(msp.getMiddleMarker(), done);
+            prepareConcurrentRendering(msp.getEndMarker(), done);
+        }
+    }
 
-            workingBaseRaster = currentBaseRaster;
-            workingRaster     = currentRaster;
-            workingOffScreen  = currentOffScreen;
+    /**
+     * Prepares the node of a marker.
+     */
+    protected void prepareConcurrentRendering(Marker m, Set done) {
+        if (m != null) {
+            prepareConcurrentRendering(m.getMarkerNode(), done);
+        }
+    }
 
-            currentRaster     = copyRaster;
-            currentBaseRaster = syncRaster;
-            currentOffScreen  = tmpBI;
+    /**
+     * Prepares the node of a pattern.
+     */
+    protected void prepareConcurrentRendering(Paint p, Set done) {
+        if (p instanceof PatternPaint) {
+            prepareConcurrentRendering
+                (((PatternPaint)p).getGraphicsNode(), done);
+        }
+    }
 
-            // System.out.println("Current offscreen : " + currentOffScreen);
+    /**
+     * Prepares the nodes rendered by a filter chain.
+     */
+    protected void prepareConcurrentRendering(Filter f, Set done) {
+        if ((f == null) || !done.add(f)) {
+            return;
+        }
+        f.getBounds2D();
+        if (f instanceof GraphicsNodeRable) {
+            prepareConcurrentRendering
+                (((GraphicsNodeRable)f).getGraphicsNode(), done);
+        }
+        List srcs = f.getSources();
+        if (srcs != null) {
+            for (Object src : srcs) {
+                if (src instanceof Filter) {
+                    prepareConcurrentRendering((Filter)src, done);
+                }
+            }
         }
     }
 
@@ -23,6 +23,8 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
+import org.w3c.dom.Element;
+
 /**
  * Abstract class with common utility methods used by subclasses
  * for specific convertion operations. It holds a reference to a
@@ -47,6 +49,14 @@ public abstract class AbstractSVGConverter implements SVGConverter, ErrorConstan
      */
     protected Map descMap = new HashMap();
 
+    /**
+     * Map of the descriptors of the definitions created by this
+     * converter, keyed by the content of the definitions, so that
+     * equal definitions share one id.
+     * @see DefinitionKey
+     */
+    protected Map contentMap = new HashMap();
+
     /**
      * Set of definitions to interpret the values of the attributes
      * generated by this converter since its creation
@@ -75,10 +85,26 @@ public abstract class AbstractSVGConverter implements SVGConverter, ErrorConstan
         return defSet;
     }
 
+    /**
+     * Adds a definition created by this converter to its definition
+     * set, and records it in the generator context.
+     */
+    protected void addDefinition(Element def) {
+        defSet.add(def);
+        generatorContext.addDefinition(def);
+    }
+
     /**
      * Utility method for subclasses.
      */
     public final String doubleString(double value) {
         return generatorContext.doubleString(value);
     }
+
+    /**
+     * Utility method for subclasses.
+     */
+    public final void appendDouble(StringBuilder sb, double value) {
+        generatorContext.appendDouble(sb, value);
+    }
 }
@@ -190,6 +190,7 @@ public class DOMGroupManager implements SVGSyntax, ErrorConstants {
                         setStyle(element, deltaGC.getContext(),
                                  domTreeManager.getGeneratorContext());
                     setTransform(element, deltaGC.getTransformStack());
+                    domTreeManager.appendElement(element, this);
                 } else {
                     //
                     // Need to create a new current group
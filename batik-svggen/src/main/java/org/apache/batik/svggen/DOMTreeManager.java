@@ -185,6 +185,18 @@ public class DOMTreeManager implements SVGSyntax, ErrorConstants {
         }
     }
 
+    /**
+     * Invoked by a group manager when an element has been added to a
+     * group it previously appended with appendGroup. This implementation
+     * does nothing.
+     *
+     * @param element the element added to the current group of the
+     *        group manager.
+     * @param groupManager DOMGroupManager that added the element.
+     */
+    public void appendElement(Element element, DOMGroupManager groupManager){
+    }
+
     /**
      * Reset the state of this object to handler a new topLevelGroup
      */
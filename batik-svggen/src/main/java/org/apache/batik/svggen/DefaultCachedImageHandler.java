@@ -25,7 +25,6 @@ import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
 import java.awt.image.RenderedImage;
 import java.awt.image.renderable.RenderableImage;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.lang.reflect.Method;
@@ -398,27 +397,12 @@ public abstract class DefaultCachedImageHandler
                                       SVGGeneratorContext generatorContext)
         throws SVGGraphics2DIOException {
 
-        ByteArrayOutputStream os;
-
         if (generatorContext == null)
             throw new SVGGraphics2DRuntimeException(ERR_CONTEXT_NULL);
 
-        try {
-            os = new ByteArrayOutputStream();
-            // encode the image in memory
-            encodeImage(buf, os);
-            os.flush();
-            os.close();
-        } catch (IOException e) {
-            // should not happen since we do in-memory processing
-            throw new SVGGraphics2DIOException(ERR_UNEXPECTED, e);
-        }
-
-        // ask the cacher for a reference
-        String ref = imageCacher.lookup(os,
-                                                  buf.getWidth(),
-                                                  buf.getHeight(),
-                                                  generatorContext);
+        // ask the cacher for a reference, the image is only encoded
+        // if it is not in the cache yet
+        String ref = imageCacher.lookup(buf, this, generatorContext);
 
         // set the URL
         imageElement.setAttributeNS(XLINK_NAMESPACE_URI,
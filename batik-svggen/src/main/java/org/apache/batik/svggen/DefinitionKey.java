@@ -0,0 +1,243 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.svggen;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * Key of a definition in a Map, based on its content: its tag name,
+ * its attributes except its id, and its descendants.  Converters use
+ * it to share one definition between equal Java 2D objects.
+ * The key keeps a SHA-1 digest of the content, used as hash code, and
+ * a copy of the definition, compared with the other one when the
+ * digests are equal. The copy shares the attribute values of the
+ * definition, so that large definitions, such as patterns embedding an
+ * image, are not copied, and the key does not change when the
+ * definition is styled or written afterwards.
+ *
+ * @version $Id$
+ */
+class DefinitionKey implements SVGSyntax {
+    /**
+     * Markers separating the parts of the content.
+     */
+    private static final int ELEMENT = 1;
+    private static final int ATTRIBUTE = 2;
+    private static final int TEXT = 3;
+    private static final int END = 4;
+
+    /**
+     * The digest of the definition content.
+     */
+    private byte[] digest;
+
+    /**
+     * This key hash code.
+     */
+    private int hashCodeValue;
+
+    /**
+     * A copy of the definition.
+     */
+    private Element content;
+
+    /**
+     * @param def the definition to build a key for
+     */
+    public DefinitionKey(Element def) {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-1
+            throw new SVGGraphics2DRuntimeException(e.getMessage(), e);
+        }
+        update(md, def, true);
+        digest = md.digest();
+        hashCodeValue = Arrays.hashCode(digest);
+        content = (Element)def.cloneNode(true);
+    }
+
+    /**
+     * Adds the content of a node to the digest.
+     */
+    private static void update(MessageDigest md, Node node, boolean root) {
+        switch (node.getNodeType()) {
+        case Node.ELEMENT_NODE:
+            md.update((byte)ELEMENT);
+            update(md, node.getNamespaceURI());
+            update(md, node.getNodeName());
+            NamedNodeMap attributes = node.getAttributes();
+            int n = attributes.getLength();
+            for (int i = 0; i < n; i++) {
+                Attr attr = (Attr)attributes.item(i);
+                if (root && attr.getNamespaceURI() == null
+                    && SVG_ID_ATTRIBUTE.equals(attr.getNodeName())) {
+                    continue;
+                }
+                md.update((byte)ATTRIBUTE);
+                update(md, attr.getNamespaceURI());
+                update(md, attr.getNodeName());
+                update(md, attr.getValue());
+            }
+            for (Node c = node.getFirstChild(); c != null;
+                 c = c.getNextSibling()) {
+                update(md, c, false);
+            }
+            md.update((byte)END);
+            break;
+        case Node.TEXT_NODE:
+        case Node.CDATA_SECTION_NODE:
+            md.update((byte)TEXT);
+            update(md, node.getNodeValue());
+            break;
+        default:
+        }
+    }
+
+    /**
+     * Adds a possibly null string, prefixed by its length, to the digest.
+     */
+    private static void update(MessageDigest md, String s) {
+        if (s == null) {
+            md.update((byte)0);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        int len = bytes.length;
+        md.update((byte)1);
+        md.update((byte)(len >>> 24));
+        md.update((byte)(len >>> 16));
+        md.update((byte)(len >>> 8));
+        md.update((byte)len);
+        md.update(bytes);
+    }
+
+    /**
+     * Tells whether two nodes have the same content, as added to the
+     * digest by {@link #update(MessageDigest,Node,boolean)}.
+     */
+    private static boolean equals(Node n1, Node n2, boolean root) {
+        if (n1.getNodeType() != Node.ELEMENT_NODE) {
+            return n2.getNodeType() != Node.ELEMENT_NODE
+                && n1.getNodeValue().equals(n2.getNodeValue());
+        }
+        if (n2.getNodeType() != Node.ELEMENT_NODE
+            || !equals(n1.getNamespaceURI(), n2.getNamespaceURI())
+            || !n1.getNodeName().equals(n2.getNodeName())) {
+            return false;
+        }
+        NamedNodeMap attrs1 = n1.getAttributes();
+        NamedNodeMap attrs2 = n2.getAttributes();
+        int i = skipId(attrs1, 0, root);
+        int j = skipId(attrs2, 0, root);
+        while (i < attrs1.getLength() && j < attrs2.getLength()) {
+            Attr a1 = (Attr)attrs1.item(i);
+            Attr a2 = (Attr)attrs2.item(j);
+            if (!equals(a1.getNamespaceURI(), a2.getNamespaceURI())
+                || !a1.getNodeName().equals(a2.getNodeName())
+                || !a1.getValue().equals(a2.getValue())) {
+                return false;
+            }
+            i = skipId(attrs1, i + 1, root);
+            j = skipId(attrs2, j + 1, root);
+        }
+        if (i < attrs1.getLength() || j < attrs2.getLength()) {
+            return false;
+        }
+        Node c1 = nextContent(n1.getFirstChild());
+        Node c2 = nextContent(n2.getFirstChild());
+        while (c1 != null && c2 != null) {
+            if (!equals(c1, c2, false)) {
+                return false;
+            }
+            c1 = nextContent(c1.getNextSibling());
+            c2 = nextContent(c2.getNextSibling());
+        }
+        return c1 == null && c2 == null;
+    }
+
+    /**
+     * Tells whether two possibly null strings are equal.
+     */
+    private static boolean equals(String s1, String s2) {
+        return s1 == null ? s2 == null : s1.equals(s2);
+    }
+
+    /**
+     * Returns the index of the first attribute, from the given one,
+     * which is not the id of the root element.
+     */
+    private static int skipId(NamedNodeMap attrs, int i, boolean root) {
+        if (root && i < attrs.getLength()) {
+            Attr attr = (Attr)attrs.item(i);
+            if (attr.getNamespaceURI() == null
+                && SVG_ID_ATTRIBUTE.equals(attr.getNodeName())) {
+                return i + 1;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Returns the first node, from the given one, which is part of the
+     * content: an element, a text or a CDATA section.
+     */
+    private static Node nextContent(Node n) {
+        while (n != null) {
+            switch (n.getNodeType()) {
+            case Node.ELEMENT_NODE:
+            case Node.TEXT_NODE:
+            case Node.CDATA_SECTION_NODE:
+                return n;
+            default:
+                n = n.getNextSibling();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return this object's hashcode
+     */
+    public int hashCode() {
+        return hashCodeValue;
+    }
+
+    /**
+     * @param o object to compare
+     * @return true if both definitions have the same content
+     */
+    public boolean equals(Object o) {
+        if (!(o instanceof DefinitionKey)) {
+            return false;
+        }
+        DefinitionKey k = (DefinitionKey)o;
+        return Arrays.equals(digest, k.digest)
+            && equals(content, k.content, true);
+    }
+}
@@ -0,0 +1,214 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.svggen;
+
+import java.text.DecimalFormat;
+
+/**
+ * Formats double values with a fixed maximum number of decimal places,
+ * the way <code>java.text.DecimalFormat</code> does with a
+ * <code>#.###</code> pattern: the value is rounded half-even on its
+ * exact binary value, trailing zeros are dropped and no exponent is
+ * used.  The formatter holds no state, so it can be used from several
+ * threads, and it appends its digits directly to a
+ * <code>StringBuilder</code> without creating any object.
+ *
+ * @see SVGGeneratorContext#doubleString
+ * @version $Id$
+ */
+public final class DoubleFormatter {
+
+    /**
+     * The maximum number of characters written for a value.
+     */
+    public static final int MAX_LENGTH = 24;
+
+    /**
+     * Values at or above this magnitude are written as integers.
+     */
+    private static final double INTEGER_THRESHOLD = 10e7;
+
+    /**
+     * Scaled values at or above 2^52 are not formatted by the fast path.
+     */
+    private static final double MAX_SCALED = 4503599627370496.0;
+
+    /**
+     * The powers of ten up to 10^16.
+     */
+    private static final long[] LONG_POWERS = new long[17];
+
+    /**
+     * The powers of ten used to scale values, with their high and low
+     * halves for the exact product computation.
+     */
+    private static final double[] POWERS = new double[13];
+    private static final double[] POWERS_HI = new double[13];
+    private static final double[] POWERS_LO = new double[13];
+
+    /**
+     * The constant splitting a double in two 26 bits halves.
+     */
+    private static final double SPLITTER = 134217729.0;
+
+    static {
+        long p = 1;
+        for (int i = 0; i < LONG_POWERS.length; i++) {
+            LONG_POWERS[i] = p;
+            p *= 10;
+        }
+        for (int i = 0; i < POWERS.length; i++) {
+            POWERS[i] = LONG_POWERS[i];
+            POWERS_HI[i] = high(POWERS[i]);
+            POWERS_LO[i] = POWERS[i] - POWERS_HI[i];
+        }
+    }
+
+    /**
+     * This class cannot be instantiated.
+     */
+    private DoubleFormatter() {
+    }
+
+    /**
+     * Returns the given value as a string.
+     * @param value the value to format
+     * @param precision the maximum number of decimal places, in the
+     *        [0,12] range
+     */
+    public static String toString(double value, int precision) {
+        StringBuilder sb = new StringBuilder(MAX_LENGTH);
+        append(sb, value, precision);
+        return sb.toString();
+    }
+
+    /**
+     * Appends the given value to a StringBuilder.
+     * @param sb the builder to append to
+     * @param value the value to format
+     * @param precision the maximum number of decimal places, in the
+     *        [0,12] range
+     */
+    public static void append(StringBuilder sb, double value, int precision) {
+        double abs = Math.abs(value);
+        // above 10e7 we do not output decimals as anyway
+        // in scientific notation they were not available
+        if (abs >= INTEGER_THRESHOLD || (int)value == value) {
+            long l = (int)value;
+            if (l < 0) {
+                sb.append('-');
+                l = -l;
+            }
+            appendDigits(sb, l, digitCount(l));
+            return;
+        }
+        if (value != value) {
+            sb.append("NaN");
+            return;
+        }
+
+        double scaled = abs * POWERS[precision];
+        if (scaled >= MAX_SCALED) {
+            // Too many digits for a long: rare enough to use the
+            // (synchronized) DecimalFormat.
+            DecimalFormat df = SVGGeneratorContext.decimalFormats[precision];
+            synchronized (df) {
+                sb.append(df.format(value));
+            }
+            return;
+        }
+
+        long n = round(abs, precision, scaled);
+        if (value < 0) {
+            // DecimalFormat keeps the sign of values rounded to zero.
+            sb.append('-');
+        }
+        long unit = LONG_POWERS[precision];
+        long ip = n / unit;
+        long fp = n - ip * unit;
+        appendDigits(sb, ip, digitCount(ip));
+        if (fp != 0) {
+            int digits = precision;
+            while (fp % 10 == 0) {
+                fp /= 10;
+                digits--;
+            }
+            sb.append('.');
+            appendDigits(sb, fp, digits);
+        }
+    }
+
+    /**
+     * Rounds half-even the exact product of the given value by
+     * 10^precision to an integer.
+     * @param abs a positive value
+     * @param scaled the rounded product of abs by 10^precision
+     */
+    private static long round(double abs, int precision, double scaled) {
+        // Dekker's product: err is the exact rounding error of scaled.
+        double ahi = high(abs);
+        double alo = abs - ahi;
+        double bhi = POWERS_HI[precision];
+        double blo = POWERS_LO[precision];
+        double err = ((ahi * bhi - scaled) + ahi * blo + alo * bhi)
+            + alo * blo;
+
+        double floor = Math.floor(scaled);
+        long n = (long)floor;
+        // Both subtractions are exact when the result can be 0.5 away
+        // from the fractional part.
+        double d = (scaled - floor) - 0.5;
+        if (d > -err || (d == -err && (n & 1) != 0)) {
+            n++;
+        }
+        return n;
+    }
+
+    /**
+     * Returns the upper 26 bits of the given value.
+     */
+    private static double high(double a) {
+        double t = SPLITTER * a;
+        return t - (t - a);
+    }
+
+    /**
+     * Returns the number of decimal digits of a positive long.
+     */
+    private static int digitCount(long v) {
+        int n = 1;
+        while (n < LONG_POWERS.length && v >= LONG_POWERS[n]) {
+            n++;
+        }
+        return n;
+    }
+
+    /**
+     * Appends the given number of decimal digits of a positive long,
+     * padded with leading zeros.
+     */
+    private static void appendDigits(StringBuilder sb, long v, int digits) {
+        for (int i = digits - 1; i >= 0; i--) {
+            long p = LONG_POWERS[i];
+            int d = (int)(v / p);
+            sb.append((char)('0' + d));
+            v -= d * p;
+        }
+    }
+}
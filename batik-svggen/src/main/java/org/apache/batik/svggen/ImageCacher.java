@@ -18,19 +18,21 @@
  */
 package org.apache.batik.svggen;
 
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
-import java.util.LinkedList;
-import java.util.ListIterator;
-import java.util.Map;
 import java.util.HashMap;
-import java.util.zip.Adler32;
-import java.util.zip.Checksum;
+import java.util.Map;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -38,6 +40,9 @@ import org.w3c.dom.Element;
 
 /**
  * This class implements caching functionality for raster images.
+ * Images are keyed on a SHA-256 digest computed while streaming over
+ * their pixels, so only the first occurrence of an image is ever
+ * encoded and no encoded data is kept by the cache itself.
  *
  * @author <a href="mailto:paul_evenblij@compuware.com">Paul Evenblij</a>
  * @version $Id$
@@ -45,15 +50,17 @@ import org.w3c.dom.Element;
 public abstract class ImageCacher implements SVGSyntax, ErrorConstants {
 
     DOMTreeManager  domTreeManager = null;
+
+    /**
+     * Maps the {@link ContentKey} of each cached image to its href.
+     */
     Map             imageCache;
-    Checksum        checkSum;
 
     /**
      * Creates an ImageCacher.
      */
     public ImageCacher() {
         imageCache = new HashMap();
-        checkSum = new Adler32();
     }
 
     /**
@@ -85,127 +92,189 @@ public abstract class ImageCacher implements SVGSyntax, ErrorConstants {
     /**
      * Checks if the image is already in the cache, and
      * adds it if not. Returns a unique id for the entry.
+     * The image is only encoded, with the handler's
+     * <code>encodeImage</code> method, when it is not found.
      *
-     * @param os                the image as a byte stream
-     * @param width             the width of the image
-     * @param height            the height of the image
+     * @param image             the image to cache
+     * @param handler           the handler used to encode the image
      * @param ctx               the SVGGeneratorContext
      *
      * @return a URI for the image
      * @throws SVGGraphics2DIOException if an error occurs during image file i/o
      */
-    public String lookup(ByteArrayOutputStream os,
-                         int width, int height,
+    public String lookup(final BufferedImage image,
+                         final DefaultCachedImageHandler handler,
                          SVGGeneratorContext ctx)
                              throws SVGGraphics2DIOException {
-        // We determine a checksum value for the byte data, and use it
-        // as hash key for the image. This may not be unique, so we
-        // need to check on actual byte-for-byte equality as well.
-        // The checksum will be sufficient in most cases.
-        int     checksum = getChecksum(os.toByteArray());
-        Integer key      = checksum;
-        String  href     = null;
-
-        Object data = getCacheableData(os);
-
-        LinkedList list = (LinkedList) imageCache.get(key);
-        if(list == null) {
-            // Key not found: make a new key/value pair
-            list = new LinkedList();
-            imageCache.put(key, list);
-        } else {
-            // Key found: check if the image is already in the list
-            for(ListIterator i = list.listIterator(0); i.hasNext(); ) {
-                ImageCacheEntry entry = (ImageCacheEntry) i.next();
-                if(entry.checksum == checksum && imagesMatch(entry.src, data)) {
-                    href = entry.href;
-                    break;
-                }
-            }
-        }
-
-        if(href == null) {
-            // Still no hit: add our own
-            ImageCacheEntry newEntry = createEntry(checksum, data,
-                                                   width, height,
-                                                   ctx);
-            list.add(newEntry);
-            href = newEntry.href;
+        ContentKey key = new ContentKey(image.getType(),
+                                        image.getWidth(),
+                                        image.getHeight());
+        key.update(image);
+        key.finish();
+
+        String href = (String) imageCache.get(key);
+        if (href == null) {
+            Content content = new Content() {
+                    void writeTo(OutputStream os) throws IOException {
+                        handler.encodeImage(image, os);
+                    }
+                };
+            href = createEntry(content, image.getWidth(), image.getHeight(),
+                               ctx);
+            imageCache.put(key, href);
         }
-
         return href;
     }
 
     /**
-     * Returns an object which can be cached.
-     * Implementation must determine which information
-     * should actually be stored.
+     * Checks if the image is already in the cache, and
+     * adds it if not. Returns a unique id for the entry.
      *
-     * @param os the byte stream which is to be coerced
-     */
-    abstract Object getCacheableData(ByteArrayOutputStream os);
-
-    /**
-     * Determines if two images are equal.
-     * Interpretation of the objects referred to by
-     * <code>o1</code> and <code>o2</code> is entirely
-     * implementation-dependent.
+     * @param os                the image as a byte stream
+     * @param width             the width of the image
+     * @param height            the height of the image
+     * @param ctx               the SVGGeneratorContext
      *
-     * @param o1 object referring to one image
-     * @param o2 object referring to the other image
+     * @return a URI for the image
+     * @throws SVGGraphics2DIOException if an error occurs during image file i/o
      */
-    abstract boolean imagesMatch(Object o1, Object o2)
-                                             throws SVGGraphics2DIOException;
+    public String lookup(final ByteArrayOutputStream os,
+                         int width, int height,
+                         SVGGeneratorContext ctx)
+                             throws SVGGraphics2DIOException {
+        byte[] data = os.toByteArray();
+        ContentKey key = new ContentKey(ContentKey.ENCODED, width, height);
+        key.update(data, 0, data.length);
+        key.finish();
+
+        String href = (String) imageCache.get(key);
+        if (href == null) {
+            Content content = new Content() {
+                    void writeTo(OutputStream out) throws IOException {
+                        os.writeTo(out);
+                    }
+                };
+            href = createEntry(content, width, height, ctx);
+            imageCache.put(key, href);
+        }
+        return href;
+    }
 
     /**
      * Creates a new entry for keeping in the cache.
      *
-     * @param checksum the checksum from which the hash key is derived
-     * @param data     the data to be cached
+     * @param content  the encoded image
      * @param width    image width
      * @param height   image height
      * @param ctx      the SVGGeneratorContext
+     * @return the href of the new entry
      */
-    abstract ImageCacheEntry createEntry(int checksum,
-                                         Object data,
-                                         int width, int height,
-                                         SVGGeneratorContext ctx)
-                                             throws SVGGraphics2DIOException;
+    abstract String createEntry(Content content,
+                                int width, int height,
+                                SVGGeneratorContext ctx)
+                                    throws SVGGraphics2DIOException;
 
     /**
-     *  Calculates a checksum value for the given data.
+     * The encoded form of an image, which is only produced when the
+     * image is written to its destination.
      */
-    int getChecksum(byte[] data) {
-        checkSum.reset();
-        checkSum.update(data, 0, data.length);
-        return (int) checkSum.getValue();
+    abstract static class Content {
+        abstract void writeTo(OutputStream os) throws IOException;
     }
 
     /**
-     * Instances of this class are created to keep track of the
-     * set of images processed by the ImageHandler. Each entry
-     * corresponds to one unique member of this set.
+     * The key identifying a cached image. It combines the type and
+     * size of the image with a SHA-256 digest of its content. The
+     * digest is collision resistant, so images do not need to be kept
+     * to be compared byte for byte.
      */
-    private static class ImageCacheEntry {
+    static final class ContentKey {
 
-        /** A checksum calculated for the data cached */
-        public int checksum;
+        /**
+         * The type used for keys computed on already encoded data.
+         */
+        static final int ENCODED = -1;
 
-        /** An implementation-dependent object referring to the data */
-        public Object src;
+        private final int type;
+        private final int width;
+        private final int height;
 
-        /** A uri identifying the data */
-        public String href;
+        private MessageDigest md;
+        private byte[] digest;
+        private int hashCodeValue;
+
+        ContentKey(int type, int width, int height) {
+            this.type = type;
+            this.width = width;
+            this.height = height;
+            try {
+                md = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                // Every Java platform is required to support SHA-256
+                throw new SVGGraphics2DRuntimeException(e.getMessage(), e);
+            }
+        }
 
         /**
-         * Creates a new entry
+         * Adds the pixels of the given image. Rows of images with a
+         * packed int layout are read as is, others are converted to
+         * default RGB values.
          */
-        ImageCacheEntry(int    checksum,
-                               Object src,
-                               String href) {
-            this.checksum = checksum;
-            this.src      = src;
-            this.href     = href;
+        void update(BufferedImage image) {
+            int w = image.getWidth();
+            int h = image.getHeight();
+            Raster raster = image.getRaster();
+            int[] row = new int[w];
+            byte[] bytes = new byte[w * 4];
+            boolean packed =
+                image.getType() != BufferedImage.TYPE_CUSTOM
+                && raster.getTransferType() == DataBuffer.TYPE_INT
+                && raster.getNumDataElements() == 1
+                && image.getColorModel() instanceof DirectColorModel;
+            for (int y = 0; y < h; y++) {
+                if (packed) {
+                    raster.getDataElements(0, y, w, 1, row);
+                } else {
+                    image.getRGB(0, y, w, 1, row, 0, w);
+                }
+                for (int x = 0, i = 0; x < w; x++) {
+                    int v = row[x];
+                    bytes[i++] = (byte) v;
+                    bytes[i++] = (byte) (v >>> 8);
+                    bytes[i++] = (byte) (v >>> 16);
+                    bytes[i++] = (byte) (v >>> 24);
+                }
+                md.update(bytes);
+            }
+        }
+
+        /**
+         * Adds the given bytes.
+         */
+        void update(byte[] data, int off, int len) {
+            md.update(data, off, len);
+        }
+
+        /**
+         * Computes the digest. The key cannot be updated afterwards.
+         */
+        void finish() {
+            digest = md.digest();
+            md = null;
+            hashCodeValue = Arrays.hashCode(digest);
+        }
+
+        public int hashCode() {
+            return hashCodeValue;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof ContentKey)) {
+                return false;
+            }
+            ContentKey k = (ContentKey) o;
+            return Arrays.equals(digest, k.digest)
+                && type == k.type && width == k.width && height == k.height;
         }
     }
 
@@ -228,29 +297,31 @@ public abstract class ImageCacher implements SVGSyntax, ErrorConstants {
             }
         }
 
-        Object getCacheableData(ByteArrayOutputStream os) {
-            // In order to have only one instance of the image data
-            // in memory, we cache the entire xlink:href attribute value,
-            // so we can just pass a reference to the tree manager.
-            return DATA_PROTOCOL_PNG_PREFIX + os.toString();
-        }
-
-        boolean imagesMatch(Object o1, Object o2) {
-            return o1.equals(o2);
-        }
+        String createEntry(Content content,
+                           int width, int height,
+                           SVGGeneratorContext ctx)
+            throws SVGGraphics2DIOException {
 
-        ImageCacheEntry createEntry(int checksum, Object data,
-                                    int width, int height,
-                                    SVGGeneratorContext ctx) {
+            // Encode the xlink:href value directly after its prefix,
+            // so the image data is only copied once into the tree.
+            String href;
+            try {
+                ByteArrayOutputStream os = new ByteArrayOutputStream();
+                os.write(DATA_PROTOCOL_PNG_PREFIX.getBytes("US-ASCII"));
+                content.writeTo(os);
+                href = os.toString("US-ASCII");
+            } catch (IOException e) {
+                // should not happen since we do in-memory processing
+                throw new SVGGraphics2DIOException(ERR_UNEXPECTED, e);
+            }
 
             // Get a new unique id
             String id = ctx.idGenerator.generateID(ID_PREFIX_IMAGE);
 
             // Add the image data reference to the <defs> section
-            addToTree(id, (String) data, width, height, ctx);
+            addToTree(id, href, width, height, ctx);
 
-            // Create new cache entry
-            return new ImageCacheEntry(checksum, data, SIGN_POUND + id);    // <<<<<<<<<< error ??
+            return SIGN_POUND + id;
         }
 
         /**
@@ -304,6 +375,7 @@ public abstract class ImageCacher implements SVGSyntax, ErrorConstants {
             }*/
     }
 
+
     /**
      * Cache implementation for file-based images.
      */
@@ -320,73 +392,46 @@ public abstract class ImageCacher implements SVGSyntax, ErrorConstants {
             this.suffix   = suffix;
         }
 
-        Object getCacheableData(ByteArrayOutputStream os) {
-            return os;
-        }
-
-        boolean imagesMatch(Object o1, Object o2)
-                throws SVGGraphics2DIOException {
-            boolean match = false;
-            FileInputStream imageStream = null;
-            try {
-                imageStream = new FileInputStream((File) o1);
-                int imageLen = imageStream.available();
-                byte[] imageBytes = new byte[imageLen];
-                byte[] candidateBytes =
-                        ((ByteArrayOutputStream) o2).toByteArray();
-
-                int bytesRead = 0;
-                while (bytesRead != imageLen) {
-                    bytesRead += imageStream.read
-                      (imageBytes, bytesRead, imageLen-bytesRead);
-                }
-
-                match = Arrays.equals(imageBytes, candidateBytes);
-            } catch(IOException e) {
-                throw new SVGGraphics2DIOException(
-                                    ERR_READ+((File) o1).getName());
-            } finally {
-                try {
-                    if (imageStream != null)
-                        imageStream.close();
-                } catch (IOException e) {
-                }
-            }
-            return match;
-        }
-
-        ImageCacheEntry createEntry(int checksum, Object data,
-                                    int width, int height,
-                                    SVGGeneratorContext ctx)
+        String createEntry(Content content,
+                           int width, int height,
+                           SVGGeneratorContext ctx)
             throws SVGGraphics2DIOException {
 
             // Create a new file in image directory
             File imageFile = null;
 
-            try {
-                // While the files we are generating exist, try to create
-                // another unique id.
-                while (imageFile == null) {
-                    String fileId = ctx.idGenerator.generateID(prefix);
-                    imageFile = new File(imageDir, fileId + suffix);
-                    if (imageFile.exists())
-                        imageFile = null;
-                }
+            // While the files we are generating exist, try to create
+            // another unique id.
+            while (imageFile == null) {
+                String fileId = ctx.idGenerator.generateID(prefix);
+                imageFile = new File(imageDir, fileId + suffix);
+                if (imageFile.exists())
+                    imageFile = null;
+            }
 
-                // Write data to file
-                OutputStream outputStream = new FileOutputStream(imageFile);
-                ((ByteArrayOutputStream) data).writeTo(outputStream);
-                ((ByteArrayOutputStream) data).close();
+            // Encode the image straight to the file
+            OutputStream outputStream = null;
+            try {
+                outputStream = new BufferedOutputStream
+                    (new FileOutputStream(imageFile));
+                content.writeTo(outputStream);
+                outputStream.close();
+                outputStream = null;
             } catch(IOException e) {
                 throw new SVGGraphics2DIOException(ERR_WRITE+imageFile.getName());
+            } finally {
+                if (outputStream != null) {
+                    try {
+                        outputStream.close();
+                    } catch (IOException e) {
+                    }
+                    imageFile.delete();
+                }
             }
 
-            // Create new cache entry
-            return new ImageCacheEntry(checksum, imageFile, imageFile.getName());   // <<<<<<<<<< error ??
+            return imageFile.getName();
         }
 
     }
 
 }
-
-
@@ -134,7 +134,7 @@ public class SVGAlphaComposite extends AbstractSVGConverter {
                 AlphaComposite majorComposite =
                     AlphaComposite.getInstance(composite.getRule());
                 filterDef = (Element)compositeDefsMap.get(majorComposite);
-                defSet.add(filterDef);
+                addDefinition(filterDef);
 
                 // Process the filter value
                 StringBuffer filterAttrBuf = new StringBuffer(URL_PREFIX);
@@ -82,22 +82,22 @@ public class SVGArc extends SVGGraphicObjectConverter {
 
         Element svgPath = generatorContext.domFactory.createElementNS
             (SVG_NAMESPACE_URI, SVG_PATH_TAG);
-        StringBuffer d = new StringBuffer( 64 );
+        StringBuilder d = new StringBuilder( 64 );
 
         Point2D startPt = arc.getStartPoint();
         Point2D endPt   = arc.getEndPoint();
         int     type    = arc.getArcType();
 
         d.append(PATH_MOVE);
-        d.append(doubleString(startPt.getX()));
+        appendDouble(d, startPt.getX());
         d.append(SPACE);
-        d.append(doubleString(startPt.getY()));
+        appendDouble(d, startPt.getY());
         d.append(SPACE);
 
         d.append(PATH_ARC);
-        d.append(doubleString(width / 2));
+        appendDouble(d, width / 2);
         d.append(SPACE);
-        d.append(doubleString(height / 2));
+        appendDouble(d, height / 2);
         d.append(SPACE);
         d.append( '0' );  // no rotation with J2D arc.
         d.append(SPACE);
@@ -116,9 +116,9 @@ public class SVGArc extends SVGGraphicObjectConverter {
         }
 
         d.append(SPACE);
-        d.append(doubleString(endPt.getX()));
+        appendDouble(d, endPt.getX());
         d.append(SPACE);
-        d.append(doubleString(endPt.getY()));
+        appendDouble(d, endPt.getY());
 
         if (type == Arc2D.CHORD) {
             d.append(PATH_CLOSE);
@@ -127,9 +127,9 @@ public class SVGArc extends SVGGraphicObjectConverter {
             double cy = arc.getY() + height / 2;
             d.append(PATH_LINE_TO);
             d.append(SPACE);
-            d.append(doubleString(cx));
+            appendDouble(d, cx);
             d.append(SPACE);
-            d.append(doubleString(cy));
+            appendDouble(d, cy);
             d.append(SPACE);
             d.append(PATH_CLOSE);
         }
@@ -85,15 +85,25 @@ public class SVGClip extends AbstractSVGConverter {
                 if (clipDef == null)
                     clipDesc = NO_CLIP;
                 else {
-                    clipPathAttrBuf.append(SIGN_POUND);
-                    clipPathAttrBuf.append(clipDef.getAttributeNS(null, SVG_ID_ATTRIBUTE));
-                    clipPathAttrBuf.append(URL_SUFFIX);
-
-                    clipDesc = new SVGClipDescriptor(clipPathAttrBuf.toString(),
-                                                     clipDef);
-
+                    // Reuse an equal clipPath definition if there is one
+                    DefinitionKey contentKey = new DefinitionKey(clipDef);
+                    clipDesc = (SVGClipDescriptor)contentMap.get(contentKey);
+                    if (clipDesc == null) {
+                        clipDef.setAttributeNS(null, SVG_ID_ATTRIBUTE,
+                                               generatorContext.idGenerator.
+                                               generateID(ID_PREFIX_CLIP_PATH));
+
+                        clipPathAttrBuf.append(SIGN_POUND);
+                        clipPathAttrBuf.append(clipDef.getAttributeNS(null, SVG_ID_ATTRIBUTE));
+                        clipPathAttrBuf.append(URL_SUFFIX);
+
+                        clipDesc = new SVGClipDescriptor(clipPathAttrBuf.toString(),
+                                                         clipDef);
+
+                        contentMap.put(contentKey, clipDesc);
+                        addDefinition(clipDef);
+                    }
                     descMap.put(clipKey, clipDesc);
-                    defSet.add(clipDef);
                 }
             }
         } else
@@ -104,7 +114,7 @@ public class SVGClip extends AbstractSVGConverter {
 
     /**
      * In the following method, an clipping Shape is converted to
-     * an SVG clipPath.
+     * an SVG clipPath. The id of the clipPath is not set.
      *
      * @param clip path to convert to an SVG clipPath
      *        element
@@ -116,10 +126,6 @@ public class SVGClip extends AbstractSVGConverter {
         clipDef.setAttributeNS(null, SVG_CLIP_PATH_UNITS_ATTRIBUTE,
                                SVG_USER_SPACE_ON_USE_VALUE);
 
-        clipDef.setAttributeNS(null, SVG_ID_ATTRIBUTE,
-                               generatorContext.
-                               idGenerator.generateID(ID_PREFIX_CLIP_PATH));
-
         Element clipPath = shapeConverter.toSVG(clip);
         // unfortunately it may be null because of SVGPath that may produce null
         // SVG elements.
@@ -144,6 +150,11 @@ public class SVGClip extends AbstractSVGConverter {
  * method does not implement that behavior.
  */
 class ClipKey {
+    /**
+     * The serialized path data
+     */
+    String pathData;
+
     /**
      * This clip hash code. Based on the serialized path
      * data
@@ -154,7 +165,7 @@ class ClipKey {
      * @param proxiedPath path used as an index in the Map
      */
     public ClipKey(GeneralPath proxiedPath, SVGGeneratorContext gc){
-        String pathData = SVGPath.toSVGPathData(proxiedPath, gc);
+        pathData = SVGPath.toSVGPathData(proxiedPath, gc);
         hashCodeValue = pathData.hashCode();
     }
 
@@ -171,6 +182,7 @@ class ClipKey {
      */
     public boolean equals(Object clipKey) {
         return clipKey instanceof ClipKey
-            && hashCodeValue == ((ClipKey) clipKey).hashCodeValue;
+            && hashCodeValue == ((ClipKey) clipKey).hashCodeValue
+            && pathData.equals(((ClipKey) clipKey).pathData);
     }
 }
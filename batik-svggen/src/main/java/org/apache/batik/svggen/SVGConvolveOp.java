@@ -93,9 +93,9 @@ public class SVGConvolveOp extends AbstractSVGFilterConverter {
 
             // Convert the kernel values
             float[] data = kernel.getKernelData(null);
-            StringBuffer kernelMatrixBuf = new StringBuffer( data.length * 8 );
+            StringBuilder kernelMatrixBuf = new StringBuilder( data.length * 8 );
             for (float aData : data) {
-                kernelMatrixBuf.append(doubleString(aData));
+                appendDouble(kernelMatrixBuf, aData);
                 kernelMatrixBuf.append(SPACE);
             }
 
@@ -105,10 +105,6 @@ public class SVGConvolveOp extends AbstractSVGFilterConverter {
 
             filterDef.appendChild(feConvolveMatrixDef);
 
-            filterDef.setAttributeNS(null, SVG_ID_ATTRIBUTE,
-                                     generatorContext.idGenerator.
-                                     generateID(ID_PREFIX_FE_CONVOLVE_MATRIX));
-
             // Convert the edge mode
             if(convolveOp.getEdgeCondition() == ConvolveOp.EDGE_NO_OP)
                 feConvolveMatrixDef.setAttributeNS(null, SVG_EDGE_MODE_ATTRIBUTE,
@@ -117,20 +113,30 @@ public class SVGConvolveOp extends AbstractSVGFilterConverter {
                 feConvolveMatrixDef.setAttributeNS(null, SVG_EDGE_MODE_ATTRIBUTE,
                                                  SVG_NONE_VALUE);
 
-            //
-            // Create a filter descriptor
-            //
-
-            // Process filter attribute
-            StringBuffer filterAttrBuf = new StringBuffer(URL_PREFIX);
-            filterAttrBuf.append(SIGN_POUND);
-            filterAttrBuf.append(filterDef.getAttributeNS(null, SVG_ID_ATTRIBUTE));
-            filterAttrBuf.append(URL_SUFFIX);
-
-            filterDesc = new SVGFilterDescriptor(filterAttrBuf.toString(),
-                                                 filterDef);
-
-            defSet.add(filterDef);
+            // Reuse an equal filter definition if there is one
+            DefinitionKey contentKey = new DefinitionKey(filterDef);
+            filterDesc = (SVGFilterDescriptor)contentMap.get(contentKey);
+            if (filterDesc == null) {
+                filterDef.setAttributeNS(null, SVG_ID_ATTRIBUTE,
+                                         generatorContext.idGenerator.
+                                         generateID(ID_PREFIX_FE_CONVOLVE_MATRIX));
+
+                //
+                // Create a filter descriptor
+                //
+
+                // Process filter attribute
+                StringBuffer filterAttrBuf = new StringBuffer(URL_PREFIX);
+                filterAttrBuf.append(SIGN_POUND);
+                filterAttrBuf.append(filterDef.getAttributeNS(null, SVG_ID_ATTRIBUTE));
+                filterAttrBuf.append(URL_SUFFIX);
+
+                filterDesc = new SVGFilterDescriptor(filterAttrBuf.toString(),
+                                                     filterDef);
+
+                contentMap.put(contentKey, filterDesc);
+                addDefinition(filterDef);
+            }
             descMap.put(convolveOp, filterDesc);
         }
 
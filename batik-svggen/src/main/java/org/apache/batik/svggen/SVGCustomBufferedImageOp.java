@@ -66,7 +66,7 @@ public class SVGCustomBufferedImageOp extends AbstractSVGFilterConverter {
             if (filterDesc != null) {
                 Element def = filterDesc.getDef();
                 if(def != null)
-                    defSet.add(def);
+                    addDefinition(def);
                 descMap.put(filter, filterDesc);
             } else {
                 System.err.println(ERROR_EXTENSION);
@@ -75,7 +75,7 @@ public class SVGCustomComposite extends AbstractSVGConverter {
             if (desc != null) {
                 Element def = desc.getDef();
                 if(def != null)
-                    defSet.add(def);
+                    addDefinition(def);
                 descMap.put(composite, desc);
             }
         }
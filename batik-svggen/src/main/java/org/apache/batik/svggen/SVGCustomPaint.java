@@ -72,7 +72,7 @@ public class SVGCustomPaint extends AbstractSVGConverter {
 
             if (paintDesc != null) {
                 Element def = paintDesc.getDef();
-                if(def != null) defSet.add(def);
+                if(def != null) addDefinition(def);
                 descMap.put(paint, paintDesc);
             }
         }
@@ -398,7 +398,7 @@ public class SVGFont extends AbstractSVGConverter {
         //
         if (fontDesc == null) {
             descMap.put(fontKey, newFontDesc);
-            defSet.add(fontDef);
+            addDefinition(fontDef);
         }
 
         return newFontDesc;
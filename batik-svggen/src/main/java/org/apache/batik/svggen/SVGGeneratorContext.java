@@ -29,9 +29,12 @@ import java.awt.Stroke;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
 
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 
 /**
  * This class contains all non graphical contextual information that
@@ -100,6 +103,17 @@ public class SVGGeneratorContext implements ErrorConstants {
      */
     boolean svgFont = false;
 
+    /**
+     * Do we reuse the geometry of repeated shapes?
+     */
+    boolean shapeReuse = false;
+
+    /**
+     * The definitions created by the converters, in creation order, or
+     * null if they are not recorded.
+     */
+    List definitions;
+
     /**
      * GraphicContextDefaults
      */
@@ -395,6 +409,56 @@ public class SVGGeneratorContext implements ErrorConstants {
         this.svgFont = svgFont;
     }
 
+    /**
+     * Returns <code>true</code> if the geometry of repeated shapes
+     * is written once and referenced with use elements.
+     */
+    public final boolean isShapeReuseOn() {
+        return shapeReuse;
+    }
+
+    /**
+     * Sets if the geometry of shapes drawn several times, possibly at
+     * different translations, should be written once in the
+     * definitions and referenced with use elements. This only applies
+     * to shapes written as paths. Default value is <code>false</code>.
+     * @see SVGUse
+     */
+    public final void setShapeReuseOn(boolean shapeReuse) {
+        this.shapeReuse = shapeReuse;
+    }
+
+    /**
+     * Starts recording the definitions created by the converters.
+     * The streaming DOM tree managers use them to find the new
+     * definitions without going through all the converters.
+     * @see StreamingDOMTreeManager
+     */
+    public final void recordDefinitions() {
+        if (definitions == null) {
+            definitions = new ArrayList();
+        }
+    }
+
+    /**
+     * Returns the definitions created by the converters since the
+     * recording started, in creation order, or null if they are not
+     * recorded.
+     */
+    public final List getDefinitions() {
+        return definitions;
+    }
+
+    /**
+     * Records a definition created by a converter, if the definitions
+     * are recorded.
+     */
+    public final void addDefinition(Element def) {
+        if (definitions != null) {
+            definitions.add(def);
+        }
+    }
+
     /**
      * Returns the current precision used by this context
      */
@@ -422,18 +486,19 @@ public class SVGGeneratorContext implements ErrorConstants {
     /**
      * Converts the input double value to a string with a number of
      * decimal places controlled by the precision attribute.
+     * This method can be called from several threads.
+     * @see DoubleFormatter
      */
     public final String doubleString(double value) {
-        double absvalue = Math.abs(value);
-        // above 10e7 we do not output decimals as anyway
-        // in scientific notation they were not available
-        if (absvalue >= 10e7 || (int)value == value) {
-            return Integer.toString((int)value);
-        }
-        // under 10e-3 we have to put decimals
-        else {
-            return decimalFormat.format(value);
-        }
+        return DoubleFormatter.toString(value, precision);
+    }
+
+    /**
+     * Appends the input double value to a StringBuilder, the same way
+     * as {@link #doubleString}, but without creating any object.
+     */
+    public final void appendDouble(StringBuilder sb, double value) {
+        DoubleFormatter.append(sb, value, precision);
     }
 
     protected static DecimalFormatSymbols dsf
@@ -47,4 +47,11 @@ public abstract class SVGGraphicObjectConverter implements SVGSyntax {
     public final String doubleString(double value) {
         return generatorContext.doubleString(value);
     }
+
+    /**
+     * Utility method for subclasses.
+     */
+    public final void appendDouble(StringBuilder sb, double value) {
+        generatorContext.appendDouble(sb, value);
+    }
 }
@@ -199,6 +199,7 @@ public class SVGGraphics2D extends AbstractGraphics2D
      protected final void setDOMTreeManager(DOMTreeManager treeMgr) {
         this.domTreeManager = treeMgr;
         generatorCtx.genericImageHandler.setDOMTreeManager(domTreeManager);
+        shapeConverter.setDOMTreeManager(domTreeManager);
     }
 
      /**
@@ -366,6 +367,7 @@ public class SVGGraphics2D extends AbstractGraphics2D
         this.domGroupManager = new DOMGroupManager(gc, domTreeManager);
         this.domTreeManager.addGroupManager(domGroupManager);
         generatorCtx.genericImageHandler.setDOMTreeManager(domTreeManager);
+        shapeConverter.setDOMTreeManager(domTreeManager);
     }
 
     /**
@@ -132,30 +132,39 @@ public class SVGLinearGradient extends AbstractSVGConverter {
             gradientDef.appendChild(gradientStop);
 
             //
-            // Gradient ID
+            // Reuse an equal gradient definition if there is one
             //
-            gradientDef.
-                setAttributeNS(null, SVG_ID_ATTRIBUTE,
-                               generatorContext.idGenerator.
-                               generateID(ID_PREFIX_LINEAR_GRADIENT));
-
-            //
-            // Build Paint descriptor
-            //
-            StringBuffer paintAttrBuf = new StringBuffer(URL_PREFIX);
-            paintAttrBuf.append(SIGN_POUND);
-            paintAttrBuf.append(gradientDef.getAttributeNS(null, SVG_ID_ATTRIBUTE));
-            paintAttrBuf.append(URL_SUFFIX);
-
-            gradientDesc = new SVGPaintDescriptor(paintAttrBuf.toString(),
-                                                  SVG_OPAQUE_VALUE,
-                                                  gradientDef);
+            DefinitionKey contentKey = new DefinitionKey(gradientDef);
+            gradientDesc = (SVGPaintDescriptor)contentMap.get(contentKey);
+            if (gradientDesc == null) {
+                //
+                // Gradient ID
+                //
+                gradientDef.
+                    setAttributeNS(null, SVG_ID_ATTRIBUTE,
+                                   generatorContext.idGenerator.
+                                   generateID(ID_PREFIX_LINEAR_GRADIENT));
+
+                //
+                // Build Paint descriptor
+                //
+                StringBuffer paintAttrBuf = new StringBuffer(URL_PREFIX);
+                paintAttrBuf.append(SIGN_POUND);
+                paintAttrBuf.append(gradientDef.getAttributeNS(null, SVG_ID_ATTRIBUTE));
+                paintAttrBuf.append(URL_SUFFIX);
+
+                gradientDesc = new SVGPaintDescriptor(paintAttrBuf.toString(),
+                                                      SVG_OPAQUE_VALUE,
+                                                      gradientDef);
+
+                contentMap.put(contentKey, gradientDesc);
+                addDefinition(gradientDef);
+            }
 
             //
             // Update maps so that gradient can be reused if needed
             //
             descMap.put(gradient, gradientDesc);
-            defSet.add(gradientDef);
         }
 
         return gradientDesc;
@@ -187,25 +187,22 @@ public class SVGLookupOp extends AbstractSVGFilterConverter {
 
             filterDef.appendChild(feComponentTransferDef);
 
-            filterDef.
-                setAttributeNS(null, SVG_ID_ATTRIBUTE,
-                               generatorContext.idGenerator.
-                               generateID(ID_PREFIX_FE_COMPONENT_TRANSFER));
-            //
-            // Create a filter descriptor
-            //
+            // Reuse an equal filter definition if there is one
+            DefinitionKey contentKey = new DefinitionKey(filterDef);
+            filterDesc = (SVGFilterDescriptor)contentMap.get(contentKey);
+            if (filterDesc == null) {
+                filterDef.
+                    setAttributeNS(null, SVG_ID_ATTRIBUTE,
+                                   generatorContext.idGenerator.
+                                   generateID(ID_PREFIX_FE_COMPONENT_TRANSFER));
 
-            // Process filter attribute
-//            StringBuffer filterAttrBuf = new StringBuffer(URL_PREFIX);
-//            filterAttrBuf.append(SIGN_POUND);
-//            filterAttrBuf.append(filterDef.getAttributeNS(null, SVG_ID_ATTRIBUTE));
-//            filterAttrBuf.append(URL_SUFFIX);
+                String filterAttrBuf = URL_PREFIX + SIGN_POUND + filterDef.getAttributeNS(null, SVG_ID_ATTRIBUTE) + URL_SUFFIX;
 
-            String filterAttrBuf = URL_PREFIX + SIGN_POUND + filterDef.getAttributeNS(null, SVG_ID_ATTRIBUTE) + URL_SUFFIX;
+                filterDesc = new SVGFilterDescriptor(filterAttrBuf, filterDef);
 
-            filterDesc = new SVGFilterDescriptor(filterAttrBuf, filterDef);
-
-            defSet.add(filterDef);
+                contentMap.put(contentKey, filterDesc);
+                addDefinition(filterDef);
+            }
             descMap.put(lookupOp, filterDesc);
         }
 
@@ -223,9 +220,9 @@ public class SVGLookupOp extends AbstractSVGFilterConverter {
         if((nComponents != 1) && (nComponents != 3) && (nComponents != 4))
             throw new SVGGraphics2DRuntimeException(ERR_ILLEGAL_BUFFERED_IMAGE_LOOKUP_OP);
 
-        StringBuffer[] lookupTableBuf = new StringBuffer[nComponents];
+        StringBuilder[] lookupTableBuf = new StringBuilder[nComponents];
         for(int i=0; i<nComponents; i++)
-            lookupTableBuf[i] = new StringBuffer();
+            lookupTableBuf[i] = new StringBuilder();
 
         if(!(lookupTable instanceof ByteLookupTable)){
             int[] src = new int[nComponents];
@@ -240,7 +237,8 @@ public class SVGLookupOp extends AbstractSVGFilterConverter {
                 // Fill in string buffers
                 for(int j=0; j<nComponents; j++){
                     // lookupTableBuf[j].append(Integer.toString(i));
-                    lookupTableBuf[j].append(doubleString(i/255.0)).append(SPACE);
+                    appendDouble(lookupTableBuf[j], i/255.0);
+                    lookupTableBuf[j].append(SPACE);
                 }
             }
 
@@ -253,7 +251,8 @@ public class SVGLookupOp extends AbstractSVGFilterConverter {
 
                 // Fill in string buffers
                 for(int j=0; j<nComponents; j++){
-                    lookupTableBuf[j].append(doubleString( dest[j]/255.0) ).append(SPACE);
+                    appendDouble(lookupTableBuf[j], dest[j]/255.0);
+                    lookupTableBuf[j].append(SPACE);
                 }
             }
         }
@@ -271,7 +270,8 @@ public class SVGLookupOp extends AbstractSVGFilterConverter {
                 // Fill in string buffers
                 for(int j=0; j<nComponents; j++){
                     // lookupTableBuf[j].append(Integer.toString(i));
-                    lookupTableBuf[j].append( doubleString(i/255.0) ).append(SPACE);
+                    appendDouble(lookupTableBuf[j], i/255.0);
+                    lookupTableBuf[j].append(SPACE);
                 }
             }
             for(int i=0; i<=255; i++){
@@ -283,7 +283,8 @@ public class SVGLookupOp extends AbstractSVGFilterConverter {
 
                 // Fill in string buffers
                 for(int j=0; j<nComponents; j++){
-                    lookupTableBuf[j].append( doubleString( (0xff & dest[j])/255.0) ).append(SPACE);
+                    appendDouble(lookupTableBuf[j], (0xff & dest[j])/255.0);
+                    lookupTableBuf[j].append(SPACE);
                 }
             }
         }
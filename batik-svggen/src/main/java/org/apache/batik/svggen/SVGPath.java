@@ -83,7 +83,19 @@ public class SVGPath extends SVGGraphicObjectConverter {
      * @return the value of the corresponding d attribute
      */
      public static String toSVGPathData(Shape path, SVGGeneratorContext gc) {
-        StringBuffer d = new StringBuffer( 40 );
+        return toSVGPathData(path, gc, 0, 0);
+    }
+
+    /**
+     * @param path the GeneralPath to convert
+     * @param dx the value subtracted from the x coordinates
+     * @param dy the value subtracted from the y coordinates
+     * @return the value of the d attribute of the path translated
+     *         by (-dx, -dy)
+     */
+    public static String toSVGPathData(Shape path, SVGGeneratorContext gc,
+                                       double dx, double dy) {
+        StringBuilder d = new StringBuilder( 40 );
         PathIterator pi = path.getPathIterator(null);
         float[] seg = new float[6];
         int segType = 0;
@@ -92,25 +104,25 @@ public class SVGPath extends SVGGraphicObjectConverter {
             switch(segType) {
             case PathIterator.SEG_MOVETO:
                 d.append(PATH_MOVE);
-                appendPoint(d, seg[0], seg[1], gc);
+                appendPoint(d, seg[0] - dx, seg[1] - dy, gc);
                 break;
             case PathIterator.SEG_LINETO:
                 d.append(PATH_LINE_TO);
-                appendPoint(d, seg[0], seg[1], gc);
+                appendPoint(d, seg[0] - dx, seg[1] - dy, gc);
                 break;
             case PathIterator.SEG_CLOSE:
                 d.append(PATH_CLOSE);
                 break;
             case PathIterator.SEG_QUADTO:
                 d.append(PATH_QUAD_TO);
-                appendPoint(d, seg[0], seg[1], gc);
-                appendPoint(d, seg[2], seg[3], gc);
+                appendPoint(d, seg[0] - dx, seg[1] - dy, gc);
+                appendPoint(d, seg[2] - dx, seg[3] - dy, gc);
                 break;
             case PathIterator.SEG_CUBICTO:
                 d.append(PATH_CUBIC_TO);
-                appendPoint(d, seg[0], seg[1], gc);
-                appendPoint(d, seg[2], seg[3], gc);
-                appendPoint(d, seg[4], seg[5], gc);
+                appendPoint(d, seg[0] - dx, seg[1] - dy, gc);
+                appendPoint(d, seg[2] - dx, seg[3] - dy, gc);
+                appendPoint(d, seg[4] - dx, seg[5] - dy, gc);
                 break;
             default:
                 throw new RuntimeException("invalid segmentType:" + segType );
@@ -118,9 +130,13 @@ public class SVGPath extends SVGGraphicObjectConverter {
             pi.next();
         } // while !isDone
 
-        if (d.length() > 0)
-            return d.toString().trim();
-        else {
+        int length = d.length();
+        if (length > 0) {
+            // Drop the separator appended after the last coordinate
+            if (d.charAt(length - 1) == ' ')
+                d.setLength(length - 1);
+            return d.toString();
+        } else {
             // This is a degenerate case: there was no initial moveTo
             // in the path and no data at all. However, this happens
             // in the Java 2D API (e.g., when clipping to a rectangle
@@ -136,10 +152,10 @@ public class SVGPath extends SVGGraphicObjectConverter {
     /**
      * Appends a coordinate to the path data
      */
-    private static void appendPoint(StringBuffer d, float x, float y, SVGGeneratorContext gc) {
-        d.append(gc.doubleString(x));
+    private static void appendPoint(StringBuilder d, double x, double y, SVGGeneratorContext gc) {
+        gc.appendDouble(d, x);
         d.append(SPACE);
-        d.append(gc.doubleString(y));
+        gc.appendDouble(d, y);
         d.append(SPACE);
     }
 }
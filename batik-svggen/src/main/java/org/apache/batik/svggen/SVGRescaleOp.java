@@ -168,26 +168,22 @@ public class SVGRescaleOp extends AbstractSVGFilterConverter {
 
             filterDef.appendChild(feComponentTransferDef);
 
-            filterDef.
-                setAttributeNS(null, SVG_ID_ATTRIBUTE,
-                               generatorContext.idGenerator.
-                               generateID(ID_PREFIX_FE_COMPONENT_TRANSFER));
+            // Reuse an equal filter definition if there is one
+            DefinitionKey contentKey = new DefinitionKey(filterDef);
+            filterDesc = (SVGFilterDescriptor)contentMap.get(contentKey);
+            if (filterDesc == null) {
+                filterDef.
+                    setAttributeNS(null, SVG_ID_ATTRIBUTE,
+                                   generatorContext.idGenerator.
+                                   generateID(ID_PREFIX_FE_COMPONENT_TRANSFER));
 
-            //
-            // Create a filter descriptor
-            //
-
-            // Process filter attribute
-//            StringBuffer filterAttrBuf = new StringBuffer(URL_PREFIX);
-//            filterAttrBuf.append(SIGN_POUND);
-//            filterAttrBuf.append(filterDef.getAttributeNS(null, SVG_ID_ATTRIBUTE));
-//            filterAttrBuf.append(URL_SUFFIX);
+                String filterAttrBuf = URL_PREFIX + SIGN_POUND + filterDef.getAttributeNS(null, SVG_ID_ATTRIBUTE) + URL_SUFFIX;
 
-            String filterAttrBuf = URL_PREFIX + SIGN_POUND + filterDef.getAttributeNS(null, SVG_ID_ATTRIBUTE) + URL_SUFFIX;
+                filterDesc = new SVGFilterDescriptor(filterAttrBuf, filterDef);
 
-            filterDesc = new SVGFilterDescriptor(filterAttrBuf, filterDef);
-
-            defSet.add(filterDef);
+                contentMap.put(contentKey, filterDesc);
+                addDefinition(filterDef);
+            }
             descMap.put(rescaleOp, filterDesc);
         }
 
@@ -53,6 +53,7 @@ public class SVGShape extends SVGGraphicObjectConverter {
     private SVGPath      svgPath;
     private SVGPolygon   svgPolygon;
     private SVGRectangle svgRectangle;
+    private SVGUse       svgUse;
 
     /**
      * @param generatorContext used to build Elements
@@ -67,6 +68,16 @@ public class SVGShape extends SVGGraphicObjectConverter {
         svgRectangle = new SVGRectangle(generatorContext);
     }
 
+    /**
+     * Sets the DOMTreeManager receiving the definitions of the paths
+     * reused when the generator context has shape reuse on. Paths are
+     * never reused if this method is not called.
+     * @see SVGGeneratorContext#setShapeReuseOn
+     */
+    public void setDOMTreeManager(DOMTreeManager domTreeManager) {
+        svgUse = new SVGUse(generatorContext, domTreeManager);
+    }
+
     /**
      * @param shape Shape object to be converted
      */
@@ -83,6 +94,8 @@ public class SVGShape extends SVGGraphicObjectConverter {
             return svgLine.toSVG((Line2D)shape);
         else if(shape instanceof Arc2D)
             return svgArc.toSVG((Arc2D)shape);
+        else if(svgUse != null && generatorContext.isShapeReuseOn())
+            return svgUse.toSVG(shape);
         else
             return svgPath.toSVG(shape);
     }
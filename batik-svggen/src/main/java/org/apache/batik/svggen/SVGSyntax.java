@@ -57,6 +57,7 @@ public interface SVGSyntax extends SVGConstants {
     String ID_PREFIX_IMAGE_DEFS = "imageDefs";
     String ID_PREFIX_LINEAR_GRADIENT = "linearGradient";
     String ID_PREFIX_MASK = "mask";
+    String ID_PREFIX_PATH = "path";
     String ID_PREFIX_PATTERN = "pattern";
     String ID_PREFIX_RADIAL_GRADIENT = "radialGradient";
     String ID_PREFIX_SPECULAR_ADD = "specularAdd";
@@ -144,22 +144,29 @@ public class SVGTexturePaint extends AbstractSVGConverter {
 
             patternDef.appendChild(patternContent);
 
-            patternDef.setAttributeNS(null, SVG_ID_ATTRIBUTE,
-                                      generatorContext.idGenerator.
-                                      generateID(ID_PREFIX_PATTERN));
-
-//            StringBuffer patternAttrBuf = new StringBuffer(URL_PREFIX);
-//            patternAttrBuf.append(SIGN_POUND);
-//            patternAttrBuf.append(patternDef.getAttributeNS(null, SVG_ID_ATTRIBUTE));
-//            patternAttrBuf.append(URL_SUFFIX);
-            String patternAttrBuf = URL_PREFIX
-                    + SIGN_POUND
-                    + patternDef.getAttributeNS(null, SVG_ID_ATTRIBUTE)
-                    + URL_SUFFIX;
-            patternDesc = new SVGPaintDescriptor(patternAttrBuf, SVG_OPAQUE_VALUE, patternDef);
+            // Reuse an equal pattern definition if there is one
+            DefinitionKey contentKey = new DefinitionKey(patternDef);
+            patternDesc = (SVGPaintDescriptor)contentMap.get(contentKey);
+            if (patternDesc == null) {
+                patternDef.setAttributeNS(null, SVG_ID_ATTRIBUTE,
+                                          generatorContext.idGenerator.
+                                          generateID(ID_PREFIX_PATTERN));
+
+//                StringBuffer patternAttrBuf = new StringBuffer(URL_PREFIX);
+//                patternAttrBuf.append(SIGN_POUND);
+//                patternAttrBuf.append(patternDef.getAttributeNS(null, SVG_ID_ATTRIBUTE));
+//                patternAttrBuf.append(URL_SUFFIX);
+                String patternAttrBuf = URL_PREFIX
+                        + SIGN_POUND
+                        + patternDef.getAttributeNS(null, SVG_ID_ATTRIBUTE)
+                        + URL_SUFFIX;
+                patternDesc = new SVGPaintDescriptor(patternAttrBuf, SVG_OPAQUE_VALUE, patternDef);
+
+                contentMap.put(contentKey, patternDesc);
+                addDefinition(patternDef);
+            }
 
             descMap.put(texture, patternDesc);
-            defSet.add(patternDef);
         }
 
         return patternDesc;
@@ -0,0 +1,137 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.svggen;
+
+import java.awt.Shape;
+import java.awt.geom.GeneralPath;
+import java.awt.geom.PathIterator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.w3c.dom.Element;
+
+/**
+ * Utility class that converts a Shape object into an SVG use element
+ * referencing a path definition, when the same geometry has already
+ * been drawn at another location.
+ * The geometry is identified by its path data relative to its first
+ * point, so that a Shape drawn at different translations is written
+ * once. The first time some geometry is drawn, a plain path element is
+ * returned. The next times, a path with the relative data is added
+ * to the definitions and use elements, positioned at the first point
+ * of the Shape, reference it.
+ * Note that the path data of the geometry drawn once is kept, up to
+ * {@link #MAX_DRAWN_ONCE} entries, to detect the repetitions: the least
+ * recently drawn geometry is forgotten first.
+ *
+ * @see SVGGeneratorContext#setShapeReuseOn
+ * @version $Id$
+ */
+public class SVGUse extends SVGGraphicObjectConverter {
+    /**
+     * Maximum number of geometries drawn once which are remembered.
+     */
+    public static final int MAX_DRAWN_ONCE = 1000;
+
+    /**
+     * Converter for the first occurrence of the geometry.
+     */
+    private SVGPath svgPath;
+
+    /**
+     * The DOMTreeManager receiving the path definitions.
+     */
+    private DOMTreeManager domTreeManager;
+
+    /**
+     * Set of the relative path data of the shapes drawn once, in
+     * access order.
+     */
+    private Map drawnOnce = new LinkedHashMap(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry eldest) {
+                return size() > MAX_DRAWN_ONCE;
+            }
+        };
+
+    /**
+     * Map of the relative path data of the shapes drawn more than
+     * once, to the id of their path definition.
+     */
+    private Map pathMap = new HashMap();
+
+    /**
+     * @param generatorContext used to build Elements
+     * @param domTreeManager the DOMTreeManager receiving the path
+     *        definitions
+     */
+    public SVGUse(SVGGeneratorContext generatorContext,
+                  DOMTreeManager domTreeManager) {
+        super(generatorContext);
+        this.svgPath = new SVGPath(generatorContext);
+        this.domTreeManager = domTreeManager;
+    }
+
+    /**
+     * @param shape the Shape that should be converted to an SVG use
+     *        or path element.
+     * @return a use or path Element.
+     */
+    public Element toSVG(Shape shape) {
+        PathIterator pi = shape.getPathIterator(null);
+        float[] seg = new float[6];
+        if (pi.isDone() || pi.currentSegment(seg) != PathIterator.SEG_MOVETO) {
+            return svgPath.toSVG(shape);
+        }
+
+        float x = seg[0];
+        float y = seg[1];
+        String dAttr = SVGPath.toSVGPathData(shape, generatorContext, x, y);
+        boolean evenOdd = pi.getWindingRule() == GeneralPath.WIND_EVEN_ODD;
+        String key = evenOdd ? SVG_EVEN_ODD_VALUE + dAttr : dAttr;
+
+        String id = (String)pathMap.get(key);
+        if (id == null) {
+            if (drawnOnce.remove(key) == null) {
+                drawnOnce.put(key, key);
+                return svgPath.toSVG(shape);
+            }
+            id = generatorContext.idGenerator.generateID(ID_PREFIX_PATH);
+            Element pathDef = generatorContext.domFactory.createElementNS
+                (SVG_NAMESPACE_URI, SVG_PATH_TAG);
+            pathDef.setAttributeNS(null, SVG_D_ATTRIBUTE, dAttr);
+            if (evenOdd)
+                pathDef.setAttributeNS(null, SVG_FILL_RULE_ATTRIBUTE,
+                                       SVG_EVEN_ODD_VALUE);
+            pathDef.setAttributeNS(null, SVG_ID_ATTRIBUTE, id);
+            domTreeManager.addOtherDef(pathDef);
+            pathMap.put(key, id);
+        }
+
+        Element svgUse = generatorContext.domFactory.createElementNS
+            (SVG_NAMESPACE_URI, SVG_USE_TAG);
+        svgUse.setAttributeNS(XLINK_NAMESPACE_URI, XLINK_HREF_QNAME,
+                              SIGN_POUND + id);
+        if (x != 0)
+            svgUse.setAttributeNS(null, SVG_X_ATTRIBUTE, doubleString(x));
+        if (y != 0)
+            svgUse.setAttributeNS(null, SVG_Y_ATTRIBUTE, doubleString(y));
+        return svgUse;
+    }
+}
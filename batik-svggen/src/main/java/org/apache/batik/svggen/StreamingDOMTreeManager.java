@@ -0,0 +1,525 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.svggen;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.batik.ext.awt.g2d.GraphicContext;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * A DOMTreeManager which writes the SVG content to a Writer as it is
+ * generated, instead of keeping it in the top level group until the
+ * whole document is streamed.
+ *
+ * The groups appended by the group managers are written as soon as
+ * their content is complete: an element is written when the next one
+ * is added to its group, and a group when the next group is appended.
+ * The written nodes are then removed from the tree, so that only the
+ * current group and its last child are kept in memory.
+ *
+ * The definitions are written in a &lt;defs&gt; section of the top
+ * level group, just before the first element that references them.
+ * When an element of the current group references new definitions,
+ * the group is closed and reopened after the definitions. The SVG
+ * fonts, which get new glyphs as text is drawn and are not referenced
+ * by URI, are written at the end of the document. The definitions
+ * created by the converters are recorded by the generator context, so
+ * that the new ones are found without going through the definitions
+ * already written.
+ * <br>
+ * [svg]
+ *   |
+ *   +-- [defs] Contain generic definitions
+ *   +-- [g]    Top level group
+ *        |
+ *        +-- [defs] Definitions used by Group 1
+ *        +-- [g]    Group 1
+ *        +-- ...
+ *        +-- [defs] Definitions used by Group n
+ *        +-- [g]    Group n
+ *        +-- [defs] Fonts and remaining definitions
+ *
+ * The attributes of the root element are written with the first group.
+ * In particular, the 'enable-background' attribute required by the
+ * AlphaComposite rules other than SRC_OVER is only set when such a
+ * composite was used by that group.
+ *
+ * @version $Id$
+ */
+public class StreamingDOMTreeManager extends DOMTreeManager {
+
+    /**
+     * The output.
+     */
+    protected XmlWriter.IndentWriter out;
+
+    /**
+     * Whether the output uses CSS style properties as opposed to plain
+     * attributes.
+     */
+    protected boolean useCss;
+
+    /**
+     * Whether the non-ASCII characters are escaped.
+     */
+    protected boolean escaped;
+
+    /**
+     * The root element, once the start of the document was written.
+     */
+    protected Element root;
+
+    /**
+     * The group which start tag was written last, or null.
+     */
+    protected Element currentGroup;
+
+    /**
+     * Whether endDocument was invoked.
+     */
+    protected boolean ended;
+
+    /**
+     * The first error raised by the output.
+     */
+    protected SVGGraphics2DIOException error;
+
+    /**
+     * The definitions already written.
+     */
+    protected Set writtenDefinitions = new HashSet();
+
+    /**
+     * The identifiers of the written definitions, and of the references
+     * already resolved.
+     */
+    protected Set writtenIds = new HashSet();
+
+    /**
+     * The number of definitions recorded by the generator context which
+     * were already taken by {@link #getNewDefinitions}.
+     */
+    protected int definitionIndex;
+
+    /**
+     * Constructor
+     * @param gc default graphic context state
+     * @param generatorContext the SVG generator context
+     * @param maxGCOverrides defines how many overrides are allowed
+     *                       in children nodes of the current group.
+     * @param writer the output
+     * @param useCss defines whether the output SVG should use CSS style
+     *        properties as opposed to plain attributes.
+     * @param escaped defines if the characters will be escaped
+     */
+    public StreamingDOMTreeManager(GraphicContext gc,
+                                   SVGGeneratorContext generatorContext,
+                                   int maxGCOverrides,
+                                   Writer writer,
+                                   boolean useCss,
+                                   boolean escaped) {
+        super(gc, generatorContext, maxGCOverrides);
+        if (writer instanceof XmlWriter.IndentWriter) {
+            out = (XmlWriter.IndentWriter)writer;
+        } else {
+            out = new XmlWriter.IndentWriter(writer);
+        }
+        this.useCss = useCss;
+        this.escaped = escaped;
+        generatorContext.recordDefinitions();
+        definitionIndex = generatorContext.getDefinitions().size();
+    }
+
+    /**
+     * Writes the previous group, if any, and the start tag of the new
+     * one.
+     *
+     * @param group new group to be appended to the topLevelGroup
+     * @param groupManager DOMTreeManager that produced the group.
+     */
+    public void appendGroup(Element group, DOMGroupManager groupManager){
+        super.appendGroup(group, groupManager);
+        try {
+            endGroup(false);
+        } catch (IOException e) {
+            setError(e);
+        }
+        currentGroup = group;
+        try {
+            if (isWriting()) {
+                startDocument();
+                if (hasNewReferences(group, true)) {
+                    writeDefinitions(group);
+                }
+                XmlWriter.writeStartTag(style(group), out, escaped);
+            }
+            writeChildren(false);
+        } catch (IOException e) {
+            setError(e);
+        }
+    }
+
+    /**
+     * Writes the element added before the given one.
+     *
+     * @param element the element added to the current group of the
+     *        group manager.
+     * @param groupManager DOMGroupManager that added the element.
+     */
+    public void appendElement(Element element, DOMGroupManager groupManager){
+        if (currentGroup == null ||
+            element.getParentNode() != currentGroup) {
+            return;
+        }
+        try {
+            writeChildren(false);
+        } catch (IOException e) {
+            setError(e);
+        }
+    }
+
+    /**
+     * Writes the remaining content and the end of the document. The
+     * content drawn afterwards is discarded.
+     */
+    public void endDocument() throws SVGGraphics2DIOException {
+        if (!ended) {
+            try {
+                if (isWriting()) {
+                    startDocument();
+                }
+                boolean empty = currentGroup == null;
+                if (!empty) {
+                    writeChildren(true);
+                }
+                List defSet = isWriting() ? getNewDefinitions(true) : null;
+                endGroup(defSet == null || defSet.isEmpty());
+                if (isWriting()) {
+                    if (!defSet.isEmpty()) {
+                        writeDefinitions(defSet, null);
+                    } else if (empty) {
+                        out.setIndentLevel(out.getIndentLevel()-2);
+                    }
+                    XmlWriter.writeEndTag(topLevelGroup, out, true);
+                    XmlWriter.writeEndTag(root, out, true);
+                    out.write(XmlWriter.EOL);
+                    out.flush();
+                }
+            } catch (IOException e) {
+                setError(e);
+            }
+            ended = true;
+            recycleTopLevelGroup(false);
+        }
+        if (error != null) {
+            generatorContext.errorHandler.handleError(error);
+        }
+    }
+
+    /**
+     * Returns the first error raised by the output, or null.
+     */
+    public SVGGraphics2DIOException getError() {
+        return error;
+    }
+
+    /**
+     * Not supported: the content is written as it is drawn.
+     */
+    public Element getRoot(Element svgElement){
+        throw new SVGGraphics2DRuntimeException(ERR_STREAMING);
+    }
+
+    /**
+     * Not supported: the content is written as it is drawn.
+     */
+    public Element getTopLevelGroup(boolean includeDefinitionSet){
+        throw new SVGGraphics2DRuntimeException(ERR_STREAMING);
+    }
+
+    /**
+     * Not supported: the content is written as it is drawn.
+     */
+    public void setTopLevelGroup(Element topLevelGroup){
+        throw new SVGGraphics2DRuntimeException(ERR_STREAMING);
+    }
+
+    /**
+     * Returns the element which attributes are written as the start tag
+     * of the document.
+     */
+    protected Element createRootElement() {
+        Element svg = generatorContext.domFactory.
+            createElementNS(SVG_NAMESPACE_URI, SVG_SVG_TAG);
+
+        // Enable background if required by AlphaComposite convertion
+        if (gcConverter.getCompositeConverter().
+            getAlphaCompositeConverter().requiresBackgroundAccess())
+            svg.setAttributeNS
+                (null, SVG_ENABLE_BACKGROUND_ATTRIBUTE, SVG_NEW_VALUE);
+
+        applyDefaultRenderingStyle(svg);
+        return svg;
+    }
+
+    /**
+     * Writes the XML header, the start tag of the root element, the
+     * generic definitions and the start tag of the top level group, if
+     * not already done.
+     */
+    protected void startDocument() throws IOException {
+        if (root != null) {
+            return;
+        }
+        root = createRootElement();
+        root.setAttributeNS(XMLNS_NAMESPACE_URI,
+                            XMLNS_PREFIX,
+                            SVG_NAMESPACE_URI);
+        root.setAttributeNS(XMLNS_NAMESPACE_URI,
+                            XMLNS_PREFIX + ":" + XLINK_PREFIX,
+                            XLINK_NAMESPACE_URI);
+
+        XmlWriter.writeDocumentHeader(out);
+        XmlWriter.writeStartTag(style(root), out, escaped);
+
+        if (generatorContext.generatorComment != null) {
+            XmlWriter.writeXml(generatorContext.domFactory.
+                               createComment(generatorContext.generatorComment),
+                               out, escaped);
+        }
+
+        writtenDefinitions.addAll(genericDefSet);
+        Element genericDefs = getGenericDefinitions();
+        root.appendChild(genericDefs);
+        root.appendChild(topLevelGroup);
+        XmlWriter.writeXml(style(genericDefs), out, escaped);
+        XmlWriter.writeStartTag(style(topLevelGroup), out, escaped);
+    }
+
+    /**
+     * Writes the remaining children of the current group and its end
+     * tag, and removes it from the top level group.
+     * @param lastElem whether the group is the last child of the top
+     *        level group
+     */
+    protected void endGroup(boolean lastElem) throws IOException {
+        if (currentGroup != null) {
+            try {
+                writeChildren(true);
+                if (isWriting()) {
+                    XmlWriter.writeEndTag(currentGroup, out, lastElem);
+                }
+            } finally {
+                topLevelGroup.removeChild(currentGroup);
+                currentGroup = null;
+            }
+        }
+    }
+
+    /**
+     * Writes and removes the children of the current group.
+     * @param all whether the last child is written too
+     */
+    protected void writeChildren(boolean all) throws IOException {
+        Node last = all ? null : currentGroup.getLastChild();
+        Node child = currentGroup.getFirstChild();
+        while (child != last) {
+            if (isWriting()) {
+                Element element = (Element)child;
+                if (hasNewReferences(element, true)) {
+                    List defSet = getNewDefinitions(false);
+                    if (!defSet.isEmpty()) {
+                        // Closes and reopens the current group, so that
+                        // the definitions are not children of the group.
+                        out.setIndentLevel(out.getIndentLevel()-2);
+                        XmlWriter.writeEndTag(currentGroup, out, false);
+                        writeDefinitions(defSet, currentGroup);
+                        XmlWriter.writeStartTag(currentGroup, out, escaped);
+                    }
+                }
+                XmlWriter.writeXml(style(element), out, escaped);
+            }
+            Node next = child.getNextSibling();
+            currentGroup.removeChild(child);
+            child = next;
+        }
+    }
+
+    /**
+     * Writes the new definitions before the given group.
+     */
+    protected void writeDefinitions(Element group) throws IOException {
+        List defSet = getNewDefinitions(false);
+        if (!defSet.isEmpty()) {
+            writeDefinitions(defSet, group);
+        }
+    }
+
+    /**
+     * Writes the given definitions in a new defs element.
+     * @param defSet the definitions
+     * @param nextSibling the group the defs element precedes, or null if
+     *        it is the last child of the top level group.
+     */
+    protected void writeDefinitions(List defSet, Element nextSibling)
+        throws IOException {
+        Element defElement = generatorContext.domFactory.
+            createElementNS(SVG_NAMESPACE_URI, SVG_DEFS_TAG);
+        defElement.setAttributeNS(null, SVG_ID_ATTRIBUTE,
+                                  generatorContext.idGenerator.
+                                  generateID(ID_PREFIX_DEFS));
+        for (Object aDefSet : defSet) defElement.appendChild((Element) aDefSet);
+
+        topLevelGroup.insertBefore(defElement, nextSibling);
+        XmlWriter.writeXml(style(defElement), out, escaped);
+        topLevelGroup.removeChild(defElement);
+    }
+
+    /**
+     * Returns the definitions created by the converters since the last
+     * call, and marks them as written. Only the definitions recorded by
+     * the generator context since the last call are checked, except at
+     * the end of the document, where the definitions of all the
+     * converters are, so that the fonts and the definitions of the
+     * converters which do not record them are written too.
+     * @param fonts whether the SVG fonts are included
+     */
+    protected List getNewDefinitions(boolean fonts) {
+        List defSet = new LinkedList();
+        List defs = generatorContext.getDefinitions();
+        for (; definitionIndex < defs.size(); definitionIndex++) {
+            Element def = (Element)defs.get(definitionIndex);
+            if (!SVG_FONT_TAG.equals(def.getTagName())) {
+                addNewDefinition(def, defSet);
+            }
+        }
+        if (otherDefs != null){
+            for (Object def : otherDefs) {
+                addNewDefinition((Element)def, defSet);
+            }
+            otherDefs = null;
+        }
+        if (fonts) {
+            List all = gcConverter.getDefinitionSet();
+            all.addAll(filterConverter.getDefinitionSet());
+            for (Object def : all) {
+                addNewDefinition((Element)def, defSet);
+            }
+        }
+        return defSet;
+    }
+
+    /**
+     * Adds the given definition to the given list, and marks it as
+     * written, unless it was already written.
+     */
+    protected void addNewDefinition(Element def, List defSet) {
+        if (writtenDefinitions.add(def)) {
+            defSet.add(def);
+            writtenIds.add(def.getAttributeNS(null, SVG_ID_ATTRIBUTE));
+        }
+    }
+
+    /**
+     * Tells whether the given element references a definition which
+     * was not written yet, through an href or a url(#...) value. The
+     * references are then considered as resolved.
+     * @param deep whether the descendants of the element are checked
+     */
+    protected boolean hasNewReferences(Element element, boolean deep) {
+        boolean result = false;
+        NamedNodeMap attributes = element.getAttributes();
+        int nAttr = attributes.getLength();
+        for (int i = 0; i < nAttr; i++) {
+            Attr attr = (Attr)attributes.item(i);
+            String value = attr.getValue();
+            String name = attr.getLocalName();
+            if (name == null) {
+                name = attr.getNodeName();
+            }
+            if (XLINK_HREF_ATTRIBUTE.equals(name)) {
+                if (value.length() > 1 && value.charAt(0) == '#') {
+                    result |= writtenIds.add(value.substring(1));
+                }
+            } else {
+                int start = value.indexOf(URL_PREFIX + SIGN_POUND);
+                while (start != -1) {
+                    start += URL_PREFIX.length() + 1;
+                    int end = value.indexOf(URL_SUFFIX, start);
+                    if (end == -1) {
+                        break;
+                    }
+                    result |= writtenIds.add(value.substring(start, end));
+                    start = value.indexOf(URL_PREFIX + SIGN_POUND, end);
+                }
+            }
+        }
+        if (deep) {
+            for (Node n = element.getFirstChild();
+                 n != null;
+                 n = n.getNextSibling()) {
+                if (n instanceof Element) {
+                    result |= hasNewReferences((Element)n, true);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Converts the styling attributes of the given element and its
+     * descendants to CSS properties, if required.
+     */
+    protected Element style(Element element) {
+        if (useCss) {
+            SVGCSSStyler.style(element);
+        }
+        return element;
+    }
+
+    /**
+     * Whether the content is still written.
+     */
+    protected boolean isWriting() {
+        return !ended && error == null;
+    }
+
+    /**
+     * Records the first error raised by the output. Nothing is written
+     * afterwards.
+     */
+    protected void setError(IOException e) {
+        if (error == null) {
+            if (e instanceof SVGGraphics2DIOException) {
+                error = (SVGGraphics2DIOException)e;
+            } else {
+                error = new SVGGraphics2DIOException(e);
+            }
+        }
+    }
+}
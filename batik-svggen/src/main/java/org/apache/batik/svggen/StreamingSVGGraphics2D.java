@@ -0,0 +1,108 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.svggen;
+
+import java.awt.Dimension;
+import java.io.Writer;
+
+import org.w3c.dom.Element;
+
+/**
+ * An SVGGraphics2D which writes the SVG document to a Writer as it is
+ * drawn, instead of building the whole DOM tree first. This is meant for
+ * documents with a large number of graphic primitives, which tree would
+ * not fit in memory.
+ *
+ * The generator uses the same SVGGeneratorContext configuration as
+ * SVGGraphics2D. The canvas size should be set before anything is drawn,
+ * and endDocument must be invoked once the drawing is complete:
+ * <pre>
+ *   StreamingSVGGraphics2D g =
+ *       new StreamingSVGGraphics2D(ctx, false, writer);
+ *   g.setSVGCanvasSize(new Dimension(800, 600));
+ *   paint(g);
+ *   g.endDocument();
+ * </pre>
+ * The stream, getRoot and getTopLevelGroup methods are not supported.
+ *
+ * @see StreamingDOMTreeManager
+ * @version $Id$
+ */
+public class StreamingSVGGraphics2D extends SVGGraphics2D {
+
+    /**
+     * Creates a new StreamingSVGGraphics2D object.
+     * @param generatorCtx the <code>SVGGeneratorContext</code> instance
+     * that will provide all useful information to the generator.
+     * @param textAsShapes if true, all text is turned into SVG shapes in the
+     *        convertion. No SVG text is output.
+     * @param writer used to write out the SVG content
+     */
+    public StreamingSVGGraphics2D(SVGGeneratorContext generatorCtx,
+                                  boolean textAsShapes,
+                                  Writer writer) {
+        this(generatorCtx, textAsShapes, writer, false, false);
+    }
+
+    /**
+     * Creates a new StreamingSVGGraphics2D object.
+     * @param generatorCtx the <code>SVGGeneratorContext</code> instance
+     * that will provide all useful information to the generator.
+     * @param textAsShapes if true, all text is turned into SVG shapes in the
+     *        convertion. No SVG text is output.
+     * @param writer used to write out the SVG content
+     * @param useCss defines whether the output SVG should use CSS style
+     *        properties as opposed to plain attributes.
+     * @param escaped defines if the characters will be escaped
+     */
+    public StreamingSVGGraphics2D(SVGGeneratorContext generatorCtx,
+                                  boolean textAsShapes,
+                                  Writer writer,
+                                  boolean useCss,
+                                  boolean escaped) {
+        super(generatorCtx, textAsShapes);
+
+        domTreeManager.removeGroupManager(domGroupManager);
+        setDOMTreeManager(new StreamingDOMTreeManager
+                          (gc, generatorCtx, DEFAULT_MAX_GC_OVERRIDES,
+                           writer, useCss, escaped) {
+                protected Element createRootElement() {
+                    Element svg = super.createRootElement();
+                    Dimension size = getSVGCanvasSize();
+                    if (size != null) {
+                        svg.setAttributeNS(null, SVG_WIDTH_ATTRIBUTE,
+                                           String.valueOf(size.width));
+                        svg.setAttributeNS(null, SVG_HEIGHT_ATTRIBUTE,
+                                           String.valueOf(size.height));
+                    }
+                    return svg;
+                }
+            });
+        setDOMGroupManager(new DOMGroupManager(gc, domTreeManager));
+        domTreeManager.addGroupManager(domGroupManager);
+    }
+
+    /**
+     * Writes the remaining content and the end of the document, and
+     * flushes the writer. The content drawn afterwards is discarded.
+     */
+    public void endDocument() throws SVGGraphics2DIOException {
+        ((StreamingDOMTreeManager)domTreeManager).endDocument();
+    }
+}
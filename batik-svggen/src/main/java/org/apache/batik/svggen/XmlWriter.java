@@ -46,7 +46,7 @@ import org.w3c.dom.Text;
  */
 class XmlWriter implements SVGConstants {
 
-    private static String EOL;
+    static String EOL;
     private static final String TAG_END = "/>";
     private static final String TAG_START = "</";
 
@@ -363,18 +363,7 @@ class XmlWriter implements SVGConstants {
     private static void writeXml(Element element, IndentWriter out,
                                  boolean escaped)
         throws IOException, SVGGraphics2DIOException {
-        out.write (TAG_START, 0, 1);    // "<"
-        out.write (element.getTagName());
-
-        NamedNodeMap attributes = element.getAttributes();
-        if (attributes != null){
-            int nAttr = attributes.getLength();
-            for(int i=0; i<nAttr; i++){
-                Attr attr = (Attr)attributes.item(i);
-                out.write(' ');
-                writeXml(attr, out, escaped);
-            }
-        }
+        writeTagName(element, out, escaped);
 
         boolean lastElem = (element.getParentNode().getLastChild()==element);
 
@@ -408,6 +397,52 @@ class XmlWriter implements SVGConstants {
         out.write (TAG_END, 1, 1);  // ">"
     }
 
+    /**
+     * Writes the start tag of an element which children are written
+     * afterwards, one at a time. Used by the StreamingDOMTreeManager.
+     */
+    static void writeStartTag(Element element, IndentWriter out,
+                              boolean escaped)
+        throws IOException {
+        writeTagName(element, out, escaped);
+        out.printIndent ();
+        out.write(TAG_END, 1, 1);   // ">"
+        out.setIndentLevel(out.getIndentLevel()+2);
+    }
+
+    /**
+     * Writes the end tag of an element which start tag was written
+     * by writeStartTag, once its last child has been written.
+     * @param lastElem whether the element is the last child of its parent
+     */
+    static void writeEndTag(Element element, IndentWriter out,
+                            boolean lastElem)
+        throws IOException {
+        out.write (TAG_START, 0, 2);        // "</"
+        out.write (element.getTagName());
+        if (lastElem)
+            out.setIndentLevel(out.getIndentLevel()-2);
+        out.printIndent ();
+        out.write (TAG_END, 1, 1);  // ">"
+    }
+
+    private static void writeTagName(Element element, IndentWriter out,
+                                     boolean escaped)
+        throws IOException {
+        out.write (TAG_START, 0, 1);    // "<"
+        out.write (element.getTagName());
+
+        NamedNodeMap attributes = element.getAttributes();
+        if (attributes != null){
+            int nAttr = attributes.getLength();
+            for(int i=0; i<nAttr; i++){
+                Attr attr = (Attr)attributes.item(i);
+                out.write(' ');
+                writeXml(attr, out, escaped);
+            }
+        }
+    }
+
     private static void writeChildrenXml(Element element, IndentWriter out,
                                          boolean escaped)
         throws IOException, SVGGraphics2DIOException {
@@ -418,7 +453,7 @@ class XmlWriter implements SVGConstants {
         }
     }
 
-    private static void writeDocumentHeader(IndentWriter out)
+    static void writeDocumentHeader(IndentWriter out)
         throws IOException {
         String  encoding = null;
 
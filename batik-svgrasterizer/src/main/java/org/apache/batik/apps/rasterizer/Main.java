@@ -482,6 +482,15 @@ public class Main implements SVGConverterController {
     public static String CL_OPTION_INDEXED_DESCRIPTION
         = Messages.get("Main.cl.option.indexed.description", "No description");
 
+    /**
+     * Option to specify the number of sources converted concurrently.
+     */
+    public static String CL_OPTION_THREADS
+        = Messages.get("Main.cl.option.threads", "-threads");
+
+    public static String CL_OPTION_THREADS_DESCRIPTION
+        = Messages.get("Main.cl.option.threads.description", "No description");
+
     /**
      * Option to specify the set of allowed scripts
      */
@@ -768,6 +777,22 @@ public class Main implements SVGConverterController {
                                   return CL_OPTION_INDEXED_DESCRIPTION;
                               }
                           });
+
+        optionMap.put(CL_OPTION_THREADS,
+                      new FloatOptionHandler(){
+                              public void handleOption(float optionValue,
+                                                       SVGConverter c){
+                                  if (optionValue < 1 ||
+                                      optionValue != (int)optionValue)
+                                      throw new IllegalArgumentException();
+
+                                  c.setThreadCount((int)optionValue);
+                              }
+
+                              public String getOptionDescription(){
+                                  return CL_OPTION_THREADS_DESCRIPTION;
+                              }
+                          });
         optionMap.put(CL_OPTION_VALIDATE,
                       new NoValueOptionHandler(){
                               public void handleOption(SVGConverter c){
@@ -854,6 +879,12 @@ public class Main implements SVGConverterController {
      */
     protected List args;
 
+    /**
+     * True when the sources are converted concurrently, in which case
+     * each source is reported on a single line once it is converted.
+     */
+    protected boolean concurrent;
+
     public Main(String[] args){
         this.args = new ArrayList();
         for (String arg : args) {
@@ -952,8 +983,16 @@ public class Main implements SVGConverterController {
             return;
         }
 
+        concurrent = c.getThreadCount() > 1;
+
         try {
             c.execute();
+            if (concurrent) {
+                System.out.println(Messages.formatMessage(MESSAGE_THROUGHPUT,
+                                                          new Object[]{"" + c.getConvertedCount(),
+                                                                       "" + c.getExecutionTime(),
+                                                                       "" + c.getThroughput()}));
+            }
         } catch(SVGConverterException e){
             error(ERROR_WHILE_CONVERTING_FILES,
                   new Object[] { e.getMessage() });
@@ -1025,6 +1064,9 @@ public class Main implements SVGConverterController {
     public static final String MESSAGE_CONVERSION_SUCCESS
         = "Main.message.conversion.success";
 
+    public static final String MESSAGE_THROUGHPUT
+        = "Main.message.throughput";
+
     public boolean proceedWithComputedTask(Transcoder transcoder,
                                            Map hints,
                                            List sources,
@@ -1036,6 +1078,10 @@ public class Main implements SVGConverterController {
 
     public boolean proceedWithSourceTranscoding(SVGConverterSource source,
                                                 File dest){
+        if (concurrent) {
+            // Reported together with the outcome of the conversion.
+            return true;
+        }
         System.out.print(Messages.formatMessage(MESSAGE_ABOUT_TO_TRANSCODE_SOURCE,
                                                 new Object[]{source.toString(),
                                                              dest.toString()}));
@@ -1045,6 +1091,11 @@ public class Main implements SVGConverterController {
     public boolean proceedOnSourceTranscodingFailure(SVGConverterSource source,
                                                      File dest,
                                                      String errorCode){
+        if (concurrent) {
+            System.out.print(Messages.formatMessage(MESSAGE_ABOUT_TO_TRANSCODE_SOURCE,
+                                                    new Object[]{source.toString(),
+                                                                 dest.toString()}));
+        }
         System.out.println(Messages.formatMessage(MESSAGE_CONVERSION_FAILED,
                                                   new Object[]{errorCode}));
 
@@ -1053,6 +1104,11 @@ public class Main implements SVGConverterController {
 
     public void onSourceTranscodingSuccess(SVGConverterSource source,
                                            File dest){
+        if (concurrent) {
+            System.out.print(Messages.formatMessage(MESSAGE_ABOUT_TO_TRANSCODE_SOURCE,
+                                                    new Object[]{source.toString(),
+                                                                 dest.toString()}));
+        }
         System.out.println(Messages.formatMessage(MESSAGE_CONVERSION_SUCCESS,
                                                   null));
     }
@@ -29,9 +29,15 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URL;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.Map;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.batik.transcoder.Transcoder;
 import org.apache.batik.transcoder.TranscoderInput;
@@ -90,6 +96,8 @@ import org.apache.batik.util.ParsedURL;
  *     SVG documents.</li>
  * <li>pixelUnitToMillimeter: defines the size of a pixel in millimeters
  *     to use when processing the SVG documents.</li>
+ * <li>threadCount: defines how many sources are converted concurrently.
+ *     Each worker thread uses its own <code>Transcoder</code>.</li>
  * </ul>
  *
  * @version $Id$
@@ -258,6 +266,15 @@ public class SVGConverter {
     /** Controls whether scripts should be run securely or not */
     protected boolean securityOff = false;
 
+    /** Number of sources converted concurrently. */
+    protected int threadCount = 1;
+
+    /** Number of sources successfully converted by the last execution. */
+    protected int convertedCount;
+
+    /** Duration of the last execution, in milliseconds. */
+    protected long executionTime;
+
     /** Sources files or URLs */
     protected List sources = null;
 
@@ -651,6 +668,50 @@ public class SVGConverter {
         return securityOff;
     }
 
+    /**
+     * Sets the number of sources which are converted concurrently.
+     * Values less than or equal to one mean that sources are converted
+     * one by one on the thread calling {@link #execute}. When more than
+     * one thread is used, each worker thread uses its own
+     * <code>Transcoder</code> and all the {@link SVGConverterController}
+     * callbacks are still invoked from the thread calling
+     * {@link #execute}, in source order.
+     */
+    public void setThreadCount(int threadCount){
+        this.threadCount = threadCount;
+    }
+
+    public int getThreadCount(){
+        return threadCount;
+    }
+
+    /**
+     * Returns the number of sources which were successfully converted
+     * by the last call to {@link #execute}.
+     */
+    public int getConvertedCount(){
+        return convertedCount;
+    }
+
+    /**
+     * Returns the time, in milliseconds, spent in the last call to
+     * {@link #execute}.
+     */
+    public long getExecutionTime(){
+        return executionTime;
+    }
+
+    /**
+     * Returns the throughput of the last call to {@link #execute},
+     * in converted sources per second.
+     */
+    public float getThroughput(){
+        if (executionTime <= 0) {
+            return convertedCount;
+        }
+        return convertedCount * 1000f / executionTime;
+    }
+
     /**
      * Returns true if f is a File. <code>f</code> is found to be a file if
      * it exists and is a file. If it does not exist, it is declared
@@ -708,15 +769,113 @@ public class SVGConverter {
             return;
         }
 
-        // Convert files one by one
-        for(int i = 0 ; i < sources.size() ; i++) {
-            // Get the file from the vector.
-            SVGConverterSource currentFile
-                = (SVGConverterSource)sources.get(i);
-            File outputFile  = (File)dstFiles.get(i);
+        long start = System.currentTimeMillis();
+        convertedCount = 0;
+        try {
+            if (threadCount > 1 && sources.size() > 1) {
+                executeConcurrently(sources, dstFiles, hints);
+                return;
+            }
+
+            // Convert files one by one
+            for(int i = 0 ; i < sources.size() ; i++) {
+                // Get the file from the vector.
+                SVGConverterSource currentFile
+                    = (SVGConverterSource)sources.get(i);
+                File outputFile  = (File)dstFiles.get(i);
 
-            createOutputDir(outputFile);
-            transcode(currentFile, outputFile, transcoder);
+                createOutputDir(outputFile);
+                transcode(currentFile, outputFile, transcoder);
+            }
+        } finally {
+            executionTime = System.currentTimeMillis() - start;
+        }
+    }
+
+    /**
+     * Converts the sources using <code>threadCount</code> worker
+     * threads. Each worker lazily creates its own transcoder. The
+     * controller is only ever invoked from the calling thread: sources
+     * are approved in order as they are queued, and the outcome of each
+     * conversion is reported in source order.
+     */
+    protected void executeConcurrently(List sources,
+                                       List dstFiles,
+                                       final Map hints)
+        throws SVGConverterException {
+        final ThreadLocal transcoders = new ThreadLocal() {
+                protected Object initialValue() {
+                    Transcoder t = destinationType.getTranscoder();
+                    t.setTranscodingHints(hints);
+                    return t;
+                }
+            };
+
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        LinkedList pending = new LinkedList();
+        int maxPending = threadCount * 2;
+        try {
+            for (int i = 0; i < sources.size(); i++) {
+                SVGConverterSource currentFile
+                    = (SVGConverterSource)sources.get(i);
+                File outputFile = (File)dstFiles.get(i);
+
+                // Bound the number of queued sources so that outcomes
+                // are reported while the conversion progresses.
+                while (pending.size() >= maxPending) {
+                    reportTask((ConversionTask)pending.removeFirst());
+                }
+
+                createOutputDir(outputFile);
+                if (!controller.proceedWithSourceTranscoding(currentFile,
+                                                             outputFile)) {
+                    continue;
+                }
+
+                ConversionTask task
+                    = new ConversionTask(currentFile, outputFile, transcoders);
+                task.future = executor.submit(task);
+                pending.add(task);
+            }
+
+            while (!pending.isEmpty()) {
+                reportTask((ConversionTask)pending.removeFirst());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Waits for the given task and reports its outcome to the controller.
+     * Throws an exception if the controller decides to stop the process.
+     */
+    private void reportTask(ConversionTask task)
+        throws SVGConverterException {
+        try {
+            task.future.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            task.failure = new SVGConverterException
+                (ERROR_WHILE_RASTERIZING_FILE,
+                 new Object[] {task.outputFile.getName(), ie.toString()});
+        } catch (ExecutionException ee) {
+            task.failure = new SVGConverterException
+                (ERROR_WHILE_RASTERIZING_FILE,
+                 new Object[] {task.outputFile.getName(),
+                               ee.getCause().getMessage()});
+        }
+
+        if (task.failure != null) {
+            boolean proceed = controller.proceedOnSourceTranscodingFailure
+                (task.inputFile, task.outputFile, task.failure.getErrorCode());
+            if (!proceed) {
+                throw task.failure;
+            }
+        } else if (task.success) {
+            convertedCount++;
+            controller.onSourceTranscodingSuccess(task.inputFile,
+                                                  task.outputFile);
         }
     }
 
@@ -946,6 +1105,18 @@ public class SVGConverter {
                              File outputFile,
                              Transcoder transcoder)
         throws SVGConverterException {
+        transcode(inputFile, outputFile, transcoder, controller);
+    }
+
+    /**
+     * Converts the input image to the result image with the given
+     * transcoder, reporting progress to the given controller.
+     */
+    protected void transcode(SVGConverterSource inputFile,
+                             File outputFile,
+                             Transcoder transcoder,
+                             SVGConverterController controller)
+        throws SVGConverterException {
         TranscoderInput input = null;
         TranscoderOutput output = null;
         OutputStream outputStream = null;
@@ -1035,6 +1206,9 @@ public class SVGConverter {
         }
 
         if (success){
+            if (controller == this.controller) {
+                convertedCount++;
+            }
             controller.onSourceTranscodingSuccess(inputFile, outputFile);
         }
     }
@@ -1140,6 +1314,64 @@ public class SVGConverter {
     //   Inner classes
     // -----------------------------------------------------------------------
 
+    /**
+     * Converts a single source on a worker thread. The task acts as
+     * the controller of the conversion and records its outcome so that
+     * it can be reported from the thread which called {@link #execute}.
+     */
+    protected class ConversionTask implements Callable, SVGConverterController {
+        protected SVGConverterSource inputFile;
+        protected File outputFile;
+        protected ThreadLocal transcoders;
+        protected Future future;
+        protected volatile boolean success;
+        protected volatile SVGConverterException failure;
+
+        public ConversionTask(SVGConverterSource inputFile,
+                              File outputFile,
+                              ThreadLocal transcoders) {
+            this.inputFile = inputFile;
+            this.outputFile = outputFile;
+            this.transcoders = transcoders;
+        }
+
+        public Object call() {
+            try {
+                transcode(inputFile, outputFile,
+                          (Transcoder)transcoders.get(), this);
+            } catch (SVGConverterException e) {
+                failure = e;
+            }
+            return null;
+        }
+
+        public boolean proceedWithComputedTask(Transcoder transcoder,
+                                               Map hints,
+                                               List sources,
+                                               List dest) {
+            return true;
+        }
+
+        public boolean proceedWithSourceTranscoding(SVGConverterSource source,
+                                                    File dest) {
+            // Already approved by the converter's controller.
+            return true;
+        }
+
+        public boolean proceedOnSourceTranscodingFailure(SVGConverterSource source,
+                                                         File dest,
+                                                         String errorCode) {
+            // Make transcode throw, the decision is taken when the
+            // failure is reported.
+            return false;
+        }
+
+        public void onSourceTranscodingSuccess(SVGConverterSource source,
+                                               File dest) {
+            success = true;
+        }
+    }
+
     /**
      * Convenience class to filter svg files
      */
@@ -0,0 +1,152 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.anim.dom;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.batik.dom.util.DOMUtilities;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+import org.apache.batik.util.XMLResourceDescriptor;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Checks that a {@link PipelinedSVGDocumentFactory} creates the same
+ * document as a {@link SAXSVGDocumentFactory}, reports the same errors,
+ * and notifies its {@link PipelinedSVGDocumentFactory.BuildHandler} in
+ * document order.
+ *
+ * @version $Id$
+ */
+public class PipelinedSVGDocumentFactoryTest extends AbstractTest {
+
+    /**
+     * A malformed document.
+     */
+    protected static final String MALFORMED_DOCUMENT =
+        "<svg xmlns='http://www.w3.org/2000/svg'><g><rect/></svg>";
+
+    /**
+     * The URI of the document to parse.
+     */
+    protected String uri;
+
+    /**
+     * The children of the document element, as notified.
+     */
+    protected List<Element> children = new ArrayList<Element>();
+
+    /**
+     * The document element, as notified.
+     */
+    protected Element documentElement;
+
+    /**
+     * Whether the handler was notified out of order.
+     */
+    protected String handlerError;
+
+    /**
+     * Creates a new PipelinedSVGDocumentFactoryTest.
+     * @param uri the URI of the document to parse
+     */
+    public PipelinedSVGDocumentFactoryTest(String uri) {
+        this.uri = uri;
+    }
+
+    public TestReport runImpl() throws Exception {
+        String parser = XMLResourceDescriptor.getXMLParserClassName();
+        String url = new File(uri).toURI().toString();
+
+        Document ref = new SAXSVGDocumentFactory(parser).createDocument(url);
+        PipelinedSVGDocumentFactory f = new PipelinedSVGDocumentFactory
+            (parser, new PipelinedSVGDocumentFactory.BuildHandler() {
+                    public void documentElementStarted(Element e) {
+                        if (documentElement != null) {
+                            handlerError = "document element started twice";
+                        } else if (e.getFirstChild() != null) {
+                            handlerError = "document element has children";
+                        }
+                        documentElement = e;
+                    }
+                    public void documentElementChildBuilt(Element e) {
+                        if (documentElement == null) {
+                            handlerError = "document element not started";
+                        } else if (e.getParentNode() != documentElement ||
+                                   e.getNextSibling() != null) {
+                            handlerError = "child not last: " + e;
+                        }
+                        children.add(e);
+                    }
+                });
+        Document doc = f.createDocument(url);
+
+        assertEquals(toString(ref), toString(doc));
+        assertEquals(null, handlerError);
+        assertTrue(documentElement == doc.getDocumentElement());
+        List<Element> expected = new ArrayList<Element>();
+        for (Node n = documentElement.getFirstChild();
+             n != null;
+             n = n.getNextSibling()) {
+            if (n.getNodeType() == Node.ELEMENT_NODE) {
+                expected.add((Element)n);
+            }
+        }
+        assertEquals(expected, children);
+
+        // The errors of the parser are reported as by the SAX factory.
+        String refError = parseError(new SAXSVGDocumentFactory(parser));
+        assertTrue(refError != null);
+        assertEquals(refError,
+                     parseError(new PipelinedSVGDocumentFactory(parser, null)));
+
+        return reportSuccess();
+    }
+
+    /**
+     * Returns the message of the error raised while parsing the malformed
+     * document with the given factory.
+     */
+    protected String parseError(SAXSVGDocumentFactory f) {
+        try {
+            f.createDocument("http://example.org/malformed.svg",
+                             new StringReader(MALFORMED_DOCUMENT));
+        } catch (IOException e) {
+            return e.getMessage();
+        }
+        return null;
+    }
+
+    /**
+     * Serializes the given document.
+     */
+    protected static String toString(Document doc) throws IOException {
+        StringWriter w = new StringWriter();
+        DOMUtilities.writeDocument(doc, w);
+        return w.toString();
+    }
+}
@@ -415,6 +415,16 @@ public class SVGConverterTest extends DefaultTestSuite {
         addTest(t);
         t.setId("OutputTest.reference");
 
+        // Concurrent conversion
+        t = new ConcurrentOutputTest(new String[]{"samples/anne.svg",
+                                                  "samples/batikFX.svg",
+                                                  "test-resources/org/apache/batik/apps/rasterizer/invalidSVG.svg",
+                                                  "samples/GVT.svg",
+                                                  "samples/barChart.svg"},
+                                     3);
+        addTest(t);
+        t.setId("OutputTest.concurrent");
+
     }
 }
 
@@ -1089,3 +1099,124 @@ class ConverterOutputTest extends AbstractTest {
         return r;
     }
 }
+
+/**
+ * This test converts a set of sources with several threads and checks
+ * that the outcome of each conversion is reported in source order, on
+ * the thread calling <code>execute</code>, and that the files are
+ * identical to the ones produced by a sequential conversion.
+ */
+class ConcurrentOutputTest extends AbstractTest
+    implements SVGConverterController {
+    public static final String ERROR_UNEXPECTED_REPORT
+        = "ConcurrentOutputTest.error.unexpected.report";
+
+    public static final String ERROR_UNEXPECTED_CONVERTED_COUNT
+        = "ConcurrentOutputTest.error.unexpected.converted.count";
+
+    public static final String ENTRY_KEY_EXPECTED_REPORT
+        = "ConcurrentOutputTest.entry.key.expected.report";
+
+    public static final String ENTRY_KEY_COMPUTED_REPORT
+        = "ConcurrentOutputTest.entry.key.computed.report";
+
+    String[] sources;
+    int threadCount;
+    Thread caller;
+    List reports = new ArrayList();
+
+    public ConcurrentOutputTest(String[] sources, int threadCount){
+        this.sources = sources;
+        this.threadCount = threadCount;
+    }
+
+    public TestReport runImpl() throws Exception {
+        File seqDir = new File("test-reports/sequential");
+        File concDir = new File("test-reports/concurrent");
+        try {
+            SVGConverter c = new SVGConverter(this);
+            c.setSources(sources);
+            c.setDst(seqDir);
+            c.execute();
+            List expected = reports;
+            int expectedCount = c.getConvertedCount();
+
+            reports = new ArrayList();
+            caller = Thread.currentThread();
+            c = new SVGConverter(this);
+            c.setSources(sources);
+            c.setDst(concDir);
+            c.setThreadCount(threadCount);
+            c.execute();
+
+            if (!expected.equals(reports)) {
+                TestReport report = reportError(ERROR_UNEXPECTED_REPORT);
+                report.addDescriptionEntry(ENTRY_KEY_EXPECTED_REPORT,
+                                           expected.toString());
+                report.addDescriptionEntry(ENTRY_KEY_COMPUTED_REPORT,
+                                           reports.toString());
+                return report;
+            }
+            if (c.getConvertedCount() != expectedCount
+                || expectedCount != sources.length - 1) {
+                return reportError(ERROR_UNEXPECTED_CONVERTED_COUNT);
+            }
+
+            String[] files = seqDir.list();
+            for (int i = 0; i < files.length; i++) {
+                ImageCompareTest t
+                    = new ImageCompareTest(new File(seqDir, files[i]).getPath(),
+                                           new File(concDir, files[i]).getPath());
+                TestReport r = t.run();
+                if (!r.hasPassed()) {
+                    return r;
+                }
+            }
+            return reportSuccess();
+        } finally {
+            delete(seqDir);
+            delete(concDir);
+        }
+    }
+
+    protected void delete(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (int i = 0; i < files.length; i++) {
+                files[i].delete();
+            }
+        }
+        dir.delete();
+    }
+
+    protected void record(String outcome, SVGConverterSource source) {
+        if (caller != null && Thread.currentThread() != caller) {
+            outcome = "wrong thread";
+        }
+        reports.add(outcome + " " + source.getName());
+    }
+
+    public boolean proceedWithComputedTask(Transcoder transcoder,
+                                           Map hints,
+                                           List sources,
+                                           List dest){
+        return true;
+    }
+
+    public boolean proceedWithSourceTranscoding(SVGConverterSource source,
+                                                File dest){
+        return true;
+    }
+
+    public boolean proceedOnSourceTranscodingFailure(SVGConverterSource source,
+                                                     File dest,
+                                                     String errorCode){
+        record("failure", source);
+        return true;
+    }
+
+    public void onSourceTranscodingSuccess(SVGConverterSource source,
+                                           File dest){
+        record("success", source);
+    }
+}
@@ -0,0 +1,250 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.bridge;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.util.ParsedURL;
+
+/**
+ * Checks that the {@link ScriptIOExecutor} bounds the requests performed
+ * at once and queued, rejects the requests it cannot queue, aborts the
+ * requests which time out, and counts them; and that the connections
+ * of the requests are opened with the timeout.
+ *
+ * @version $Id$
+ */
+public class ScriptIOExecutorTest extends AbstractTest {
+
+    /**
+     * The maximum time to wait for a request, in seconds.
+     */
+    protected static final int WAIT = 10;
+
+    public boolean runImplBasic() throws Exception {
+        int threads = ScriptIOExecutor.getThreadCount();
+        int capacity = ScriptIOExecutor.getQueueCapacity();
+        int timeout = ScriptIOExecutor.getTimeout();
+        try {
+            testBound();
+            testTimeout();
+            testFailure();
+            testConnectionTimeout();
+        } finally {
+            ScriptIOExecutor.setThreadCount(threads);
+            ScriptIOExecutor.setQueueCapacity(capacity);
+            ScriptIOExecutor.setTimeout(timeout);
+            ScriptIOExecutor.resetStatistics();
+        }
+        return true;
+    }
+
+    /**
+     * Checks the bounds of the executor and the rejection of the
+     * requests which cannot be queued.
+     */
+    protected void testBound() throws Exception {
+        ScriptIOExecutor.setThreadCount(1);
+        ScriptIOExecutor.setQueueCapacity(2);
+        ScriptIOExecutor.setTimeout(0);
+        ScriptIOExecutor.resetStatistics();
+
+        CountDownLatch release = new CountDownLatch(1);
+        TestRequest r1 = new TestRequest(release, null);
+        TestRequest r2 = new TestRequest(release, null);
+        TestRequest r3 = new TestRequest(release, null);
+        TestRequest r4 = new TestRequest(release, null);
+        ScriptIOExecutor.execute(r1);
+        assertTrue(r1.started.await(WAIT, TimeUnit.SECONDS));
+        ScriptIOExecutor.execute(r2);
+        ScriptIOExecutor.execute(r3);
+        assertEquals(1, ScriptIOExecutor.getActiveCount());
+        assertEquals(2, ScriptIOExecutor.getQueueDepth());
+
+        // The queue is full: the request fails at once.
+        ScriptIOExecutor.execute(r4);
+        assertEquals(1, r4.failures);
+        assertTrue(r4.failure instanceof IOException);
+        assertTrue(r4.started.getCount() == 1);
+        assertTrue(ScriptIOExecutor.getRejectedCount() == 1);
+        assertEquals(2, ScriptIOExecutor.getQueueDepth());
+
+        release.countDown();
+        assertTrue(r3.done.await(WAIT, TimeUnit.SECONDS));
+        assertTrue(r1.done.await(WAIT, TimeUnit.SECONDS));
+        assertTrue(r2.done.await(WAIT, TimeUnit.SECONDS));
+        waitForIdle();
+        assertTrue(ScriptIOExecutor.getCompletedCount() == 3);
+        assertTrue(ScriptIOExecutor.getFailedCount() == 0);
+        assertEquals(0, r1.failures + r2.failures + r3.failures);
+    }
+
+    /**
+     * Checks that the requests which time out are aborted, while they
+     * are performed or queued.
+     */
+    protected void testTimeout() throws Exception {
+        ScriptIOExecutor.setThreadCount(1);
+        ScriptIOExecutor.setTimeout(200);
+        ScriptIOExecutor.resetStatistics();
+
+        // The first request keeps the thread until the second one timed
+        // out in the queue, then fails as a stream closed under a
+        // reader would.
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch closed = new CountDownLatch(1);
+        TestRequest r1 = new TestRequest(release, closed);
+        TestRequest r2 = new TestRequest(new CountDownLatch(0), null);
+        ScriptIOExecutor.execute(r1);
+        ScriptIOExecutor.execute(r2);
+        assertTrue(r1.done.await(WAIT, TimeUnit.SECONDS));
+        assertTrue(closed.await(WAIT, TimeUnit.SECONDS));
+        assertTrue(r2.done.await(WAIT, TimeUnit.SECONDS));
+        release.countDown();
+        waitForIdle();
+
+        // The failure of the aborted request is only notified once.
+        assertEquals(1, r1.failures);
+        assertTrue(r1.failure instanceof InterruptedIOException);
+        // The queued request was removed from the queue.
+        assertEquals(1, r2.failures);
+        assertTrue(r2.started.getCount() == 1);
+        assertEquals(0, ScriptIOExecutor.getQueueDepth());
+        assertTrue(ScriptIOExecutor.getTimedOutCount() == 2);
+        assertTrue(ScriptIOExecutor.getFailedCount() == 0);
+        assertTrue(ScriptIOExecutor.getRejectedCount() == 0);
+    }
+
+    /**
+     * Checks that a request which fails is notified and counted once.
+     */
+    protected void testFailure() throws Exception {
+        ScriptIOExecutor.setTimeout(0);
+        ScriptIOExecutor.resetStatistics();
+
+        TestRequest r = new TestRequest(new CountDownLatch(0), null) {
+                protected void perform() throws Exception {
+                    started.countDown();
+                    throw new IOException("failure");
+                }
+            };
+        ScriptIOExecutor.execute(r);
+        assertTrue(r.done.await(WAIT, TimeUnit.SECONDS));
+        waitForIdle();
+        assertEquals(1, r.failures);
+        assertEquals("failure", r.failure.getMessage());
+        assertTrue(ScriptIOExecutor.getFailedCount() == 1);
+        assertTrue(ScriptIOExecutor.getCompletedCount() == 0);
+        assertTrue(!r.abort(new IOException()));
+    }
+
+    /**
+     * Checks that a connection which does not answer times out.
+     */
+    protected void testConnectionTimeout() throws Exception {
+        ServerSocket ss = new ServerSocket(0);
+        try {
+            ParsedURL purl = new ParsedURL
+                ("http://127.0.0.1:" + ss.getLocalPort() + "/test.txt");
+            purl.setTimeout(200);
+            assertEquals(200, purl.getTimeout());
+            long t = System.currentTimeMillis();
+            try {
+                InputStream is = purl.openStream();
+                is.close();
+                assertTrue(false);
+            } catch (SocketTimeoutException ste) {
+                // The server accepted the connection but never answered.
+            }
+            assertTrue(System.currentTimeMillis() - t < WAIT * 1000);
+        } finally {
+            ss.close();
+        }
+    }
+
+    /**
+     * Waits for the executor threads to be done with the requests.
+     */
+    protected static void waitForIdle() throws InterruptedException {
+        long end = System.currentTimeMillis() + WAIT * 1000;
+        while ((ScriptIOExecutor.getActiveCount() != 0
+                || ScriptIOExecutor.getQueueDepth() != 0)
+               && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * A request which waits for a latch.
+     */
+    protected static class TestRequest extends ScriptIOExecutor.Request {
+
+        protected final CountDownLatch started = new CountDownLatch(1);
+        protected final CountDownLatch done = new CountDownLatch(1);
+        protected final CountDownLatch release;
+
+        /**
+         * The latch counted down when the resource of the request is
+         * closed, or null not to set a resource.  The request fails
+         * once released when it has a resource.
+         */
+        protected final CountDownLatch closed;
+
+        protected volatile int failures;
+        protected volatile Exception failure;
+
+        public TestRequest(CountDownLatch release, CountDownLatch closed) {
+            this.release = release;
+            this.closed = closed;
+        }
+
+        protected void perform() throws Exception {
+            started.countDown();
+            if (closed != null) {
+                setResource(new Closeable() {
+                        public void close() {
+                            closed.countDown();
+                        }
+                    });
+            }
+            release.await();
+            if (closed != null) {
+                throw new IOException("Stream closed");
+            }
+            if (finish()) {
+                done.countDown();
+            }
+        }
+
+        protected void failed(Exception e) {
+            failures++;
+            failure = e;
+            done.countDown();
+        }
+    }
+}
@@ -0,0 +1,223 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.css.engine;
+
+import org.w3c.css.sac.Condition;
+import org.w3c.css.sac.Selector;
+import org.w3c.css.sac.SelectorFactory;
+import org.w3c.css.sac.SelectorList;
+import org.w3c.dom.DOMImplementation;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import org.apache.batik.anim.dom.SVGDOMImplementation;
+import org.apache.batik.css.engine.sac.CSSConditionFactory;
+import org.apache.batik.css.engine.sac.CSSSelectorFactory;
+import org.apache.batik.css.engine.sac.ExtendedSelector;
+import org.apache.batik.css.parser.CSSSelectorList;
+import org.apache.batik.test.PerformanceTest;
+import org.apache.batik.util.SVGConstants;
+
+/**
+ * This test compares the selector matching done through a
+ * {@link RuleIndex} with a sequential scan of the style sheet, on a
+ * generated document with a large style sheet made mostly of class rules.
+ * The score is the ratio between the indexed and the sequential matching
+ * times.
+ *
+ * @version $Id$
+ */
+public class RuleIndexPerformanceTest extends PerformanceTest {
+
+    /**
+     * The number of rules of the generated style sheet.
+     */
+    protected int ruleCount = 5000;
+
+    /**
+     * The number of elements of the generated document.
+     */
+    protected int elementCount = 50000;
+
+    /**
+     * The generated style sheet.
+     */
+    protected StyleSheet styleSheet;
+
+    /**
+     * The elements of the generated document.
+     */
+    protected Element[] elements;
+
+    /**
+     * The number of matches found by the last sequential scan.
+     */
+    protected int refMatches;
+
+    /**
+     * The number of matches found by the last indexed scan.
+     */
+    protected int opMatches;
+
+    public void setRuleCount(Integer n) {
+        ruleCount = n;
+        styleSheet = null;
+    }
+
+    public Integer getRuleCount() {
+        return ruleCount;
+    }
+
+    public void setElementCount(Integer n) {
+        elementCount = n;
+        elements = null;
+    }
+
+    public Integer getElementCount() {
+        return elementCount;
+    }
+
+    protected void setUp() {
+        if (styleSheet == null) {
+            styleSheet = createStyleSheet();
+        }
+        if (elements == null) {
+            elements = createElements();
+        }
+    }
+
+    /**
+     * Creates a style sheet of class rules, with a few id, element and
+     * descendant rules.
+     */
+    protected StyleSheet createStyleSheet() {
+        SelectorFactory sf = CSSSelectorFactory.INSTANCE;
+        CSSConditionFactory cf =
+            new CSSConditionFactory(null, SVGConstants.SVG_CLASS_ATTRIBUTE,
+                                    null, SVGConstants.SVG_ID_ATTRIBUTE);
+        StyleSheet ss = new StyleSheet();
+        for (int i = 0; i < ruleCount; i++) {
+            Selector s;
+            switch (i % 50) {
+            case 0:
+                s = sf.createElementSelector(null, SVGConstants.SVG_RECT_TAG);
+                break;
+            case 1:
+                s = sf.createDescendantSelector
+                    (sf.createElementSelector(null, SVGConstants.SVG_G_TAG),
+                     sf.createElementSelector(null, SVGConstants.SVG_RECT_TAG));
+                break;
+            case 2:
+                Condition id = cf.createIdCondition("e" + i);
+                s = sf.createConditionalSelector
+                    (sf.createElementSelector(null, null), id);
+                break;
+            default:
+                Condition c = cf.createClassCondition(null, "c" + i);
+                s = sf.createConditionalSelector
+                    (sf.createElementSelector(null, null), c);
+            }
+            CSSSelectorList sl = new CSSSelectorList();
+            sl.append(s);
+            StyleRule sr = new StyleRule();
+            sr.setSelectorList(sl);
+            sr.setStyleDeclaration(new StyleDeclaration());
+            ss.append(sr);
+        }
+        return ss;
+    }
+
+    /**
+     * Creates a document made of groups of rectangles, each one with
+     * an id and two classes.
+     */
+    protected Element[] createElements() {
+        DOMImplementation impl = SVGDOMImplementation.getDOMImplementation();
+        String svgNS = SVGDOMImplementation.SVG_NAMESPACE_URI;
+        Document doc = impl.createDocument(svgNS, SVGConstants.SVG_SVG_TAG,
+                                           null);
+        Element[] result = new Element[elementCount];
+        Element g = null;
+        for (int i = 0; i < elementCount; i++) {
+            if (i % 100 == 0) {
+                g = doc.createElementNS(svgNS, SVGConstants.SVG_G_TAG);
+                doc.getDocumentElement().appendChild(g);
+            }
+            Element e = doc.createElementNS(svgNS, SVGConstants.SVG_RECT_TAG);
+            e.setAttributeNS(null, SVGConstants.SVG_ID_ATTRIBUTE, "e" + i);
+            e.setAttributeNS(null, SVGConstants.SVG_CLASS_ATTRIBUTE,
+                             "c" + (i % ruleCount) + " c" +
+                             ((i * 7) % ruleCount));
+            g.appendChild(e);
+            result[i] = e;
+        }
+        return result;
+    }
+
+    /**
+     * Matches the elements by testing all the rules of the style sheet.
+     */
+    protected void runRef() {
+        setUp();
+        int matches = 0;
+        int len = styleSheet.getSize();
+        for (Element elt : elements) {
+            for (int i = 0; i < len; i++) {
+                StyleRule r = (StyleRule)styleSheet.getRule(i);
+                SelectorList sl = r.getSelectorList();
+                int slen = sl.getLength();
+                for (int j = 0; j < slen; j++) {
+                    if (((ExtendedSelector)sl.item(j)).match(elt, null)) {
+                        matches++;
+                    }
+                }
+            }
+        }
+        if (matches == 0) {
+            throw new IllegalStateException("No rule matched the document");
+        }
+        refMatches = matches;
+    }
+
+    /**
+     * Matches the elements by testing only the candidates returned by
+     * the rule index.
+     */
+    protected void runOp() {
+        setUp();
+        int matches = 0;
+        RuleIndex ri = styleSheet.getRuleIndex();
+        for (Element elt : elements) {
+            for (int c : ri.getCandidates(elt)) {
+                StyleRule r = (StyleRule)ri.getRule(c);
+                Selector s = r.getSelectorList().item(ri.getSelectorIndex(c));
+                if (((ExtendedSelector)s).match(elt, null)) {
+                    matches++;
+                }
+            }
+        }
+        opMatches = matches;
+        // runRef is always run first, so refMatches is set.
+        if (refMatches != opMatches) {
+            throw new IllegalStateException
+                ("Indexed matching found " + opMatches +
+                 " matches instead of " + refMatches);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.css.engine;
+
+import java.io.StringReader;
+import java.util.Arrays;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import org.apache.batik.anim.dom.SAXSVGDocumentFactory;
+import org.apache.batik.anim.dom.SVGDOMImplementation;
+import org.apache.batik.anim.dom.SVGOMDocument;
+import org.apache.batik.bridge.BridgeContext;
+import org.apache.batik.bridge.UserAgentAdapter;
+import org.apache.batik.css.engine.sac.ExtendedSelector;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+import org.apache.batik.util.ParsedURL;
+import org.apache.batik.util.XMLResourceDescriptor;
+
+/**
+ * Checks that the candidates returned by a {@link RuleIndex} are in
+ * cascade order and include every rule matching the element, for id,
+ * class, element, descendant, child, sibling, universal, attribute and
+ * pseudo-class selectors, and for nested media rules.
+ *
+ * @version $Id$
+ */
+public class RuleIndexTest extends AbstractTest {
+
+    /**
+     * The test document.
+     */
+    protected static final String DOCUMENT =
+        "<svg xmlns='http://www.w3.org/2000/svg'>" +
+        "<g id='g1' class='a'>" +
+        "<rect id='r1' class='b c b'/>" +
+        "<rect id='r2' class='c'/>" +
+        "<circle id='c1' class='b'/>" +
+        "</g>" +
+        "<g id='g2'><rect id='r3' class=' d  a '/></g>" +
+        "<text id='t1'>text</text>" +
+        "</svg>";
+
+    /**
+     * The test style sheet.
+     */
+    protected static final String STYLE_SHEET =
+        "#r1 { fill: red }\n" +
+        ".b { fill: red }\n" +
+        "rect.c { fill: red }\n" +
+        "g rect { fill: red }\n" +
+        ".a .c { fill: red }\n" +
+        "* { fill: red }\n" +
+        "rect:first-child { fill: red }\n" +
+        ":first-child { fill: red }\n" +
+        "circle:hover { fill: red }\n" +
+        "[id] { fill: red }\n" +
+        "g > circle { fill: red }\n" +
+        "rect + circle { fill: red }\n" +
+        "#r2, .d, text { fill: red }\n" +
+        "@media screen { rect { fill: red } }\n" +
+        "#nothing { fill: red }\n" +
+        ".nothing rect { fill: red }\n" +
+        "#r1.b { fill: red }\n" +
+        "g#g2 .a { fill: red }\n";
+
+    public TestReport runImpl() throws Exception {
+        String parser = XMLResourceDescriptor.getXMLParserClassName();
+        SAXSVGDocumentFactory f = new SAXSVGDocumentFactory(parser);
+        String uri = "http://example.org/test.svg";
+        SVGOMDocument doc = (SVGOMDocument) f.createDocument
+            (uri, new StringReader(DOCUMENT));
+        SVGDOMImplementation impl =
+            (SVGDOMImplementation) doc.getImplementation();
+        CSSEngine eng = impl.createCSSEngine
+            (doc, new BridgeContext(new UserAgentAdapter()));
+        StyleSheet ss = eng.parseStyleSheet
+            (STYLE_SHEET, new ParsedURL(uri), "all");
+        RuleIndex ri = ss.getRuleIndex();
+
+        int entries = 0;
+        for (int i = 0; i < ss.getSize(); i++) {
+            Rule r = ss.getRule(i);
+            entries += (r.getType() == StyleRule.TYPE)
+                ? ((StyleRule) r).getSelectorList().getLength() : 1;
+        }
+
+        NodeList nl = doc.getElementsByTagNameNS("*", "*");
+        for (int i = 0; i < nl.getLength(); i++) {
+            Element elt = (Element) nl.item(i);
+            int[] cands = ri.getCandidates(elt);
+            String id = elt.getAttributeNS(null, "id");
+
+            // Entries are numbered in sheet order, so ascending
+            // candidates are in cascade order.
+            for (int j = 1; j < cands.length; j++) {
+                if (cands[j - 1] >= cands[j]) {
+                    return failure(id, "unordered.candidates", cands);
+                }
+            }
+            int prev = -1;
+            for (int j = 0; j < cands.length; j++) {
+                int pos = indexOf(ss, ri.getRule(cands[j]));
+                if (pos < prev) {
+                    return failure(id, "not.in.cascade.order", cands);
+                }
+                prev = pos;
+            }
+
+            // Every matching rule is a candidate.
+            for (int e = 0; e < entries; e++) {
+                Rule r = ri.getRule(e);
+                boolean expected;
+                if (r.getType() == StyleRule.TYPE) {
+                    ExtendedSelector s = (ExtendedSelector)
+                        ((StyleRule) r).getSelectorList()
+                        .item(ri.getSelectorIndex(e));
+                    expected = s.match(elt, null);
+                } else {
+                    expected = r.getType() == MediaRule.TYPE;
+                }
+                if (expected && Arrays.binarySearch(cands, e) < 0) {
+                    TestReport report =
+                        failure(id, "missing.candidate", cands);
+                    report.addDescriptionEntry("entry", "" + e);
+                    return report;
+                }
+            }
+        }
+
+        // The index actually filters the rules.
+        Element r1 = doc.getElementById("r1");
+        Element r2 = doc.getElementById("r2");
+        Element t1 = doc.getElementById("t1");
+        int[] c1 = ri.getCandidates(r1);
+        assertTrue(c1.length < entries);
+        assertTrue(Arrays.binarySearch(c1, 0) >= 0);
+        assertTrue(Arrays.binarySearch(ri.getCandidates(r2), 0) < 0);
+        assertTrue(Arrays.binarySearch(ri.getCandidates(t1), 1) < 0);
+        assertEquals(Integer.valueOf(1),
+                     Integer.valueOf(count(c1, 1)));
+
+        return reportSuccess();
+    }
+
+    /**
+     * Returns the position of the given rule in the style sheet.
+     */
+    protected static int indexOf(StyleSheet ss, Rule r) {
+        for (int i = 0; i < ss.getSize(); i++) {
+            if (ss.getRule(i) == r) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the number of occurrences of the given entry.
+     */
+    protected static int count(int[] l, int e) {
+        int n = 0;
+        for (int i : l) {
+            if (i == e) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Reports a failure on the given element.
+     */
+    protected TestReport failure(String id, String key, int[] cands) {
+        TestReport report = reportError(key);
+        report.addDescriptionEntry("element", id);
+        report.addDescriptionEntry("candidates", Arrays.toString(cands));
+        return report;
+    }
+}
@@ -0,0 +1,160 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.css.engine;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+
+import org.apache.batik.anim.dom.SAXSVGDocumentFactory;
+import org.apache.batik.anim.dom.SVGDOMImplementation;
+import org.apache.batik.anim.dom.SVGOMDocument;
+import org.apache.batik.bridge.BridgeContext;
+import org.apache.batik.bridge.UserAgentAdapter;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+import org.apache.batik.util.ParsedURL;
+import org.apache.batik.util.XMLResourceDescriptor;
+
+/**
+ * Checks that the style-sheets shared through
+ * {@link CSSEngine#parseSharedStyleSheet} are parsed again when one of
+ * their imports is modified, and are not cached when one of their
+ * imports cannot be loaded.
+ *
+ * @version $Id$
+ */
+public class StyleSheetCacheTest extends AbstractTest {
+
+    /**
+     * The number of errors reported by the engines.
+     */
+    protected int errors;
+
+    /**
+     * The directory of the test style-sheets.
+     */
+    protected File dir;
+
+    public TestReport runImpl() throws Exception {
+        dir = File.createTempFile("StyleSheetCacheTest", "");
+        dir.delete();
+        dir.mkdir();
+        try {
+            return test();
+        } finally {
+            File[] files = dir.listFiles();
+            for (int i = 0; i < files.length; i++) {
+                files[i].delete();
+            }
+            dir.delete();
+        }
+    }
+
+    protected TestReport test() throws Exception {
+        StyleSheetCache cache = StyleSheetCache.getDefaultCache();
+        cache.clear();
+
+        File main = write("main.css", "@import \"imp.css\";\nrect { fill: red }");
+        File imp = write("imp.css", "circle { fill: blue }");
+        ParsedURL mainURL = new ParsedURL(main.toURI().toURL());
+
+        // A style-sheet is shared between engines.
+        StyleSheet ss1 = createEngine().parseSharedStyleSheet(mainURL, "all");
+        StyleSheet ss2 = createEngine().parseSharedStyleSheet(mainURL, "all");
+        assertTrue(ss1 == ss2);
+        assertEquals(1, cache.getCount());
+        assertEquals(1, ((ImportRule) ss1.getRule(0)).getSize());
+
+        // Modifying an imported style-sheet invalidates the entry.
+        write("imp.css", "circle { fill: blue }\ntext { fill: blue }");
+        imp.setLastModified(imp.lastModified() + 10000);
+        StyleSheet ss3 = createEngine().parseSharedStyleSheet(mainURL, "all");
+        assertTrue(ss3 != ss1);
+        assertEquals(2, ((ImportRule) ss3.getRule(0)).getSize());
+        assertTrue(ss3 == createEngine().parseSharedStyleSheet(mainURL, "all"));
+        assertEquals(1, cache.getCount());
+
+        // A style-sheet with a failed import is not cached, even when
+        // the modifications of the import can be detected.
+        File bad = write("bad.css", "<svg>");
+        File broken = write("broken.css",
+                            "@import \"bad.css\";\nrect { fill: red }");
+        ParsedURL brokenURL = new ParsedURL(broken.toURI().toURL());
+        errors = 0;
+        StyleSheet ss4 = createEngine().parseSharedStyleSheet(brokenURL, "all");
+        assertEquals(1, errors);
+        assertEquals(1, cache.getCount());
+        assertTrue(ss4 != createEngine().parseSharedStyleSheet(brokenURL, "all"));
+        assertEquals(2, errors);
+
+        // Once the import can be parsed, the style-sheet is cached.
+        write("bad.css", "circle { fill: blue }");
+        bad.setLastModified(bad.lastModified() + 10000);
+        StyleSheet ss5 = createEngine().parseSharedStyleSheet(brokenURL, "all");
+        assertEquals(2, errors);
+        assertEquals(1, ((ImportRule) ss5.getRule(0)).getSize());
+        assertTrue(ss5 == createEngine().parseSharedStyleSheet(brokenURL, "all"));
+        assertEquals(2, cache.getCount());
+
+        cache.clear();
+        return reportSuccess();
+    }
+
+    /**
+     * Creates a CSS engine for a document of the test directory.
+     */
+    protected CSSEngine createEngine() throws IOException {
+        String parser = XMLResourceDescriptor.getXMLParserClassName();
+        SAXSVGDocumentFactory f = new SAXSVGDocumentFactory(parser);
+        String uri = new File(dir, "test.svg").toURI().toString();
+        SVGOMDocument doc = (SVGOMDocument) f.createDocument
+            (uri, new StringReader
+             ("<svg xmlns='http://www.w3.org/2000/svg'/>"));
+        SVGDOMImplementation impl =
+            (SVGDOMImplementation) doc.getImplementation();
+        CSSEngine eng = impl.createCSSEngine
+            (doc, new BridgeContext(new UserAgentAdapter()));
+        eng.setCSSEngineUserAgent(new CSSEngineUserAgent() {
+                public void displayError(Exception e) {
+                    errors++;
+                }
+                public void displayMessage(String message) {
+                }
+            });
+        return eng;
+    }
+
+    /**
+     * Writes a file of the test directory.
+     */
+    protected File write(String name, String content) throws IOException {
+        File file = new File(dir, name);
+        Writer w = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            w.write(content);
+        } finally {
+            w.close();
+        }
+        return file;
+    }
+}
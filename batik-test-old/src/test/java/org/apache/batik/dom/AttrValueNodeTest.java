@@ -0,0 +1,287 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.dom;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.batik.anim.dom.AbstractElement;
+import org.apache.batik.anim.dom.SAXSVGDocumentFactory;
+import org.apache.batik.anim.dom.SVGOMRectElement;
+import org.apache.batik.util.XMLResourceDescriptor;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.w3c.dom.Text;
+import org.w3c.dom.events.Event;
+import org.w3c.dom.events.EventListener;
+import org.w3c.dom.events.EventTarget;
+import org.w3c.dom.events.MutationEvent;
+
+/**
+ * Checks that the attributes whose value is stored without a text node
+ * behave as the attributes holding a text node: the text node is
+ * created when the children are asked for, modifying it modifies the
+ * attribute, and the same mutation events are dispatched.  Also checks
+ * that the live attribute values of the SVG elements follow their
+ * attributes.
+ *
+ * @version $Id$
+ */
+public class AttrValueNodeTest extends DOM3Test {
+
+    /**
+     * The mutation event types recorded by the listeners.
+     */
+    protected static final String[] EVENT_TYPES = {
+        "DOMNodeInserted", "DOMNodeRemoved",
+        "DOMCharacterDataModified", "DOMAttrModified"
+    };
+
+    public boolean runImplBasic() throws Exception {
+        testValueNode();
+        testEvents();
+        testLiveValues();
+        return true;
+    }
+
+    /**
+     * Checks the text node of an attribute.
+     */
+    protected void testValueNode() throws Exception {
+        Document doc = newDoc();
+        Element e = doc.createElementNS(null, "e");
+        doc.appendChild(e);
+
+        e.setAttributeNS(null, "a", "v1");
+        Attr a = e.getAttributeNodeNS(null, "a");
+        assertTrue(a.hasChildNodes());
+        assertEquals("v1", a.getValue());
+        NodeList nl = a.getChildNodes();
+        assertEquals(1, nl.getLength());
+        Text t = (Text) a.getFirstChild();
+        assertTrue(t == nl.item(0));
+        assertTrue(t == a.getLastChild());
+        assertTrue(t.getParentNode() == a);
+        assertEquals("v1", t.getData());
+
+        // Modifying the text node modifies the attribute.
+        t.appendData("x");
+        assertEquals("v1x", a.getValue());
+        assertEquals("v1x", e.getAttributeNS(null, "a"));
+
+        // Setting the value replaces the text node.
+        a.setValue("v2");
+        assertTrue(t.getParentNode() == null);
+        assertEquals(1, nl.getLength());
+        assertEquals("v2", a.getFirstChild().getNodeValue());
+        a.appendChild(doc.createTextNode("y"));
+        assertEquals(2, nl.getLength());
+        assertEquals("v2y", a.getValue());
+        a.removeChild(a.getFirstChild());
+        assertEquals("y", e.getAttributeNS(null, "a"));
+
+        // A value set before the children are asked for.
+        e.setAttributeNS(null, "b", "w1");
+        Attr b = e.getAttributeNodeNS(null, "b");
+        b.setValue("w2");
+        assertEquals("w2", b.getFirstChild().getNodeValue());
+        assertEquals(1, b.getChildNodes().getLength());
+
+        // An empty value still has a text node.
+        e.setAttributeNS(null, "c", "");
+        Attr c = e.getAttributeNodeNS(null, "c");
+        assertEquals("", c.getValue());
+        assertEquals(1, c.getChildNodes().getLength());
+        assertEquals("", c.getFirstChild().getNodeValue());
+
+        // Copies have their own text node.
+        e.setAttributeNS(null, "d", "z");
+        Attr d = (Attr) e.getAttributeNodeNS(null, "d").cloneNode(true);
+        assertEquals("z", d.getValue());
+        Attr a2 = (Attr) a.cloneNode(true);
+        assertEquals("y", a2.getValue());
+        assertTrue(a2.getFirstChild() != a.getFirstChild());
+        assertEquals("y", a2.getFirstChild().getNodeValue());
+        Element e2 = (Element) e.cloneNode(true);
+        assertEquals("w2", e2.getAttributeNS(null, "b"));
+        assertEquals("w2", e2.getAttributeNodeNS(null, "b")
+                     .getFirstChild().getNodeValue());
+    }
+
+    /**
+     * Checks the mutation events dispatched when an attribute is
+     * modified.
+     */
+    protected void testEvents() throws Exception {
+        AbstractDocument doc = (AbstractDocument) newDoc();
+        Element e = doc.createElementNS(null, "e");
+        doc.appendChild(e);
+        e.setAttributeNS(null, "a", "v1");
+
+        doc.setEventsEnabled(true);
+        Attr a = e.getAttributeNodeNS(null, "a");
+        List attrEvents = new ArrayList();
+        List eltEvents = new ArrayList();
+        listen(a, attrEvents);
+        listen(e, eltEvents);
+
+        // The text node of a value set while the events were disabled
+        // is removed as any other.
+        a.setValue("v2");
+        assertEquals(Arrays.asList(new String[] {
+                         "DOMNodeRemoved #text v1",
+                         "DOMNodeInserted #text v2" }),
+                     attrEvents);
+        assertEquals(Arrays.asList(new String[] {
+                         "DOMAttrModified a v1 v2 MODIFICATION" }),
+                     eltEvents);
+
+        attrEvents.clear();
+        eltEvents.clear();
+        ((Text) a.getFirstChild()).setData("v3");
+        assertEquals(Arrays.asList(new String[] {
+                         "DOMCharacterDataModified #text v2 v3" }),
+                     attrEvents);
+        assertEquals(0, eltEvents.size());
+
+        attrEvents.clear();
+        e.setAttributeNS(null, "a", "v4");
+        assertEquals(Arrays.asList(new String[] {
+                         "DOMNodeRemoved #text v3",
+                         "DOMNodeInserted #text v4" }),
+                     attrEvents);
+        assertEquals(Arrays.asList(new String[] {
+                         "DOMAttrModified a v3 v4 MODIFICATION" }),
+                     eltEvents);
+
+        eltEvents.clear();
+        e.setAttributeNS(null, "b", "w");
+        e.removeAttributeNS(null, "a");
+        assertEquals(Arrays.asList(new String[] {
+                         "DOMAttrModified b  w ADDITION",
+                         "DOMAttrModified a v4  REMOVAL" }),
+                     eltEvents);
+        Attr b = e.getAttributeNodeNS(null, "b");
+        assertEquals(1, b.getChildNodes().getLength());
+        assertEquals("w", b.getFirstChild().getNodeValue());
+
+        // No events once they are disabled again.  (Adding a listener
+        // would enable them.)
+        eltEvents.clear();
+        doc.setEventsEnabled(false);
+        e.setAttributeNS(null, "a", "v5");
+        a = e.getAttributeNodeNS(null, "a");
+        a.setValue("v6");
+        b.setValue("w2");
+        assertEquals(0, eltEvents.size());
+        assertEquals("v6", a.getFirstChild().getNodeValue());
+        assertEquals("w2", b.getFirstChild().getNodeValue());
+    }
+
+    /**
+     * Checks that the live attribute values of an SVG element follow
+     * its attributes.
+     */
+    protected void testLiveValues() throws Exception {
+        SAXSVGDocumentFactory f = new SAXSVGDocumentFactory
+            (XMLResourceDescriptor.getXMLParserClassName());
+        Document doc = f.createDocument
+            ("http://example.org/test.svg", new StringReader
+             ("<svg xmlns='http://www.w3.org/2000/svg'>" +
+              "<rect id='r' x='1' width='2' height='3'/>" +
+              "<metadata id='m'/></svg>"));
+
+        // An element without live values.
+        AbstractElement m = (AbstractElement) doc.getElementById("m");
+        assertTrue(m.getLiveAttributeValue(null, "x") == null);
+        m.setAttributeNS(null, "x", "1");
+        m.removeAttributeNS(null, "x");
+
+        SVGOMRectElement r = (SVGOMRectElement) doc.getElementById("r");
+        assertTrue(r.getLiveAttributeValue(null, "x") == r.getX());
+        assertEquals(Float.valueOf(1), getX(r));
+        r.setAttributeNS(null, "x", "5");
+        assertEquals(Float.valueOf(5), getX(r));
+        r.getAttributeNodeNS(null, "x").getFirstChild().setNodeValue("6");
+        r.setAttributeNS(null, "x", "7");
+        assertEquals(Float.valueOf(7), getX(r));
+        r.removeAttributeNS(null, "x");
+        assertEquals(Float.valueOf(0), getX(r));
+
+        // A copy has its own live values.
+        r.setAttributeNS(null, "x", "8");
+        SVGOMRectElement r2 = (SVGOMRectElement) r.cloneNode(true);
+        assertTrue(r2.getX() != r.getX());
+        assertEquals(Float.valueOf(8), getX(r2));
+        r2.setAttributeNS(null, "x", "9");
+        assertEquals(Float.valueOf(9), getX(r2));
+        assertEquals(Float.valueOf(8), getX(r));
+    }
+
+    protected static Float getX(SVGOMRectElement r) {
+        return Float.valueOf(r.getX().getBaseVal().getValue());
+    }
+
+    /**
+     * Records the mutation events dispatched to the given node.
+     */
+    protected static void listen(Node n, final List events) {
+        EventListener l = new EventListener() {
+                public void handleEvent(Event evt) {
+                    MutationEvent me = (MutationEvent) evt;
+                    StringBuffer sb = new StringBuffer(evt.getType());
+                    if (evt.getType().equals("DOMAttrModified")) {
+                        sb.append(' ').append(me.getAttrName());
+                    } else {
+                        sb.append(' ').append
+                            (((Node) evt.getTarget()).getNodeName());
+                    }
+                    if (me.getPrevValue() != null
+                            || me.getNewValue() != null) {
+                        sb.append(' ').append(valueOf(me.getPrevValue()));
+                        sb.append(' ').append(valueOf(me.getNewValue()));
+                    } else {
+                        sb.append(' ').append
+                            (((Node) evt.getTarget()).getNodeValue());
+                    }
+                    if (evt.getType().equals("DOMAttrModified")) {
+                        sb.append(' ').append(CHANGES[me.getAttrChange()]);
+                    }
+                    events.add(sb.toString());
+                }
+            };
+        for (int i = 0; i < EVENT_TYPES.length; i++) {
+            ((EventTarget) n).addEventListener(EVENT_TYPES[i], l, false);
+        }
+    }
+
+    protected static final String[] CHANGES = {
+        "", "MODIFICATION", "ADDITION", "REMOVAL"
+    };
+
+    protected static String valueOf(String s) {
+        return (s == null) ? "" : s;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.dom;
+
+import java.io.File;
+
+import org.w3c.dom.Document;
+
+import org.apache.batik.anim.dom.SAXSVGDocumentFactory;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.DefaultTestReport;
+import org.apache.batik.test.TestReport;
+import org.apache.batik.util.XMLResourceDescriptor;
+
+/**
+ * This test measures the memory used by the DOM of a document, such as
+ * <code>samples/mapSpain.svg</code>, per element.  It loads several
+ * copies of the document and reports the growth of the heap divided by
+ * the number of elements.  It fails if this exceeds the given limit,
+ * when one is given.
+ *
+ * @version $Id$
+ */
+public class DocumentMemoryTest extends AbstractTest {
+
+    public static final String ENTRY_KEY_ELEMENTS = "entry.key.elements";
+
+    public static final String ENTRY_KEY_BYTES_PER_ELEMENT =
+        "entry.key.bytes.per.element";
+
+    protected String testFileName;
+
+    /**
+     * The number of copies of the document to load.
+     */
+    protected int copies = 10;
+
+    /**
+     * The maximum number of bytes per element, or 0 for no limit.
+     */
+    protected long maxBytesPerElement;
+
+    public DocumentMemoryTest(String testFileName) {
+        this.testFileName = testFileName;
+    }
+
+    public DocumentMemoryTest(String testFileName, Integer maxBytesPerElement) {
+        this.testFileName = testFileName;
+        this.maxBytesPerElement = maxBytesPerElement;
+    }
+
+    public void setCopies(Integer n) {
+        copies = n;
+    }
+
+    public Integer getCopies() {
+        return copies;
+    }
+
+    public TestReport runImpl() throws Exception {
+        String uri = new File(testFileName).toURI().toString();
+        SAXSVGDocumentFactory df = new SAXSVGDocumentFactory
+            (XMLResourceDescriptor.getXMLParserClassName());
+
+        // Load the classes and caches first.
+        df.createDocument(uri);
+
+        Document[] docs = new Document[copies];
+        long before = getUsedMemory();
+        for (int i = 0; i < copies; i++) {
+            docs[i] = df.createDocument(uri);
+        }
+        long after = getUsedMemory();
+        // Also keeps the documents reachable until the measure is done.
+        int elements = docs[0].getElementsByTagName("*").getLength();
+        long perElement = (after - before) / ((long)copies * elements);
+
+        DefaultTestReport report = new DefaultTestReport(this);
+        report.addDescriptionEntry(ENTRY_KEY_ELEMENTS, elements);
+        report.addDescriptionEntry(ENTRY_KEY_BYTES_PER_ELEMENT, perElement);
+        if (maxBytesPerElement > 0 && perElement > maxBytesPerElement) {
+            report.setErrorCode(TestReport.ERROR_TEST_FAILED);
+            report.setPassed(false);
+        } else {
+            report.setPassed(true);
+        }
+        return report;
+    }
+
+    /**
+     * Returns the memory used after a few garbage collections.
+     */
+    protected static long getUsedMemory() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
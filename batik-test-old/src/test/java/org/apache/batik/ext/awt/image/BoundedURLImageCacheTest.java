@@ -0,0 +1,173 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image;
+
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.batik.ext.awt.image.renderable.DeferRable;
+import org.apache.batik.ext.awt.image.renderable.Filter;
+import org.apache.batik.ext.awt.image.renderable.RedRable;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+import org.apache.batik.util.ParsedURL;
+
+/**
+ * Checks that a {@link BoundedURLImageCache} evicts the least recently
+ * used images to stay within its byte budget, counts the images still
+ * being decoded once their size is known and does not evict them
+ * before, and keeps its byte count
+ * consistent when it is used concurrently.
+ *
+ * @version $Id$
+ */
+public class BoundedURLImageCacheTest extends AbstractTest {
+
+    /**
+     * The size of a 10x10 image.
+     */
+    protected static final long IMAGE_BYTES = 400;
+
+    public TestReport runImpl() throws Exception {
+        BoundedURLImageCache cache =
+            new BoundedURLImageCache(3 * IMAGE_BYTES);
+
+        load(cache, "a", image(10));
+        load(cache, "b", image(10));
+        load(cache, "c", image(10));
+        assertEquals(3, cache.getSize());
+        assertTrue(cache.getByteCount() == 3 * IMAGE_BYTES);
+        assertTrue(cache.getEvictionCount() == 0);
+
+        // 'a' is used, so 'b' is the least recently used image.
+        assertTrue(cache.request(url("a")) != null);
+        load(cache, "d", image(10));
+        assertTrue(cache.isDone(url("a")));
+        assertTrue(!cache.isPresent(url("b")));
+        assertTrue(cache.isDone(url("c")));
+        assertTrue(cache.isDone(url("d")));
+        assertTrue(cache.getEvictionCount() == 1);
+        assertTrue(cache.getByteCount() == 3 * IMAGE_BYTES);
+
+        load(cache, "e", image(10));
+        assertTrue(!cache.isPresent(url("c")));
+        assertTrue(cache.isDone(url("a")));
+
+        // An image still being decoded is counted once its bounds are
+        // known.
+        DeferRable dr = new DeferRable();
+        load(cache, "f", dr);
+        assertEquals(4, cache.getSize());
+        assertTrue(cache.getByteCount() == 3 * IMAGE_BYTES);
+        dr.setBounds(new Rectangle2D.Double(0, 0, 10, 10));
+        cache.setMaxBytes(cache.getMaxBytes());
+        assertTrue(!cache.isPresent(url("d")));
+        assertTrue(cache.isDone(url("f")));
+        assertTrue(cache.getByteCount() == 3 * IMAGE_BYTES);
+
+        // An image larger than the budget is kept until the next image
+        // is put.
+        load(cache, "g", image(40));
+        assertEquals(1, cache.getSize());
+        assertTrue(cache.getByteCount() == 16 * IMAGE_BYTES);
+        load(cache, "h", image(10));
+        assertEquals(1, cache.getSize());
+        assertTrue(cache.isDone(url("h")));
+
+        cache.clear(url("h"));
+        assertEquals(0, cache.getSize());
+        assertTrue(cache.getByteCount() == 0);
+        assertTrue(cache.getHitCount() == 1);
+        assertTrue(cache.getMissCount() == 8);
+
+        // An image still being decoded is not evicted, as it is not
+        // counted in the byte count yet.
+        cache = new BoundedURLImageCache(2 * IMAGE_BYTES);
+        load(cache, "p", new DeferRable());
+        load(cache, "q", image(10));
+        load(cache, "r", image(10));
+        load(cache, "s", image(10));
+        assertEquals(3, cache.getSize());
+        assertTrue(cache.isPresent(url("p")));
+        assertTrue(!cache.isPresent(url("q")));
+        assertTrue(cache.getEvictionCount() == 1);
+        assertTrue(cache.getByteCount() == 2 * IMAGE_BYTES);
+
+        // Many threads using the cache keep the byte count consistent.
+        final BoundedURLImageCache shared =
+            new BoundedURLImageCache(50 * IMAGE_BYTES);
+        final Filter img = image(10);
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            final long seed = i;
+            threads[i] = new Thread() {
+                    public void run() {
+                        Random rnd = new Random(seed);
+                        for (int j = 0; j < 20000; j++) {
+                            ParsedURL u = url("" + rnd.nextInt(200));
+                            if (shared.request(u) == null) {
+                                shared.put(u, img);
+                            }
+                            if (rnd.nextInt(50) == 0) {
+                                shared.clear(u);
+                            }
+                        }
+                    }
+                };
+            threads[i].start();
+        }
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].join();
+        }
+        synchronized (shared) {
+            long bytes = 0;
+            for (Map.Entry<ParsedURL, BoundedURLImageCache.Entry> me :
+                     shared.lru.entrySet()) {
+                assertTrue(shared.entries.get(me.getKey()) == me.getValue());
+                bytes += me.getValue().bytes;
+            }
+            assertEquals(shared.entries.size(), shared.lru.size());
+            assertTrue(shared.getByteCount() == bytes);
+            assertTrue(bytes <= shared.getMaxBytes());
+        }
+        assertTrue(shared.getEvictionCount() > 0);
+
+        return reportSuccess();
+    }
+
+    /**
+     * Requests an image that is not cached and puts it in the cache.
+     */
+    protected void load(BoundedURLImageCache cache, String name, Filter f)
+        throws Exception {
+        assertTrue(cache.request(url(name)) == null);
+        cache.put(url(name), f);
+    }
+
+    protected static ParsedURL url(String name) {
+        return new ParsedURL("http://example.org/" + name + ".png");
+    }
+
+    protected static Filter image(int size) {
+        return new RedRable(GraphicsUtil.wrap
+            (new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB)));
+    }
+}
@@ -0,0 +1,158 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image.codec.png;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.batik.ext.awt.image.GraphicsUtil;
+import org.apache.batik.ext.awt.image.rendered.BufferedImageCachableRed;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+
+/**
+ * Checks that an image encoded in stripes compressed concurrently
+ * decodes to the same image as when it is encoded serially, and that
+ * the stripe encoder reads each row of the image once, so that the rows
+ * of an image rendered on demand are only rendered once.
+ *
+ * @version $Id$
+ */
+public class PNGStripeEncoderTest extends AbstractTest {
+
+    /**
+     * Error when the striped and serial encodings differ.
+     */
+    public static final String ERROR_STRIPED_DOES_NOT_MATCH_SERIAL
+        = "PNGStripeEncoderTest.error.striped.does.not.match.serial";
+
+    /**
+     * Error when the rows of the image are read more than once.
+     */
+    public static final String ERROR_ROWS_READ_TWICE
+        = "PNGStripeEncoderTest.error.rows.read.twice";
+
+    public TestReport runImpl() throws Exception {
+        // Tall enough to be cut in several batches of stripes.
+        BufferedImage image = createImage(600, 1500);
+
+        CountingRed serial = new CountingRed(image);
+        BufferedImage serialImage = decode(encode(serial, 1));
+        CountingRed striped = new CountingRed(image);
+        BufferedImage stripedImage = decode(encode(striped, 4));
+
+        if (!PNGEncoderTest.checkIdentical(image, serialImage)) {
+            return reportError
+                (PNGEncoderTest.ERROR_DECODED_DOES_NOT_MATCH_ENCODED);
+        }
+        if (!PNGEncoderTest.checkIdentical(serialImage, stripedImage)) {
+            return reportError(ERROR_STRIPED_DOES_NOT_MATCH_SERIAL);
+        }
+        if (striped.rows.get() != image.getHeight()) {
+            TestReport report = reportError(ERROR_ROWS_READ_TWICE);
+            report.addDescriptionEntry("rows.read", "" + striped.rows);
+            return report;
+        }
+        return reportSuccess();
+    }
+
+    /**
+     * Creates an image whose rows use different filters.
+     */
+    protected static BufferedImage createImage(int w, int h) {
+        BufferedImage image
+            = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.setPaint(new GradientPaint(0, 0, Color.red, w, h,
+                                     new Color(0, 0, 255, 128)));
+        g.fillRect(0, 0, w, h);
+        g.setPaint(Color.black);
+        for (int y = 0; y < h; y += 7) {
+            g.drawLine(0, y, w, h - y);
+        }
+        g.dispose();
+        for (int y = 0; y < h; y += 3) {
+            for (int x = (y * 31) % 17; x < w; x += 17) {
+                image.setRGB(x, y, ((x * 7 + y * 13) & 4) == 0
+                             ? 0x80ffffff : 0xff00ff00);
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Encodes an image with the given number of threads.
+     */
+    protected static byte[] encode(RenderedImage image, int threads)
+        throws Exception {
+        PNGEncodeParam params = PNGEncodeParam.getDefaultEncodeParam(image);
+        params.setEncodingThreads(threads);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        new PNGImageEncoder(bos, params).encode(image);
+        return bos.toByteArray();
+    }
+
+    /**
+     * Decodes a PNG image.
+     */
+    protected static BufferedImage decode(byte[] data) throws Exception {
+        PNGImageDecoder decoder = new PNGImageDecoder
+            (new ByteArrayInputStream(data), new PNGDecodeParam());
+        RenderedImage ri = decoder.decodeAsRenderedImage(0);
+        BufferedImage bi = new BufferedImage
+            (ri.getWidth(), ri.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = GraphicsUtil.createGraphics(bi);
+        GraphicsUtil.drawImage(g, ri);
+        g.dispose();
+        return bi;
+    }
+
+    /**
+     * An image which counts the rows read from it.
+     */
+    protected static class CountingRed extends BufferedImageCachableRed {
+
+        /**
+         * The number of rows read, by any thread.
+         */
+        protected AtomicInteger rows = new AtomicInteger();
+
+        public CountingRed(BufferedImage bi) {
+            super(bi);
+        }
+
+        public Raster getData(Rectangle rect) {
+            rows.addAndGet(rect.height);
+            return super.getData(rect);
+        }
+
+        public Raster getData() {
+            rows.addAndGet(getHeight());
+            return super.getData();
+        }
+    }
+}
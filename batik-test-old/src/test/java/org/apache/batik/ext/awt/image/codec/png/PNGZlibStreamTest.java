@@ -0,0 +1,167 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image.codec.png;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+
+/**
+ * Checks the zlib stream written by the concurrent PNG encoder: the
+ * data of its IDAT chunks must inflate, with its Adler-32 checksum
+ * verified, to the same filtered rows as the data written by the
+ * serial encoder, and the image must decode to the encoded one.
+ *
+ * @version $Id$
+ */
+public class PNGZlibStreamTest extends AbstractTest {
+
+    /**
+     * Error when the zlib stream cannot be inflated.
+     */
+    public static final String ERROR_CANNOT_INFLATE
+        = "PNGZlibStreamTest.error.cannot.inflate";
+
+    /**
+     * Error when the striped and serial encodings inflate differently.
+     */
+    public static final String ERROR_STRIPED_DOES_NOT_MATCH_SERIAL
+        = "PNGZlibStreamTest.error.striped.does.not.match.serial";
+
+    /**
+     * The encodings tested: width, height, image type, compression
+     * level and filter strategy.
+     */
+    protected static final int[][] ENCODINGS = {
+        { 600, 1500, BufferedImage.TYPE_INT_ARGB, 9,
+          PNGEncodeParam.PNG_FILTER_ADAPTIVE },
+        { 601, 437, BufferedImage.TYPE_INT_RGB, 1,
+          PNGEncodeParam.PNG_FILTER_PAETH },
+        { 300, 5000, BufferedImage.TYPE_INT_ARGB, 0,
+          PNGEncodeParam.PNG_FILTER_NONE },
+        { 2000, 67, BufferedImage.TYPE_INT_RGB, 6,
+          PNGEncodeParam.PNG_FILTER_SUB },
+    };
+
+    public TestReport runImpl() throws Exception {
+        for (int[] e : ENCODINGS) {
+            String encoding = Arrays.toString(e);
+            BufferedImage image = PNGStripeEncoderTest.createImage(e[0], e[1]);
+            if (e[2] != image.getType()) {
+                BufferedImage bi = new BufferedImage(e[0], e[1], e[2]);
+                bi.getGraphics().drawImage(image, 0, 0, null);
+                image = bi;
+            }
+
+            byte[] serial = encode(image, 1, e[3], e[4]);
+            byte[] striped = encode(image, 4, e[3], e[4]);
+
+            byte[] serialRows;
+            byte[] stripedRows;
+            try {
+                serialRows = inflate(serial);
+                stripedRows = inflate(striped);
+            } catch (DataFormatException ex) {
+                TestReport report = reportException(ERROR_CANNOT_INFLATE, ex);
+                report.addDescriptionEntry("encoding", encoding);
+                return report;
+            }
+            int bpp = image.getColorModel().hasAlpha() ? 4 : 3;
+            assertEquals(e[1] * (e[0] * bpp + 1), stripedRows.length);
+            if (!Arrays.equals(serialRows, stripedRows)) {
+                TestReport report =
+                    reportError(ERROR_STRIPED_DOES_NOT_MATCH_SERIAL);
+                report.addDescriptionEntry("encoding", encoding);
+                return report;
+            }
+
+            BufferedImage decoded = PNGStripeEncoderTest.decode(striped);
+            if (!PNGEncoderTest.checkIdentical(image, decoded)) {
+                TestReport report = reportError
+                    (PNGEncoderTest.ERROR_DECODED_DOES_NOT_MATCH_ENCODED);
+                report.addDescriptionEntry("encoding", encoding);
+                return report;
+            }
+        }
+        return reportSuccess();
+    }
+
+    /**
+     * Encodes an image with the given parameters.
+     */
+    protected static byte[] encode(BufferedImage image, int threads,
+                                   int level, int filter) throws Exception {
+        PNGEncodeParam params = PNGEncodeParam.getDefaultEncodeParam(image);
+        params.setEncodingThreads(threads);
+        params.setCompressionLevel(level);
+        params.setFilterStrategy(filter);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        new PNGImageEncoder(bos, params).encode(image);
+        return bos.toByteArray();
+    }
+
+    /**
+     * Inflates the zlib stream made of the data of the IDAT chunks of a
+     * PNG image. The inflater checks the zlib header and the Adler-32
+     * checksum of the stream.
+     */
+    protected static byte[] inflate(byte[] png) throws Exception {
+        DataInputStream in =
+            new DataInputStream(new ByteArrayInputStream(png));
+        in.skipBytes(8);
+        ByteArrayOutputStream idat = new ByteArrayOutputStream();
+        for (;;) {
+            int len = in.readInt();
+            int type = in.readInt();
+            byte[] data = new byte[len];
+            in.readFully(data);
+            in.readInt(); // CRC
+            if (type == 0x49444154) {     // IDAT
+                idat.write(data);
+            } else if (type == 0x49454E44) { // IEND
+                break;
+            }
+        }
+
+        Inflater inflater = new Inflater();
+        inflater.setInput(idat.toByteArray());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        while (!inflater.finished()) {
+            int n = inflater.inflate(buf);
+            if ((n == 0) && (inflater.needsInput() ||
+                             inflater.needsDictionary())) {
+                throw new DataFormatException("truncated zlib stream");
+            }
+            out.write(buf, 0, n);
+        }
+        if (inflater.getRemaining() != 0) {
+            throw new DataFormatException("data after the zlib stream");
+        }
+        inflater.end();
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,96 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image.rendered;
+
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+
+/**
+ * Checks the capacity and eviction order of <code>LRUCache</code>,
+ * with one and with several stripes.
+ *
+ * @version $Id$
+ */
+public class LRUCacheTest extends AbstractTest {
+
+    public TestReport runImpl() throws Exception {
+        // A single stripe keeps exactly the last objects added.
+        LRUCache cache = new LRUCache(3);
+        assertEquals(3, cache.getSize());
+        Obj[] objs = add(cache, 5);
+        assertEquals(3, cache.getUsed());
+        assertTrue(!objs[0].cached && !objs[1].cached);
+        assertTrue(objs[2].cached && objs[3].cached && objs[4].cached);
+        assertEquals(2L, cache.getEvictionCount());
+
+        // Touching an object makes it the most recently used one.
+        cache.touch(objs[2]);
+        cache.add(new Obj());
+        assertTrue(objs[2].cached && !objs[3].cached);
+
+        // The size reported is the capacity of the stripes.
+        cache = new LRUCache(64, 4);
+        assertEquals(4, cache.getStripes());
+        assertEquals(64, cache.getSize());
+        cache.setSize(10);
+        assertEquals(10, cache.getSize());
+        cache.setSize(2);
+        assertEquals(4, cache.getSize());
+
+        // The cache never holds more objects than its size.
+        add(cache, 100);
+        assertTrue(cache.getUsed() <= cache.getSize());
+        cache.setSize(40);
+        add(cache, 100);
+        assertTrue(cache.getUsed() <= cache.getSize());
+        assertEquals(40, cache.getSize());
+
+        cache.flush();
+        assertEquals(0, cache.getUsed());
+        return reportSuccess();
+    }
+
+    protected Obj[] add(LRUCache cache, int n) {
+        Obj[] objs = new Obj[n];
+        for (int i = 0; i < n; i++) {
+            objs[i] = new Obj();
+            cache.add(objs[i]);
+        }
+        return objs;
+    }
+
+    protected static class Obj implements LRUCache.LRUObj {
+        LRUCache.LRUNode node;
+        boolean cached;
+
+        public void lruSet(LRUCache.LRUNode nde) {
+            node = nde;
+            cached = true;
+        }
+
+        public LRUCache.LRUNode lruGet() {
+            return node;
+        }
+
+        public void lruRemove() {
+            node = null;
+            cached = false;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image.rendered;
+
+import java.awt.Point;
+import java.awt.RenderingHints;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+
+import org.apache.batik.ext.awt.RenderingHintsKeyExt;
+import org.apache.batik.gvt.renderer.StaticRenderer;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+
+/**
+ * Checks that an <code>LRUCache</code> can be bounded by the bytes held
+ * by its objects, that tiles report the size of their data, and that
+ * the KEY_TILE_CACHE_SIZE hint gives a renderer its own cache.
+ *
+ * @version $Id$
+ */
+public class TileCacheByteSizeTest extends AbstractTest {
+
+    public TestReport runImpl() throws Exception {
+        // Objects are dropped until the cache fits in its budget.
+        LRUCache cache = new LRUCache(10);
+        cache.setByteSize(1000);
+        assertEquals(1000L, cache.getByteSize());
+        for (int i = 0; i < 20; i++) {
+            cache.add(new Obj(100));
+        }
+        assertEquals(10, cache.getUsed());
+        assertEquals(1000L, cache.getUsedBytes());
+        cache.add(new Obj(50));
+        assertEquals(10, cache.getUsed());
+        assertEquals(950L, cache.getUsedBytes());
+
+        // An object larger than the budget is still kept, alone.
+        Obj big = new Obj(5000);
+        cache.add(big);
+        assertEquals(1, cache.getUsed());
+        assertTrue(big.node != null);
+
+        // Without a budget, the cache is bounded by its size again.
+        cache.setByteSize(0);
+        for (int i = 0; i < 20; i++) {
+            cache.add(new Obj(100));
+        }
+        assertEquals(10, cache.getUsed());
+
+        // Tiles weigh the bytes of their data buffer.
+        Raster ras = Raster.createPackedRaster
+            (DataBuffer.TYPE_INT, 10, 10, new int[]{0xff0000, 0xff00, 0xff},
+             new Point(0, 0));
+        assertEquals(400L, new TileLRUMember(ras).lruWeight());
+        ras = Raster.createInterleavedRaster
+            (DataBuffer.TYPE_BYTE, 10, 10, 3, new Point(0, 0));
+        assertEquals(300L, new TileLRUMember(ras).lruWeight());
+
+        // The hint gives a renderer its own byte bounded cache.
+        StaticRenderer renderer = new StaticRenderer();
+        assertTrue(renderer.getTileCache() == TileCache.getGlobalCache());
+        RenderingHints hints = renderer.getRenderingHints();
+        hints.put(RenderingHintsKeyExt.KEY_TILE_CACHE_SIZE, 1L << 20);
+        renderer.setRenderingHints(hints);
+        assertTrue(renderer.getTileCache() != TileCache.getGlobalCache());
+        assertEquals(1L << 20, renderer.getTileCache().getByteSize());
+        hints.remove(RenderingHintsKeyExt.KEY_TILE_CACHE_SIZE);
+        renderer.setRenderingHints(hints);
+        assertTrue(renderer.getTileCache() == TileCache.getGlobalCache());
+
+        // The size must be positive.
+        assertTrue(!RenderingHintsKeyExt.KEY_TILE_CACHE_SIZE
+                   .isCompatibleValue(0L));
+        try {
+            hints.put(RenderingHintsKeyExt.KEY_TILE_CACHE_SIZE, 0L);
+            assertTrue(false);
+        } catch (IllegalArgumentException e) {
+        }
+
+        return reportSuccess();
+    }
+
+    protected static class Obj implements LRUCache.LRUWeightedObj {
+        LRUCache.LRUNode node;
+        long weight;
+
+        public Obj(long weight) {
+            this.weight = weight;
+        }
+
+        public long lruWeight() {
+            return weight;
+        }
+
+        public void lruSet(LRUCache.LRUNode nde) {
+            node = nde;
+        }
+
+        public LRUCache.LRUNode lruGet() {
+            return node;
+        }
+
+        public void lruRemove() {
+            node = null;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image.spi;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.batik.ext.awt.image.codec.png.PNGEncodeParam;
+import org.apache.batik.ext.awt.image.codec.png.PNGImageEncoder;
+import org.apache.batik.ext.awt.image.codec.png.PNGRegistryEntry;
+import org.apache.batik.ext.awt.image.renderable.DeferRable;
+import org.apache.batik.ext.awt.image.renderable.Filter;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+
+/**
+ * Checks that {@link DecoderExecutor} bounds the number of images
+ * decoded at once, keeps its statistics up to date, falls back to a new
+ * thread when its executor rejects a task, and is used by the registry
+ * entries to decode images.
+ *
+ * @version $Id$
+ */
+public class DecoderExecutorTest extends AbstractTest {
+
+    /**
+     * The number of seconds to wait for a decoding.
+     */
+    public static final int TIMEOUT = 10;
+
+    public TestReport runImpl() throws Exception {
+        int threadCount = DecoderExecutor.getThreadCount();
+        try {
+            testBound();
+            testRejection();
+            testFailure();
+            testRegistryEntry();
+            try {
+                DecoderExecutor.setThreadCount(0);
+                return reportError("invalid.thread.count.accepted");
+            } catch (IllegalArgumentException e) {
+            }
+        } finally {
+            DecoderExecutor.setExecutor(null);
+            DecoderExecutor.setThreadCount(threadCount);
+        }
+        return reportSuccess();
+    }
+
+    /**
+     * Checks that the default pool runs at most its number of threads
+     * at once, and that the others wait in its queue.
+     */
+    protected void testBound() throws Exception {
+        DecoderExecutor.setExecutor(null);
+        DecoderExecutor.setThreadCount(2);
+        DecoderExecutor.resetStatistics();
+        long completed = DecoderExecutor.getCompletedCount();
+
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(2);
+        final CountDownLatch done = new CountDownLatch(6);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final AtomicInteger daemons = new AtomicInteger();
+        for (int i = 0; i < 6; i++) {
+            DecoderExecutor.execute(new Runnable() {
+                    public void run() {
+                        int n = running.incrementAndGet();
+                        synchronized (maxRunning) {
+                            maxRunning.set(Math.max(maxRunning.get(), n));
+                        }
+                        if (Thread.currentThread().isDaemon()) {
+                            daemons.incrementAndGet();
+                        }
+                        started.countDown();
+                        try {
+                            release.await(TIMEOUT, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                        }
+                        running.decrementAndGet();
+                        done.countDown();
+                    }
+                });
+        }
+
+        assertTrue(started.await(TIMEOUT, TimeUnit.SECONDS));
+        assertEquals(2, DecoderExecutor.getActiveCount());
+        assertEquals(4, DecoderExecutor.getQueueDepth());
+        assertTrue(DecoderExecutor.getMaxQueueDepth() >= 4);
+
+        release.countDown();
+        assertTrue(done.await(TIMEOUT, TimeUnit.SECONDS));
+        waitForCompletion(completed + 6);
+        assertEquals(2, maxRunning.get());
+        assertEquals(6, daemons.get());
+        assertEquals(0, DecoderExecutor.getQueueDepth());
+        assertEquals(0, DecoderExecutor.getActiveCount());
+
+        DecoderExecutor.resetStatistics();
+        assertEquals(0, DecoderExecutor.getMaxQueueDepth());
+        assertEquals(0, (int)DecoderExecutor.getCompletedCount());
+    }
+
+    /**
+     * Checks that a task rejected by the executor runs on a new thread.
+     */
+    protected void testRejection() throws Exception {
+        final AtomicInteger rejected = new AtomicInteger();
+        DecoderExecutor.setExecutor(new Executor() {
+                public void execute(Runnable r) {
+                    rejected.incrementAndGet();
+                    throw new RejectedExecutionException();
+                }
+            });
+        long completed = DecoderExecutor.getCompletedCount();
+        final Thread caller = Thread.currentThread();
+        final Thread[] thread = new Thread[1];
+        final CountDownLatch done = new CountDownLatch(1);
+        DecoderExecutor.execute(new Runnable() {
+                public void run() {
+                    thread[0] = Thread.currentThread();
+                    done.countDown();
+                }
+            });
+        assertTrue(done.await(TIMEOUT, TimeUnit.SECONDS));
+        waitForCompletion(completed + 1);
+        assertEquals(1, rejected.get());
+        assertTrue(thread[0] != caller);
+    }
+
+    /**
+     * Checks that the statistics are kept when a decoding fails.
+     */
+    protected void testFailure() throws Exception {
+        DecoderExecutor.setExecutor(new Executor() {
+                public void execute(Runnable r) {
+                    r.run();
+                }
+            });
+        long completed = DecoderExecutor.getCompletedCount();
+        try {
+            DecoderExecutor.execute(new Runnable() {
+                    public void run() {
+                        throw new IllegalStateException();
+                    }
+                });
+            assertTrue(false);
+        } catch (IllegalStateException e) {
+        }
+        assertEquals(0, DecoderExecutor.getQueueDepth());
+        assertEquals(0, DecoderExecutor.getActiveCount());
+        assertEquals(completed + 1, DecoderExecutor.getCompletedCount());
+    }
+
+    /**
+     * Checks that the registry entries decode images with the executor.
+     */
+    protected void testRegistryEntry() throws Exception {
+        final AtomicInteger tasks = new AtomicInteger();
+        DecoderExecutor.setExecutor(new Executor() {
+                public void execute(Runnable r) {
+                    tasks.incrementAndGet();
+                    new Thread(r).start();
+                }
+            });
+
+        BufferedImage image =
+            new BufferedImage(40, 30, BufferedImage.TYPE_INT_ARGB);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        new PNGImageEncoder
+            (bos, PNGEncodeParam.getDefaultEncodeParam(image)).encode(image);
+
+        Filter f = new PNGRegistryEntry().handleStream
+            (new ByteArrayInputStream(bos.toByteArray()), null, false);
+        assertTrue(f instanceof DeferRable);
+        Filter src = ((DeferRable)f).getSource();
+        assertEquals(1, tasks.get());
+        assertEquals(40, (int)src.getWidth());
+        assertEquals(30, (int)src.getHeight());
+    }
+
+    /**
+     * Waits until the given number of images have been decoded, as the
+     * statistics are updated after the decoding tasks return.
+     */
+    protected void waitForCompletion(long count) throws Exception {
+        long end = System.currentTimeMillis() + TIMEOUT * 1000;
+        while ((DecoderExecutor.getCompletedCount() < count) &&
+               (System.currentTimeMillis() < end)) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, DecoderExecutor.getCompletedCount());
+    }
+}
@@ -0,0 +1,114 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image.spi;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+
+import org.apache.batik.ext.awt.image.GraphicsUtil;
+import org.apache.batik.ext.awt.image.renderable.Filter;
+import org.apache.batik.ext.awt.image.renderable.RedRable;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.util.ParsedURL;
+
+/**
+ * Checks that {@link ImageTagRegistry#readURL} reopens a corrupted
+ * stream and tries the entries compatible with the reopened stream,
+ * even when they were not candidates for the first stream.
+ *
+ * @version $Id$
+ */
+public class ImageTagRegistryStreamTest extends AbstractTest {
+
+    @Override
+    public boolean runImplBasic() throws Exception {
+        final Filter image = new RedRable(GraphicsUtil.wrap
+            (new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB)));
+        final int[] corrupted = new int[1];
+
+        ImageTagRegistry ir = new ImageTagRegistry();
+        // Checks the stream itself, so is a candidate for any stream.
+        ir.register(new CorruptingEntry(corrupted));
+        // Only a candidate for the streams starting with 'Y'.
+        ir.register(new MagicNumberRegistryEntry
+                    ("Y", "y", "image/x-y", 0, new byte[] { 'Y', 'Y' }) {
+                public Filter handleStream(InputStream is, ParsedURL purl,
+                                           boolean needRawData) {
+                    return image;
+                }
+            });
+
+        File file = File.createTempFile("ImageTagRegistryStreamTest", ".y");
+        try {
+            OutputStream os = new FileOutputStream(file);
+            try {
+                os.write(new byte[] { 'Y', 'Y', 0, 0 });
+            } finally {
+                os.close();
+            }
+            ParsedURL purl = new ParsedURL(file.toURI().toURL());
+
+            // The given stream starts with 'X', and its only candidate
+            // corrupts it: the registry must reopen the URL and find
+            // the entry for 'Y'.
+            InputStream is = new ByteArrayInputStream
+                (new byte[] { 'X', 'X', 0, 0 });
+            Filter f = ir.readURL(is, purl, null, true, false);
+            assertEquals(1, corrupted[0]);
+            assertTrue(f == image);
+        } finally {
+            file.delete();
+        }
+        return true;
+    }
+
+    /**
+     * An entry which reports any stream as corrupted.
+     */
+    protected static class CorruptingEntry extends AbstractRegistryEntry
+        implements StreamRegistryEntry {
+
+        protected int[] count;
+
+        public CorruptingEntry(int[] count) {
+            super("Corrupting", 10, "c", "image/x-c");
+            this.count = count;
+        }
+
+        public int getReadlimit() {
+            return 2;
+        }
+
+        public boolean isCompatibleStream(InputStream is)
+            throws StreamCorruptedException {
+            count[0]++;
+            throw new StreamCorruptedException();
+        }
+
+        public Filter handleStream(InputStream is, ParsedURL purl,
+                                   boolean needRawData) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.svggen;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.DOMImplementation;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import org.apache.batik.dom.GenericDOMImplementation;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+import org.apache.batik.util.SVGConstants;
+
+/**
+ * Base class of the tests checking the number of elements or files
+ * written by the generator.
+ *
+ * @version $Id$
+ */
+public abstract class AbstractCountTest extends AbstractTest
+    implements SVGConstants {
+    public static final String ERROR_UNEXPECTED_COUNT
+        = "AbstractCountTest.error.unexpected.count";
+
+    public static final String ENTRY_KEY_SUBJECT
+        = "AbstractCountTest.entry.key.subject";
+
+    public static final String ENTRY_KEY_COUNT
+        = "AbstractCountTest.entry.key.count";
+
+    /**
+     * Creates the document used to build the generated elements.
+     */
+    protected Document createDocument() {
+        DOMImplementation impl = GenericDOMImplementation.getDOMImplementation();
+        return impl.createDocument(SVG_NAMESPACE_URI, SVG_SVG_TAG, null);
+    }
+
+    /**
+     * Checks the number of elements with the given tag under the root.
+     * @return null on success, the failure report otherwise
+     */
+    protected TestReport checkCount(Element root, String tag, int expected) {
+        NodeList list = root.getElementsByTagNameNS(SVG_NAMESPACE_URI, tag);
+        return checkCount(tag, list.getLength(), expected);
+    }
+
+    /**
+     * Checks a number of elements or files.
+     * @return null on success, the failure report otherwise
+     */
+    protected TestReport checkCount(String subject, int count, int expected) {
+        if (count == expected) {
+            return null;
+        }
+        TestReport report = reportError(ERROR_UNEXPECTED_COUNT);
+        report.addDescriptionEntry(ENTRY_KEY_SUBJECT, subject);
+        report.addDescriptionEntry(ENTRY_KEY_COUNT, Integer.toString(count));
+        return report;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.svggen;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+
+/**
+ * Checks that the DoubleFormatter rounds values the same way as
+ * java.math.BigDecimal does on their exact binary value.
+ *
+ * @version $Id$
+ */
+public class DoubleFormatterTest extends AbstractTest {
+    public static final String ERROR_WRONG_FORMAT
+        = "DoubleFormatterTest.error.wrong.format";
+
+    public static final String ENTRY_KEY_VALUE
+        = "DoubleFormatterTest.entry.key.value";
+
+    public static final String ENTRY_KEY_EXPECTED
+        = "DoubleFormatterTest.entry.key.expected";
+
+    public static final String ENTRY_KEY_FORMATTED
+        = "DoubleFormatterTest.entry.key.formatted";
+
+    static double[] testValues = { 0, -0.0, 0.5, -0.5, 1.5, 2.5, -2.5,
+                                   0.00001, -0.00001, 0.00015, 0.00025,
+                                   0.125, 0.375, 1.00005, 45.3456,
+                                   0.2e-14, 987654321e-12, 99999999.99999,
+                                   -99999999.5, 234143, 123412341234e14,
+                                   2.3333444000044e56, Double.NaN,
+                                   Double.POSITIVE_INFINITY };
+
+    public TestReport runImpl() throws Exception {
+        for (int p = 0; p <= 12; p++) {
+            for (double v : testValues) {
+                TestReport report = check(v, p);
+                if (report != null) {
+                    return report;
+                }
+            }
+        }
+
+        Random random = new Random(7);
+        for (int i = 0; i < 100000; i++) {
+            int p = random.nextInt(13);
+            // Short decimal values, which are often halfway cases
+            double v = random.nextInt(2000000) / 1000.0 - 1000;
+            TestReport report = check(v, p);
+            if (report == null) {
+                v = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(12) - 4);
+                report = check(v, p);
+            }
+            if (report != null) {
+                return report;
+            }
+        }
+        return reportSuccess();
+    }
+
+    protected TestReport check(double v, int p) {
+        String expected = expected(v, p);
+        if (expected == null) {
+            return null;
+        }
+        String formatted = DoubleFormatter.toString(v, p);
+        if (expected.equals(formatted)) {
+            return null;
+        }
+        TestReport report = reportError(ERROR_WRONG_FORMAT);
+        report.addDescriptionEntry(ENTRY_KEY_VALUE, v + " (precision " + p + ")");
+        report.addDescriptionEntry(ENTRY_KEY_EXPECTED, expected);
+        report.addDescriptionEntry(ENTRY_KEY_FORMATTED, formatted);
+        return report;
+    }
+
+    /**
+     * Returns the expected output for the given value, or null if the
+     * value has too many digits to be formatted exactly.
+     */
+    protected String expected(double v, int p) {
+        if (Math.abs(v) >= 10e7 || (int)v == v) {
+            return Integer.toString((int)v);
+        }
+        if (Double.isNaN(v)) {
+            return "NaN";
+        }
+        if (Math.abs(v) * Math.pow(10, p) >= 1e15) {
+            return null;
+        }
+        BigDecimal d = new BigDecimal(v).setScale(p, RoundingMode.HALF_EVEN);
+        if (d.signum() == 0) {
+            return v < 0 ? "-0" : "0";
+        }
+        return d.stripTrailingZeros().toPlainString();
+    }
+}
@@ -0,0 +1,133 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.svggen;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import org.apache.batik.test.TestReport;
+
+/**
+ * Checks that the cached image handlers write each distinct image
+ * once, whether it is embedded in the document or written to a file,
+ * and that images differing by one pixel have different keys.
+ *
+ * @version $Id$
+ */
+public class ImageCacheTest extends AbstractCountTest {
+    public TestReport runImpl() throws Exception {
+        checkKeys();
+
+        TestReport report = checkCount("embedded",
+                                       draw(new CachedImageHandlerBase64Encoder()),
+                                       2);
+        if (report != null) {
+            return report;
+        }
+
+        File dir = File.createTempFile("ImageCacheTest", "");
+        dir.delete();
+        dir.mkdir();
+        try {
+            draw(new CachedImageHandlerPNGEncoder(dir.getPath(), "images"));
+            report = checkCount("external", dir.list().length, 2);
+        } finally {
+            File[] files = dir.listFiles();
+            for (int i = 0; i < files.length; i++) {
+                files[i].delete();
+            }
+            dir.delete();
+        }
+        return report == null ? reportSuccess() : report;
+    }
+
+    /**
+     * Draws two distinct images three times each and returns the
+     * number of image elements in the document.
+     */
+    protected int draw(GenericImageHandler handler) {
+        Document domFactory = createDocument();
+        SVGGeneratorContext ctx = SVGGeneratorContext.createDefault(domFactory);
+        ctx.setGenericImageHandler(handler);
+        SVGGraphics2D g2d = new SVGGraphics2D(ctx, false);
+
+        BufferedImage red = createImage(Color.red);
+        BufferedImage blue = createImage(Color.blue);
+        for (int i = 0; i < 3; i++) {
+            // A new but equal instance every time.
+            g2d.drawImage(createImage(Color.red), i * 20, 0, null);
+            g2d.drawImage(i == 0 ? blue : createImage(Color.blue),
+                          i * 20, 20, null);
+        }
+        g2d.drawImage(red, 0, 40, null);
+
+        Element root = g2d.getRoot();
+        NodeList list = root.getElementsByTagNameNS(SVG_NAMESPACE_URI,
+                                                    SVG_IMAGE_TAG);
+        return list.getLength();
+    }
+
+    /**
+     * Checks the equality of the keys of some images and data.
+     */
+    protected void checkKeys() throws Exception {
+        BufferedImage image = createImage(Color.red);
+        BufferedImage other = createImage(Color.red);
+        assertTrue(key(image).equals(key(other)));
+        other.setRGB(8, 8, 0xfffe0000);
+        assertTrue(!key(image).equals(key(other)));
+
+        byte[] data = { 1, 2, 3, 4, 5 };
+        byte[] prefix = { 1, 2, 3, 4, 5, 0 };
+        assertTrue(key(data, data.length).equals(key(prefix, data.length)));
+        assertTrue(!key(data, data.length).equals(key(prefix, prefix.length)));
+    }
+
+    protected ImageCacher.ContentKey key(BufferedImage image) {
+        ImageCacher.ContentKey key = new ImageCacher.ContentKey
+            (image.getType(), image.getWidth(), image.getHeight());
+        key.update(image);
+        key.finish();
+        return key;
+    }
+
+    protected ImageCacher.ContentKey key(byte[] data, int len) {
+        ImageCacher.ContentKey key =
+            new ImageCacher.ContentKey(ImageCacher.ContentKey.ENCODED, 1, 1);
+        key.update(data, 0, len);
+        key.finish();
+        return key;
+    }
+
+    protected BufferedImage createImage(Color color) {
+        BufferedImage image = new BufferedImage(16, 16,
+                                                BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(color);
+        g.fillRect(2, 2, 12, 12);
+        g.dispose();
+        return image;
+    }
+}
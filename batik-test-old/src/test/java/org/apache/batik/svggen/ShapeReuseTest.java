@@ -0,0 +1,108 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.svggen;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.GeneralPath;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import org.apache.batik.test.TestReport;
+
+/**
+ * Checks that, with shape reuse on, a path drawn at several
+ * translations is written once and referenced with use elements, and
+ * that only the most recently drawn geometries are remembered.
+ *
+ * @version $Id$
+ */
+public class ShapeReuseTest extends AbstractCountTest {
+    public TestReport runImpl() throws Exception {
+        Document domFactory = createDocument();
+        SVGGeneratorContext ctx = SVGGeneratorContext.createDefault(domFactory);
+        ctx.setShapeReuseOn(true);
+        SVGGraphics2D g2d = new SVGGraphics2D(ctx, false);
+
+        GeneralPath marker = new GeneralPath();
+        marker.moveTo(0, 0);
+        marker.lineTo(4, 8);
+        marker.lineTo(-4, 8);
+        marker.closePath();
+
+        for (int i = 0; i < 10; i++) {
+            AffineTransform t = AffineTransform.getTranslateInstance(i * 20, 10);
+            g2d.fill(t.createTransformedShape(marker));
+        }
+
+        // The first marker is a plain path, the others use the
+        // path definition.
+        Element root = g2d.getRoot();
+        TestReport report = checkCount(root, SVG_PATH_TAG, 2);
+        if (report == null) {
+            report = checkCount(root, SVG_USE_TAG, 9);
+        }
+        if (report == null) {
+            report = checkForgotten();
+        }
+        return report == null ? reportSuccess() : report;
+    }
+
+    /**
+     * Draws a geometry again after more than the remembered number of
+     * other geometries, which is then a plain path, while a geometry
+     * drawn in between is reused.
+     */
+    protected TestReport checkForgotten() {
+        SVGGeneratorContext ctx =
+            SVGGeneratorContext.createDefault(createDocument());
+        ctx.setShapeReuseOn(true);
+        SVGGraphics2D g2d = new SVGGraphics2D(ctx, false);
+
+        GeneralPath first = createLine(0);
+        GeneralPath recent = createLine(1);
+        g2d.fill(first);
+        g2d.fill(recent);
+        for (int i = 2; i <= SVGUse.MAX_DRAWN_ONCE + 1; i++) {
+            g2d.fill(createLine(i));
+            if (i == SVGUse.MAX_DRAWN_ONCE / 2) {
+                g2d.fill(recent);
+            }
+        }
+        g2d.fill(first);
+
+        Element root = g2d.getRoot();
+        TestReport report = checkCount(root, SVG_USE_TAG, 1);
+        if (report == null) {
+            report = checkCount(root, SVG_PATH_TAG,
+                                SVGUse.MAX_DRAWN_ONCE + 4);
+        }
+        return report;
+    }
+
+    /**
+     * Returns a line of the given length.
+     */
+    protected GeneralPath createLine(int length) {
+        GeneralPath line = new GeneralPath();
+        line.moveTo(0, 0);
+        line.lineTo(length, 0);
+        return line;
+    }
+}
@@ -0,0 +1,93 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.svggen;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Rectangle;
+import java.lang.reflect.Field;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import org.apache.batik.test.TestReport;
+
+/**
+ * Checks that equal paints and clips which are different Java objects
+ * share one definition, and that definitions with the same digest but
+ * a different content have different keys.
+ *
+ * @version $Id$
+ */
+public class SharedDefinitionsTest extends AbstractCountTest {
+    public TestReport runImpl() throws Exception {
+        Document domFactory = createDocument();
+        SVGGraphics2D g2d = new SVGGraphics2D(domFactory);
+
+        for (int i = 0; i < 10; i++) {
+            g2d.setPaint(new GradientPaint(0, 0, Color.red,
+                                           100, 0, Color.blue));
+            g2d.fill(new Rectangle(i * 10, 0, 10, 10));
+
+            g2d.setClip(new Rectangle(0, 20, 50, 50));
+            g2d.fill(new Rectangle(i * 10, 20, 10, 10));
+            g2d.setClip(null);
+        }
+
+        // A different gradient gets its own definition
+        g2d.setPaint(new GradientPaint(0, 0, Color.red,
+                                       100, 0, Color.green));
+        g2d.fill(new Rectangle(0, 40, 10, 10));
+
+        checkKeys(domFactory);
+
+        Element root = g2d.getRoot();
+        TestReport report = checkCount(root, SVG_LINEAR_GRADIENT_TAG, 2);
+        if (report == null) {
+            report = checkCount(root, SVG_CLIP_PATH_TAG, 1);
+        }
+        return report == null ? reportSuccess() : report;
+    }
+
+    /**
+     * Checks the equality of the keys of some definitions.
+     */
+    protected void checkKeys(Document doc) throws Exception {
+        Element def1 = doc.createElementNS(SVG_NAMESPACE_URI,
+                                           SVG_LINEAR_GRADIENT_TAG);
+        def1.setAttributeNS(null, SVG_ID_ATTRIBUTE, "g1");
+        def1.setAttributeNS(null, SVG_X1_ATTRIBUTE, "0");
+        Element def2 = (Element)def1.cloneNode(true);
+        def2.setAttributeNS(null, SVG_ID_ATTRIBUTE, "g2");
+        DefinitionKey key1 = new DefinitionKey(def1);
+        DefinitionKey key2 = new DefinitionKey(def2);
+        assertTrue(key1.equals(key2));
+
+        // The key does not change when the definition does
+        def1.setAttributeNS(null, SVG_X1_ATTRIBUTE, "1");
+        assertTrue(key1.equals(key2));
+
+        // A different content with the same digest is a different key
+        DefinitionKey key3 = new DefinitionKey(def1);
+        Field digest = DefinitionKey.class.getDeclaredField("digest");
+        digest.setAccessible(true);
+        digest.set(key3, digest.get(key1));
+        assertTrue(!key1.equals(key3));
+    }
+}
@@ -0,0 +1,299 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.svggen;
+
+import java.awt.Dimension;
+import java.awt.Font;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.DOMImplementation;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import org.apache.batik.anim.dom.SAXSVGDocumentFactory;
+import org.apache.batik.dom.GenericDOMImplementation;
+import org.apache.batik.dom.util.DOMUtilities;
+import org.apache.batik.svggen.SVGGeneratorContext.GraphicContextDefaults;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+import org.apache.batik.util.SVGConstants;
+import org.apache.batik.util.XMLResourceDescriptor;
+
+/**
+ * This test validates that the StreamingSVGGraphics2D writes the same
+ * document as the SVGGraphics2D stream method for content which does
+ * not need any definitions. For the content of the given painter, which
+ * may need definitions, it checks that both documents have the same
+ * definitions and the same graphics, in the same groups, and that the
+ * streamed definitions precede the elements referencing them.
+ *
+ * @version $Id$
+ */
+public class StreamingTest extends AbstractTest implements SVGConstants {
+    public static final Dimension CANVAS_SIZE
+        = new Dimension(300, 400);
+
+    public static final String ERROR_DIFFERENT_SVG_OUTPUT
+        = "StreamingTest.error.different.svg.output";
+
+    public static final String ENTRY_KEY_DOM_OUTPUT
+        = "StreamingTest.entry.key.dom.output";
+
+    public static final String ENTRY_KEY_STREAMING_OUTPUT
+        = "StreamingTest.entry.key.streaming.output";
+
+    public static final String ERROR_FORWARD_REFERENCE
+        = "StreamingTest.error.forward.reference";
+
+    public static final String ENTRY_KEY_REFERENCE
+        = "StreamingTest.entry.key.reference";
+
+    /**
+     * The class name of the painter, or null to compare the documents
+     * written for BasicShapes as text.
+     */
+    protected String painterClassName;
+
+    public StreamingTest() {
+    }
+
+    /**
+     * @param painterClassName the class of the painter, in the
+     *        org.apache.batik.svggen package.
+     */
+    public StreamingTest(String painterClassName) {
+        this.painterClassName = painterClassName;
+    }
+
+    public TestReport runImpl() throws Exception {
+        GraphicContextDefaults defaults
+            = new GraphicContextDefaults();
+        defaults.font = new Font("Arial", Font.PLAIN, 12);
+        Painter painter = new BasicShapes();
+        if (painterClassName != null) {
+            painter = (Painter)Class.forName
+                (getClass().getPackage().getName() + "." + painterClassName)
+                .newInstance();
+        }
+
+        // First, build the DOM tree and stream it
+        SVGGeneratorContext ctx = createContext(defaults);
+        SVGGraphics2D g2d = new SVGGraphics2D(ctx, false);
+        g2d.setSVGCanvasSize(CANVAS_SIZE);
+        painter.paint(g2d);
+
+        StringWriter swA = new StringWriter();
+        g2d.stream(swA);
+
+        // Now, write the document while painting
+        ctx = createContext(defaults);
+        StringWriter swB = new StringWriter();
+        StreamingSVGGraphics2D sg2d
+            = new StreamingSVGGraphics2D(ctx, false, swB);
+        sg2d.setSVGCanvasSize(CANVAS_SIZE);
+        painter.paint(sg2d);
+        sg2d.endDocument();
+        checkReferences((StreamingDOMTreeManager)sg2d.getDOMTreeManager(),
+                        ctx.getDOMFactory());
+
+        if (painterClassName != null) {
+            return compare(swA.toString(), swB.toString());
+        }
+
+        // Compare the two output: they should be identical
+        if (swA.toString().equals(swB.toString())) {
+            return reportSuccess();
+        } else {
+            TestReport report = reportError(ERROR_DIFFERENT_SVG_OUTPUT);
+            report.addDescriptionEntry(ENTRY_KEY_DOM_OUTPUT,
+                                       swA.toString());
+            report.addDescriptionEntry(ENTRY_KEY_STREAMING_OUTPUT,
+                                       swB.toString());
+            return report;
+        }
+    }
+
+    /**
+     * Checks that only href and url(#...) values are taken as references
+     * to definitions by the given manager.
+     */
+    protected void checkReferences(StreamingDOMTreeManager dtm, Document doc)
+        throws Exception {
+        Element e = doc.createElementNS(SVG_NAMESPACE_URI, SVG_RECT_TAG);
+        e.setAttributeNS(null, SVG_FILL_ATTRIBUTE, "#ff0000");
+        e.setAttributeNS(null, SVG_STROKE_ATTRIBUTE, "#00ff00");
+        int n = dtm.writtenIds.size();
+        assertTrue(!dtm.hasNewReferences(e, false));
+        assertEquals(n, dtm.writtenIds.size());
+
+        e.setAttributeNS(XLINK_NAMESPACE_URI, XLINK_HREF_QNAME,
+                         "#streamingTestHref");
+        assertTrue(dtm.hasNewReferences(e, false));
+        e.setAttributeNS(null, SVG_STYLE_ATTRIBUTE,
+                         "fill:url(#streamingTestUrl)");
+        assertTrue(dtm.hasNewReferences(e, false));
+        assertTrue(!dtm.hasNewReferences(e, false));
+        assertEquals(n + 2, dtm.writtenIds.size());
+    }
+
+    /**
+     * Compares the definitions and the graphics of the given documents,
+     * and checks the references of the streamed one.
+     */
+    protected TestReport compare(String dom, String streamed)
+        throws IOException {
+        Document docA = parse(dom);
+        Document docB = parse(streamed);
+        List defsA = new ArrayList();
+        List defsB = new ArrayList();
+        List graphicsA = new ArrayList();
+        List graphicsB = new ArrayList();
+        collect(docA.getDocumentElement(), "", defsA, graphicsA);
+        collect(docB.getDocumentElement(), "", defsB, graphicsB);
+        Collections.sort(defsA);
+        Collections.sort(defsB);
+        if (!defsA.equals(defsB) || !graphicsA.equals(graphicsB)) {
+            TestReport report = reportError(ERROR_DIFFERENT_SVG_OUTPUT);
+            report.addDescriptionEntry(ENTRY_KEY_DOM_OUTPUT, dom);
+            report.addDescriptionEntry(ENTRY_KEY_STREAMING_OUTPUT, streamed);
+            return report;
+        }
+        String ref = findForwardReference(docB.getDocumentElement(),
+                                          new HashSet());
+        if (ref != null) {
+            TestReport report = reportError(ERROR_FORWARD_REFERENCE);
+            report.addDescriptionEntry(ENTRY_KEY_REFERENCE, ref);
+            report.addDescriptionEntry(ENTRY_KEY_STREAMING_OUTPUT, streamed);
+            return report;
+        }
+        return reportSuccess();
+    }
+
+    /**
+     * Adds to the given lists the definitions found in the given subtree,
+     * and its graphics, with the attributes of the groups containing them.
+     * @param groups the attributes of the groups containing the element
+     */
+    protected static void collect(Element e, String groups,
+                                  List defs, List graphics) {
+        for (Node n = e.getFirstChild(); n != null; n = n.getNextSibling()) {
+            if (n.getNodeType() != Node.ELEMENT_NODE) {
+                continue;
+            }
+            Element c = (Element)n;
+            String name = c.getLocalName();
+            if (SVG_DEFS_TAG.equals(name)) {
+                for (Node d = c.getFirstChild();
+                     d != null;
+                     d = d.getNextSibling()) {
+                    if (d.getNodeType() == Node.ELEMENT_NODE) {
+                        defs.add(DOMUtilities.getXML(d));
+                    }
+                }
+            } else if (SVG_G_TAG.equals(name)) {
+                collect(c, groups + attributes(c) + "/", defs, graphics);
+            } else {
+                graphics.add(groups + DOMUtilities.getXML(c));
+            }
+        }
+    }
+
+    /**
+     * Returns the attributes of the given group, but its id.
+     */
+    protected static String attributes(Element g) {
+        List l = new ArrayList();
+        NamedNodeMap attrs = g.getAttributes();
+        for (int i = 0; i < attrs.getLength(); i++) {
+            Attr a = (Attr)attrs.item(i);
+            if (!SVG_ID_ATTRIBUTE.equals(a.getName())) {
+                l.add(a.getName() + "=" + a.getValue());
+            }
+        }
+        Collections.sort(l);
+        return l.toString();
+    }
+
+    /**
+     * Returns the first local reference of the given subtree to an
+     * element which does not precede it, or null.
+     * @param ids the ids of the elements preceding the subtree
+     */
+    protected static String findForwardReference(Element e, Set ids) {
+        NamedNodeMap attrs = e.getAttributes();
+        for (int i = 0; i < attrs.getLength(); i++) {
+            Attr a = (Attr)attrs.item(i);
+            String v = a.getValue();
+            if (XLINK_HREF_ATTRIBUTE.equals(a.getLocalName())
+                && v.startsWith("#") && !ids.contains(v.substring(1))) {
+                return v.substring(1);
+            }
+            int idx = v.indexOf("url(#");
+            while (idx != -1) {
+                int end = v.indexOf(')', idx);
+                String id = v.substring(idx + 5, end);
+                if (!ids.contains(id)) {
+                    return id;
+                }
+                idx = v.indexOf("url(#", end);
+            }
+        }
+        if (e.hasAttributeNS(null, SVG_ID_ATTRIBUTE)) {
+            ids.add(e.getAttributeNS(null, SVG_ID_ATTRIBUTE));
+        }
+        for (Node n = e.getFirstChild(); n != null; n = n.getNextSibling()) {
+            if (n.getNodeType() == Node.ELEMENT_NODE) {
+                String ref = findForwardReference((Element)n, ids);
+                if (ref != null) {
+                    return ref;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Parses the given document.
+     */
+    protected static Document parse(String s) throws IOException {
+        SAXSVGDocumentFactory f = new SAXSVGDocumentFactory
+            (XMLResourceDescriptor.getXMLParserClassName());
+        return f.createDocument("http://example.org/streaming.svg",
+                                new StringReader(s));
+    }
+
+    protected SVGGeneratorContext createContext(GraphicContextDefaults defaults) {
+        DOMImplementation impl = GenericDOMImplementation.getDOMImplementation();
+        Document domFactory = impl.createDocument(SVG_NAMESPACE_URI,
+                                                  SVG_SVG_TAG, null);
+        SVGGeneratorContext ctx = SVGGeneratorContext.createDefault(domFactory);
+        ctx.setGraphicContextDefaults(defaults);
+        return ctx;
+    }
+}
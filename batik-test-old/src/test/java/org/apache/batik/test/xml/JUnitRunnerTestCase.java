@@ -168,6 +168,9 @@ public class JUnitRunnerTestCase {
 "samples/tests/spec/scripting/primaryDoc.svg",
 "NullURITest",
 "DoubleStringPerformanceTest",
+"RuleIndexPerformanceTest",
+"StreamNormalizingReaderPerformanceTest.UTF-8",
+"StreamNormalizingReaderPerformanceTest.ISO-8859-1",
 "text.selection.latin",
 "text.selection.latin-ext",
 "text.selection.cyrillic",
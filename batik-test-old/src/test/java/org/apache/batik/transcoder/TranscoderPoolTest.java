@@ -0,0 +1,132 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.transcoder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.lang.reflect.Field;
+import java.util.Arrays;
+
+import org.apache.batik.anim.dom.SAXSVGDocumentFactory;
+import org.apache.batik.anim.dom.SVGDOMImplementation;
+import org.apache.batik.anim.dom.SVGOMDocument;
+import org.apache.batik.bridge.BridgeContext;
+import org.apache.batik.bridge.UserAgentAdapter;
+import org.apache.batik.css.engine.CSSEngine;
+import org.apache.batik.css.engine.StyleSheet;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+import org.apache.batik.transcoder.image.PNGTranscoder;
+import org.apache.batik.util.XMLResourceDescriptor;
+
+/**
+ * Checks that a <code>TranscoderPool</code> reuses its transcoders, bounds
+ * the number of idle ones, and produces the same output when used by
+ * several threads as a single transcoder does. Also checks that the CSS
+ * engines of a DOM implementation share its user-agent stylesheet.
+ *
+ * @version $Id$
+ */
+public class TranscoderPoolTest extends AbstractTest {
+
+    public TestReport runImpl() throws Exception {
+        final String uri
+            = (new File("samples/anne.svg")).toURI().toURL().toString();
+
+        TranscoderPool pool = new TranscoderPool
+            (new TranscoderPool.TranscoderFactory() {
+                    public Transcoder createTranscoder() {
+                        return new PNGTranscoder();
+                    }
+                }, null, 1);
+
+        // Released transcoders are reused, up to maxIdle.
+        Transcoder t1 = pool.acquire();
+        Transcoder t2 = pool.acquire();
+        assertTrue(t1 != t2);
+        pool.release(t1);
+        pool.release(t2);
+        assertTrue(pool.acquire() == t1);
+        assertTrue(pool.acquire() != t2);
+
+        // A released transcoder does not keep its document alive.
+        SVGAbstractTranscoder st = (SVGAbstractTranscoder) pool.acquire();
+        st.transcode(new TranscoderInput(uri),
+                     new TranscoderOutput(new ByteArrayOutputStream()));
+        assertTrue(st.ctx != null);
+        pool.release(st);
+        assertTrue(st.ctx == null && st.builder == null && st.root == null);
+
+        // Concurrent use gives the same result as a single transcoder.
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        new PNGTranscoder().transcode(new TranscoderInput(uri),
+                                      new TranscoderOutput(expected));
+
+        final TranscoderPool shared = pool;
+        final byte[][] results = new byte[8][];
+        final Exception[] failure = new Exception[1];
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            final int n = i;
+            threads[i] = new Thread() {
+                    public void run() {
+                        try {
+                            for (int j = n; j < results.length;
+                                 j += 4) {
+                                ByteArrayOutputStream os
+                                    = new ByteArrayOutputStream();
+                                shared.transcode(new TranscoderInput(uri),
+                                                 new TranscoderOutput(os));
+                                results[j] = os.toByteArray();
+                            }
+                        } catch (Exception e) {
+                            failure[0] = e;
+                        }
+                    }
+                };
+            threads[i].start();
+        }
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].join();
+        }
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        for (int i = 0; i < results.length; i++) {
+            assertTrue(Arrays.equals(expected.toByteArray(), results[i]));
+        }
+
+        // The user-agent stylesheet is parsed once per implementation.
+        SVGDOMImplementation impl = new SVGDOMImplementation();
+        String parser = XMLResourceDescriptor.getXMLParserClassName();
+        SAXSVGDocumentFactory f = new SAXSVGDocumentFactory(parser);
+        BridgeContext ctx = new BridgeContext(new UserAgentAdapter());
+        CSSEngine e1 = impl.createCSSEngine
+            ((SVGOMDocument) f.createDocument(uri), ctx);
+        CSSEngine e2 = impl.createCSSEngine
+            ((SVGOMDocument) f.createDocument(uri), ctx);
+        Field uass = CSSEngine.class.getDeclaredField("userAgentStyleSheet");
+        uass.setAccessible(true);
+        StyleSheet ss = (StyleSheet) uass.get(e1);
+        assertTrue(ss != null);
+        assertTrue(ss == uass.get(e2));
+
+        return reportSuccess();
+    }
+}
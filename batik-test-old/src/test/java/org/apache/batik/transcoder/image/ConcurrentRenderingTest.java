@@ -0,0 +1,152 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.transcoder.image;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.batik.ext.awt.image.rendered.CachableRed;
+import org.apache.batik.gvt.renderer.ImageRenderer;
+import org.apache.batik.gvt.renderer.StaticRenderer;
+import org.apache.batik.test.TestReport;
+import org.apache.batik.transcoder.TranscoderException;
+import org.apache.batik.transcoder.TranscoderInput;
+import org.apache.batik.transcoder.TranscoderOutput;
+
+/**
+ * Checks that a document rendered by several threads, with the
+ * KEY_RENDERING_THREADS hint, is identical to the same document
+ * rendered by a single thread. As the bands of the image are painted
+ * separately, the reference image is rendered in the same bands, one
+ * after the other.
+ *
+ * @version $Id$
+ */
+public class ConcurrentRenderingTest extends AbstractImageTranscoderTest {
+
+    /**
+     * The number of times the document is rendered concurrently.
+     */
+    public static final int RUNS = 3;
+
+    /** The URI of the input image. */
+    protected String inputURI;
+
+    /** The number of rendering threads. */
+    protected Integer threads;
+
+    /** The image rendered in bands by a single thread. */
+    protected byte[] refImgData;
+
+    /**
+     * Constructs a new <code>ConcurrentRenderingTest</code>.
+     *
+     * @param inputURI the URI of the input image
+     * @param threads the number of rendering threads
+     */
+    public ConcurrentRenderingTest(String inputURI, Integer threads) {
+        this.inputURI = inputURI;
+        this.threads = threads;
+    }
+
+    /**
+     * Renders the document several times, as races between the
+     * rendering threads do not show up on every run.
+     */
+    public TestReport runImpl() throws Exception {
+        // The name of the candidate images written on failure.
+        filename = inputURI.substring(0, inputURI.lastIndexOf('.'))
+            + "Threads.png";
+        TestReport report = null;
+        for (int i = 0; i < RUNS; i++) {
+            report = super.runImpl();
+            if (!report.hasPassed()) {
+                break;
+            }
+        }
+        return report;
+    }
+
+    /**
+     * Creates the <code>TranscoderInput</code>.
+     */
+    protected TranscoderInput createTranscoderInput() {
+        return new TranscoderInput(resolveURL(inputURI).toString());
+    }
+
+    /**
+     * Creates a Map that contains additional transcoding hints.
+     */
+    protected Map createTranscodingHints() {
+        Map hints = createSerialTranscodingHints();
+        hints.put(ImageTranscoder.KEY_RENDERING_THREADS, threads);
+        return hints;
+    }
+
+    /**
+     * Creates the hints of the single threaded rendering. The image is
+     * large enough to be made of several bands.
+     */
+    protected Map createSerialTranscodingHints() {
+        Map hints = new HashMap();
+        hints.put(ImageTranscoder.KEY_WIDTH, 1600f);
+        return hints;
+    }
+
+    /**
+     * Returns the image rendered in bands by a single thread.
+     */
+    protected byte [] getReferenceImageData() {
+        if (refImgData != null) {
+            return refImgData;
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageTranscoder t = new ImageTranscoder() {
+                public BufferedImage createImage(int w, int h) {
+                    return new BufferedImage
+                        (w, h, BufferedImage.TYPE_INT_ARGB);
+                }
+                protected ImageRenderer createRenderer() {
+                    return new StaticRenderer() {
+                            protected void copyData(CachableRed cr,
+                                                    WritableRaster wr) {
+                                copyBands(cr, wr, 1);
+                            }
+                        };
+                }
+                public void writeImage(BufferedImage img,
+                                       TranscoderOutput output)
+                    throws TranscoderException {
+                    new PNGTranscoder().writeImage
+                        (img, new TranscoderOutput(out));
+                }
+            };
+        t.setTranscodingHints(createSerialTranscodingHints());
+        try {
+            t.transcode(createTranscoderInput(), null);
+        } catch (TranscoderException ex) {
+            return null;
+        }
+        refImgData = out.toByteArray();
+        return refImgData;
+    }
+}
@@ -0,0 +1,130 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.transcoder.image;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.batik.bridge.IncrementalGVTBuilder;
+import org.apache.batik.test.DefaultTestReport;
+import org.apache.batik.test.TestReport;
+import org.apache.batik.transcoder.TranscoderException;
+import org.apache.batik.transcoder.TranscoderInput;
+import org.apache.batik.transcoder.TranscoderOutput;
+
+import org.w3c.dom.Document;
+
+/**
+ * Checks that a document transcoded with the KEY_PIPELINED_BUILD hint,
+ * whose GVT tree is built while it is parsed, gives the same image as
+ * the same document transcoded without the hint.
+ *
+ * @version $Id$
+ */
+public class PipelinedBuildTest extends AbstractImageTranscoderTest {
+
+    /**
+     * Error when the tree was not built as expected.
+     */
+    public static final String ERROR_UNEXPECTED_BUILD =
+        "PipelinedBuildTest.error.unexpected.build";
+
+    /** The URI of the input image. */
+    protected String inputURI;
+
+    /** Whether the tree must be the one built while parsing. */
+    protected Boolean incremental;
+
+    /** The image transcoded without the hint. */
+    protected byte[] refImgData;
+
+    /**
+     * Constructs a new <code>PipelinedBuildTest</code>.
+     *
+     * @param inputURI the URI of the input image
+     * @param incremental whether the tree built while parsing is used
+     */
+    public PipelinedBuildTest(String inputURI, Boolean incremental) {
+        this.inputURI = inputURI;
+        this.incremental = incremental;
+    }
+
+    public TestReport runImpl() throws Exception {
+        final boolean[] used = new boolean[1];
+        PNGTranscoder t = new PNGTranscoder() {
+                protected void transcode(Document document,
+                                         String uri,
+                                         TranscoderOutput output)
+                    throws TranscoderException {
+                    super.transcode(document, uri, output);
+                    used[0] = builder instanceof IncrementalGVTBuilder;
+                }
+            };
+        t.setTranscodingHints(createTranscodingHints());
+        t.transcode(createTranscoderInput(),
+                    new TranscoderOutput(new ByteArrayOutputStream()));
+        if (used[0] != incremental) {
+            DefaultTestReport report = new DefaultTestReport(this);
+            report.setErrorCode(ERROR_UNEXPECTED_BUILD);
+            report.addDescriptionEntry("incremental", "" + used[0]);
+            report.setPassed(false);
+            return report;
+        }
+
+        // The name of the candidate images written on failure.
+        filename = inputURI.substring(0, inputURI.lastIndexOf('.'))
+            + "Pipelined.png";
+        return super.runImpl();
+    }
+
+    /**
+     * Creates the <code>TranscoderInput</code>.
+     */
+    protected TranscoderInput createTranscoderInput() {
+        return new TranscoderInput(resolveURL(inputURI).toString());
+    }
+
+    /**
+     * Creates a Map that contains additional transcoding hints.
+     */
+    protected Map createTranscodingHints() {
+        Map hints = new HashMap();
+        hints.put(ImageTranscoder.KEY_PIPELINED_BUILD, Boolean.TRUE);
+        return hints;
+    }
+
+    /**
+     * Returns the image transcoded without the KEY_PIPELINED_BUILD hint.
+     */
+    protected byte [] getReferenceImageData() {
+        if (refImgData != null) {
+            return refImgData;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            new PNGTranscoder().transcode(createTranscoderInput(),
+                                          new TranscoderOutput(out));
+        } catch (TranscoderException ex) {
+            return null;
+        }
+        refImgData = out.toByteArray();
+        return refImgData;
+    }
+}
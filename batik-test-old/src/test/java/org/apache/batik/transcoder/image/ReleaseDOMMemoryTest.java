@@ -0,0 +1,144 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.transcoder.image;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.DefaultTestReport;
+import org.apache.batik.test.TestReport;
+import org.apache.batik.transcoder.SVGAbstractTranscoder;
+import org.apache.batik.transcoder.TranscoderException;
+import org.apache.batik.transcoder.TranscoderInput;
+import org.apache.batik.transcoder.TranscoderOutput;
+
+import org.w3c.dom.Document;
+
+/**
+ * This test measures the memory held by the DOM and the GVT tree of a
+ * document, such as <code>samples/mapSpain.svg</code>, once transcoded
+ * with and without the KEY_RELEASE_DOM hint.  It fails if the memory
+ * held with the hint exceeds the given ratio of the memory held without
+ * it.
+ *
+ * @version $Id$
+ */
+public class ReleaseDOMMemoryTest extends AbstractTest {
+
+    public static final String ENTRY_KEY_BYTES_KEPT = "entry.key.bytes.kept";
+
+    public static final String ENTRY_KEY_BYTES_RELEASED =
+        "entry.key.bytes.released";
+
+    protected String testFileName;
+
+    /**
+     * The number of copies of the document to transcode.
+     */
+    protected int copies = 5;
+
+    /**
+     * The maximum ratio of the memory held with the hint.
+     */
+    protected float maxRatio;
+
+    public ReleaseDOMMemoryTest(String testFileName, Float maxRatio) {
+        this.testFileName = testFileName;
+        this.maxRatio = maxRatio;
+    }
+
+    public void setCopies(Integer n) {
+        copies = n;
+    }
+
+    public Integer getCopies() {
+        return copies;
+    }
+
+    public TestReport runImpl() throws Exception {
+        // Load the classes and caches first.
+        transcode(Boolean.TRUE, new ArrayList());
+
+        long kept = measure(Boolean.FALSE);
+        long released = measure(Boolean.TRUE);
+
+        DefaultTestReport report = new DefaultTestReport(this);
+        report.addDescriptionEntry(ENTRY_KEY_BYTES_KEPT, kept);
+        report.addDescriptionEntry(ENTRY_KEY_BYTES_RELEASED, released);
+        if (released > kept * maxRatio) {
+            report.setErrorCode(TestReport.ERROR_TEST_FAILED);
+            report.setPassed(false);
+        } else {
+            report.setPassed(true);
+        }
+        return report;
+    }
+
+    /**
+     * Returns the growth of the heap while the documents and the GVT
+     * trees of several transcoded copies are held.
+     */
+    protected long measure(Boolean release) throws TranscoderException {
+        List held = new ArrayList();
+        long before = getUsedMemory();
+        for (int i = 0; i < copies; i++) {
+            transcode(release, held);
+        }
+        long after = getUsedMemory();
+        // Also keeps the trees reachable until the measure is done.
+        return held.isEmpty() ? 0 : (after - before) / copies;
+    }
+
+    /**
+     * Transcodes the document, and adds its DOM and GVT trees to the
+     * given list.
+     */
+    protected void transcode(Boolean release, final List held)
+        throws TranscoderException {
+        PNGTranscoder t = new PNGTranscoder() {
+                protected void transcode(Document document,
+                                         String uri,
+                                         TranscoderOutput output)
+                    throws TranscoderException {
+                    super.transcode(document, uri, output);
+                    held.add(document);
+                    held.add(root);
+                }
+            };
+        t.addTranscodingHint(SVGAbstractTranscoder.KEY_RELEASE_DOM, release);
+        t.addTranscodingHint(SVGAbstractTranscoder.KEY_WIDTH, 100f);
+        String uri = new File(testFileName).toURI().toString();
+        t.transcode(new TranscoderInput(uri),
+                    new TranscoderOutput(new ByteArrayOutputStream()));
+    }
+
+    /**
+     * Returns the memory used after a few garbage collections.
+     */
+    protected static long getUsedMemory() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
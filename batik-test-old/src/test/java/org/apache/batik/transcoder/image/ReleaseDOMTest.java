@@ -0,0 +1,139 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.transcoder.image;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.batik.test.DefaultTestReport;
+import org.apache.batik.test.TestReport;
+import org.apache.batik.transcoder.SVGAbstractTranscoder;
+import org.apache.batik.transcoder.TranscoderException;
+import org.apache.batik.transcoder.TranscoderInput;
+import org.apache.batik.transcoder.TranscoderOutput;
+
+import org.w3c.dom.Document;
+
+/**
+ * Checks that a document transcoded with the KEY_RELEASE_DOM hint, whose
+ * elements are released as they are built, gives the same image as the
+ * same document transcoded without the hint.
+ *
+ * @version $Id$
+ */
+public class ReleaseDOMTest extends AbstractImageTranscoderTest {
+
+    /**
+     * Error when the elements were not released as expected.
+     */
+    public static final String ERROR_UNEXPECTED_RELEASE =
+        "ReleaseDOMTest.error.unexpected.release";
+
+    /** The URI of the input image. */
+    protected String inputURI;
+
+    /** Whether elements must be released. */
+    protected Boolean released;
+
+    /** The image transcoded without the hint. */
+    protected byte[] refImgData;
+
+    /**
+     * Constructs a new <code>ReleaseDOMTest</code>.
+     *
+     * @param inputURI the URI of the input image
+     * @param released whether elements are released
+     */
+    public ReleaseDOMTest(String inputURI, Boolean released) {
+        this.inputURI = inputURI;
+        this.released = released;
+    }
+
+    public TestReport runImpl() throws Exception {
+        final int[] elements = new int[2];
+        PNGTranscoder t = new PNGTranscoder() {
+                protected void transcode(Document document,
+                                         String uri,
+                                         TranscoderOutput output)
+                    throws TranscoderException {
+                    elements[0] = countElements(document);
+                    super.transcode(document, uri, output);
+                    elements[1] = countElements(document);
+                }
+            };
+        t.setTranscodingHints(createTranscodingHints());
+        t.transcode(createTranscoderInput(),
+                    new TranscoderOutput(new ByteArrayOutputStream()));
+        if ((elements[1] < elements[0]) != released) {
+            DefaultTestReport report = new DefaultTestReport(this);
+            report.setErrorCode(ERROR_UNEXPECTED_RELEASE);
+            report.addDescriptionEntry("elements.before", "" + elements[0]);
+            report.addDescriptionEntry("elements.after", "" + elements[1]);
+            report.setPassed(false);
+            return report;
+        }
+
+        // The name of the candidate images written on failure.
+        filename = inputURI.substring(0, inputURI.lastIndexOf('.'))
+            + "Released.png";
+        return super.runImpl();
+    }
+
+    /**
+     * Returns the number of elements of the given document.
+     */
+    protected static int countElements(Document doc) {
+        return doc.getElementsByTagNameNS("*", "*").getLength();
+    }
+
+    /**
+     * Creates the <code>TranscoderInput</code>.
+     */
+    protected TranscoderInput createTranscoderInput() {
+        return new TranscoderInput(resolveURL(inputURI).toString());
+    }
+
+    /**
+     * Creates a Map that contains additional transcoding hints.
+     */
+    protected Map createTranscodingHints() {
+        Map hints = new HashMap();
+        hints.put(SVGAbstractTranscoder.KEY_RELEASE_DOM, Boolean.TRUE);
+        return hints;
+    }
+
+    /**
+     * Returns the image transcoded without the KEY_RELEASE_DOM hint.
+     */
+    protected byte [] getReferenceImageData() {
+        if (refImgData != null) {
+            return refImgData;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            new PNGTranscoder().transcode(createTranscoderInput(),
+                                          new TranscoderOutput(out));
+        } catch (TranscoderException ex) {
+            return null;
+        }
+        refImgData = out.toByteArray();
+        return refImgData;
+    }
+}
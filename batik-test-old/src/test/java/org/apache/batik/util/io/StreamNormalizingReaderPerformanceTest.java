@@ -0,0 +1,149 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.util.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+
+import org.apache.batik.test.PerformanceTest;
+
+/**
+ * This test compares the time needed to read a multi-megabyte document
+ * from a {@link StreamNormalizingReader} one character at a time and in
+ * blocks with {@link StreamNormalizingReader#read(char[],int,int)}. The
+ * document is mostly ASCII markup with some non-ASCII text. The score is
+ * the ratio between the block and the character times.
+ *
+ * @version $Id$
+ */
+public class StreamNormalizingReaderPerformanceTest extends PerformanceTest {
+
+    /**
+     * The encoding of the document.
+     */
+    protected String encoding;
+
+    /**
+     * The size of the document, in bytes.
+     */
+    protected int size = 4 * 1024 * 1024;
+
+    /**
+     * The size of the block used by the bulk reads.
+     */
+    protected int blockSize = 4096;
+
+    /**
+     * The encoded document.
+     */
+    protected byte[] content;
+
+    public StreamNormalizingReaderPerformanceTest() {
+        this("UTF-8");
+    }
+
+    public StreamNormalizingReaderPerformanceTest(String encoding) {
+        this.encoding = encoding;
+    }
+
+    public void setSize(Integer n) {
+        size = n;
+        content = null;
+    }
+
+    public Integer getSize() {
+        return size;
+    }
+
+    public void setBlockSize(Integer n) {
+        blockSize = n;
+    }
+
+    public Integer getBlockSize() {
+        return blockSize;
+    }
+
+    public String getName() {
+        return encoding + " -- " + super.getName();
+    }
+
+    /**
+     * Reads the document one character at a time.
+     */
+    protected void runRef() {
+        try {
+            StreamNormalizingReader r = createReader();
+            while (r.read() != -1) {
+            }
+            r.close();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Reads the document in blocks.
+     */
+    protected void runOp() {
+        try {
+            StreamNormalizingReader r = createReader();
+            char[] buf = new char[blockSize];
+            while (r.read(buf, 0, blockSize) != -1) {
+            }
+            r.close();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Creates a reader on the document.
+     */
+    protected StreamNormalizingReader createReader() throws IOException {
+        return new StreamNormalizingReader
+            (new ByteArrayInputStream(getContent()), encoding);
+    }
+
+    /**
+     * Returns the encoded document.
+     */
+    protected byte[] getContent() throws UnsupportedEncodingException {
+        if (content == null) {
+            String text = "Caf\u00e9";
+            if (!encoding.startsWith("ISO-8859")) {
+                text += " \u222b \ud835\udc00";
+            }
+            StringBuilder sb = new StringBuilder(size);
+            for (int i = 0; sb.length() < size; i++) {
+                sb.append("  <path id=\"p");
+                sb.append(i);
+                sb.append("\" d=\"M 10.5 20.25 L 30 40 C 1 2 3 4 5 6 Z\"/>");
+                sb.append((i % 64 == 0) ? "\r\n" : "\n");
+                if (i % 16 == 0) {
+                    sb.append("  <text>");
+                    sb.append(text);
+                    sb.append("</text>\n");
+                }
+            }
+            content = sb.toString().getBytes(encoding);
+        }
+        return content;
+    }
+}
@@ -26,6 +26,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.StringTokenizer;
 
+import org.apache.batik.anim.dom.PipelinedSVGDocumentFactory;
 import org.apache.batik.anim.dom.SAXSVGDocumentFactory;
 import org.apache.batik.anim.dom.SVGDOMImplementation;
 import org.apache.batik.anim.dom.SVGOMDocument;
@@ -35,10 +36,12 @@ import org.apache.batik.bridge.BridgeException;
 import org.apache.batik.bridge.DefaultScriptSecurity;
 import org.apache.batik.bridge.ExternalResourceSecurity;
 import org.apache.batik.bridge.GVTBuilder;
+import org.apache.batik.bridge.IncrementalGVTBuilder;
 import org.apache.batik.bridge.NoLoadScriptSecurity;
 import org.apache.batik.bridge.RelaxedExternalResourceSecurity;
 import org.apache.batik.bridge.RelaxedScriptSecurity;
 import org.apache.batik.bridge.SVGUtilities;
+import org.apache.batik.bridge.StaticGVTBuilder;
 import org.apache.batik.bridge.ScriptSecurity;
 import org.apache.batik.bridge.UserAgent;
 import org.apache.batik.bridge.UserAgentAdapter;
@@ -58,6 +61,7 @@ import org.apache.batik.util.ParsedURL;
 import org.apache.batik.util.SVGConstants;
 import org.w3c.dom.DOMImplementation;
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 import org.w3c.dom.svg.SVGSVGElement;
 
 /**
@@ -107,6 +111,18 @@ public abstract class SVGAbstractTranscoder extends XMLAbstractTranscoder {
      */
     protected GVTBuilder builder;
 
+    /**
+     * The builder of the GVT tree of the document being parsed, when
+     * the document is parsed and built at the same time.
+     */
+    protected IncrementalGVTBuilder incrementalBuilder;
+
+    /**
+     * Whether the document being transcoded was created by this
+     * transcoder, and so can be modified.
+     */
+    protected boolean ownDocument;
+
     /**
      * Image's width and height (init to 400x400).
      */
@@ -142,21 +158,43 @@ public abstract class SVGAbstractTranscoder extends XMLAbstractTranscoder {
     /**
      * Creates a <code>DocumentFactory</code> that is used to create an SVG DOM
      * tree. The specified DOM Implementation is ignored and the Batik
-     * SVG DOM Implementation is automatically used.
+     * SVG DOM Implementation is automatically used.  When
+     * {@link #KEY_PIPELINED_BUILD} is set and the scripts are not executed,
+     * the returned factory builds the GVT tree while parsing.
      *
      * @param domImpl the DOM Implementation (not used)
      * @param parserClassname the XML parser classname
      */
     protected DocumentFactory createDocumentFactory(DOMImplementation domImpl,
                                                     String parserClassname) {
+        if (isPipelinedBuild()) {
+            return new PipelinedSVGDocumentFactory
+                (parserClassname, new IncrementalBuildHandler());
+        }
         return new SAXSVGDocumentFactory(parserClassname);
     }
 
+    /**
+     * Whether the GVT tree must be built while the document is parsed.
+     */
+    protected boolean isPipelinedBuild() {
+        return Boolean.TRUE.equals(hints.get(KEY_PIPELINED_BUILD)) &&
+            !Boolean.TRUE.equals(hints.get(KEY_EXECUTE_ONLOAD));
+    }
+
     public void transcode(TranscoderInput input, TranscoderOutput output)
             throws TranscoderException {
 
+        incrementalBuilder = null;
+        ownDocument = input.getDocument() == null;
         super.transcode(input, output);
+        ownDocument = false;
 
+        if (incrementalBuilder != null) {
+            // The document was not transcoded.
+            incrementalBuilder.dispose();
+            incrementalBuilder = null;
+        }
         if (ctx != null)
             ctx.dispose();
     }
@@ -179,6 +217,7 @@ public abstract class SVGAbstractTranscoder extends XMLAbstractTranscoder {
             impl = (DOMImplementation)hints.get(KEY_DOM_IMPLEMENTATION);
             // impl = SVGDOMImplementation.getDOMImplementation();
             document = DOMUtilities.deepCloneDocument(document, impl);
+            ownDocument = true;
             if (uri != null) {
                 ParsedURL url = new ParsedURL(uri);
                 ((SVGOMDocument)document).setParsedURL(url);
@@ -193,21 +232,44 @@ public abstract class SVGAbstractTranscoder extends XMLAbstractTranscoder {
 
         SVGOMDocument svgDoc = (SVGOMDocument)document;
         SVGSVGElement root = svgDoc.getRootElement();
-        ctx = createBridgeContext(svgDoc);
 
-        // build the GVT tree
-        builder = new GVTBuilder();
         // flag that indicates if the document is dynamic
         boolean isDynamic =
             hints.containsKey(KEY_EXECUTE_ONLOAD) &&
                     (Boolean) hints.get(KEY_EXECUTE_ONLOAD);
 
+        // use the tree built while parsing, if any
+        IncrementalGVTBuilder ib = incrementalBuilder;
+        incrementalBuilder = null;
+        if (ib != null &&
+            (ib.getDocument() != svgDoc || !ib.isValid() || isDynamic)) {
+            ib.dispose();
+            ib = null;
+        }
+        if (ib != null) {
+            ctx = ib.getBridgeContext();
+            builder = ib;
+        } else {
+            ctx = createBridgeContext(svgDoc);
+            // build the GVT tree
+            if (ownDocument && !isDynamic &&
+                Boolean.TRUE.equals(hints.get(KEY_RELEASE_DOM))) {
+                builder = new StaticGVTBuilder();
+            } else {
+                builder = new GVTBuilder();
+            }
+        }
+
         GraphicsNode gvtRoot;
         try {
             if (isDynamic)
                 ctx.setDynamicState(BridgeContext.DYNAMIC);
 
-            gvtRoot = builder.build(ctx, svgDoc);
+            if (ib != null) {
+                gvtRoot = ib.finish();
+            } else {
+                gvtRoot = builder.build(ctx, svgDoc);
+            }
 
             // dispatch an 'onload' event if needed
             if (ctx.isDynamic()) {
@@ -882,6 +944,99 @@ public abstract class SVGAbstractTranscoder extends XMLAbstractTranscoder {
     public static final TranscodingHints.Key KEY_ALLOW_EXTERNAL_RESOURCES
             = new BooleanKey();
 
+    /**
+     * The pipelined build key.
+     * <table summary="" border="0" cellspacing="0" cellpadding="1">
+     *   <tr>
+     *     <th valign="top" align="right">Key:</th>
+     *     <td valign="top">KEY_PIPELINED_BUILD</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Value:</th>
+     *     <td valign="top">Boolean</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Default:</th>
+     *     <td valign="top">false</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Required:</th>
+     *     <td valign="top">No</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Description:</th>
+     *     <td valign="top">Specify if the document must be parsed in a
+     *       separate thread while the GVT tree is built, for the documents
+     *       which are read from a stream, a reader or a URI. It is ignored
+     *       when {@link #KEY_EXECUTE_ONLOAD} is set, for SVG 1.2 documents
+     *       and for validating parsers. The elements are built as soon as
+     *       the elements they reference are parsed; a style sheet following
+     *       the first graphics element makes the tree be built again once
+     *       the document is parsed.</td>
+     *   </tr>
+     * </table>
+     */
+    public static final TranscodingHints.Key KEY_PIPELINED_BUILD
+        = new BooleanKey();
+
+    /**
+     * The DOM release key.
+     * <table summary="" border="0" cellspacing="0" cellpadding="1">
+     *   <tr>
+     *     <th valign="top" align="right">Key:</th>
+     *     <td valign="top">KEY_RELEASE_DOM</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Value:</th>
+     *     <td valign="top">Boolean</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Default:</th>
+     *     <td valign="top">false</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Required:</th>
+     *     <td valign="top">No</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Description:</th>
+     *     <td valign="top">Specify if the elements and their computed
+     *       styles must be released as soon as their GVT nodes are built,
+     *       to reduce the memory needed by large documents (see
+     *       {@link StaticGVTBuilder}). Only the documents created by the
+     *       transcoder are modified; the hint is ignored when
+     *       {@link #KEY_EXECUTE_ONLOAD} is set or when the document is
+     *       built while parsed.</td>
+     *   </tr>
+     * </table>
+     */
+    public static final TranscodingHints.Key KEY_RELEASE_DOM
+        = new BooleanKey();
+
+    /**
+     * Builds the GVT tree of the document being parsed by a
+     * {@link PipelinedSVGDocumentFactory}.
+     */
+    protected class IncrementalBuildHandler
+        implements PipelinedSVGDocumentFactory.BuildHandler {
+
+        public void documentElementStarted(Element e) {
+            SVGOMDocument doc = (SVGOMDocument)e.getOwnerDocument();
+            if (doc.isSVG12()) {
+                // SVG 1.2 documents may need the whole tree to be built.
+                return;
+            }
+            incrementalBuilder =
+                new IncrementalGVTBuilder(createBridgeContext(doc), doc);
+        }
+
+        public void documentElementChildBuilt(Element e) {
+            if (incrementalBuilder != null) {
+                incrementalBuilder.add(e);
+            }
+        }
+    }
+
     /**
      * A user agent implementation for <code>PrintTranscoder</code>.
      */
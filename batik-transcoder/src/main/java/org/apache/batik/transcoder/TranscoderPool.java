@@ -0,0 +1,179 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.transcoder;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.batik.anim.dom.SVGDOMImplementation;
+import org.apache.batik.bridge.BridgeContext;
+import org.apache.batik.ext.awt.image.spi.ImageTagRegistry;
+
+/**
+ * A pool of transcoders which can be shared by several threads.
+ *
+ * <p>A <code>Transcoder</code> is not thread-safe and keeps some state
+ * from one transcoding operation to the next. This class hands out
+ * transcoders so that each one is used by a single thread at a time,
+ * and keeps the released ones for later requests. The process-wide
+ * registries (bridge and DOM extensions, image readers, the SVG DOM
+ * implementation and its parsed user-agent stylesheet) are shared by
+ * all the transcoders, so that once the pool is warm, a request only
+ * pays for parsing, building and painting its document.</p>
+ *
+ * @version $Id$
+ */
+public class TranscoderPool {
+
+    /**
+     * Creates the transcoders managed by a pool.
+     */
+    public interface TranscoderFactory {
+
+        /**
+         * Returns a new transcoder.
+         */
+        Transcoder createTranscoder();
+    }
+
+    /**
+     * The factory used to create new transcoders.
+     */
+    protected TranscoderFactory factory;
+
+    /**
+     * The hints set on every transcoder created by this pool.
+     */
+    protected TranscodingHints hints;
+
+    /**
+     * The transcoders which are not in use.
+     */
+    protected Queue<Transcoder> idle = new ConcurrentLinkedQueue<Transcoder>();
+
+    /**
+     * The number of transcoders in the idle queue.
+     */
+    protected AtomicInteger idleCount = new AtomicInteger();
+
+    /**
+     * The maximum number of idle transcoders kept by this pool.
+     */
+    protected int maxIdle;
+
+    /**
+     * Creates a new pool.
+     * @param factory the factory used to create the transcoders
+     * @param hints the hints to set on every transcoder, may be null
+     * @param maxIdle the maximum number of idle transcoders to keep
+     */
+    public TranscoderPool(TranscoderFactory factory, Map hints, int maxIdle) {
+        if (factory == null) {
+            throw new IllegalArgumentException();
+        }
+        this.factory = factory;
+        this.hints = (hints == null)
+            ? new TranscodingHints() : new TranscodingHints(hints);
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * Transcodes the specified input in the specified output using one
+     * of the transcoders of this pool. This method may be called
+     * concurrently by several threads.
+     * @param input the input to transcode
+     * @param output the ouput where to transcode
+     * @exception TranscoderException if an error occured while transcoding
+     */
+    public void transcode(TranscoderInput input, TranscoderOutput output)
+            throws TranscoderException {
+        Transcoder t = acquire();
+        try {
+            t.transcode(input, output);
+        } finally {
+            release(t);
+        }
+    }
+
+    /**
+     * Returns a transcoder for the exclusive use of the calling thread.
+     * The transcoder should be given back with {@link #release}.
+     */
+    public Transcoder acquire() {
+        Transcoder t = idle.poll();
+        if (t != null) {
+            idleCount.decrementAndGet();
+            return t;
+        }
+        return createTranscoder();
+    }
+
+    /**
+     * Gives back a transcoder obtained from {@link #acquire}.
+     */
+    public void release(Transcoder t) {
+        if (t instanceof SVGAbstractTranscoder) {
+            // Do not keep the last document alive while idle.
+            SVGAbstractTranscoder st = (SVGAbstractTranscoder)t;
+            st.ctx = null;
+            st.builder = null;
+            st.root = null;
+        }
+        if (idleCount.incrementAndGet() > maxIdle) {
+            idleCount.decrementAndGet();
+            return;
+        }
+        idle.offer(t);
+    }
+
+    /**
+     * Creates and configures a new transcoder.
+     */
+    protected Transcoder createTranscoder() {
+        Transcoder t = factory.createTranscoder();
+        // Merge rather than replace, to keep the transcoder defaults and
+        // not share one mutable hints map between transcoders.
+        t.setTranscodingHints((Map) hints);
+        return t;
+    }
+
+    /**
+     * Creates <code>n</code> transcoders in advance and initializes the
+     * process-wide registries they depend on, so that the first requests
+     * do not pay for it.
+     */
+    public void prestart(int n) {
+        initializeRegistries();
+        for (int i = 0; i < n; i++) {
+            release(createTranscoder());
+        }
+    }
+
+    /**
+     * Initializes the process-wide, immutable registries used by the
+     * transcoders.
+     */
+    public static void initializeRegistries() {
+        SVGDOMImplementation.getDOMImplementation();
+        BridgeContext.getGlobalBridgeExtensions();
+        ImageTagRegistry.getRegistry();
+    }
+}
@@ -21,22 +21,32 @@ package org.apache.batik.transcoder.image;
 import java.awt.AlphaComposite;
 import java.awt.Graphics2D;
 import java.awt.Paint;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
 import java.awt.Shape;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
 import java.awt.image.DataBufferInt;
+import java.awt.image.RenderedImage;
 import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
 
+import org.apache.batik.ext.awt.RenderingHintsKeyExt;
 import org.apache.batik.ext.awt.image.GraphicsUtil;
+import org.apache.batik.ext.awt.image.rendered.AbstractRed;
+import org.apache.batik.ext.awt.image.rendered.CachableRed;
 import org.apache.batik.gvt.renderer.ConcreteImageRendererFactory;
 import org.apache.batik.gvt.renderer.ImageRenderer;
 import org.apache.batik.gvt.renderer.ImageRendererFactory;
+import org.apache.batik.gvt.renderer.StaticRenderer;
 import org.apache.batik.transcoder.SVGAbstractTranscoder;
 import org.apache.batik.transcoder.TranscoderException;
 import org.apache.batik.transcoder.TranscoderOutput;
 import org.apache.batik.transcoder.TranscodingHints;
 import org.apache.batik.transcoder.keys.BooleanKey;
+import org.apache.batik.transcoder.keys.IntegerKey;
 import org.apache.batik.transcoder.keys.PaintKey;
 import org.w3c.dom.Document;
 
@@ -98,12 +108,30 @@ public abstract class ImageTranscoder extends SVGAbstractTranscoder {
         // paint the SVG document using the bridge package
         // create the appropriate renderer
         ImageRenderer renderer = createRenderer();
+        if (hints.containsKey(KEY_RENDERING_THREADS)) {
+            RenderingHints rh = renderer.getRenderingHints();
+            rh.put(RenderingHintsKeyExt.KEY_RENDERING_THREADS,
+                   hints.get(KEY_RENDERING_THREADS));
+            renderer.setRenderingHints(rh);
+        }
         renderer.updateOffScreen(w, h);
         // curTxf.translate(0.5, 0.5);
         renderer.setTransform(curTxf);
         renderer.setTree(this.root);
         this.root = null; // We're done with it...
 
+        if (isStreaming() && (renderer instanceof StaticRenderer)) {
+            // Paint the image in bands, as the writer asks for them.
+            CachableRed rend = ((StaticRenderer)renderer).getRendering();
+            renderer = null; // We're done with it...
+            try {
+                writeStreamedImage(new StreamedImage(rend, w, h), output);
+            } catch (Exception ex) {
+                throw new TranscoderException(ex);
+            }
+            return;
+        }
+
         try {
             // now we are sure that the aoi is the image size
             Shape raoi = new Rectangle2D.Float(0, 0, width, height);
@@ -133,6 +161,112 @@ public abstract class ImageTranscoder extends SVGAbstractTranscoder {
         }
     }
 
+    /**
+     * Returns true if the image should be painted in bands, as it is
+     * written, instead of being fully painted before being written.
+     */
+    protected boolean isStreaming() {
+        Object v = hints.get(KEY_STREAMING);
+        return Boolean.TRUE.equals(v);
+    }
+
+    /**
+     * Paints a part of the image written by
+     * {@link #writeStreamedImage}: the background and the rendering of
+     * the document, exactly as the image given to
+     * {@link #writeImage(BufferedImage,TranscoderOutput)} would be
+     * painted.  Subclasses may override this method to post-process
+     * each band.
+     * @param band the image to paint, created by <code>createImage</code>
+     * @param x the x location of the band in the image
+     * @param y the y location of the band in the image
+     * @param rend the rendering of the document, or null if the
+     *        document is empty
+     */
+    protected void paintBand(BufferedImage band, int x, int y,
+                             CachableRed rend) {
+        int w = band.getWidth();
+        int h = band.getHeight();
+        Graphics2D g2d = GraphicsUtil.createGraphics(band);
+        if (hints.containsKey(KEY_BACKGROUND_COLOR)) {
+            Paint bgcolor = (Paint)hints.get(KEY_BACKGROUND_COLOR);
+            g2d.setComposite(AlphaComposite.SrcOver);
+            g2d.setPaint(bgcolor);
+            g2d.fillRect(0, 0, w, h);
+        }
+        if (rend != null) {
+            Rectangle r = new Rectangle(x, y, w, h);
+            WritableRaster wr = (WritableRaster)rend.getData(r);
+            ColorModel cm = rend.getColorModel();
+            BufferedImage bi = new BufferedImage
+                (cm, wr.createWritableTranslatedChild(0, 0),
+                 cm.isAlphaPremultiplied(), null);
+            g2d.drawRenderedImage(bi, new AffineTransform());
+        }
+        g2d.dispose();
+    }
+
+    /**
+     * Writes an image painted in bands by {@link #paintBand} as they
+     * are requested.  The default implementation paints the whole
+     * image and gives it to
+     * {@link #writeImage(BufferedImage,TranscoderOutput)}; subclasses
+     * whose writers can consume the image in parts should override it,
+     * so that the whole image is never held in memory.
+     * @param img the image to write
+     * @param output the output where to store the image
+     * @throws TranscoderException if an error occured while storing the image
+     */
+    protected void writeStreamedImage(RenderedImage img,
+                                      TranscoderOutput output)
+        throws TranscoderException {
+        BufferedImage dest = createImage(img.getWidth(), img.getHeight());
+        img.copyData(dest.getRaster());
+        writeImage(dest, output);
+    }
+
+    /**
+     * The image given to {@link #writeStreamedImage}.  Its tiles are
+     * bands of the width of the image, painted by {@link #paintBand}
+     * when their data is requested.
+     */
+    protected class StreamedImage extends AbstractRed {
+
+        /**
+         * The rendering of the document, or null.
+         */
+        protected CachableRed rendering;
+
+        /**
+         * Creates a new image.
+         * @param rendering the rendering of the document, or null
+         * @param w the width of the image
+         * @param h the height of the image
+         */
+        public StreamedImage(CachableRed rendering, int w, int h) {
+            this.rendering = rendering;
+            BufferedImage bi = createImage(1, 1);
+            int th = (rendering == null) ? h : rendering.getTileHeight();
+            th = Math.max(1, Math.min(th, h));
+            init((CachableRed)null, new Rectangle(0, 0, w, h),
+                 bi.getColorModel(),
+                 bi.getSampleModel().createCompatibleSampleModel(w, th),
+                 0, 0, null);
+        }
+
+        public WritableRaster copyData(WritableRaster wr) {
+            Rectangle r = wr.getBounds().intersection(bounds);
+            if (r.isEmpty()) {
+                return wr;
+            }
+            BufferedImage band = createImage(r.width, r.height);
+            paintBand(band, r.x, r.y, rendering);
+            GraphicsUtil.copyData
+                (band.getRaster().createTranslatedChild(r.x, r.y), wr);
+            return wr;
+        }
+    }
+
     /**
      * Method so subclasses can modify the Renderer used to render document.
      */
@@ -275,4 +409,71 @@ public abstract class ImageTranscoder extends SVGAbstractTranscoder {
      */
     public static final TranscodingHints.Key KEY_FORCE_TRANSPARENT_WHITE
         = new BooleanKey();
+
+    /**
+     * The rendering threads key.
+     *
+     * <table summary="" border="0" cellspacing="0" cellpadding="1">
+     *   <tr>
+     *     <th valign="top" align="right">Key:</th>
+     *     <td valign="top">KEY_RENDERING_THREADS</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Value:</th>
+     *     <td valign="top">Integer</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Default:</th>
+     *     <td valign="top">1</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Required:</th>
+     *     <td valign="top">No</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Description:</th>
+     *     <td valign="top">The number of threads used to render the
+     *       image. When greater than 1, the image is split in bands of
+     *       tiles which are painted concurrently. This is mostly useful
+     *       for large images on machines with many processors.</td>
+     *   </tr>
+     * </table>
+     */
+    public static final TranscodingHints.Key KEY_RENDERING_THREADS
+        = new IntegerKey();
+
+    /**
+     * The streaming key.
+     *
+     * <table summary="" border="0" cellspacing="0" cellpadding="1">
+     *   <tr>
+     *     <th valign="top" align="right">Key:</th>
+     *     <td valign="top">KEY_STREAMING</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Value:</th>
+     *     <td valign="top">Boolean</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Default:</th>
+     *     <td valign="top">false</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Required:</th>
+     *     <td valign="top">No</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Description:</th>
+     *     <td valign="top">When true, the image is painted in horizontal
+     *       bands as the image writer asks for them, instead of being
+     *       painted in an offscreen image and copied in the image to
+     *       write. With the PNG and TIFF transcoders, the memory used is
+     *       then proportional to the height of a band rather than to the
+     *       size of the image. Other transcoders still build the whole
+     *       image, but only once.</td>
+     *   </tr>
+     * </table>
+     */
+    public static final TranscodingHints.Key KEY_STREAMING
+        = new BooleanKey();
 }
@@ -19,11 +19,13 @@
 package org.apache.batik.transcoder.image;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.RenderedImage;
 import java.awt.image.SinglePixelPackedSampleModel;
 import java.io.OutputStream;
 import java.lang.reflect.InvocationTargetException;
 
 import org.apache.batik.bridge.UserAgent;
+import org.apache.batik.ext.awt.image.rendered.CachableRed;
 import org.apache.batik.transcoder.TranscoderException;
 import org.apache.batik.transcoder.TranscoderOutput;
 import org.apache.batik.transcoder.TranscodingHints;
@@ -112,6 +114,15 @@ public class PNGTranscoder extends ImageTranscoder {
             forceTransparentWhite(img, sppsm);
         }
 
+        WriteAdapter adapter = getWriteAdapter();
+        adapter.writeImage(this, img, output);
+    }
+
+    /**
+     * Returns the adapter used to write the images.
+     * @throws TranscoderException if no adapter is available
+     */
+    private WriteAdapter getWriteAdapter() throws TranscoderException {
         WriteAdapter adapter = getWriteAdapter(
                 "org.apache.batik.ext.awt.image.codec.png.PNGTranscoderInternalCodecWriteAdapter");
         if (adapter == null) {
@@ -122,7 +133,48 @@ public class PNGTranscoder extends ImageTranscoder {
             throw new TranscoderException(
                     "Could not write PNG file because no WriteAdapter is availble");
         }
-        adapter.writeImage(this, img, output);
+        return adapter;
+    }
+
+    /**
+     * Paints a band of a streamed image and, if required, makes its
+     * transparent pixels white.
+     */
+    protected void paintBand(BufferedImage band, int x, int y,
+                             CachableRed rend) {
+        super.paintBand(band, x, y, rend);
+        if (Boolean.TRUE.equals(hints.get(KEY_FORCE_TRANSPARENT_WHITE))) {
+            SinglePixelPackedSampleModel sppsm;
+            sppsm = (SinglePixelPackedSampleModel)band.getSampleModel();
+            forceTransparentWhite(band, sppsm);
+        }
+    }
+
+    /**
+     * Writes an image painted in bands.  The image is given as is to
+     * the adapters which support it, so that it is never fully held in
+     * memory.
+     * @param img the image to write
+     * @param output the output where to store the image
+     * @throws TranscoderException if an error occured while storing the image
+     */
+    protected void writeStreamedImage(RenderedImage img,
+                                      TranscoderOutput output)
+        throws TranscoderException {
+        if (output.getOutputStream() == null) {
+            throw new TranscoderException(
+                Messages.formatMessage("png.badoutput", null));
+        }
+        WriteAdapter adapter = getWriteAdapter();
+        if (adapter instanceof StreamingWriteAdapter) {
+            ((StreamingWriteAdapter)adapter).writeStreamedImage
+                (this, img, output);
+        } else {
+            // The bands are already transparent white if required.
+            BufferedImage dest = createImage(img.getWidth(), img.getHeight());
+            img.copyData(dest.getRaster());
+            adapter.writeImage(this, dest, output);
+        }
     }
     
     // --------------------------------------------------------------------
@@ -148,6 +200,25 @@ public class PNGTranscoder extends ImageTranscoder {
                 TranscoderOutput output) throws TranscoderException;
 
     }
+
+    /**
+     * Implemented by the adapters which can write an image painted in
+     * bands as they ask for them.
+     */
+    public interface StreamingWriteAdapter extends WriteAdapter {
+
+        /**
+         * Writes the specified image, painted in bands, to the specified
+         * output.
+         * @param transcoder the calling PNGTranscoder
+         * @param img the image to write
+         * @param output the output where to store the image
+         * @throws TranscoderException if an error occured while storing the image
+         */
+        void writeStreamedImage(PNGTranscoder transcoder, RenderedImage img,
+                TranscoderOutput output) throws TranscoderException;
+
+    }
     
 
     // --------------------------------------------------------------------
@@ -225,4 +296,98 @@ public class PNGTranscoder extends ImageTranscoder {
      */
     public static final TranscodingHints.Key KEY_INDEXED
         = new IntegerKey();
+
+    /**
+     * The compression level key.
+     *
+     * <table summary="" border="0" cellspacing="0" cellpadding="1">
+     *   <tr>
+     *     <th valign="top" align="right">Key:</th>
+     *     <td valign="top">KEY_COMPRESSION_LEVEL</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Value:</th>
+     *     <td valign="top">Integer</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Default:</th>
+     *     <td valign="top">9</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Required:</th>
+     *     <td valign="top">No</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Description:</th>
+     *     <td valign="top">The deflate compression level of the image data,
+     *       from 0 (no compression) to 9 (best compression). Lower
+     *       levels encode large images much faster.</td>
+     *   </tr>
+     * </table>
+     */
+    public static final TranscodingHints.Key KEY_COMPRESSION_LEVEL
+        = new IntegerKey();
+
+    /**
+     * The row filter key.
+     *
+     * <table summary="" border="0" cellspacing="0" cellpadding="1">
+     *   <tr>
+     *     <th valign="top" align="right">Key:</th>
+     *     <td valign="top">KEY_FILTER_STRATEGY</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Value:</th>
+     *     <td valign="top">Integer</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Default:</th>
+     *     <td valign="top">-1 (adaptive)</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Required:</th>
+     *     <td valign="top">No</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Description:</th>
+     *     <td valign="top">The PNG filter applied to the rows of the image:
+     *       0 (none), 1 (sub), 2 (up), 3 (average) or 4 (paeth).
+     *       -1 chooses the best filter for each row, which is
+     *       slower.</td>
+     *   </tr>
+     * </table>
+     */
+    public static final TranscodingHints.Key KEY_FILTER_STRATEGY
+        = new IntegerKey();
+
+    /**
+     * The encoding threads key.
+     *
+     * <table summary="" border="0" cellspacing="0" cellpadding="1">
+     *   <tr>
+     *     <th valign="top" align="right">Key:</th>
+     *     <td valign="top">KEY_ENCODING_THREADS</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Value:</th>
+     *     <td valign="top">Integer</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Default:</th>
+     *     <td valign="top">the value of KEY_RENDERING_THREADS, or 1</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Required:</th>
+     *     <td valign="top">No</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Description:</th>
+     *     <td valign="top">The number of threads used to filter and compress
+     *       the image data. When greater than 1, stripes of rows of a
+     *       non-interlaced image are compressed concurrently.</td>
+     *   </tr>
+     * </table>
+     */
+    public static final TranscodingHints.Key KEY_ENCODING_THREADS
+        = new IntegerKey();
 }
@@ -20,10 +20,12 @@
 package org.apache.batik.transcoder.image;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.RenderedImage;
 import java.awt.image.SinglePixelPackedSampleModel;
 import java.lang.reflect.InvocationTargetException;
 
 import org.apache.batik.bridge.UserAgent;
+import org.apache.batik.ext.awt.image.rendered.CachableRed;
 import org.apache.batik.transcoder.TranscoderException;
 import org.apache.batik.transcoder.TranscoderOutput;
 import org.apache.batik.transcoder.TranscodingHints;
@@ -105,6 +107,15 @@ public class TIFFTranscoder extends ImageTranscoder {
             forceTransparentWhite(img, sppsm);
         }
 
+        WriteAdapter adapter = getWriteAdapter();
+        adapter.writeImage(this, img, output);
+    }
+
+    /**
+     * Returns the adapter used to write the images.
+     * @throws TranscoderException if no adapter is available
+     */
+    private WriteAdapter getWriteAdapter() throws TranscoderException {
         WriteAdapter adapter = getWriteAdapter(
                 "org.apache.batik.ext.awt.image.codec.tiff.TIFFTranscoderInternalCodecWriteAdapter");
         if (adapter == null) {
@@ -115,7 +126,44 @@ public class TIFFTranscoder extends ImageTranscoder {
             throw new TranscoderException(
                     "Could not write TIFF file because no WriteAdapter is availble");
         }
-        adapter.writeImage(this, img, output);
+        return adapter;
+    }
+
+    /**
+     * Paints a band of a streamed image and, if required, makes its
+     * transparent pixels white.
+     */
+    protected void paintBand(BufferedImage band, int x, int y,
+                             CachableRed rend) {
+        super.paintBand(band, x, y, rend);
+        if (Boolean.TRUE.equals(hints.get(KEY_FORCE_TRANSPARENT_WHITE))) {
+            SinglePixelPackedSampleModel sppsm;
+            sppsm = (SinglePixelPackedSampleModel)band.getSampleModel();
+            forceTransparentWhite(band, sppsm);
+        }
+    }
+
+    /**
+     * Writes an image painted in bands.  The image is given as is to
+     * the adapters which support it, so that it is never fully held in
+     * memory.
+     * @param img the image to write
+     * @param output the output where to store the image
+     * @throws TranscoderException if an error occured while storing the image
+     */
+    protected void writeStreamedImage(RenderedImage img,
+                                      TranscoderOutput output)
+        throws TranscoderException {
+        WriteAdapter adapter = getWriteAdapter();
+        if (adapter instanceof StreamingWriteAdapter) {
+            ((StreamingWriteAdapter)adapter).writeStreamedImage
+                (this, img, output);
+        } else {
+            // The bands are already transparent white if required.
+            BufferedImage dest = createImage(img.getWidth(), img.getHeight());
+            img.copyData(dest.getRaster());
+            adapter.writeImage(this, dest, output);
+        }
     }
     
     // --------------------------------------------------------------------
@@ -141,6 +189,25 @@ public class TIFFTranscoder extends ImageTranscoder {
                 TranscoderOutput output) throws TranscoderException;
 
     }
+
+    /**
+     * Implemented by the adapters which can write an image painted in
+     * bands as they ask for them.
+     */
+    public interface StreamingWriteAdapter extends WriteAdapter {
+
+        /**
+         * Writes the specified image, painted in bands, to the specified
+         * output.
+         * @param transcoder the calling TIFFTranscoder
+         * @param img the image to write
+         * @param output the output where to store the image
+         * @throws TranscoderException if an error occured while storing the image
+         */
+        void writeStreamedImage(TIFFTranscoder transcoder, RenderedImage img,
+                TranscoderOutput output) throws TranscoderException;
+
+    }
     
 
     // --------------------------------------------------------------------
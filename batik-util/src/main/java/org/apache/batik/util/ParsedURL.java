@@ -303,6 +303,22 @@ public class ParsedURL {
         this.userAgent = userAgent;
     }
 
+    /**
+     * Returns the connect and read timeout of the connections opened
+     * for this url, in milliseconds, or 0 for none.
+     */
+    public int getTimeout() {
+        return data.timeout;
+    }
+
+    /**
+     * Sets the connect and read timeout of the connections opened for
+     * this url, in milliseconds (0 for none).
+     */
+    public void setTimeout(int ms) {
+        data.timeout = ms;
+    }
+
     /**
      * Returns the protocol for this URL.
      * The protocol is everything upto the first ':'.
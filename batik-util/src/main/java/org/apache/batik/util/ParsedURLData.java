@@ -128,6 +128,12 @@ public class ParsedURLData {
     public InputStream stream     = null;
     public boolean hasBeenOpened  = false;
 
+    /**
+     * The connect and read timeout of the connection, in milliseconds,
+     * or 0 for none.
+     */
+    public int timeout            = 0;
+
     /**
      * The extracted type/subtype from the Content-Type header.
      */
@@ -520,6 +526,10 @@ loop2:          while (i < len) {
             return null;
 
         URLConnection urlC = url.openConnection();
+        if (timeout > 0) {
+            urlC.setConnectTimeout(timeout);
+            urlC.setReadTimeout(timeout);
+        }
         if (urlC instanceof HttpURLConnection) {
             if (userAgent != null)
                 urlC.setRequestProperty(HTTP_USER_AGENT_HEADER, userAgent);
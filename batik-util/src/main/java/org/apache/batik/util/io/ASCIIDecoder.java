@@ -54,4 +54,33 @@ public class ASCIIDecoder extends AbstractCharDecoder {
         }
         return result;
     }
+
+    /**
+     * Reads characters into a portion of an array.  The characters are
+     * copied from the input buffer, which is only filled when empty.
+     * @return the number of characters read or END_OF_STREAM.
+     */
+    public int readChars(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (position == count) {
+            fillBuffer();
+        }
+        if (count == -1) {
+            return END_OF_STREAM;
+        }
+        int n = Math.min(len, count - position);
+        byte[] buf = buffer;
+        int p = position;
+        for (int i = 0; i < n; i++) {
+            byte b = buf[p + i];
+            if (b < 0) {
+                charError("ASCII");
+            }
+            cbuf[off + i] = (char)b;
+        }
+        position = p + n;
+        return n;
+    }
 }
@@ -62,6 +62,28 @@ public abstract class AbstractCharDecoder implements CharDecoder {
         inputStream = is;
     }
 
+    /**
+     * Reads characters into a portion of an array.  This implementation
+     * calls {@link #readChar()} until <code>len</code> characters are
+     * read, or the input buffer is empty.
+     * @return the number of characters read or END_OF_STREAM.
+     */
+    public int readChars(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        int c = readChar();
+        if (c == END_OF_STREAM) {
+            return END_OF_STREAM;
+        }
+        cbuf[off] = (char)c;
+        int n = 1;
+        while (n < len && position < count) {
+            cbuf[off + n++] = (char)readChar();
+        }
+        return n;
+    }
+
     /**
      * Disposes the associated resources.
      */
@@ -40,6 +40,30 @@ public interface CharDecoder {
      */
     int readChar() throws IOException;
 
+    /**
+     * Reads characters into a portion of an array.  This method reads
+     * at least one character, unless the end of the stream is reached,
+     * but may read fewer than <code>len</code> characters to avoid
+     * blocking.
+     * The default implementation reads the characters one at a time
+     * with {@link #readChar()}.
+     * @return the number of characters read or END_OF_STREAM.
+     */
+    default int readChars(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        int n = 0;
+        while (n < len) {
+            int c = readChar();
+            if (c == END_OF_STREAM) {
+                break;
+            }
+            cbuf[off + n++] = (char)c;
+        }
+        return (n == 0) ? END_OF_STREAM : n;
+    }
+
     /**
      * Disposes the associated resources.
      */
@@ -50,4 +50,29 @@ public class ISO_8859_1Decoder extends AbstractCharDecoder {
         }
         return buffer[position++] & 0xff;
     }
+
+    /**
+     * Reads characters into a portion of an array.  The characters are
+     * copied from the input buffer, which is only filled when empty.
+     * @return the number of characters read or END_OF_STREAM.
+     */
+    public int readChars(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (position == count) {
+            fillBuffer();
+        }
+        if (count == -1) {
+            return END_OF_STREAM;
+        }
+        int n = Math.min(len, count - position);
+        byte[] buf = buffer;
+        int p = position;
+        for (int i = 0; i < n; i++) {
+            cbuf[off + i] = (char)(buf[p + i] & 0xff);
+        }
+        position = p + n;
+        return n;
+    }
 }
@@ -49,11 +49,17 @@ public abstract class NormalizingReader extends Reader {
             return -1;
         }
         int result = 0;
-        do {
+        for (;;) {
             cbuf[result + off] = (char)c;
             result++;
+            if (result == len) {
+                break;
+            }
             c = read();
-        } while (c != -1 && result < len);
+            if (c == -1) {
+                break;
+            }
+        }
         return result;
     }
 
@@ -101,33 +101,105 @@ public class StreamNormalizingReader extends NormalizingReader {
         int result = nextChar;
         if (result != -1) {
             nextChar = -1;
-            if (result == 13) {
-                column = 0;
-                line++;
-            } else {
-                column++;
-            }
-            return result;
+        } else {
+            result = charDecoder.readChar();
         }
-        result = charDecoder.readChar();
         switch (result) {
         case 13:
-            column = 0;
-            line++;
             int c = charDecoder.readChar();
-            if (c == 10) {
-                return 10;
+            if (c != 10) {
+                nextChar = c;
             }
-            nextChar = c;
-            return 10;
+            result = 10;
+            // Fall through.
 
         case 10:
             column = 0;
             line++;
+            break;
+
+        case -1:
+            break;
+
+        default:
+            column++;
         }
         return result;
     }
 
+    /**
+     * Read characters into a portion of an array.  The characters are
+     * decoded in blocks by {@link CharDecoder#readChars(char[],int,int)}
+     * and the line separators are normalized in place.
+     * @param cbuf  Destination buffer
+     * @param off   Offset at which to start writing characters
+     * @param len   Maximum number of characters to read
+     * @return The number of characters read, or -1 if the end of the
+     * stream has been reached
+     */
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        int n = 0;
+        if (nextChar != -1) {
+            cbuf[off] = (char)read();
+            n = 1;
+            if (n == len || nextChar != -1) {
+                return n;
+            }
+        }
+        int r = charDecoder.readChars(cbuf, off + n, len - n);
+        if (r == -1) {
+            return (n == 0) ? -1 : n;
+        }
+
+        // Only the carriage returns require the block to be rewritten.
+        int start = off + n;
+        int end = start + r;
+        int ln = line;
+        int lf = -1;
+        int i = start;
+        while (i < end) {
+            char c = cbuf[i];
+            if (c <= 13) {
+                if (c == 13) {
+                    break;
+                }
+                if (c == 10) {
+                    ln++;
+                    lf = i;
+                }
+            }
+            i++;
+        }
+        int w = i;
+        while (i < end) {
+            char c = cbuf[i++];
+            if (c == 13) {
+                if (i < end) {
+                    if (cbuf[i] == 10) {
+                        i++;
+                    }
+                } else {
+                    int d = charDecoder.readChar();
+                    if (d != 10) {
+                        nextChar = d;
+                    }
+                }
+                c = 10;
+            }
+            if (c == 10) {
+                ln++;
+                lf = w;
+            }
+            cbuf[w++] = c;
+        }
+        column = (lf == -1) ? column + w - start : w - lf - 1;
+        line = ln;
+        return w - off;
+    }
+
     /**
      * Returns the current line in the stream.
      */
@@ -83,8 +83,13 @@ public class StringNormalizingReader extends NormalizingReader {
             case 10:
                 column = 0;
                 line++;
+                return 10;
+
+            case -1:
+                return -1;
             }
         }
+        column++;
         return result;
     }
 
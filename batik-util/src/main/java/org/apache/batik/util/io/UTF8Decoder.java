@@ -109,7 +109,7 @@ public class UTF8Decoder extends AbstractCharDecoder {
             if ((b2 & 0xc0) != 0x80 || (b3 & 0xc0) != 0x80) {
                 charError("UTF-8");
             }
-            return ((b1 & 0x1f) << 12) | ((b2 & 0x3f) << 6) | (b3 & 0x1f);
+            return ((b1 & 0x0f) << 12) | ((b2 & 0x3f) << 6) | (b3 & 0x3f);
 
         case 4:
             if (position == count) {
@@ -138,12 +138,68 @@ public class UTF8Decoder extends AbstractCharDecoder {
                 (b4 & 0xc0) != 0x80) {
                 charError("UTF-8");
             }
-            int c = ((b1 & 0x1f) << 18)
+            int c = ((b1 & 0x07) << 18)
                 | ((b2 & 0x3f) << 12)
-                | ((b3 & 0x1f) << 6)
-                | (b4 & 0x1f);
+                | ((b3 & 0x3f) << 6)
+                | (b4 & 0x3f);
             nextChar = (c - 0x10000) % 0x400 + 0xdc00;
             return (c - 0x10000) / 0x400 + 0xd800;
         }
     }
+
+    /**
+     * Reads characters into a portion of an array.  The runs of ASCII
+     * bytes are copied directly from the input buffer, the other
+     * sequences are decoded by {@link #readChar()}.  The input buffer is
+     * only filled when no character was read yet.
+     * @return the number of characters read or END_OF_STREAM.
+     */
+    public int readChars(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        int n = 0;
+        if (nextChar != -1) {
+            cbuf[off] = (char)nextChar;
+            nextChar = -1;
+            n = 1;
+        }
+        byte[] buf = buffer;
+        while (n < len) {
+            if (position == count) {
+                if (n > 0) {
+                    break;
+                }
+                fillBuffer();
+            }
+            if (count == -1) {
+                return (n == 0) ? END_OF_STREAM : n;
+            }
+
+            // ASCII run.
+            int p = position;
+            int end = p + Math.min(count - p, len - n);
+            int o = off + n - p;
+            while (p < end) {
+                byte b = buf[p];
+                if (b < 0) {
+                    break;
+                }
+                cbuf[o + p] = (char)b;
+                p++;
+            }
+            n += p - position;
+            position = p;
+
+            if (n < len && p < end) {
+                // A multi-byte sequence.
+                cbuf[off + n++] = (char)readChar();
+                if (nextChar != -1 && n < len) {
+                    cbuf[off + n++] = (char)nextChar;
+                    nextChar = -1;
+                }
+            }
+        }
+        return n;
+    }
 }
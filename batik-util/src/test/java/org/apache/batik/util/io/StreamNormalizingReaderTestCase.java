@@ -0,0 +1,139 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.util.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.Reader;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+
+public class StreamNormalizingReaderTestCase {
+
+    private static final String TEXT =
+        "a\u00e9\u222b\ud835\udc00b\r\nc\rd\n";
+
+    private static final String NORMALIZED =
+        "a\u00e9\u222b\ud835\udc00b\nc\nd\n";
+
+    @Test
+    public void testUTF8Decoding() throws Exception {
+        assertEquals(NORMALIZED, read(TEXT, "UTF-8", 4096));
+    }
+
+    @Test
+    public void testSmallBuffer() throws Exception {
+        for (int len = 1; len <= 4; len++) {
+            assertEquals(NORMALIZED, read(TEXT, "UTF-8", len));
+            assertEquals(NORMALIZED, read(TEXT, "UTF-16", len));
+        }
+    }
+
+    @Test
+    public void testCarriageReturns() throws Exception {
+        String s = "a\r\rb\r";
+        for (int len = 1; len <= 4; len++) {
+            assertEquals("a\n\nb\n", read(s, "UTF-8", len));
+            assertEquals("a\n\nb\n", read(s, "ISO-8859-1", len));
+            assertEquals("a\n\nb\n", read(s, "US-ASCII", len));
+        }
+    }
+
+    @Test
+    public void testBlockBoundaries() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 3000; i++) {
+            sb.append("ab\r\n\u00e9\ud835\udc00c\r");
+        }
+        String s = sb.toString();
+        String expected = s.replace("\r\n", "\n").replace('\r', '\n');
+        for (int len = 1; len <= 8193; len += 1023) {
+            assertEquals(expected, read(s, "UTF-8", len));
+            assertEquals(expected, read(s, "UTF-16", len));
+        }
+    }
+
+    @Test
+    public void testMixedReads() throws Exception {
+        byte[] bytes = TEXT.getBytes("UTF-8");
+        StreamNormalizingReader r = new StreamNormalizingReader
+            (new ByteArrayInputStream(bytes), "UTF-8");
+        StringBuilder sb = new StringBuilder();
+        char[] buf = new char[2];
+        for (;;) {
+            int c = r.read();
+            if (c == -1) {
+                break;
+            }
+            sb.append((char)c);
+            int n = r.read(buf, 0, 2);
+            if (n == -1) {
+                break;
+            }
+            sb.append(buf, 0, n);
+        }
+        assertEquals(NORMALIZED, sb.toString());
+        assertEquals(4, r.getLine());
+        assertEquals(0, r.getColumn());
+    }
+
+    @Test
+    public void testLineAndColumn() throws Exception {
+        byte[] bytes = "ab\r\ncde\rf".getBytes("UTF-8");
+        StreamNormalizingReader r = new StreamNormalizingReader
+            (new ByteArrayInputStream(bytes), "UTF-8");
+        char[] buf = new char[64];
+        assertEquals(8, r.read(buf, 0, 64));
+        assertEquals(3, r.getLine());
+        assertEquals(1, r.getColumn());
+    }
+
+    @Test
+    public void testDefaultReadChars() throws Exception {
+        final String s = "abc";
+        CharDecoder d = new CharDecoder() {
+            private int next;
+            public int readChar() {
+                return (next == s.length()) ? END_OF_STREAM : s.charAt(next++);
+            }
+            public void dispose() {
+            }
+        };
+        char[] buf = new char[4];
+        assertEquals(0, d.readChars(buf, 0, 0));
+        assertEquals(2, d.readChars(buf, 1, 2));
+        assertEquals(1, d.readChars(buf, 3, 1));
+        assertEquals("abc", new String(buf, 1, 3));
+        assertEquals(CharDecoder.END_OF_STREAM, d.readChars(buf, 0, 4));
+    }
+
+    private static String read(String s, String enc, int len)
+            throws Exception {
+        byte[] bytes = s.getBytes(enc);
+        Reader r = new StreamNormalizingReader
+            (new ByteArrayInputStream(bytes), enc);
+        StringBuilder sb = new StringBuilder();
+        char[] buf = new char[len];
+        int n;
+        while ((n = r.read(buf, 0, len)) != -1) {
+            sb.append(buf, 0, n);
+        }
+        return sb.toString();
+    }
+}